@@ -0,0 +1,92 @@
+package com.cdl.benchmarks;
+
+import com.cdl.Checkout;
+import com.cdl.PricingRuleFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures scanning an EAN-13 barcode as it arrives from a scanner, 13 ASCII digits and a line
+ * feed: {@link Checkout#scanBarcode(byte[], int, int)}, which decodes the digits in place, against
+ * creating a String from the bytes and calling {@link Checkout#scan(String)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class BarcodeScanBenchmark {
+    // Baskets are cleared after this many scans so quantities stay realistic
+    private static final int BASKET_SIZE = 64;
+    private static final int LINE_LENGTH = 14;
+
+    @Param({"1000", "100000"})
+    int catalogueSize;
+
+    private Checkout checkout;
+    // BASKET_SIZE scanner lines back to back, as read from the scanner's stream
+    private byte[] lines;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        PricingRuleFactory factory = new PricingRuleFactory();
+        factory.update(builder -> {
+            for (int i = 0; i < catalogueSize; i++) {
+                builder.put(barcode(i), BenchmarkCatalogues.rule(i));
+            }
+        });
+        checkout = new Checkout(factory);
+        lines = new byte[BASKET_SIZE * LINE_LENGTH];
+        for (int i = 0; i < BASKET_SIZE; i++) {
+            byte[] line = (barcode(i * 7919 % catalogueSize) + "\n").getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(line, 0, lines, i * LINE_LENGTH, LINE_LENGTH);
+        }
+    }
+
+    /**
+     * Returns the i-th EAN-13 barcode of the catalogue, with its check digit.
+     */
+    private static String barcode(int index) {
+        String digits = String.format("500%09d", index);
+        int sum = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            int digit = digits.charAt(i) - '0';
+            sum += (i & 1) == 1 ? 3 * digit : digit;
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    private int nextLine() {
+        int index = next++ & (BASKET_SIZE - 1);
+        if (index == 0) {
+            checkout.clear();
+        }
+        return index * LINE_LENGTH;
+    }
+
+    @Benchmark
+    public void scanBarcode() {
+        int from = nextLine();
+        checkout.scanBarcode(lines, from, from + LINE_LENGTH - 1);
+    }
+
+    @Benchmark
+    public void scanString() {
+        int from = nextLine();
+        checkout.scan(new String(lines, from, LINE_LENGTH - 1, StandardCharsets.US_ASCII));
+    }
+}
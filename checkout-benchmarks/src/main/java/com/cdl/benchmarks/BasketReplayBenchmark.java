@@ -0,0 +1,84 @@
+package com.cdl.benchmarks;
+
+import com.cdl.BasketReplayEngine;
+import com.cdl.ReplayResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how replaying a basket log scales with the parallelism of the
+ * {@link BasketReplayEngine}'s pool, in scans per second. The log is written once per trial
+ * with baskets of Zipf-distributed SKUs from a large catalogue, and every invocation replays the
+ * whole file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class BasketReplayBenchmark {
+    static final int BASKETS = 200_000;
+    static final int BASKET_SIZE = 20;
+    static final int SCANS = BASKETS * BASKET_SIZE;
+    private static final int CATALOGUE_SIZE = 100_000;
+
+    @Param({"1", "2", "4", "8"})
+    int parallelism;
+
+    private Path log;
+    private ForkJoinPool pool;
+    private BasketReplayEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        log = Files.createTempFile("basket-replay", ".log");
+        ZipfSampler popularity = new ZipfSampler(CATALOGUE_SIZE, 1.0);
+        SplittableRandom random = new SplittableRandom(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(log, StandardCharsets.US_ASCII)) {
+            for (int basket = 0; basket < BASKETS; basket++) {
+                writer.write(Integer.toString(1000 + basket));
+                for (int scan = 0; scan < BASKET_SIZE; scan++) {
+                    writer.write(' ');
+                    writer.write(BenchmarkCatalogues.sku(popularity.sample(random)));
+                }
+                writer.write('\n');
+            }
+        }
+        pool = new ForkJoinPool(parallelism);
+        engine = new BasketReplayEngine(BenchmarkCatalogues.catalogue(CATALOGUE_SIZE), pool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        Files.delete(log);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SCANS)
+    public ReplayResult replay() throws IOException {
+        return engine.replay(log);
+    }
+}
@@ -0,0 +1,57 @@
+package com.cdl.benchmarks;
+
+import com.cdl.PricingRule;
+import com.cdl.PricingRuleFactory;
+import com.cdl.RegularPricingRule;
+import com.cdl.SpecialPricingRule;
+
+import java.math.BigDecimal;
+
+/**
+ * Builds synthetic catalogues for the benchmarks.
+ */
+final class BenchmarkCatalogues {
+
+    private BenchmarkCatalogues() {
+    }
+
+    /**
+     * Returns the SKU used for the i-th item of a synthetic catalogue.
+     */
+    static String sku(int index) {
+        return "SKU" + index;
+    }
+
+    /**
+     * Creates a catalogue of the given size in which every other SKU has a multi-buy deal.
+     */
+    static PricingRuleFactory catalogue(int size) {
+        return fill(new PricingRuleFactory(), size);
+    }
+
+    /**
+     * Creates the same catalogue as {@link #catalogue(int)}, stored off the heap.
+     */
+    static PricingRuleFactory offHeapCatalogue(int size) {
+        return fill(PricingRuleFactory.offHeap(size), size);
+    }
+
+    private static PricingRuleFactory fill(PricingRuleFactory factory, int size) {
+        factory.update(builder -> {
+            for (int i = 0; i < size; i++) {
+                builder.put(sku(i), rule(i));
+            }
+        });
+        return factory;
+    }
+
+    static PricingRule rule(int index) {
+        BigDecimal unitPrice = BigDecimal.valueOf(10 + index % 490, 2);
+        if (index % 2 == 0) {
+            return new RegularPricingRule(unitPrice);
+        }
+        int dealQuantity = 2 + index % 3;
+        return new SpecialPricingRule(unitPrice, dealQuantity,
+                unitPrice.multiply(BigDecimal.valueOf(dealQuantity)).subtract(BigDecimal.valueOf(5, 2)));
+    }
+}
@@ -0,0 +1,156 @@
+package com.cdl.benchmarks;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH CSV result files, benchmark by benchmark. Only the primary scores and the
+ * {@code gc.alloc.rate.norm} reported by the GC profiler are compared; the other profiler
+ * figures, such as the allocation rate and GC count, move with throughput and run length rather
+ * than with the code. Rows are matched on the benchmark name and the parameters it sets, so
+ * files whose parameter columns differ, such as one from a run of a few benchmarks, still match.
+ */
+final class BenchmarkComparison {
+    static final double DEFAULT_THRESHOLD_PERCENT = 10.0;
+
+    private static final String ALLOCATION_SUFFIX = ":gc.alloc.rate.norm";
+
+    private final List<String> lines = new ArrayList<>();
+    private int regressions;
+    private int compared;
+    private int missing;
+
+    private BenchmarkComparison() {
+    }
+
+    /**
+     * Compares every benchmark present in both files, and lists the ones only in one of them.
+     *
+     * @param baseline         The baseline result file.
+     * @param current          The result file to check.
+     * @param thresholdPercent How much worse a score may get before it counts as a regression.
+     * @return The comparison.
+     * @throws IOException if either file cannot be read.
+     */
+    static BenchmarkComparison compare(Path baseline, Path current, double thresholdPercent) throws IOException {
+        Map<String, Score> before = read(baseline);
+        Map<String, Score> after = read(current);
+        BenchmarkComparison comparison = new BenchmarkComparison();
+        for (Map.Entry<String, Score> entry : after.entrySet()) {
+            Score old = before.get(entry.getKey());
+            if (old == null) {
+                comparison.lines.add(String.format("NEW        %s %.3f %s", entry.getKey(), entry.getValue().value, entry.getValue().unit));
+                continue;
+            }
+            comparison.compared++;
+            Score now = entry.getValue();
+            double change = old.value == 0 ? 0 : (now.value - old.value) / old.value * 100;
+            // Throughput-style units are better when higher, times and allocation when lower
+            double worse = now.unit.startsWith("ops/") ? -change : change;
+            // The profiler's allocation figure is amortized over the run, so less than a byte per operation is noise
+            double noise = entry.getKey().contains(ALLOCATION_SUFFIX) ? Math.max(1, now.error + old.error) : now.error + old.error;
+            boolean regressed = worse > thresholdPercent && Math.abs(now.value - old.value) > noise;
+            if (regressed) {
+                comparison.regressions++;
+            }
+            comparison.lines.add(String.format("%-10s %s %.3f -> %.3f %s (%+.1f%%)", regressed ? "REGRESSED" : "ok",
+                    entry.getKey(), old.value, now.value, now.unit, change));
+        }
+        for (Map.Entry<String, Score> entry : before.entrySet()) {
+            if (!after.containsKey(entry.getKey())) {
+                comparison.missing++;
+                comparison.lines.add(String.format("MISSING    %s %.3f %s", entry.getKey(), entry.getValue().value, entry.getValue().unit));
+            }
+        }
+        return comparison;
+    }
+
+    /**
+     * Returns whether the comparison should fail a build: a score regressed, or no benchmark
+     * of the current run was found in the baseline, so nothing was checked.
+     */
+    boolean hasFailed() {
+        return regressions > 0 || compared == 0;
+    }
+
+    void print(PrintStream out) {
+        lines.forEach(out::println);
+        out.println(regressions + " regression(s), " + compared + " compared, " + missing + " missing from the current run");
+        if (compared == 0) {
+            out.println("No benchmark of the current run is in the baseline");
+        }
+    }
+
+    private static Map<String, Score> read(Path file) throws IOException {
+        List<String> rows = Files.readAllLines(file, StandardCharsets.UTF_8);
+        Map<String, Score> scores = new LinkedHashMap<>();
+        if (rows.isEmpty()) {
+            return scores;
+        }
+        List<String> header = parseRow(rows.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int score = header.indexOf("Score");
+        int error = header.indexOf("Score Error (99.9%)");
+        int unit = header.indexOf("Unit");
+        for (String row : rows.subList(1, rows.size())) {
+            if (row.isBlank()) {
+                continue;
+            }
+            List<String> fields = parseRow(row);
+            String name = fields.get(benchmark);
+            int secondary = name.lastIndexOf(':');
+            if (secondary >= 0 && !name.endsWith(ALLOCATION_SUFFIX)) {
+                continue;
+            }
+            StringBuilder key = new StringBuilder(name);
+            for (int i = 0; i < header.size(); i++) {
+                // A column of a parameter the benchmark does not have is empty
+                if (header.get(i).startsWith("Param: ") && !fields.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).substring(7)).append('=').append(fields.get(i));
+                }
+            }
+            double errorValue = error >= 0 && !fields.get(error).isEmpty() && !fields.get(error).equals("NaN")
+                    ? Double.parseDouble(fields.get(error)) : 0;
+            scores.put(key.toString(), new Score(Double.parseDouble(fields.get(score)), errorValue, fields.get(unit)));
+        }
+        return scores;
+    }
+
+    private static List<String> parseRow(String row) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static final class Score {
+        final double value;
+        final double error;
+        final String unit;
+
+        Score(double value, double error, String unit) {
+            this.value = value;
+            this.error = error;
+            this.unit = unit;
+        }
+    }
+}
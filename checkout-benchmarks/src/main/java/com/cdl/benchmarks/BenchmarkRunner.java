@@ -0,0 +1,96 @@
+package com.cdl.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Entry point of the benchmarks jar.
+ * <p>
+ * {@code java -jar benchmarks.jar [jmh options]} runs the benchmarks with the GC/allocation
+ * profiler and writes the results to {@code jmh-result.csv}; any JMH command line option can
+ * be passed through, for example a benchmark name pattern. {@code java -jar benchmarks.jar
+ * compare <baseline.csv> <current.csv> [threshold%]} compares two result files and exits with
+ * status 1 if any benchmark regressed by more than the threshold, or none could be compared.
+ * {@code java -jar benchmarks.jar load [sessions] [scansPerSession] [host:port]} runs the
+ * {@link ServerLoadTest},
+ * {@code java -jar benchmarks.jar sessions [count]} the {@link SessionFootprint} measurement,
+ * {@code java -jar benchmarks.jar catalogue [skus]} the {@link CatalogueFootprint} measurement,
+ * {@code java -jar benchmarks.jar burst [bursts] [scansPerBurst] [displayMicros]} the
+ * {@link ScanBurstLoadTest}, {@code java -jar benchmarks.jar soak [lanes] [seconds]
+ * [result.json] [totalEvery] [reportSeconds]} the {@link LaneSoakTest}, {@code java -jar
+ * benchmarks.jar tiers [skus] [tiers] [overridesPerTier]} the {@link TierFootprint} measurement
+ * and {@code java -jar benchmarks.jar replicate [skus] [changesPerRound] [rounds] [lanes]} the
+ * {@link ReplicationLoadTest}.
+ */
+public final class BenchmarkRunner {
+    static final String DEFAULT_RESULT_FILE = "jmh-result.csv";
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("load")) {
+            ServerLoadTest.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("sessions")) {
+            SessionFootprint.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("catalogue")) {
+            CatalogueFootprint.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("burst")) {
+            ScanBurstLoadTest.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("soak")) {
+            LaneSoakTest.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("tiers")) {
+            TierFootprint.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("replicate")) {
+            ReplicationLoadTest.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("compare")) {
+            if (args.length < 3) {
+                System.err.println("Usage: compare <baseline.csv> <current.csv> [threshold%]");
+                System.exit(2);
+            }
+            double threshold = args.length > 3 ? Double.parseDouble(args[3]) : BenchmarkComparison.DEFAULT_THRESHOLD_PERCENT;
+            BenchmarkComparison comparison = BenchmarkComparison.compare(Path.of(args[1]), Path.of(args[2]), threshold);
+            comparison.print(System.out);
+            System.exit(comparison.hasFailed() ? 1 : 0);
+        }
+
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.CSV)
+                .result(resultFile(args))
+                .build()).run();
+    }
+
+    /**
+     * Keeps an explicit {@code -rff} from the command line, otherwise writes to the default file.
+     */
+    private static String resultFile(String[] args) {
+        int index = Arrays.asList(args).indexOf("-rff");
+        return index >= 0 && index + 1 < args.length ? args[index + 1] : DEFAULT_RESULT_FILE;
+    }
+}
@@ -0,0 +1,70 @@
+package com.cdl.benchmarks;
+
+import com.cdl.Checkout;
+import com.cdl.PricingRuleFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading the total of small, medium and huge baskets, both on its own and as part
+ * of the scan-then-display cycle a lane runs on every beep.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class CalculateTotalBenchmark {
+    private static final int CATALOGUE_SIZE = 10_000;
+
+    /**
+     * Distinct lines in the basket: small, medium and huge.
+     */
+    @Param({"5", "100", "5000"})
+    int basketLines;
+
+    private Checkout checkout;
+    private String lastSku;
+
+    @Setup
+    public void setUp() {
+        PricingRuleFactory factory = BenchmarkCatalogues.catalogue(CATALOGUE_SIZE);
+        checkout = new Checkout(factory);
+        for (int line = 0; line < basketLines; line++) {
+            String sku = BenchmarkCatalogues.sku(line);
+            checkout.scan(sku, 1 + line % 4);
+        }
+        lastSku = BenchmarkCatalogues.sku(basketLines - 1);
+    }
+
+    @Benchmark
+    public BigDecimal calculateTotal() {
+        return checkout.calculateTotal();
+    }
+
+    @Benchmark
+    public long calculateTotalMinor() {
+        return checkout.calculateTotalMinor();
+    }
+
+    @Benchmark
+    public BigDecimal scanAndCalculateTotal() {
+        checkout.scan(lastSku);
+        BigDecimal total = checkout.calculateTotal();
+        checkout.unscan(lastSku);
+        return total;
+    }
+}
@@ -0,0 +1,80 @@
+package com.cdl.benchmarks;
+
+import com.cdl.Checkout;
+import com.cdl.PricingRule;
+import com.cdl.PricingRuleFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares lookups and scans against a catalogue on the heap and the same catalogue stored off
+ * the heap, from 100k up to 5M SKUs. See {@link CatalogueFootprint} for heap use and GC pauses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Thread)
+public class CatalogueBackendBenchmark {
+    private static final int LOOKUPS = 1024;
+
+    @Param({"heap", "offHeap"})
+    String backend;
+
+    @Param({"100000", "5000000"})
+    int catalogueSize;
+
+    private PricingRuleFactory factory;
+    private Checkout checkout;
+    private String[] skus;
+    private int[] skuIds;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        factory = backend.equals("offHeap")
+                ? BenchmarkCatalogues.offHeapCatalogue(catalogueSize) : BenchmarkCatalogues.catalogue(catalogueSize);
+        checkout = new Checkout(factory);
+        Random random = new Random(42);
+        skus = new String[LOOKUPS];
+        skuIds = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            skus[i] = BenchmarkCatalogues.sku(random.nextInt(catalogueSize));
+            skuIds[i] = factory.getSkuId(skus[i]);
+        }
+    }
+
+    @Benchmark
+    public int getSkuId() {
+        return factory.getSkuId(skus[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public PricingRule getPricingRuleById() {
+        return factory.getPricingRule(skuIds[next++ & (LOOKUPS - 1)]);
+    }
+
+    /**
+     * A scan and unscan of the same item, so the basket stays the same size.
+     */
+    @Benchmark
+    public long scanAndUnscan() {
+        String sku = skus[next++ & (LOOKUPS - 1)];
+        checkout.scan(sku);
+        checkout.unscan(sku);
+        return checkout.calculateTotalMinor();
+    }
+}
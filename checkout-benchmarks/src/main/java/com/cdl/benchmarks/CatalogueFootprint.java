@@ -0,0 +1,102 @@
+package com.cdl.benchmarks;
+
+import com.cdl.PricingRuleFactory;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.function.IntFunction;
+
+/**
+ * Measures the heap held by a catalogue on the heap and by the same catalogue stored off the
+ * heap, with the time a full GC takes while it is live and the GC time spent while lanes churn
+ * through short-lived garbage. Heap use is read after a full GC, so run it with no other load
+ * and a heap large enough for the heap catalogue, for example {@code -Xmx8g}.
+ */
+final class CatalogueFootprint {
+    static final int DEFAULT_SKUS = 5_000_000;
+    // Garbage allocated to make the collector run while the catalogue is live
+    private static final long CHURN_BYTES = 8L << 30;
+
+    private CatalogueFootprint() {
+    }
+
+    /**
+     * Runs the measurement. Arguments: {@code [skus]}.
+     */
+    static void run(String[] args) {
+        int skus = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SKUS;
+        System.out.printf("%d SKUs%n", skus);
+        measure("heap", skus, BenchmarkCatalogues::catalogue);
+        measure("offHeap", skus, BenchmarkCatalogues::offHeapCatalogue);
+    }
+
+    private static void measure(String backend, int skus, IntFunction<PricingRuleFactory> catalogue) {
+        long emptyHeap = usedHeap();
+        long emptyDirect = usedDirect();
+        PricingRuleFactory factory = catalogue.apply(skus);
+        long heap = usedHeap() - emptyHeap;
+        long direct = usedDirect() - emptyDirect;
+
+        long fullGcNanos = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            System.gc();
+            fullGcNanos = Math.min(fullGcNanos, System.nanoTime() - start);
+        }
+
+        long collections = collectionCount();
+        long collectionMillis = collectionMillis();
+        // A ring of recent allocations, so the allocations cannot be optimized away
+        Object[] recent = new Object[1024];
+        int next = 0;
+        for (long allocated = 0; allocated < CHURN_BYTES; allocated += 1024) {
+            recent[next++ & (recent.length - 1)] = new byte[1000];
+        }
+        collections = collectionCount() - collections;
+        collectionMillis = collectionMillis() - collectionMillis;
+
+        System.out.printf("%-8s heap %5d MB (%d bytes per SKU), off-heap %5d MB, full GC %d ms, "
+                        + "%d GCs during churn taking %d ms in total%n",
+                backend, heap >> 20, heap / skus, direct >> 20, fullGcNanos / 1_000_000,
+                collections, collectionMillis);
+        // Keeps the catalogue and the garbage alive until here
+        if (factory.size() < 0 || recent[0] == null) {
+            throw new AssertionError();
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long usedDirect() {
+        long used = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                used += pool.getMemoryUsed();
+            }
+        }
+        return used;
+    }
+
+    private static long collectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long collectionMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,103 @@
+package com.cdl.benchmarks;
+
+import com.cdl.CatalogueSnapshot;
+import com.cdl.PricingCatalogue;
+import com.cdl.PricingRuleFactory;
+import com.cdl.RegularPricingRule;
+import com.cdl.SpecialPricingRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures lane cold start: loading a compiled catalogue snapshot, against parsing the CSV
+ * price list into a {@link PricingRuleFactory}. Each measurement is a single load in a fresh
+ * iteration, with no warmup, as on a lane restart.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 5)
+@Fork(value = 2, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class CatalogueLoadBenchmark {
+
+    @Param({"100000", "2000000", "10000000"})
+    int catalogueSize;
+
+    private Path directory;
+    private Path csv;
+    private Path snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("catalogue-load");
+        csv = directory.resolve("prices.csv");
+        snapshot = directory.resolve("catalogue.snapshot");
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            writer.write("sku,unitPrice,specialQuantity,specialPrice\n");
+            for (int i = 0; i < catalogueSize; i++) {
+                BigDecimal unitPrice = BigDecimal.valueOf(10 + i % 490, 2);
+                writer.write(BenchmarkCatalogues.sku(i));
+                writer.write(',');
+                writer.write(unitPrice.toPlainString());
+                if (i % 2 == 1) {
+                    int dealQuantity = 2 + i % 3;
+                    writer.write(',');
+                    writer.write(Integer.toString(dealQuantity));
+                    writer.write(',');
+                    writer.write(unitPrice.multiply(BigDecimal.valueOf(dealQuantity))
+                            .subtract(BigDecimal.valueOf(5, 2)).toPlainString());
+                }
+                writer.write('\n');
+            }
+        }
+        CatalogueSnapshot.compile(csv, snapshot, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public PricingRuleFactory loadSnapshot() throws IOException {
+        return new PricingRuleFactory(CatalogueSnapshot.load(snapshot));
+    }
+
+    @Benchmark
+    public PricingCatalogue parseCsv() throws IOException {
+        PricingRuleFactory factory = new PricingRuleFactory();
+        try (Stream<String> lines = Files.lines(csv, StandardCharsets.UTF_8)) {
+            return factory.update(builder -> lines.skip(1).forEach(line -> {
+                String[] fields = line.split(",");
+                BigDecimal unitPrice = new BigDecimal(fields[1]);
+                builder.put(fields[0], fields.length == 2
+                        ? new RegularPricingRule(unitPrice)
+                        : new SpecialPricingRule(unitPrice, Integer.parseInt(fields[2]), new BigDecimal(fields[3])));
+            }));
+        }
+    }
+}
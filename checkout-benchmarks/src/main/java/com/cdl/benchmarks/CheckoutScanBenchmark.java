@@ -0,0 +1,57 @@
+package com.cdl.benchmarks;
+
+import com.cdl.Checkout;
+import com.cdl.PricingRuleFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single {@link Checkout#scan(String)}, the per-beep cost on a lane.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class CheckoutScanBenchmark {
+    // Baskets are cleared after this many scans so quantities stay realistic
+    private static final int BASKET_SIZE = 64;
+
+    @Param({"4", "1000"})
+    int catalogueSize;
+
+    private Checkout checkout;
+    private String[] skus;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        PricingRuleFactory factory = BenchmarkCatalogues.catalogue(catalogueSize);
+        checkout = new Checkout(factory);
+        skus = new String[BASKET_SIZE];
+        for (int i = 0; i < skus.length; i++) {
+            skus[i] = BenchmarkCatalogues.sku(i * 7 % catalogueSize);
+        }
+    }
+
+    @Benchmark
+    public void scan() {
+        int index = next++ & (BASKET_SIZE - 1);
+        if (index == 0) {
+            checkout.clear();
+        }
+        checkout.scan(skus[index]);
+    }
+}
@@ -0,0 +1,100 @@
+package com.cdl.benchmarks;
+
+import com.cdl.CartJournal;
+import com.cdl.Checkout;
+import com.cdl.PricingRuleFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Measures scan throughput of several lanes sharing one {@link CartJournal}, against the same
+ * lanes without a journal. Each thread is a lane with its own checkout.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class JournalBenchmark {
+    // Baskets are cleared after this many scans so quantities stay realistic
+    private static final int BASKET_SIZE = 64;
+    private static final int CATALOGUE_SIZE = 1000;
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        @Param({"false", "true"})
+        boolean journaled;
+
+        PricingRuleFactory factory;
+        CartJournal journal;
+        final AtomicLong lanes = new AtomicLong();
+        private Path directory;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            factory = BenchmarkCatalogues.catalogue(CATALOGUE_SIZE);
+            if (journaled) {
+                directory = Files.createTempDirectory("cart-journal");
+                journal = CartJournal.open(directory);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            if (journal != null) {
+                journal.close();
+                try (Stream<Path> files = Files.walk(directory)) {
+                    files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Lane {
+        Checkout checkout;
+        String[] skus;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(Shared shared) {
+            checkout = shared.journal == null
+                    ? new Checkout(shared.factory)
+                    : new Checkout(shared.factory, shared.journal, shared.lanes.incrementAndGet());
+            skus = new String[BASKET_SIZE];
+            for (int i = 0; i < skus.length; i++) {
+                skus[i] = BenchmarkCatalogues.sku(i * 7 % CATALOGUE_SIZE);
+            }
+        }
+    }
+
+    @Benchmark
+    public void scan(Lane lane) {
+        int index = lane.next++ & (BASKET_SIZE - 1);
+        if (index == 0) {
+            lane.checkout.clear();
+        }
+        lane.checkout.scan(lane.skus[index]);
+    }
+}
@@ -0,0 +1,327 @@
+package com.cdl.benchmarks;
+
+import com.cdl.Checkout;
+import com.cdl.LatencyHistogram;
+import com.cdl.PricingRuleFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Soak test of many lanes, each running its own {@link Checkout} against one shared
+ * {@link PricingRuleFactory}, as fast as they can for a fixed time.
+ * <p>
+ * The load is deterministic for a given seed: lane {@code i} always draws the same baskets,
+ * whatever the number of lanes and however fast they run. SKUs are drawn from a 100,000-SKU
+ * catalogue with Zipf popularity, and basket sizes from a log-normal distribution with a
+ * median of 8 items and a long tail. A lane refreshes its running total every
+ * {@code totalEvery} scans, like a lane display, and always totals the finished basket.
+ * <p>
+ * Reports throughput, scan and total latency percentiles, the lanes' allocation rate and the
+ * GC count and time, for the whole run and for every reporting interval. The report is written
+ * as JSON and rewritten after every interval, so an hours-long soak that is stopped early still
+ * leaves its results behind.
+ */
+final class LaneSoakTest {
+    static final int DEFAULT_LANES = 8;
+    static final int DEFAULT_SECONDS = 60;
+    static final String DEFAULT_RESULT_FILE = "soak-result.json";
+    static final int DEFAULT_TOTAL_EVERY = 1;
+    static final int DEFAULT_REPORT_SECONDS = 10;
+    private static final int CATALOGUE_SIZE = 100_000;
+    private static final double ZIPF_EXPONENT = 1.0;
+    private static final long SEED = 42;
+    private static final double MEDIAN_BASKET_SIZE = 8;
+    private static final double BASKET_SIZE_SIGMA = 0.9;
+    private static final int MAX_BASKET_SIZE = 200;
+
+    private final int lanes;
+    private final int totalEvery;
+    private final String[] skus;
+    private final ZipfSampler popularity;
+    private final PricingRuleFactory factory;
+    private final Window run;
+    private volatile Window interval;
+    private volatile boolean running = true;
+    // Written once by each lane as it stops, so the totals it displayed are consumed
+    private volatile int displayed;
+
+    private LaneSoakTest(int lanes, int totalEvery) {
+        this.lanes = lanes;
+        this.totalEvery = totalEvery;
+        // Built up front so the lanes' allocation rate is the checkout's alone
+        skus = new String[CATALOGUE_SIZE];
+        for (int i = 0; i < CATALOGUE_SIZE; i++) {
+            skus[i] = BenchmarkCatalogues.sku(i);
+        }
+        popularity = new ZipfSampler(CATALOGUE_SIZE, ZIPF_EXPONENT);
+        factory = BenchmarkCatalogues.catalogue(CATALOGUE_SIZE);
+        run = new Window();
+    }
+
+    /**
+     * Runs the soak test. Arguments: {@code [lanes] [seconds] [result.json] [totalEvery] [reportSeconds]}.
+     * A {@code totalEvery} of 0 totals each basket only when it is finished.
+     */
+    static void run(String[] args) throws InterruptedException {
+        int lanes = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_LANES;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+        Path resultFile = Path.of(args.length > 2 ? args[2] : DEFAULT_RESULT_FILE);
+        int totalEvery = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_TOTAL_EVERY;
+        int reportSeconds = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_REPORT_SECONDS;
+        if (lanes <= 0 || seconds <= 0 || totalEvery < 0 || reportSeconds <= 0) {
+            throw new IllegalArgumentException("Lanes, seconds and report seconds must be positive, and totalEvery not negative");
+        }
+        new LaneSoakTest(lanes, totalEvery).soak(seconds, reportSeconds, resultFile);
+    }
+
+    private void soak(int seconds, int reportSeconds, Path resultFile) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(lanes);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        SplittableRandom seeds = new SplittableRandom(SEED);
+        for (int lane = 0; lane < lanes; lane++) {
+            SplittableRandom random = seeds.split();
+            Thread thread = new Thread(() -> {
+                ready.countDown();
+                try {
+                    start.await();
+                    runLane(random);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "lane-" + lane);
+            threads.add(thread);
+            thread.start();
+        }
+        ready.await();
+
+        List<String> intervals = new ArrayList<>();
+        Window current = new Window();
+        run.open();
+        current.open();
+        interval = current;
+        long deadline = run.startNanos + TimeUnit.SECONDS.toNanos(seconds);
+        start.countDown();
+        while (true) {
+            long now = System.nanoTime();
+            long next = Math.min(deadline, current.startNanos + TimeUnit.SECONDS.toNanos(reportSeconds));
+            if (next > now) {
+                TimeUnit.NANOSECONDS.sleep(next - now);
+            }
+            boolean last = System.nanoTime() >= deadline;
+            Window finished = current;
+            if (last) {
+                running = false;
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            } else {
+                current = new Window();
+                current.open();
+                interval = current;
+            }
+            finished.close();
+            intervals.add(finished.toJson(run.startNanos));
+            System.out.println(finished.describe(run.startNanos));
+            if (last) {
+                break;
+            }
+            write(resultFile, seconds, reportSeconds, null, intervals);
+        }
+        run.close();
+        write(resultFile, seconds, reportSeconds, run, intervals);
+        System.out.println("total " + run.describe(run.startNanos));
+        System.out.println("results written to " + resultFile);
+    }
+
+    private void runLane(SplittableRandom random) {
+        Checkout checkout = new Checkout(factory);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocation = threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled()
+                ? (com.sun.management.ThreadMXBean) threads : null;
+        long allocated = allocation == null ? 0 : allocation.getCurrentThreadAllocatedBytes();
+        // Consumes every displayed total, so the JIT cannot drop the work being timed
+        int consumed = 0;
+        while (running) {
+            Window window = interval;
+            int basketSize = basketSize(random);
+            for (int item = 1; item <= basketSize; item++) {
+                String sku = skus[popularity.sample(random)];
+                long scanStart = System.nanoTime();
+                checkout.scan(sku);
+                long scanEnd = System.nanoTime();
+                window.recordScan(run, scanEnd - scanStart);
+                if (totalEvery > 0 && item % totalEvery == 0 && item < basketSize) {
+                    long totalStart = System.nanoTime();
+                    consumed += checkout.calculateTotal().scale();
+                    window.recordTotal(run, System.nanoTime() - totalStart);
+                }
+            }
+            long totalStart = System.nanoTime();
+            consumed += checkout.calculateTotal().scale();
+            window.recordTotal(run, System.nanoTime() - totalStart);
+            checkout.clear();
+            long allocatedNow = allocation == null ? 0 : allocation.getCurrentThreadAllocatedBytes();
+            window.recordBasket(run, allocation == null ? -1 : allocatedNow - allocated);
+            allocated = allocatedNow;
+        }
+        displayed = consumed;
+    }
+
+    private static int basketSize(SplittableRandom random) {
+        double size = MEDIAN_BASKET_SIZE * Math.exp(BASKET_SIZE_SIGMA * random.nextGaussian());
+        return (int) Math.max(1, Math.min(MAX_BASKET_SIZE, Math.round(size)));
+    }
+
+    private void write(Path resultFile, int seconds, int reportSeconds, Window summary, List<String> intervals) {
+        StringBuilder json = new StringBuilder(256 + intervals.size() * 512);
+        json.append("{\n  \"config\": {");
+        json.append(String.format(Locale.ROOT, "\"lanes\": %d, \"seconds\": %d, \"reportSeconds\": %d, \"totalEvery\": %d, "
+                        + "\"seed\": %d, \"catalogueSize\": %d, \"zipfExponent\": %s, \"medianBasketSize\": %s, \"maxBasketSize\": %d",
+                lanes, seconds, reportSeconds, totalEvery, SEED, CATALOGUE_SIZE, ZIPF_EXPONENT, MEDIAN_BASKET_SIZE, MAX_BASKET_SIZE));
+        json.append("},\n  \"environment\": {");
+        json.append(String.format(Locale.ROOT, "\"javaVersion\": \"%s\", \"vm\": \"%s\", \"processors\": %d, \"maxHeapBytes\": %d",
+                System.getProperty("java.version"), System.getProperty("java.vm.name"),
+                Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory()));
+        json.append("},\n  \"complete\": ").append(summary != null);
+        if (summary != null) {
+            json.append(",\n  \"summary\": ").append(summary.toJson(run.startNanos));
+        }
+        json.append(",\n  \"intervals\": [");
+        for (int i = 0; i < intervals.size(); i++) {
+            json.append(i == 0 ? "\n    " : ",\n    ").append(intervals.get(i));
+        }
+        json.append("\n  ]\n}\n");
+        try {
+            Path temporary = resultFile.resolveSibling(resultFile.getFileName() + ".tmp");
+            Files.writeString(temporary, json);
+            Files.move(temporary, resultFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write " + resultFile, e);
+        }
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * What the lanes did over a span of time. The lanes record into the current interval and
+     * into the whole run at once. A lane picks up a new interval at its next basket, so a basket
+     * is never split between two intervals, though one that straddles the boundary is missing
+     * from the interval report; the run summary counts every sample.
+     */
+    private static final class Window {
+        private final LatencyHistogram scanLatency = new LatencyHistogram();
+        private final LatencyHistogram totalLatency = new LatencyHistogram();
+        private final LongAdder baskets = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+        private volatile boolean allocationUnknown;
+        private long startNanos;
+        private long endNanos;
+        private long startGcCount;
+        private long startGcMillis;
+        private long gcCount;
+        private long gcMillis;
+
+        void open() {
+            startGcCount = gcCount();
+            startGcMillis = gcMillis();
+            startNanos = System.nanoTime();
+        }
+
+        void close() {
+            endNanos = System.nanoTime();
+            gcCount = gcCount() - startGcCount;
+            gcMillis = gcMillis() - startGcMillis;
+        }
+
+        void recordScan(Window run, long nanos) {
+            scanLatency.record(nanos);
+            if (run != this) {
+                run.scanLatency.record(nanos);
+            }
+        }
+
+        void recordTotal(Window run, long nanos) {
+            totalLatency.record(nanos);
+            if (run != this) {
+                run.totalLatency.record(nanos);
+            }
+        }
+
+        void recordBasket(Window run, long allocated) {
+            baskets.increment();
+            if (allocated < 0) {
+                allocationUnknown = true;
+            } else {
+                allocatedBytes.add(allocated);
+            }
+            if (run != this) {
+                run.recordBasket(run, allocated);
+            }
+        }
+
+        private double seconds() {
+            return Math.max(1, endNanos - startNanos) / 1e9;
+        }
+
+        String describe(long runStartNanos) {
+            long scans = scanLatency.getCount();
+            return String.format(Locale.ROOT,
+                    "%6.0fs scans=%d (%.0f/s) scan p50=%.1fus p99=%.1fus p99.9=%.1fus total p99=%.1fus alloc=%.1f MB/s gc=%d (%d ms)",
+                    (endNanos - runStartNanos) / 1e9, scans, scans / seconds(),
+                    scanLatency.getValueAtPercentile(50) / 1e3, scanLatency.getValueAtPercentile(99) / 1e3,
+                    scanLatency.getValueAtPercentile(99.9) / 1e3, totalLatency.getValueAtPercentile(99) / 1e3,
+                    allocationUnknown ? -1 : allocatedBytes.sum() / seconds() / (1 << 20), gcCount, gcMillis);
+        }
+
+        String toJson(long runStartNanos) {
+            long scans = scanLatency.getCount();
+            long allocated = allocationUnknown ? -1 : allocatedBytes.sum();
+            return String.format(Locale.ROOT,
+                    "{\"startSeconds\": %.3f, \"seconds\": %.3f, \"scans\": %d, \"totals\": %d, \"baskets\": %d, "
+                            + "\"scansPerSecond\": %.1f, \"scanLatencyNanos\": %s, \"totalLatencyNanos\": %s, "
+                            + "\"allocatedBytes\": %d, \"allocationBytesPerSecond\": %.1f, \"allocatedBytesPerScan\": %.1f, "
+                            + "\"gcCount\": %d, \"gcMillis\": %d}",
+                    (startNanos - runStartNanos) / 1e9, seconds(), scans, totalLatency.getCount(), baskets.sum(),
+                    scans / seconds(), latencyJson(scanLatency), latencyJson(totalLatency),
+                    allocated, allocated < 0 ? -1 : allocated / seconds(), allocated < 0 ? -1 : (double) allocated / Math.max(1, scans),
+                    gcCount, gcMillis);
+        }
+
+        private static String latencyJson(LatencyHistogram latency) {
+            return String.format(Locale.ROOT, "{\"mean\": %.1f, \"p50\": %d, \"p99\": %d, \"p999\": %d, \"max\": %d}",
+                    latency.getMean(), latency.getValueAtPercentile(50), latency.getValueAtPercentile(99),
+                    latency.getValueAtPercentile(99.9), latency.getMax());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.cdl.benchmarks;
+
+import com.cdl.Checkout;
+import com.cdl.PriceOverlay;
+import com.cdl.PriceTier;
+import com.cdl.PricingCatalogue;
+import com.cdl.PricingRule;
+import com.cdl.PricingRuleFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rule lookups and scans against a 2M-SKU base catalogue, alone and through one of
+ * 50 {@link PriceTier}s that each override 1% of the SKUs. Lookups cycle through the tiers,
+ * as many lanes serving different customers would. See {@link TierFootprint} for the heap each
+ * tier holds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class PriceTierBenchmark {
+    static final int CATALOGUE_SIZE = 2_000_000;
+    static final int TIERS = 50;
+    static final int OVERRIDES_PER_TIER = CATALOGUE_SIZE / 100;
+    private static final int LOOKUPS = 1024;
+
+    /**
+     * Whether the checkout in {@link #scanAndUnscan()} is priced for a tier.
+     */
+    @Param({"false", "true"})
+    boolean tiered;
+
+    private PricingCatalogue catalogue;
+    private PriceOverlay[] overlays;
+    private Checkout[] checkouts;
+    private String[] skus;
+    private int[] skuIds;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        PricingRuleFactory factory = BenchmarkCatalogues.catalogue(CATALOGUE_SIZE);
+        catalogue = factory.getCatalogue();
+        PriceTier[] tiers = createTiers(factory, TIERS, OVERRIDES_PER_TIER);
+        overlays = new PriceOverlay[TIERS];
+        checkouts = new Checkout[TIERS];
+        for (int tier = 0; tier < TIERS; tier++) {
+            overlays[tier] = tiers[tier].getOverlay();
+            checkouts[tier] = new Checkout(factory);
+            checkouts[tier].setPriceTier(tiered ? tiers[tier] : null);
+        }
+        Random random = new Random(42);
+        skus = new String[LOOKUPS];
+        skuIds = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            skus[i] = BenchmarkCatalogues.sku(random.nextInt(CATALOGUE_SIZE));
+            skuIds[i] = factory.getSkuId(skus[i]);
+        }
+    }
+
+    /**
+     * Creates tiers that each override a different, evenly spread set of SKUs with a discount.
+     */
+    static PriceTier[] createTiers(PricingRuleFactory factory, int tiers, int overridesPerTier) {
+        int size = factory.size();
+        PriceTier[] created = new PriceTier[tiers];
+        for (int tier = 0; tier < tiers; tier++) {
+            created[tier] = new PriceTier("tier" + tier, factory);
+            int first = tier;
+            created[tier].update(builder -> {
+                for (int i = 0; i < overridesPerTier; i++) {
+                    int index = (int) ((first + (long) i * size / overridesPerTier) % size);
+                    builder.put(BenchmarkCatalogues.sku(index), BenchmarkCatalogues.rule(index + 1));
+                }
+            });
+        }
+        return created;
+    }
+
+    @Benchmark
+    public PricingRule baseLookup() {
+        return catalogue.getPricingRule(skuIds[next++ & (LOOKUPS - 1)]);
+    }
+
+    /**
+     * The lookup a checkout priced for a tier makes: the overlay, then the base on a miss.
+     */
+    @Benchmark
+    public PricingRule tierLookup() {
+        int index = next++;
+        int skuId = skuIds[index & (LOOKUPS - 1)];
+        PricingRule rule = overlays[index % TIERS].getPricingRule(skuId);
+        return rule != null ? rule : catalogue.getPricingRule(skuId);
+    }
+
+    /**
+     * A scan and unscan of the same item on one of 50 lanes, so the baskets stay the same size.
+     */
+    @Benchmark
+    public long scanAndUnscan() {
+        int index = next++;
+        Checkout checkout = checkouts[index % TIERS];
+        String sku = skus[index & (LOOKUPS - 1)];
+        checkout.scan(sku);
+        checkout.unscan(sku);
+        return checkout.calculateTotalMinor();
+    }
+}
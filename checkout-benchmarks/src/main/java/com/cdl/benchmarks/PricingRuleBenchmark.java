@@ -0,0 +1,67 @@
+package com.cdl.benchmarks;
+
+import com.cdl.PricingRule;
+import com.cdl.RegularPricingRule;
+import com.cdl.SpecialPricingRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rule evaluation on the BigDecimal and minor-unit paths across quantity ranges, with
+ * the rules' price tables disabled (0) and at their default size (32).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PricingRuleBenchmark {
+
+    @Param({"1", "3", "31", "1000", "100000"})
+    int quantity;
+
+    @Param({"0", "32"})
+    int tableMaxQuantity;
+
+    private PricingRule regular;
+    private PricingRule special;
+
+    @Setup
+    public void setUp() {
+        regular = new RegularPricingRule(new BigDecimal("0.50"), tableMaxQuantity);
+        special = new SpecialPricingRule(new BigDecimal("0.50"), 3, new BigDecimal("1.30"), tableMaxQuantity);
+    }
+
+    @Benchmark
+    public BigDecimal regularCalculatePrice() {
+        return regular.calculatePrice(quantity);
+    }
+
+    @Benchmark
+    public BigDecimal specialCalculatePrice() {
+        return special.calculatePrice(quantity);
+    }
+
+    @Benchmark
+    public long regularCalculatePriceMinor() {
+        return regular.calculatePriceMinor(quantity);
+    }
+
+    @Benchmark
+    public long specialCalculatePriceMinor() {
+        return special.calculatePriceMinor(quantity);
+    }
+}
@@ -0,0 +1,66 @@
+package com.cdl.benchmarks;
+
+import com.cdl.PricingRule;
+import com.cdl.PricingRuleFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rule lookups for catalogue sizes from 4 up to 1M SKUs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class PricingRuleFactoryBenchmark {
+    private static final int LOOKUPS = 1024;
+
+    @Param({"4", "1000", "100000", "1000000"})
+    int catalogueSize;
+
+    private PricingRuleFactory factory;
+    private String[] skus;
+    private int[] skuIds;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        factory = BenchmarkCatalogues.catalogue(catalogueSize);
+        Random random = new Random(42);
+        skus = new String[LOOKUPS];
+        skuIds = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            skus[i] = BenchmarkCatalogues.sku(random.nextInt(catalogueSize));
+            skuIds[i] = factory.getSkuId(skus[i]);
+        }
+    }
+
+    @Benchmark
+    public PricingRule getPricingRuleBySku() {
+        return factory.getPricingRule(skus[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public int getSkuId() {
+        return factory.getSkuId(skus[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public PricingRule getPricingRuleById() {
+        return factory.getPricingRule(skuIds[next++ & (LOOKUPS - 1)]);
+    }
+}
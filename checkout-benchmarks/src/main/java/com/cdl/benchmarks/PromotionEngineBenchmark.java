@@ -0,0 +1,123 @@
+package com.cdl.benchmarks;
+
+import com.cdl.BundleOffer;
+import com.cdl.Checkout;
+import com.cdl.PricingRuleFactory;
+import com.cdl.PromotionEngine;
+import com.cdl.PromotionResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures bundle promotion pricing on large baskets with overlapping offers: a full price of
+ * the basket, and the incremental reprice a lane does after each scan.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PromotionEngineBenchmark {
+    private static final int CATALOGUE_SIZE = 1000;
+
+    @Param({"200"})
+    int lines;
+
+    @Param({"50"})
+    int offerCount;
+
+    private PromotionEngine engine;
+    private PromotionEngine.Session session;
+    private Checkout checkout;
+    private String rescanned;
+
+    @Setup
+    public void setUp() {
+        PricingRuleFactory factory = BenchmarkCatalogues.catalogue(CATALOGUE_SIZE);
+        engine = new PromotionEngine(offers(offerCount, lines, new Random(7)));
+        checkout = new Checkout(factory);
+        Random random = new Random(11);
+        for (int i = 0; i < lines; i++) {
+            checkout.scan(BenchmarkCatalogues.sku(i), 1 + random.nextInt(3));
+        }
+        rescanned = BenchmarkCatalogues.sku(random.nextInt(lines));
+        session = engine.newSession();
+        session.price(checkout);
+    }
+
+    /**
+     * Creates offers over the first {@code skuRange} SKUs, so they overlap one another and the basket:
+     * mostly "any k from 12 SKUs" offers, with a three-slot meal deal every fifth offer.
+     */
+    static List<BundleOffer> offers(int count, int skuRange, Random random) {
+        List<BundleOffer> offers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // Bundles cost 70-95% of the average unit price of their eligible SKUs
+            int percent = 70 + random.nextInt(26);
+            if (i % 5 == 4) {
+                String[][] slots = new String[3][];
+                long price = 0;
+                for (int slot = 0; slot < slots.length; slot++) {
+                    slots[slot] = randomSkus(4, skuRange, random);
+                    price += averageUnitPrice(slots[slot], skuRange);
+                }
+                BundleOffer.Builder builder = BundleOffer.builder("Meal deal " + i, BigDecimal.valueOf(price * percent / 100, 2));
+                for (String[] slot : slots) {
+                    builder.slot(1, slot);
+                }
+                offers.add(builder.build());
+            } else {
+                int units = 2 + random.nextInt(3);
+                String[] skus = randomSkus(12, skuRange, random);
+                long price = units * averageUnitPrice(skus, skuRange) * percent / 100;
+                offers.add(BundleOffer.anyOf("Any " + units + " #" + i, units, BigDecimal.valueOf(price, 2), skus));
+            }
+        }
+        return offers;
+    }
+
+    private static String[] randomSkus(int count, int skuRange, Random random) {
+        String[] skus = new String[count];
+        for (int i = 0; i < count; i++) {
+            skus[i] = BenchmarkCatalogues.sku(random.nextInt(skuRange));
+        }
+        return skus;
+    }
+
+    private static long averageUnitPrice(String[] skus, int skuRange) {
+        long total = 0;
+        for (String sku : skus) {
+            total += BenchmarkCatalogues.rule(Integer.parseInt(sku.substring(3))).calculatePriceMinor(1);
+        }
+        return total / skus.length;
+    }
+
+    @Benchmark
+    public PromotionResult priceFromScratch() {
+        return engine.price(checkout);
+    }
+
+    @Benchmark
+    public PromotionResult rescanAndPrice() {
+        checkout.scan(rescanned);
+        session.price(checkout);
+        checkout.unscan(rescanned);
+        return session.price(checkout);
+    }
+}
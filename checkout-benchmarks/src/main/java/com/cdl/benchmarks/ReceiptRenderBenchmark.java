@@ -0,0 +1,84 @@
+package com.cdl.benchmarks;
+
+import com.cdl.Checkout;
+import com.cdl.PricingRuleFactory;
+import com.cdl.ReceiptRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures displaying the running total after a scan and printing a 20-line receipt, with
+ * {@code printf} on a {@code PrintStream} against {@link ReceiptRenderer}. Both write to a sink
+ * that discards the bytes, so only the formatting is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ReceiptRenderBenchmark {
+    private static final int BASKET_LINES = 20;
+
+    private Checkout checkout;
+    private PrintStream printStream;
+    private ReceiptRenderer renderer;
+
+    @Setup
+    public void setUp() {
+        PricingRuleFactory factory = BenchmarkCatalogues.catalogue(1_000);
+        checkout = new Checkout(factory);
+        for (int line = 0; line < BASKET_LINES; line++) {
+            checkout.scan(BenchmarkCatalogues.sku(line), 1 + line % 4);
+        }
+        printStream = new PrintStream(OutputStream.nullOutputStream(), true);
+        renderer = new ReceiptRenderer(new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer source) {
+                int length = source.remaining();
+                source.position(source.limit());
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+    @Benchmark
+    public void runningTotalPrintf() {
+        printStream.printf("Running total: £%.2f%n", checkout.calculateTotal());
+    }
+
+    @Benchmark
+    public void runningTotalRenderer() {
+        renderer.renderRunningTotal(checkout.calculateTotalMinor());
+        renderer.flush();
+    }
+
+    @Benchmark
+    public void receiptRenderer() {
+        renderer.renderReceipt(checkout);
+        renderer.flush();
+    }
+}
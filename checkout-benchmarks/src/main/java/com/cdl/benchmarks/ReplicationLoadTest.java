@@ -0,0 +1,156 @@
+package com.cdl.benchmarks;
+
+import com.cdl.CatalogueDelta;
+import com.cdl.CataloguePublisher;
+import com.cdl.CatalogueReplica;
+import com.cdl.Checkout;
+import com.cdl.LatencyHistogram;
+import com.cdl.PricingRuleFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * Load test for shipping price changes from one store node to another while the other node's
+ * lanes keep scanning. The publishing node owns a large catalogue; every round changes the
+ * prices of a batch of SKUs, publishes them as a {@link CatalogueDelta} to a directory and has
+ * the {@link CatalogueReplica} of the scanning node apply it. Reports the size and write time of
+ * each delta, how long the scanning node took to apply it and to see it from the change being
+ * made, and the scan latency on the lanes with and without changes coming in.
+ */
+final class ReplicationLoadTest {
+    static final int DEFAULT_SKUS = 1_000_000;
+    static final int DEFAULT_CHANGES = 10_000;
+    static final int DEFAULT_ROUNDS = 5;
+    static final int DEFAULT_LANES = 2;
+    private static final int BASKET_SIZE = 20;
+    private static final long QUIET_MILLIS = 2_000;
+    private static final long ROUND_MILLIS = 1_000;
+
+    private ReplicationLoadTest() {
+    }
+
+    /**
+     * Runs the load test. Arguments: {@code [skus] [changesPerRound] [rounds] [lanes]}.
+     */
+    static void run(String[] args) throws IOException, InterruptedException {
+        int skus = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SKUS;
+        int changes = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CHANGES;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ROUNDS;
+        int laneCount = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_LANES;
+        Path directory = Files.createTempDirectory("catalogue-replication");
+        try {
+            PricingRuleFactory primary = BenchmarkCatalogues.catalogue(skus);
+            long start = System.nanoTime();
+            CataloguePublisher publisher = new CataloguePublisher(primary, directory, CataloguePublisher.DEFAULT_SNAPSHOT_EVERY);
+            long written = System.nanoTime() - start;
+            PricingRuleFactory node = new PricingRuleFactory();
+            CatalogueReplica replica = new CatalogueReplica(node, directory);
+            start = System.nanoTime();
+            replica.poll();
+            System.out.printf("snapshot of %d SKUs: %d KB, written in %d ms, loaded in %d ms%n",
+                    skus, directorySize(directory) >> 10, written / 1_000_000, (System.nanoTime() - start) / 1_000_000);
+
+            LatencyHistogram quiet = new LatencyHistogram();
+            LatencyHistogram replicating = new LatencyHistogram();
+            Lane[] lanes = new Lane[laneCount];
+            for (int i = 0; i < laneCount; i++) {
+                lanes[i] = new Lane(node, skus, 42 + i, quiet);
+                lanes[i].start();
+            }
+            Thread.sleep(QUIET_MILLIS);
+            for (Lane lane : lanes) {
+                lane.latency = replicating;
+            }
+
+            SplittableRandom random = new SplittableRandom(42);
+            for (int round = 1; round <= rounds; round++) {
+                int offset = round;
+                long changed = System.nanoTime();
+                primary.update(builder -> {
+                    for (int i = 0; i < changes; i++) {
+                        int index = random.nextInt(skus);
+                        builder.put(BenchmarkCatalogues.sku(index), BenchmarkCatalogues.rule(index + offset));
+                    }
+                });
+                long published = System.nanoTime();
+                CatalogueDelta delta = publisher.publish();
+                long polled = System.nanoTime();
+                replica.poll();
+                long applied = System.nanoTime();
+                System.out.printf("round %d: %d changes, %d KB delta, written in %.1f ms, applied in %.1f ms, "
+                                + "visible %.1f ms after the change%n", round, delta.size(), delta.toBytes().length >> 10,
+                        (polled - published) / 1e6, (applied - polled) / 1e6, (applied - changed) / 1e6);
+                Thread.sleep(ROUND_MILLIS);
+            }
+
+            for (Lane lane : lanes) {
+                lane.running = false;
+                lane.join();
+            }
+            print("quiet", quiet);
+            print("replicating", replicating);
+            System.out.printf("deltas applied=%d snapshots loaded=%d%n", replica.getAppliedDeltaCount(), replica.getSnapshotLoadCount());
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static long directorySize(Path directory) throws IOException {
+        long size = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                size += Files.size(file);
+            }
+        }
+        return size;
+    }
+
+    private static void print(String phase, LatencyHistogram latency) {
+        System.out.printf("%-12s scans=%d mean=%.2fus p50=%.2fus p99=%.2fus max=%.1fus%n", phase, latency.getCount(),
+                latency.getMean() / 1_000, latency.getValueAtPercentile(50) / 1_000.0,
+                latency.getValueAtPercentile(99) / 1_000.0, latency.getMax() / 1_000.0);
+    }
+
+    /**
+     * A lane scanning random SKUs of the replicated catalogue, one basket after another.
+     */
+    private static final class Lane extends Thread {
+        private final Checkout checkout;
+        private final int skus;
+        private final SplittableRandom random;
+        volatile boolean running = true;
+        // Shared by the lanes, and switched when the price changes start
+        volatile LatencyHistogram latency;
+
+        Lane(PricingRuleFactory factory, int skus, long seed, LatencyHistogram latency) {
+            super("lane-" + seed);
+            this.checkout = new Checkout(factory);
+            this.skus = skus;
+            this.random = new SplittableRandom(seed);
+            this.latency = latency;
+        }
+
+        @Override
+        public void run() {
+            int scanned = 0;
+            while (running) {
+                String sku = BenchmarkCatalogues.sku(random.nextInt(skus));
+                long start = System.nanoTime();
+                checkout.scan(sku);
+                latency.record(System.nanoTime() - start);
+                if (++scanned % BASKET_SIZE == 0) {
+                    checkout.clear();
+                }
+            }
+        }
+    }
+}
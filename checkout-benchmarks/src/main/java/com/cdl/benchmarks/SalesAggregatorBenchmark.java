@@ -0,0 +1,113 @@
+package com.cdl.benchmarks;
+
+import com.cdl.Checkout;
+import com.cdl.PricingRuleFactory;
+import com.cdl.SalesAggregator;
+import com.cdl.SalesSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures 64 lanes recording finished 10-line baskets into one {@link SalesAggregator},
+ * against the same lanes adding them to a single map behind one lock, and with one of the 64
+ * threads taking snapshots all the time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SalesAggregatorBenchmark {
+    private static final int LANES = 64;
+    private static final int BASKET_LINES = 10;
+    private static final int SKUS = 10_000;
+
+    private PricingRuleFactory factory;
+    private SalesAggregator sales;
+    private final Map<String, long[]> lockedSales = new HashMap<>();
+
+    @Setup
+    public void setUp() {
+        factory = BenchmarkCatalogues.catalogue(SKUS);
+        sales = new SalesAggregator(factory);
+    }
+
+    @State(Scope.Thread)
+    public static class Lane {
+        private static int next;
+
+        private Checkout checkout;
+        private String[] skus;
+        private int[] quantities;
+        private long[] prices;
+
+        @Setup
+        public void setUp(SalesAggregatorBenchmark benchmark) {
+            int lane;
+            synchronized (Lane.class) {
+                lane = next++;
+            }
+            checkout = new Checkout(benchmark.factory);
+            skus = new String[BASKET_LINES];
+            quantities = new int[BASKET_LINES];
+            prices = new long[BASKET_LINES];
+            for (int line = 0; line < BASKET_LINES; line++) {
+                // Lanes overlap on some SKUs, as real lanes sell the same popular items
+                skus[line] = BenchmarkCatalogues.sku((lane * 7 + line * 31) % SKUS);
+                quantities[line] = 1 + line % 4;
+                checkout.scan(skus[line], quantities[line]);
+            }
+            for (int line = 0; line < BASKET_LINES; line++) {
+                prices[line] = benchmark.factory.getPricingRule(skus[line]).calculatePriceMinor(quantities[line]);
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(LANES)
+    public void recordStriped(Lane lane) {
+        sales.record(lane.checkout);
+    }
+
+    @Benchmark
+    @Threads(LANES)
+    public void recordSingleLock(Lane lane) {
+        synchronized (lockedSales) {
+            for (int line = 0; line < BASKET_LINES; line++) {
+                long[] counter = lockedSales.computeIfAbsent(lane.skus[line], sku -> new long[2]);
+                counter[0] += lane.quantities[line];
+                counter[1] += lane.prices[line];
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("recordWhileSnapshotting")
+    @GroupThreads(LANES - 1)
+    public void record(Lane lane) {
+        sales.record(lane.checkout);
+    }
+
+    @Benchmark
+    @Group("recordWhileSnapshotting")
+    @GroupThreads(1)
+    public SalesSnapshot snapshot() {
+        return sales.snapshot();
+    }
+}
@@ -0,0 +1,123 @@
+package com.cdl.benchmarks;
+
+import com.cdl.Checkout;
+import com.cdl.LatencyHistogram;
+import com.cdl.PricingRuleFactory;
+import com.cdl.ReceiptRenderer;
+import com.cdl.ScanPipeline;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test for a lane fed by a conveyor-belt scanner: bursts of scans arrive all at once, and
+ * every write to the display takes a fixed time, like a slow terminal or customer display.
+ * Reports the latency from a scan arriving to a running total that includes it being
+ * displayed, first for the console loop that scans and prints each item in turn, then for a
+ * {@link ScanPipeline}.
+ */
+final class ScanBurstLoadTest {
+    static final int DEFAULT_BURSTS = 20;
+    static final int DEFAULT_SCANS_PER_BURST = 300;
+    static final int DEFAULT_DISPLAY_MICROS = 200;
+    private static final int CATALOGUE_SIZE = 1_000;
+    private static final int BASKET_SIZE = 20;
+    private static final long PAUSE_MILLIS = 200;
+
+    private ScanBurstLoadTest() {
+    }
+
+    /**
+     * Runs the load test. Arguments: {@code [bursts] [scansPerBurst] [displayMicros]}.
+     */
+    static void run(String[] args) throws InterruptedException {
+        int bursts = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BURSTS;
+        int scansPerBurst = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SCANS_PER_BURST;
+        long displayNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_DISPLAY_MICROS);
+        PricingRuleFactory factory = BenchmarkCatalogues.catalogue(CATALOGUE_SIZE);
+        String[] skus = new String[bursts * scansPerBurst];
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < skus.length; i++) {
+            skus[i] = BenchmarkCatalogues.sku(random.nextInt(CATALOGUE_SIZE));
+        }
+
+        LatencyHistogram sequential = new LatencyHistogram();
+        Checkout checkout = new Checkout(factory);
+        ReceiptRenderer renderer = new ReceiptRenderer(new SlowDisplay(displayNanos));
+        long start = System.nanoTime();
+        for (int burst = 0; burst < bursts; burst++) {
+            long arrived = System.nanoTime();
+            for (int i = burst * scansPerBurst; i < (burst + 1) * scansPerBurst; i++) {
+                checkout.scan(skus[i]);
+                renderer.renderRunningTotal(checkout.calculateTotalMinor());
+                renderer.flush();
+                sequential.record(System.nanoTime() - arrived);
+                if ((i + 1) % BASKET_SIZE == 0) {
+                    renderer.renderReceipt(checkout);
+                    renderer.flush();
+                    checkout.clear();
+                }
+            }
+            Thread.sleep(PAUSE_MILLIS);
+        }
+        long sequentialNanos = System.nanoTime() - start - bursts * TimeUnit.MILLISECONDS.toNanos(PAUSE_MILLIS);
+        print("sequential", sequential, sequential.getCount(), 0, sequentialNanos);
+
+        ScanPipeline pipeline = new ScanPipeline(factory, new SlowDisplay(displayNanos), basket -> {
+        });
+        start = System.nanoTime();
+        for (int burst = 0; burst < bursts; burst++) {
+            long arrived = System.nanoTime();
+            for (int i = burst * scansPerBurst; i < (burst + 1) * scansPerBurst; i++) {
+                pipeline.scan(skus[i], arrived);
+                if ((i + 1) % BASKET_SIZE == 0) {
+                    pipeline.done();
+                }
+            }
+            Thread.sleep(PAUSE_MILLIS);
+        }
+        pipeline.close();
+        long pipelineNanos = System.nanoTime() - start - bursts * TimeUnit.MILLISECONDS.toNanos(PAUSE_MILLIS);
+        print("pipeline", pipeline.getDisplayLatency(), pipeline.getDisplayedCount(), pipeline.getCoalescedCount(),
+                pipelineNanos);
+    }
+
+    private static void print(String mode, LatencyHistogram latency, long displayed, long coalesced, long busyNanos) {
+        System.out.printf("%-10s totals displayed=%d coalesced=%d, busy %d ms%n",
+                mode, displayed, coalesced, Math.max(0, busyNanos) / 1_000_000);
+        System.out.printf("%-10s scan to display: mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus%n", mode,
+                latency.getMean() / 1_000, latency.getValueAtPercentile(50) / 1_000.0,
+                latency.getValueAtPercentile(99) / 1_000.0, latency.getMax() / 1_000.0);
+    }
+
+    /**
+     * A display that discards the bytes but blocks for a fixed time on every write.
+     */
+    private static final class SlowDisplay implements WritableByteChannel {
+        private final long nanosPerWrite;
+
+        SlowDisplay(long nanosPerWrite) {
+            this.nanosPerWrite = nanosPerWrite;
+        }
+
+        @Override
+        public int write(ByteBuffer source) {
+            LockSupport.parkNanos(nanosPerWrite);
+            int length = source.remaining();
+            source.position(source.limit());
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
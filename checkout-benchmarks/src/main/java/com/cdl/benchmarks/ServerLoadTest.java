@@ -0,0 +1,132 @@
+package com.cdl.benchmarks;
+
+import com.cdl.CheckoutServer;
+import com.cdl.LatencyHistogram;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Load test for {@link CheckoutServer}: opens many concurrent sessions, waits until all of
+ * them are connected, then has every session scan baskets as fast as the server answers and
+ * reports the SCAN round-trip latency percentiles.
+ * <p>
+ * Without a target address, a server over a synthetic 1,000-SKU catalogue is started in this
+ * process on loopback. With 10,000 sessions in one process the test holds 20,000 sockets, so
+ * the open file limit ({@code ulimit -n}) must be raised accordingly. Clients run on virtual
+ * threads where the runtime has them, like the server's sessions.
+ */
+final class ServerLoadTest {
+    static final int DEFAULT_SESSIONS = 10_000;
+    static final int DEFAULT_SCANS_PER_SESSION = 100;
+    private static final int CATALOGUE_SIZE = 1_000;
+    private static final int BASKET_SIZE = 20;
+
+    private ServerLoadTest() {
+    }
+
+    /**
+     * Runs the load test. Arguments: {@code [sessions] [scansPerSession] [host:port]}.
+     */
+    static void run(String[] args) throws IOException, InterruptedException {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SESSIONS;
+        int scansPerSession = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SCANS_PER_SESSION;
+        CheckoutServer server = null;
+        InetSocketAddress address;
+        if (args.length > 2) {
+            String[] hostAndPort = args[2].split(":");
+            address = new InetSocketAddress(hostAndPort[0], Integer.parseInt(hostAndPort[1]));
+        } else {
+            server = new CheckoutServer(BenchmarkCatalogues.catalogue(CATALOGUE_SIZE));
+            address = server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        }
+
+        LatencyHistogram scanLatency = new LatencyHistogram();
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch connected = new CountDownLatch(sessions);
+        CountDownLatch finished = new CountDownLatch(sessions);
+        // When the first session started scanning; the main thread may wake up later than that
+        LongAccumulator runStart = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        ExecutorService clients = CheckoutServer.newSessionExecutor();
+        long connectStart = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            long seed = i;
+            clients.execute(() -> {
+                Socket socket = null;
+                try {
+                    socket = new Socket(address.getAddress(), address.getPort());
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                } finally {
+                    connected.countDown();
+                }
+                try (Socket session = socket) {
+                    if (session != null) {
+                        // Every session is connected before any starts scanning
+                        connected.await();
+                        runStart.accumulate(System.nanoTime());
+                        runSession(session, seed, scansPerSession, scanLatency);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failures.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+        finished.await();
+        long runNanos = System.nanoTime() - runStart.get();
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.MINUTES);
+        if (server != null) {
+            server.close();
+        }
+
+        System.out.printf("sessions=%d connected in %d ms, failed=%d%n",
+                sessions, (runStart.get() - connectStart) / 1_000_000, failures.get());
+        System.out.printf("scans=%d in %d ms (%.0f scans/s)%n", scanLatency.getCount(), runNanos / 1_000_000,
+                scanLatency.getCount() * 1e9 / Math.max(1, runNanos));
+        System.out.printf("SCAN round trip: mean=%.1fus p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus%n",
+                scanLatency.getMean() / 1_000, scanLatency.getValueAtPercentile(50) / 1_000.0,
+                scanLatency.getValueAtPercentile(99) / 1_000.0, scanLatency.getValueAtPercentile(99.9) / 1_000.0,
+                scanLatency.getMax() / 1_000.0);
+    }
+
+    private static void runSession(Socket socket, long seed, int scans, LatencyHistogram scanLatency) throws IOException {
+        socket.setTcpNoDelay(true);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        OutputStream out = socket.getOutputStream();
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int scan = 1; scan <= scans; scan++) {
+            byte[] request = ("SCAN " + BenchmarkCatalogues.sku(random.nextInt(CATALOGUE_SIZE)) + "\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            long start = System.nanoTime();
+            out.write(request);
+            String response = in.readLine();
+            scanLatency.record(System.nanoTime() - start);
+            if (response == null || !response.startsWith("OK")) {
+                throw new IOException("Unexpected response: " + response);
+            }
+            if (scan % BASKET_SIZE == 0) {
+                out.write("DONE\n".getBytes(StandardCharsets.US_ASCII));
+                in.readLine();
+            }
+        }
+        out.write("QUIT\n".getBytes(StandardCharsets.US_ASCII));
+        in.readLine();
+    }
+}
@@ -0,0 +1,62 @@
+package com.cdl.benchmarks;
+
+import com.cdl.CheckoutSessionManager;
+import com.cdl.PricingRuleFactory;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+
+/**
+ * Measures the heap held by {@link CheckoutSessionManager} sessions, with every basket live
+ * and then with every basket compacted. Each session holds a basket of a few random SKUs from
+ * a 100,000-SKU catalogue. Heap use is read after a full GC, so run it with no other load and
+ * a heap large enough for the live sessions, for example {@code -Xmx4g}.
+ */
+final class SessionFootprint {
+    static final int DEFAULT_SESSIONS = 1_000_000;
+    private static final int CATALOGUE_SIZE = 100_000;
+    private static final int MAX_BASKET_LINES = 8;
+
+    private SessionFootprint() {
+    }
+
+    /**
+     * Runs the measurement. Arguments: {@code [sessions]}.
+     */
+    static void run(String[] args) throws InterruptedException {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SESSIONS;
+        PricingRuleFactory factory = BenchmarkCatalogues.catalogue(CATALOGUE_SIZE);
+        long empty = usedHeap();
+
+        // Room to spare, so that no stripe evicts
+        CheckoutSessionManager manager = new CheckoutSessionManager(factory, sessions * 2, Duration.ofHours(1), Duration.ofMillis(1));
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < sessions; i++) {
+            String sessionId = manager.createSession();
+            int lines = 1 + random.nextInt(MAX_BASKET_LINES);
+            manager.withSession(sessionId, checkout -> {
+                for (int line = 0; line < lines; line++) {
+                    checkout.scan(BenchmarkCatalogues.sku(random.nextInt(CATALOGUE_SIZE)), 1 + random.nextInt(3));
+                }
+                return null;
+            });
+        }
+        long live = usedHeap() - empty;
+
+        Thread.sleep(10);
+        manager.runMaintenance();
+        long compacted = usedHeap() - empty;
+
+        System.out.printf("sessions=%d (%d compacted)%n", manager.size(), manager.getCompactedCount());
+        System.out.printf("live:      %d MB, %d bytes per session%n", live >> 20, live / sessions);
+        System.out.printf("compacted: %d MB, %d bytes per session%n", compacted >> 20, compacted / sessions);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,56 @@
+package com.cdl.benchmarks;
+
+import com.cdl.PriceTier;
+import com.cdl.PricingRuleFactory;
+
+/**
+ * Measures the heap held by {@link PriceTier} overlays over a shared base catalogue, against
+ * giving every tier its own copy of the catalogue. Heap use is read after a full GC, so run it
+ * with no other load and a heap large enough for the base catalogue and one copy, for example
+ * {@code -Xmx4g}.
+ */
+final class TierFootprint {
+    static final int DEFAULT_SKUS = PriceTierBenchmark.CATALOGUE_SIZE;
+    static final int DEFAULT_TIERS = PriceTierBenchmark.TIERS;
+
+    private TierFootprint() {
+    }
+
+    /**
+     * Runs the measurement. Arguments: {@code [skus] [tiers] [overridesPerTier]}.
+     */
+    static void run(String[] args) {
+        int skus = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SKUS;
+        int tiers = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_TIERS;
+        int overrides = args.length > 2 ? Integer.parseInt(args[2]) : skus / 100;
+        long empty = usedHeap();
+        PricingRuleFactory factory = BenchmarkCatalogues.catalogue(skus);
+        long base = usedHeap() - empty;
+
+        PriceTier[] overlays = PriceTierBenchmark.createTiers(factory, tiers, overrides);
+        long withTiers = usedHeap() - empty;
+        long perTier = (withTiers - base) / tiers;
+
+        // A tier that copies the catalogue holds every SKU's rule, overridden or not
+        PricingRuleFactory copy = BenchmarkCatalogues.catalogue(skus);
+        long perCopy = usedHeap() - empty - withTiers;
+
+        System.out.printf("base catalogue of %d SKUs: %d MB%n", skus, base >> 20);
+        System.out.printf("%d overlays of %d SKUs: %d MB in total, %d KB (%d bytes per overridden SKU) each%n",
+                tiers, overrides, (withTiers - base) >> 20, perTier >> 10, perTier / Math.max(1, overrides));
+        System.out.printf("%d catalogue copies: %d MB in total, %d MB each%n",
+                tiers, perCopy * tiers >> 20, perCopy >> 20);
+        // Keeps everything alive until here
+        if (factory.size() < 0 || copy.size() < 0 || overlays[0] == null) {
+            throw new AssertionError();
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
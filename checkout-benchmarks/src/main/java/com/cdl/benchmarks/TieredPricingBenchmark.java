@@ -0,0 +1,115 @@
+package com.cdl.benchmarks;
+
+import com.cdl.PricingRule;
+import com.cdl.TieredPricingRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures pricing a quantity with volume price breaks: {@link TieredPricingRule}, which finds
+ * the break by binary search, against a chain of threshold checks in the style of
+ * {@code SpecialPricingRule}, each break falling through to the next lower one. Quantities are
+ * drawn at random across all breaks so the branches cannot be learned.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class TieredPricingBenchmark {
+    private static final int QUANTITIES = 1024;
+
+    @Param({"3", "12", "48"})
+    int breaks;
+
+    private PricingRule allUnits;
+    private PricingRule marginal;
+    private PricingRule chain;
+    private int[] quantities;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        int[] minQuantities = new int[breaks];
+        BigDecimal[] unitPrices = new BigDecimal[breaks];
+        for (int tier = 0; tier < breaks; tier++) {
+            minQuantities[tier] = 1 + tier * 10;
+            unitPrices[tier] = BigDecimal.valueOf(500 - tier * 5L, 3);
+        }
+        allUnits = new TieredPricingRule(TieredPricingRule.Mode.ALL_UNITS, minQuantities, unitPrices);
+        marginal = new TieredPricingRule(TieredPricingRule.Mode.MARGINAL, minQuantities, unitPrices);
+        Break highest = null;
+        for (int tier = 0; tier < breaks; tier++) {
+            highest = new Break(minQuantities[tier], unitPrices[tier].movePointRight(3).longValueExact(), highest);
+        }
+        chain = highest;
+        SplittableRandom random = new SplittableRandom(42);
+        quantities = new int[QUANTITIES];
+        for (int i = 0; i < QUANTITIES; i++) {
+            quantities[i] = 1 + random.nextInt(breaks * 10 + 10);
+        }
+    }
+
+    private int nextQuantity() {
+        next = (next + 1) & (QUANTITIES - 1);
+        return quantities[next];
+    }
+
+    @Benchmark
+    public long tieredAllUnits() {
+        return allUnits.calculatePriceMinor(nextQuantity());
+    }
+
+    @Benchmark
+    public long tieredMarginal() {
+        return marginal.calculatePriceMinor(nextQuantity());
+    }
+
+    @Benchmark
+    public long thresholdChain() {
+        return chain.calculatePriceMinor(nextQuantity());
+    }
+
+    /**
+     * One price break that applies from its threshold up and otherwise defers to the next lower
+     * break, priced in tenths of a minor unit like the tiered rule's unscaled prices.
+     */
+    private static final class Break implements PricingRule {
+        private final int threshold;
+        private final long unitPriceTenths;
+        private final Break lower;
+
+        Break(int threshold, long unitPriceTenths, Break lower) {
+            this.threshold = threshold;
+            this.unitPriceTenths = unitPriceTenths;
+            this.lower = lower;
+        }
+
+        @Override
+        public BigDecimal calculatePrice(int quantity) {
+            return BigDecimal.valueOf(calculatePriceMinor(quantity), 2);
+        }
+
+        @Override
+        public long calculatePriceMinor(int quantity) {
+            if (quantity >= threshold || lower == null) {
+                return (unitPriceTenths * quantity + 5) / 10;
+            }
+            return lower.calculatePriceMinor(quantity);
+        }
+    }
+}
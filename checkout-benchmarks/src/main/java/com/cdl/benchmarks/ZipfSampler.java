@@ -0,0 +1,53 @@
+package com.cdl.benchmarks;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Draws ranks from a Zipf distribution: rank {@code k} of {@code n} is drawn with probability
+ * proportional to {@code 1 / (k + 1)^exponent}, so a few items are scanned far more often than
+ * the long tail, as in a real store. The cumulative distribution is computed once, and each
+ * draw is a binary search over it, so a sampler can be shared by any number of threads, each
+ * with its own random source.
+ */
+final class ZipfSampler {
+    private final double[] cumulative;
+
+    /**
+     * Creates a sampler.
+     *
+     * @param size     The number of ranks.
+     * @param exponent The skew; 0 is uniform, and around 1 is typical of product popularity.
+     * @throws IllegalArgumentException if the size is not positive or the exponent is negative.
+     */
+    ZipfSampler(int size, double exponent) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive: " + size);
+        }
+        if (!(exponent >= 0)) {
+            throw new IllegalArgumentException("Exponent must not be negative: " + exponent);
+        }
+        cumulative = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    /**
+     * Draws a rank, 0 being the most popular.
+     *
+     * @param random The random source of the calling thread.
+     * @return A rank from 0 to size - 1.
+     */
+    int sample(SplittableRandom random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        // Rounding can leave the last cumulative value a hair below 1
+        return Math.min(rank, cumulative.length - 1);
+    }
+}
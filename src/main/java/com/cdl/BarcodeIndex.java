@@ -0,0 +1,137 @@
+package com.cdl;
+
+import java.util.Arrays;
+
+/**
+ * Read-only index from barcode keys to dense SKU ids in one catalogue snapshot, in primitive
+ * arrays so that a scanned barcode is resolved without boxing or creating a String.
+ * <p>
+ * SKUs that are EAN-13 or UPC-A barcodes are keyed by their value, and variable measure items
+ * by their item number with {@link #VARIABLE_MEASURE} set; see {@link Barcodes}.
+ * <p>
+ * The index holds every SKU id ever assigned a barcode key, with or without a rule, and checks
+ * the snapshot's rules when it resolves a barcode. SKU ids are stable and only ever added, so
+ * the index of the next snapshot is this one plus the ids assigned since: it is built as the
+ * snapshot is published, in time proportional to the new SKUs, and never on a lane.
+ */
+final class BarcodeIndex {
+    /**
+     * Set in the key of a variable measure item, so it cannot collide with a 13-digit barcode.
+     */
+    static final long VARIABLE_MEASURE = 1L << 62;
+
+    /**
+     * An index of no SKUs.
+     */
+    static final BarcodeIndex EMPTY = new BarcodeIndex(new long[16], new int[16], 0);
+
+    private final long[] keys;
+    // The id of keys[i] plus one, or 0 for an empty slot
+    private final int[] skuIds;
+    private final int mask;
+    private final int size;
+
+    private BarcodeIndex(long[] keys, int[] skuIds, int size) {
+        this.keys = keys;
+        this.skuIds = skuIds;
+        this.mask = keys.length - 1;
+        this.size = size;
+    }
+
+    /**
+     * Returns an index of this one's SKUs and the SKUs of a snapshot from an id onwards.
+     *
+     * @param catalogue The snapshot whose new SKU ids to add.
+     * @param from      The first SKU id not in this index.
+     * @return This index if none of the new SKUs has a barcode key, otherwise a new index.
+     */
+    BarcodeIndex with(PricingCatalogue catalogue, int from) {
+        long[] found = new long[16];
+        int[] foundIds = new int[16];
+        int count = 0;
+        for (int skuId = from; skuId < catalogue.size(); skuId++) {
+            long key = Barcodes.catalogueKey(catalogue.getSku(skuId));
+            if (key < 0) {
+                continue;
+            }
+            if (count == found.length) {
+                found = Arrays.copyOf(found, count * 2);
+                foundIds = Arrays.copyOf(foundIds, count * 2);
+            }
+            found[count] = key;
+            foundIds[count++] = skuId;
+        }
+        if (count == 0) {
+            return this;
+        }
+        int capacity = keys.length;
+        while (capacity < (size + count) * 2) {
+            capacity *= 2;
+        }
+        BarcodeIndex index;
+        if (capacity == keys.length) {
+            index = new BarcodeIndex(keys.clone(), skuIds.clone(), size + count);
+        } else {
+            index = new BarcodeIndex(new long[capacity], new int[capacity], size + count);
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (skuIds[slot] != 0) {
+                    index.insert(keys[slot], skuIds[slot] - 1);
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            index.insert(found[i], foundIds[i]);
+        }
+        return index;
+    }
+
+    private void insert(long key, int skuId) {
+        int slot = hash(key) & mask;
+        while (skuIds[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        skuIds[slot] = skuId + 1;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Returns the id of the SKU with a key and a rule in a snapshot, or -1 if there is none.
+     */
+    private int find(PricingCatalogue catalogue, long key) {
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int skuId = skuIds[slot];
+            if (skuId == 0) {
+                return -1;
+            }
+            // Two SKUs may share a key, such as a UPC-A code and its EAN-13 form
+            if (keys[slot] == key && catalogue.hasRule(skuId - 1)) {
+                return skuId - 1;
+            }
+        }
+    }
+
+    /**
+     * Resolves a decoded barcode to the SKU it sells and the quantity to add: the embedded
+     * measure for a variable measure item, otherwise one unit.
+     *
+     * @param catalogue The snapshot this index belongs to, whose rules decide which SKUs are sold.
+     * @param barcode   A barcode returned by {@code Barcodes.decode}.
+     * @return The SKU id in the high and the quantity in the low 32 bits, or -1 if the barcode is unknown.
+     */
+    long resolve(PricingCatalogue catalogue, long barcode) {
+        if (Barcodes.isVariableMeasure(barcode)) {
+            int skuId = find(catalogue, VARIABLE_MEASURE | Barcodes.getItem(barcode));
+            if (skuId >= 0) {
+                int measure = Barcodes.getMeasure(barcode);
+                return measure == 0 ? -1 : (long) skuId << 32 | measure;
+            }
+        }
+        int skuId = find(catalogue, barcode);
+        return skuId < 0 ? -1 : (long) skuId << 32 | 1;
+    }
+}
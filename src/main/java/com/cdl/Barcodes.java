@@ -0,0 +1,152 @@
+package com.cdl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes EAN-13 and UPC-A barcodes from the ASCII digits a scanner sends, without creating a
+ * String.
+ * <p>
+ * A barcode is packed into a {@code long}: its value as a 13-digit number, so a UPC-A code and
+ * the EAN-13 code with a leading zero are the same key. The check digit is verified
+ * arithmetically while the digits are read.
+ * <p>
+ * Barcodes with the EAN prefixes 20-29, or UPC-A number system 2, are variable measure codes
+ * for items sold by weight or with their price printed in the barcode:
+ * <pre>
+ * 2X IIIII MMMMM C    EAN-13: prefix, item reference, measure, check digit
+ * 2 IIIII MMMMM C     UPC-A: the same, read as 02IIIII MMMMM C
+ * </pre>
+ * The item is identified by the first seven digits of the 13-digit form, and the measure is a
+ * weight or a price in minor units, depending on how the item is priced.
+ */
+public final class Barcodes {
+    private static final long ITEM_DIVISOR = 1_000_000L;
+    private static final long MEASURE_DIVISOR = 10L;
+    private static final int MEASURE_MODULUS = 100_000;
+
+    private Barcodes() {
+    }
+
+    /**
+     * Decodes a 13-digit EAN-13 or 12-digit UPC-A barcode held as ASCII digits in
+     * {@code bytes[from, to)}.
+     *
+     * @param bytes The bytes received from the scanner.
+     * @param from  The index of the first digit.
+     * @param to    The index after the last digit, excluding any line terminator.
+     * @return The barcode as a 13-digit number, or -1 if it is not a barcode or its check digit is wrong.
+     */
+    public static long decode(byte[] bytes, int from, int to) {
+        int length = to - from;
+        if (length != 12 && length != 13) {
+            return -1;
+        }
+        long value = 0;
+        int sum = 0;
+        for (int i = from; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+            // Weights alternate 3, 1, 3, ... leftwards from the check digit, which has weight 1
+            sum += ((to - 1 - i) & 1) == 1 ? 3 * digit : digit;
+        }
+        return sum % 10 == 0 ? value : -1;
+    }
+
+    /**
+     * Decodes a 13-digit EAN-13 or 12-digit UPC-A barcode held as ASCII digits in
+     * {@code buffer[from, to)}, which may be a direct buffer. The buffer's position is not changed.
+     *
+     * @param buffer The bytes received from the scanner.
+     * @param from   The index of the first digit.
+     * @param to     The index after the last digit, excluding any line terminator.
+     * @return The barcode as a 13-digit number, or -1 if it is not a barcode or its check digit is wrong.
+     */
+    public static long decode(ByteBuffer buffer, int from, int to) {
+        int length = to - from;
+        if (length != 12 && length != 13) {
+            return -1;
+        }
+        long value = 0;
+        int sum = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+            sum += ((to - 1 - i) & 1) == 1 ? 3 * digit : digit;
+        }
+        return sum % 10 == 0 ? value : -1;
+    }
+
+    /**
+     * Returns whether a decoded barcode is a variable measure code, with the EAN prefix 20-29
+     * or UPC-A number system 2.
+     *
+     * @param barcode A barcode returned by {@code decode}.
+     * @return True for a variable measure code.
+     */
+    public static boolean isVariableMeasure(long barcode) {
+        long item = barcode / ITEM_DIVISOR;
+        // The first digit is 2, or the first two digits are 02
+        return item / 1_000_000 == 2 || item / 100_000 == 2;
+    }
+
+    /**
+     * Returns the item of a variable measure barcode: the first seven digits of its 13-digit form.
+     *
+     * @param barcode A variable measure barcode returned by {@code decode}.
+     * @return The item number.
+     */
+    public static long getItem(long barcode) {
+        return barcode / ITEM_DIVISOR;
+    }
+
+    /**
+     * Returns the weight or price embedded in a variable measure barcode.
+     *
+     * @param barcode A variable measure barcode returned by {@code decode}.
+     * @return The measure, the five digits before the check digit.
+     */
+    public static int getMeasure(long barcode) {
+        return (int) (barcode / MEASURE_DIVISOR % MEASURE_MODULUS);
+    }
+
+    /**
+     * Returns the barcode index key of a catalogue SKU: its value for a 12 or 13-digit barcode
+     * with a valid check digit, or the item number with {@link BarcodeIndex#VARIABLE_MEASURE}
+     * set for a seven-digit variable measure item such as {@code 2112345}.
+     *
+     * @param sku A normalized SKU.
+     * @return The key, or -1 if the SKU is neither.
+     */
+    static long catalogueKey(String sku) {
+        int length = sku.length();
+        if (length == 7) {
+            long item = 0;
+            for (int i = 0; i < length; i++) {
+                int digit = sku.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                item = item * 10 + digit;
+            }
+            return isVariableMeasure(item * ITEM_DIVISOR) ? BarcodeIndex.VARIABLE_MEASURE | item : -1;
+        }
+        if (length != 12 && length != 13) {
+            return -1;
+        }
+        byte[] digits = new byte[length];
+        for (int i = 0; i < length; i++) {
+            char c = sku.charAt(i);
+            if (c > 0x7F) {
+                return -1;
+            }
+            digits[i] = (byte) c;
+        }
+        return decode(digits, 0, length);
+    }
+}
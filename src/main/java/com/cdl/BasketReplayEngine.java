@@ -0,0 +1,280 @@
+package com.cdl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Re-prices historical basket logs against a pricing configuration, in parallel.
+ * <p>
+ * A basket log is a text file with one basket per line: a numeric basket id followed by the
+ * SKU of every scan, separated by spaces or tabs, for example {@code 1001 A B A C}. The file is
+ * memory-mapped and split into chunks on line boundaries. Each chunk is priced on a fork-join
+ * pool with its own {@link Checkout}, and SKUs are resolved straight from the mapped bytes.
+ * Chunk results are merged in file order, so the output is identical to pricing the baskets
+ * one at a time.
+ */
+public final class BasketReplayEngine {
+    static final long MIN_CHUNK_BYTES = 1 << 20;
+    // Keeps every mapping well inside the 2GB limit of a MappedByteBuffer
+    static final long MAX_CHUNK_BYTES = 1 << 28;
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final PricingRuleFactory pricingRuleFactory;
+    private final ForkJoinPool pool;
+
+    public BasketReplayEngine(PricingRuleFactory pricingRuleFactory) {
+        this(pricingRuleFactory, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an engine that prices chunks on the given pool.
+     *
+     * @param pricingRuleFactory The pricing configuration to replay against.
+     * @param pool               The pool that prices the chunks.
+     */
+    public BasketReplayEngine(PricingRuleFactory pricingRuleFactory, ForkJoinPool pool) {
+        this.pricingRuleFactory = Objects.requireNonNull(pricingRuleFactory, "Pricing rule factory cannot be null");
+        this.pool = Objects.requireNonNull(pool, "Pool cannot be null");
+    }
+
+    /**
+     * Replays a basket log with every chunk priced in parallel.
+     *
+     * @param basketLog The basket log file.
+     * @return The basket totals and per-SKU figures.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if a basket id is malformed.
+     */
+    public ReplayResult replay(Path basketLog) throws IOException {
+        return replay(basketLog, true);
+    }
+
+    /**
+     * Replays a basket log one basket at a time on the calling thread.
+     *
+     * @param basketLog The basket log file.
+     * @return The basket totals and per-SKU figures.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if a basket id is malformed.
+     */
+    public ReplayResult replaySequential(Path basketLog) throws IOException {
+        return replay(basketLog, false);
+    }
+
+    private ReplayResult replay(Path basketLog, boolean parallel) throws IOException {
+        long start = System.nanoTime();
+        // Every chunk prices against the same snapshot, even if the factory changes meanwhile
+        PricingCatalogue catalogue = pricingRuleFactory.getCatalogue();
+        SkuByteIndex index = new SkuByteIndex(catalogue);
+        List<ChunkResult> results = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(basketLog, StandardOpenOption.READ)) {
+            long chunkBytes = parallel
+                    ? Math.min(MAX_CHUNK_BYTES, Math.max(MIN_CHUNK_BYTES,
+                            channel.size() / ((long) pool.getParallelism() * CHUNKS_PER_WORKER)))
+                    : MAX_CHUNK_BYTES;
+            List<ChunkReplay> chunks = split(channel, chunkBytes, catalogue, index);
+            if (parallel) {
+                List<ForkJoinTask<ChunkResult>> tasks = new ArrayList<>(chunks.size());
+                for (ChunkReplay chunk : chunks) {
+                    tasks.add(pool.submit(chunk));
+                }
+                for (ForkJoinTask<ChunkResult> task : tasks) {
+                    results.add(task.join());
+                }
+            } else {
+                for (ChunkReplay chunk : chunks) {
+                    results.add(chunk.call());
+                }
+            }
+        }
+        return merge(catalogue, results, System.nanoTime() - start);
+    }
+
+    /**
+     * Splits the file into chunks of roughly the given size, each ending just after a newline.
+     */
+    private static List<ChunkReplay> split(FileChannel channel, long chunkBytes, PricingCatalogue catalogue,
+                                           SkuByteIndex index) throws IOException {
+        List<ChunkReplay> chunks = new ArrayList<>();
+        long size = channel.size();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long start = 0;
+        while (start < size) {
+            long end = start + chunkBytes < size ? nextLineStart(channel, start + chunkBytes, probe) : size;
+            if (end - start > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Basket record too long at byte offset " + start);
+            }
+            chunks.add(new ChunkReplay(channel, start, end - start, catalogue, index));
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns the offset of the first line that starts at or after {@code position}.
+     */
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer probe) throws IOException {
+        long pos = position - 1;
+        while (true) {
+            probe.clear();
+            int read = channel.read(probe, pos);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+    }
+
+    private static ReplayResult merge(PricingCatalogue catalogue, List<ChunkResult> results, long elapsedNanos) {
+        int basketCount = 0;
+        for (ChunkResult result : results) {
+            basketCount += result.basketCount;
+        }
+        long[] basketIds = new long[basketCount];
+        long[] basketTotals = new long[basketCount];
+        long[] unitsBySku = new long[catalogue.size()];
+        long[] revenueBySku = new long[catalogue.size()];
+        long scans = 0;
+        long rejected = 0;
+        int offset = 0;
+        for (ChunkResult result : results) {
+            System.arraycopy(result.basketIds, 0, basketIds, offset, result.basketCount);
+            System.arraycopy(result.basketTotals, 0, basketTotals, offset, result.basketCount);
+            offset += result.basketCount;
+            Cart skuTotals = result.skuTotals;
+            for (int line = 0; line < skuTotals.lineCount(); line++) {
+                int skuId = skuTotals.skuId(line);
+                unitsBySku[skuId] += skuTotals.quantity(line);
+                revenueBySku[skuId] = Math.addExact(revenueBySku[skuId], skuTotals.linePrice(line));
+            }
+            scans += result.scanCount;
+            rejected += result.rejectedScanCount;
+        }
+        return new ReplayResult(catalogue, basketIds, basketTotals, unitsBySku, revenueBySku, scans, rejected,
+                elapsedNanos);
+    }
+
+    /**
+     * Totals for one chunk of the log. Per-SKU units and revenue are accumulated sparsely in a
+     * {@link Cart}, so memory grows with the SKUs seen rather than the catalogue size.
+     */
+    private static final class ChunkResult {
+        long[] basketIds = new long[256];
+        long[] basketTotals = new long[256];
+        int basketCount;
+        final Cart skuTotals = new Cart();
+        long scanCount;
+        long rejectedScanCount;
+
+        void addBasket(long basketId, Checkout checkout) {
+            if (basketCount == basketIds.length) {
+                basketIds = Arrays.copyOf(basketIds, basketCount * 2);
+                basketTotals = Arrays.copyOf(basketTotals, basketCount * 2);
+            }
+            basketIds[basketCount] = basketId;
+            basketTotals[basketCount] = checkout.calculateTotalMinor();
+            basketCount++;
+            Cart lines = checkout.lines();
+            for (int line = 0; line < lines.lineCount(); line++) {
+                int total = skuTotals.lineFor(lines.skuId(line));
+                skuTotals.setQuantity(total, Math.addExact(skuTotals.quantity(total), lines.quantity(line)));
+                skuTotals.setLinePrice(total, Math.addExact(skuTotals.linePrice(total), lines.linePrice(line)));
+            }
+        }
+    }
+
+    /**
+     * Prices every basket in one chunk of the mapped file.
+     */
+    private static final class ChunkReplay implements Callable<ChunkResult> {
+        private final FileChannel channel;
+        private final long position;
+        private final long length;
+        private final PricingCatalogue catalogue;
+        private final SkuByteIndex index;
+
+        ChunkReplay(FileChannel channel, long position, long length, PricingCatalogue catalogue, SkuByteIndex index) {
+            this.channel = channel;
+            this.position = position;
+            this.length = length;
+            this.catalogue = catalogue;
+            this.index = index;
+        }
+
+        @Override
+        public ChunkResult call() throws IOException {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            Checkout checkout = new Checkout(new PricingRuleFactory(catalogue));
+            ChunkResult result = new ChunkResult();
+            int limit = buffer.limit();
+            int pos = 0;
+            while (pos < limit) {
+                int lineEnd = pos;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                replayBasket(buffer, pos, lineEnd, checkout, result);
+                pos = lineEnd + 1;
+            }
+            return result;
+        }
+
+        private void replayBasket(ByteBuffer buffer, int from, int to, Checkout checkout, ChunkResult result) {
+            int pos = skipWhitespace(buffer, from, to);
+            if (pos == to) {
+                return;
+            }
+            long basketId = 0;
+            int idStart = pos;
+            for (; pos < to && !isWhitespace(buffer.get(pos)); pos++) {
+                int digit = buffer.get(pos) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new IllegalArgumentException("Malformed basket id at byte offset " + (position + idStart));
+                }
+                basketId = Math.addExact(Math.multiplyExact(basketId, 10), digit);
+            }
+            for (pos = skipWhitespace(buffer, pos, to); pos < to; pos = skipWhitespace(buffer, pos, to)) {
+                int tokenStart = pos;
+                while (pos < to && !isWhitespace(buffer.get(pos))) {
+                    pos++;
+                }
+                int skuId = index.find(buffer, tokenStart, pos);
+                if (skuId < 0) {
+                    result.rejectedScanCount++;
+                } else {
+                    checkout.addQuantity(skuId, 1);
+                    result.scanCount++;
+                }
+            }
+            result.addBasket(basketId, checkout);
+            checkout.clear();
+        }
+
+        private static int skipWhitespace(ByteBuffer buffer, int from, int to) {
+            while (from < to && isWhitespace(buffer.get(from))) {
+                from++;
+            }
+            return from;
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+    }
+}
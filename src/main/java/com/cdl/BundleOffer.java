@@ -0,0 +1,151 @@
+package com.cdl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A basket-level promotion that sells a bundle of items, possibly of different SKUs, for a
+ * fixed price. A bundle is made of slots, each filled with a number of units chosen from a set
+ * of eligible SKUs: "any 3 from {A, C, D} for £1" is a single slot, while a meal deal has one
+ * slot each for the main, the snack and the drink.
+ */
+public final class BundleOffer {
+    private final String name;
+    private final BigDecimal price;
+    private final long priceMinor;
+    private final List<Set<String>> slotSkus;
+    private final int[] slotCounts;
+
+    private BundleOffer(String name, BigDecimal price, List<Set<String>> slotSkus, int[] slotCounts) {
+        this.name = name;
+        this.price = price;
+        this.priceMinor = Money.toMinorUnits(price);
+        this.slotSkus = slotSkus;
+        this.slotCounts = slotCounts;
+    }
+
+    /**
+     * Creates an offer for any {@code count} units chosen from the given SKUs.
+     *
+     * @param name  The name shown for the offer.
+     * @param count The number of units in the bundle.
+     * @param price The price of the bundle.
+     * @param skus  The eligible SKUs.
+     * @return The offer.
+     * @throws IllegalArgumentException if the count is not positive, the price is negative or no SKU is given.
+     */
+    public static BundleOffer anyOf(String name, int count, BigDecimal price, String... skus) {
+        return builder(name, price).slot(count, skus).build();
+    }
+
+    /**
+     * Starts an offer made of several slots, such as a meal deal.
+     *
+     * @param name  The name shown for the offer.
+     * @param price The price of the bundle.
+     * @return A builder for the offer's slots.
+     */
+    public static Builder builder(String name, BigDecimal price) {
+        return new Builder(name, price);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    long getPriceMinor() {
+        return priceMinor;
+    }
+
+    int getSlotCount() {
+        return slotCounts.length;
+    }
+
+    Set<String> getSlotSkus(int slot) {
+        return slotSkus.get(slot);
+    }
+
+    int getSlotUnits(int slot) {
+        return slotCounts[slot];
+    }
+
+    /**
+     * Returns the total number of units in one bundle.
+     *
+     * @return The bundle size.
+     */
+    public int getSize() {
+        return Arrays.stream(slotCounts).sum();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Collects the slots of a bundle offer.
+     */
+    public static final class Builder {
+        private final String name;
+        private final BigDecimal price;
+        private final List<Set<String>> slotSkus = new ArrayList<>();
+        private final List<Integer> slotCounts = new ArrayList<>();
+
+        private Builder(String name, BigDecimal price) {
+            this.name = Objects.requireNonNull(name, "Offer name cannot be null");
+            if (price == null || price.compareTo(BigDecimal.ZERO) < 0) {
+                throw new IllegalArgumentException("Offer price cannot be negative");
+            }
+            this.price = price;
+        }
+
+        /**
+         * Adds a slot filled by {@code count} units chosen from the given SKUs.
+         *
+         * @param count The number of units in the slot.
+         * @param skus  The SKUs eligible for the slot.
+         * @return This builder.
+         * @throws IllegalArgumentException if the count is not positive or no SKU is given.
+         */
+        public Builder slot(int count, String... skus) {
+            if (count <= 0) {
+                throw new IllegalArgumentException("Slot count must be positive");
+            }
+            if (skus.length == 0) {
+                throw new IllegalArgumentException("Slot must have at least one SKU");
+            }
+            Set<String> normalized = new LinkedHashSet<>();
+            for (String sku : skus) {
+                normalized.add(PricingRuleFactory.normalizeSku(sku));
+            }
+            slotSkus.add(Collections.unmodifiableSet(normalized));
+            slotCounts.add(count);
+            return this;
+        }
+
+        /**
+         * Builds the offer.
+         *
+         * @return The offer.
+         * @throws IllegalStateException if no slot was added.
+         */
+        public BundleOffer build() {
+            if (slotSkus.isEmpty()) {
+                throw new IllegalStateException("Offer must have at least one slot");
+            }
+            return new BundleOffer(name, price, List.copyOf(slotSkus),
+                    slotCounts.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+}
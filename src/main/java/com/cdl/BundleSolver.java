@@ -0,0 +1,407 @@
+package com.cdl;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+/**
+ * Finds the cheapest way to price a group of overlapping {@link BundleOffer}s, for one basket.
+ * <p>
+ * The search is a depth-first branch-and-bound over the bundles sold. At each node it either
+ * applies the current offer once more, with any choice of the basket's units for its slots, or
+ * moves on to the next offer, and a leaf prices whatever is left with the per-SKU rules. A
+ * branch is cut when its cost so far plus a lower bound for the units left cannot beat the best
+ * total found, or when the same offer and remaining quantities were already reached at no
+ * greater cost, which also cuts the same bundles chosen in another order. The search stops
+ * after a node budget, keeping the best total found, so its cost is bounded for any basket.
+ * <p>
+ * The first choice of units tried takes, for each unit in a slot, the eligible SKU whose line
+ * price drops the most by losing it, so most-expensive items go into bundles first and a good
+ * total is found early.
+ * <p>
+ * A solver is immutable and built for one catalogue snapshot; {@link #solve} may be called from
+ * any thread.
+ */
+final class BundleSolver {
+    private final int[] skuIds;
+    private final PricingRule[] rules;
+    private final int[] offers;
+    private final long[] prices;
+    // For each offer and slot, the local indexes of the eligible SKUs
+    private final int[][][] slotSkus;
+    private final int[][] slotUnits;
+    // The distinct local SKUs eligible for each offer
+    private final int[][] offerSkus;
+    // unitLowerBounds[offer][sku]: no unit of the SKU can cost less than this once the search
+    // has moved on to the offer, alone or in a bundle of this or a later offer
+    private final long[][] unitLowerBounds;
+    private final long[] stateHashes;
+
+    /**
+     * @param skuIds    The global ids of the SKUs in the group; their position is their local index.
+     * @param rules     The pricing rules of those SKUs.
+     * @param offers    The engine indexes of the offers in the group, in search order.
+     * @param prices    The bundle price of each offer, in minor units.
+     * @param slotSkus  For each offer and slot, the local indexes of the eligible SKUs.
+     * @param slotUnits For each offer and slot, the number of units in the slot.
+     */
+    BundleSolver(int[] skuIds, PricingRule[] rules, int[] offers, long[] prices, int[][][] slotSkus, int[][] slotUnits) {
+        this.skuIds = skuIds;
+        this.rules = rules;
+        this.offers = offers;
+        this.prices = prices;
+        this.slotSkus = slotSkus;
+        this.slotUnits = slotUnits;
+        this.offerSkus = new int[offers.length][];
+        for (int offer = 0; offer < offers.length; offer++) {
+            offerSkus[offer] = Arrays.stream(slotSkus[offer]).flatMapToInt(Arrays::stream).distinct().toArray();
+        }
+        this.unitLowerBounds = new long[offers.length + 1][skuIds.length];
+        for (int sku = 0; sku < skuIds.length; sku++) {
+            unitLowerBounds[offers.length][sku] = unitLowerBound(rules[sku]);
+        }
+        for (int offer = offers.length - 1; offer >= 0; offer--) {
+            long[] bounds = unitLowerBounds[offer];
+            System.arraycopy(unitLowerBounds[offer + 1], 0, bounds, 0, bounds.length);
+            long unitPrice = Math.floorDiv(prices[offer], Arrays.stream(slotUnits[offer]).sum());
+            for (int sku : offerSkus[offer]) {
+                bounds[sku] = Math.min(bounds[sku], unitPrice);
+            }
+        }
+        // Fixed odd multipliers, so a state hash can be updated one unit at a time
+        this.stateHashes = new long[skuIds.length + 1];
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < stateHashes.length; i++) {
+            seed = mix(seed + 0x9E3779B97F4A7C15L);
+            stateHashes[i] = seed | 1;
+        }
+    }
+
+    /**
+     * Returns a price in minor units that no unit costs less than under a rule, at any quantity.
+     * A line is priced by rounding the exact sum of its units' prices, so the lowest price any
+     * unit can be charged, rounded down, bounds the average. Other rules are bounded by 0.
+     */
+    static long unitLowerBound(PricingRule rule) {
+        BigDecimal lowest;
+        if (rule.getClass() == RegularPricingRule.class) {
+            lowest = ((RegularPricingRule) rule).getUnitPrice();
+        } else if (rule.getClass() == SpecialPricingRule.class) {
+            SpecialPricingRule special = (SpecialPricingRule) rule;
+            lowest = special.getUnitPrice().min(special.getSpecialPrice()
+                    .divide(BigDecimal.valueOf(special.getSpecialQuantity()), Money.MINOR_SCALE, RoundingMode.FLOOR));
+        } else if (rule.getClass() == TieredPricingRule.class) {
+            TieredPricingRule tiered = (TieredPricingRule) rule;
+            lowest = tiered.getUnitPrice(0);
+            for (int tier = 1; tier < tiered.getTierCount(); tier++) {
+                lowest = lowest.min(tiered.getUnitPrice(tier));
+            }
+        } else {
+            return 0;
+        }
+        return lowest.setScale(Money.MINOR_SCALE, RoundingMode.FLOOR).unscaledValue().longValueExact();
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    int[] getSkuIds() {
+        return skuIds;
+    }
+
+    int[] getOffers() {
+        return offers;
+    }
+
+    /**
+     * Prices the group's SKUs with the cheapest allocation to offers found.
+     *
+     * @param quantities The quantity of each SKU in the basket, by local index. Not modified.
+     * @param nodeBudget The most search nodes to visit before settling for the best total found.
+     * @param hint       Applications of each offer from an earlier solve of a similar basket,
+     *                   used as the first bound, or null.
+     * @return The cheapest total found for the group and the offers applied to reach it.
+     */
+    Solution solve(int[] quantities, int nodeBudget, int[] hint) {
+        return new Search(quantities, nodeBudget).run(hint);
+    }
+
+    /**
+     * The outcome of pricing a group for one basket.
+     */
+    static final class Solution {
+        final long totalMinor;
+        // Applications of each offer in the group, in the order of BundleSolver#getOffers
+        final int[] applications;
+        final boolean optimal;
+
+        Solution(long totalMinor, int[] applications, boolean optimal) {
+            this.totalMinor = totalMinor;
+            this.applications = applications;
+            this.optimal = optimal;
+        }
+    }
+
+    /**
+     * The mutable state of one solve. Quantities, line prices, the lower bound and the state
+     * hash are updated in place as units are taken and restored on backtrack.
+     */
+    private final class Search {
+        private final int[] quantities;
+        // linePrices[sku][quantity] for every quantity up to the basket's, so taking and
+        // restoring a unit never calls a pricing rule
+        private final long[][] linePrices;
+        private final int[] applications = new int[offers.length];
+        private final int[] taken;
+        private final VisitedStates visited = new VisitedStates();
+        private final int nodeBudget;
+        private int nodes;
+        private long regular;
+        // Lower bound for pricing the remaining units with the current and later offers
+        private long lowerBound;
+        private long hash;
+        private long best;
+        private int[] bestApplications = applications.clone();
+
+        Search(int[] quantities, int nodeBudget) {
+            this.quantities = quantities.clone();
+            this.linePrices = new long[quantities.length][];
+            this.nodeBudget = nodeBudget;
+            for (int sku = 0; sku < quantities.length; sku++) {
+                linePrices[sku] = new long[quantities[sku] + 1];
+                for (int quantity = 1; quantity <= quantities[sku]; quantity++) {
+                    linePrices[sku][quantity] = rules[sku].calculatePriceMinor(quantity);
+                }
+                regular += linePrices[sku][quantities[sku]];
+                lowerBound += quantities[sku] * unitLowerBounds[0][sku];
+                hash += quantities[sku] * stateHashes[sku];
+            }
+            // Every unit in the basket can be taken at most once along a search path
+            this.taken = new int[Arrays.stream(quantities).sum()];
+        }
+
+        Solution run(int[] hint) {
+            best = regular;
+            if (hint != null) {
+                replay(hint);
+            }
+            search(0, 0, 0);
+            return new Solution(best, bestApplications, nodes <= nodeBudget);
+        }
+
+        /**
+         * Applies each offer up to the hinted number of times and takes the result as the best so far.
+         */
+        private void replay(int[] hint) {
+            long bound = lowerBound;
+            int depth = 0;
+            long cost = 0;
+            for (int offer = 0; offer < offers.length; offer++) {
+                for (int i = 0; i < hint[offer]; i++) {
+                    int units = fill(offer, depth);
+                    if (units == 0) {
+                        break;
+                    }
+                    depth += units;
+                    cost += prices[offer];
+                    applications[offer]++;
+                }
+            }
+            if (cost + regular < best) {
+                best = cost + regular;
+                bestApplications = applications.clone();
+            }
+            // The bound is not used while replaying, so any offer's bounds restore the rest
+            restore(0, depth, unitLowerBounds[0]);
+            lowerBound = bound;
+            Arrays.fill(applications, 0);
+        }
+
+        private void search(int offer, long cost, int depth) {
+            if (++nodes > nodeBudget) {
+                return;
+            }
+            if (offer == offers.length) {
+                if (cost + regular < best) {
+                    best = cost + regular;
+                    bestApplications = applications.clone();
+                }
+                return;
+            }
+            if (cost + lowerBound >= best || !visited.firstOrCheaper(hash + offer * stateHashes[quantities.length], cost)) {
+                return;
+            }
+            long before = regular;
+            int units = fill(offer, depth);
+            if (units == 0) {
+                next(offer, cost, depth);
+                return;
+            }
+            // Follow the branch that looks cheaper first, so good bounds are found early. The
+            // greedy choice of units is tried again by applyEach, and then cut as already visited.
+            boolean saves = prices[offer] < before - regular;
+            if (saves) {
+                applications[offer]++;
+                search(offer, cost + prices[offer], depth + units);
+                applications[offer]--;
+            }
+            restore(depth, depth + units, unitLowerBounds[offer]);
+            if (saves) {
+                applyEach(offer, cost, depth, 0, 0, 0);
+                next(offer, cost, depth);
+            } else {
+                next(offer, cost, depth);
+                applyEach(offer, cost, depth, 0, 0, 0);
+            }
+        }
+
+        /**
+         * Applies an offer once more with every choice of the basket's units for its slots,
+         * recording them in {@code taken} from {@code end}. Within a slot, units are taken in the
+         * order of the eligible SKUs, from {@code first} on, so each multiset is tried once.
+         */
+        private void applyEach(int offer, long cost, int end, int slot, int unit, int first) {
+            if (slot == slotSkus[offer].length) {
+                applications[offer]++;
+                search(offer, cost + prices[offer], end);
+                applications[offer]--;
+                return;
+            }
+            if (unit == slotUnits[offer][slot]) {
+                applyEach(offer, cost, end, slot + 1, 0, 0);
+                return;
+            }
+            int[] eligible = slotSkus[offer][slot];
+            long[] bounds = unitLowerBounds[offer];
+            for (int i = first; i < eligible.length && nodes <= nodeBudget; i++) {
+                int sku = eligible[i];
+                if (quantities[sku] > 0) {
+                    take(sku, bounds);
+                    taken[end] = sku;
+                    applyEach(offer, cost, end + 1, slot, unit + 1, i);
+                    restore(end, end + 1, bounds);
+                }
+            }
+        }
+
+        /**
+         * Moves the search on to the next offer, tightening the lower bound for the offers left.
+         */
+        private void next(int offer, long cost, int depth) {
+            long bound = lowerBound;
+            for (int sku : offerSkus[offer]) {
+                lowerBound += quantities[sku] * (unitLowerBounds[offer + 1][sku] - unitLowerBounds[offer][sku]);
+            }
+            search(offer + 1, cost, depth);
+            lowerBound = bound;
+        }
+
+        /**
+         * Takes one bundle's units for an offer, recording them in {@code taken} from {@code depth}.
+         *
+         * @return The number of units taken, or 0 if the basket cannot fill the bundle.
+         */
+        private int fill(int offer, int depth) {
+            long[] bounds = unitLowerBounds[offer];
+            int end = depth;
+            for (int slot = 0; slot < slotSkus[offer].length; slot++) {
+                int[] eligible = slotSkus[offer][slot];
+                for (int unit = 0; unit < slotUnits[offer][slot]; unit++) {
+                    int chosen = -1;
+                    long chosenSaving = Long.MIN_VALUE;
+                    for (int sku : eligible) {
+                        int quantity = quantities[sku];
+                        if (quantity > 0 && linePrices[sku][quantity] - linePrices[sku][quantity - 1] > chosenSaving) {
+                            chosen = sku;
+                            chosenSaving = linePrices[sku][quantity] - linePrices[sku][quantity - 1];
+                        }
+                    }
+                    if (chosen < 0) {
+                        restore(depth, end, bounds);
+                        return 0;
+                    }
+                    take(chosen, bounds);
+                    taken[end++] = chosen;
+                }
+            }
+            return end - depth;
+        }
+
+        private void take(int sku, long[] bounds) {
+            int quantity = quantities[sku]--;
+            regular -= linePrices[sku][quantity] - linePrices[sku][quantity - 1];
+            lowerBound -= bounds[sku];
+            hash -= stateHashes[sku];
+        }
+
+        private void restore(int from, int to, long[] bounds) {
+            for (int i = to - 1; i >= from; i--) {
+                int sku = taken[i];
+                int quantity = ++quantities[sku];
+                regular += linePrices[sku][quantity] - linePrices[sku][quantity - 1];
+                lowerBound += bounds[sku];
+                hash += stateHashes[sku];
+            }
+        }
+    }
+
+    /**
+     * Open-addressing table from a search state hash to the lowest cost it was reached at.
+     * States are told apart by a 64-bit hash of the offer and remaining quantities only.
+     */
+    private static final class VisitedStates {
+        private long[] keys = new long[1024];
+        private long[] costs = new long[1024];
+        private boolean[] used = new boolean[1024];
+        private int size;
+
+        /**
+         * Records a visit, returning false if the state was already reached at no greater cost.
+         */
+        boolean firstOrCheaper(long key, long cost) {
+            int mask = keys.length - 1;
+            int slot = (int) mix(key) & mask;
+            while (used[slot]) {
+                if (keys[slot] == key) {
+                    if (costs[slot] <= cost) {
+                        return false;
+                    }
+                    costs[slot] = cost;
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            keys[slot] = key;
+            costs[slot] = cost;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+            return true;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldCosts = costs;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            costs = new long[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) {
+                    int slot = (int) mix(oldKeys[i]) & mask;
+                    while (used[slot]) {
+                        slot = (slot + 1) & mask;
+                    }
+                    used[slot] = true;
+                    keys[slot] = oldKeys[i];
+                    costs[slot] = oldCosts[i];
+                }
+            }
+        }
+    }
+}
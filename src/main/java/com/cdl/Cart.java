@@ -0,0 +1,128 @@
+package com.cdl;
+
+import java.util.Arrays;
+
+/**
+ * Primitive storage for the lines of a cart, keyed by dense SKU id.
+ * <p>
+ * Lines are kept in parallel arrays in the order they were first scanned, and an
+ * open-addressing table maps a SKU id to its line, so updating a line does not box
+ * and the memory used grows with the basket rather than with the catalogue.
+ */
+final class Cart {
+    private static final int INITIAL_LINES = 8;
+    private static final int EMPTY = -1;
+
+    // Hash table of line indexes, sized to a power of two and kept at most half full
+    private int[] slots;
+    private int[] skuIds;
+    private int[] quantities;
+    private long[] linePrices;
+    private int lineCount;
+
+    Cart() {
+        slots = new int[INITIAL_LINES * 2];
+        Arrays.fill(slots, EMPTY);
+        skuIds = new int[INITIAL_LINES];
+        quantities = new int[INITIAL_LINES];
+        linePrices = new long[INITIAL_LINES];
+    }
+
+    private static int hash(int skuId) {
+        int h = skuId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the line for a SKU id, or -1 if the SKU is not in the cart.
+     */
+    int find(int skuId) {
+        int mask = slots.length - 1;
+        for (int slot = hash(skuId) & mask; ; slot = (slot + 1) & mask) {
+            int line = slots[slot];
+            if (line == EMPTY || skuIds[line] == skuId) {
+                return line;
+            }
+        }
+    }
+
+    /**
+     * Returns the line for a SKU id, adding an empty line if the SKU is not in the cart.
+     */
+    int lineFor(int skuId) {
+        int line = find(skuId);
+        if (line != EMPTY) {
+            return line;
+        }
+        if (lineCount == skuIds.length) {
+            grow();
+        }
+        line = lineCount++;
+        skuIds[line] = skuId;
+        insert(line);
+        return line;
+    }
+
+    private void insert(int line) {
+        int mask = slots.length - 1;
+        int slot = hash(skuIds[line]) & mask;
+        while (slots[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = line;
+    }
+
+    private void grow() {
+        int capacity = skuIds.length * 2;
+        skuIds = Arrays.copyOf(skuIds, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        linePrices = Arrays.copyOf(linePrices, capacity);
+        slots = new int[capacity * 2];
+        Arrays.fill(slots, EMPTY);
+        for (int line = 0; line < lineCount; line++) {
+            insert(line);
+        }
+    }
+
+    int lineCount() {
+        return lineCount;
+    }
+
+    int skuId(int line) {
+        return skuIds[line];
+    }
+
+    int quantity(int line) {
+        return quantities[line];
+    }
+
+    void setQuantity(int line, int quantity) {
+        quantities[line] = quantity;
+    }
+
+    long linePrice(int line) {
+        return linePrices[line];
+    }
+
+    void setLinePrice(int line, long linePrice) {
+        linePrices[line] = linePrice;
+    }
+
+    /**
+     * Removes every line, touching only the slots that were in use.
+     */
+    void clear() {
+        int mask = slots.length - 1;
+        // Removing in reverse insertion order never breaks the probe sequence of an earlier line
+        for (int line = lineCount - 1; line >= 0; line--) {
+            int slot = hash(skuIds[line]) & mask;
+            while (slots[slot] != line) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = EMPTY;
+            quantities[line] = 0;
+            linePrices[line] = 0;
+        }
+        lineCount = 0;
+    }
+}
@@ -0,0 +1,599 @@
+package com.cdl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only journal of cart changes, so that the open baskets of every lane can be
+ * rebuilt after the process crashes.
+ * <p>
+ * Every change is a fixed 40-byte little-endian record:
+ * <pre>
+ * CRC32C of bytes 4-39 int, type byte, reserved 3 bytes, lane long, catalogue version long,
+ * SKU id int, line quantity after the change int, SKU hash code int, reserved int
+ * </pre>
+ * Lines are recorded with their new quantity rather than the change, so replaying a record
+ * twice does no harm. A {@code CLEAR} record ends a lane's basket. The hash code of the SKU lets
+ * {@link Recovery#restore} check that a SKU id still names the same SKU in the catalogue it
+ * restores into, which need not be the catalogue the journal was written against.
+ * <p>
+ * Appending only copies the record into a buffer shared by all lanes. A committer thread
+ * writes the buffer to the active segment file and forces it to disk once per commit window,
+ * or as soon as a full batch is waiting, so one fsync covers every lane's changes in that
+ * window. A change is therefore durable at most one commit window after it was made, or when
+ * {@link #sync()} returns. Appenders only block while a full batch is waiting to be written.
+ * <p>
+ * Segments are rolled when they reach the configured size. {@link #compact()} replaces the
+ * segments that are no longer written with one holding only the baskets still open, and
+ * {@link #recover(Path)} replays the segments in order to rebuild the open baskets.
+ */
+public final class CartJournal implements AutoCloseable {
+    static final int RECORD_BYTES = 40;
+    static final byte SCAN = 1;
+    static final byte UNSCAN = 2;
+    static final byte VOID = 3;
+    static final byte CLEAR = 4;
+    // Written first by compaction: forget every basket replayed so far
+    static final byte RESET = 5;
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+    public static final Duration DEFAULT_COMMIT_WINDOW = Duration.ofMillis(2);
+    public static final int DEFAULT_BATCH_RECORDS = 4096;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long commitWindowNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signalled when the committer has something to do
+    private final Condition work = lock.newCondition();
+    // Signalled when the committer has taken a batch or made records durable
+    private final Condition committed = lock.newCondition();
+    private ByteBuffer pending;
+    private ByteBuffer spare;
+    private long firstPendingNanos;
+    private long appended;
+    private long durable;
+    private long syncRequested;
+    private boolean closed;
+    private IOException failure;
+
+    // Only touched by the committer thread, apart from reading the active index
+    private volatile long segmentIndex;
+    private FileChannel segment;
+    private long segmentSize;
+    private final CRC32C crc = new CRC32C();
+    private final Thread committer;
+    private final Object compactionLock = new Object();
+
+    private CartJournal(Path directory, long segmentBytes, Duration commitWindow, int batchRecords) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.commitWindowNanos = commitWindow.toNanos();
+        this.pending = ByteBuffer.allocate(batchRecords * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        this.spare = ByteBuffer.allocate(batchRecords * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        Files.createDirectories(directory);
+        List<Long> existing = segmentIndexes(directory);
+        // Always start a fresh segment, so a torn record at the end of the last one stays behind it
+        openSegment(existing.isEmpty() ? 0 : existing.get(existing.size() - 1) + 1);
+        this.committer = new Thread(this::commitLoop, "cart-journal-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Opens a journal in a directory with the default segment size and commit window.
+     *
+     * @param directory The journal directory, created if it does not exist.
+     * @return The journal.
+     * @throws IOException if the directory or a segment cannot be created.
+     */
+    public static CartJournal open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_COMMIT_WINDOW, DEFAULT_BATCH_RECORDS);
+    }
+
+    /**
+     * Opens a journal in a directory.
+     *
+     * @param directory    The journal directory, created if it does not exist.
+     * @param segmentBytes The size at which a segment is rolled.
+     * @param commitWindow The longest a change waits before it is forced to disk.
+     * @param batchRecords The number of waiting records that triggers a commit before the window ends.
+     * @return The journal.
+     * @throws IOException if the directory or a segment cannot be created.
+     * @throws IllegalArgumentException if a size or the window is not positive.
+     */
+    public static CartJournal open(Path directory, long segmentBytes, Duration commitWindow, int batchRecords) throws IOException {
+        if (segmentBytes < RECORD_BYTES || batchRecords <= 0 || commitWindow.isNegative() || commitWindow.isZero()) {
+            throw new IllegalArgumentException("Segment size, commit window and batch size must be positive");
+        }
+        return new CartJournal(directory, segmentBytes, commitWindow, batchRecords);
+    }
+
+    /**
+     * Records a change to one line of a lane's basket.
+     *
+     * @param type             {@link #SCAN}, {@link #UNSCAN} or {@link #VOID}.
+     * @param lane             The lane whose basket changed.
+     * @param catalogueVersion The version of the catalogue the basket is priced against.
+     * @param skuId            The SKU id of the line.
+     * @param skuHash          The hash code of the normalized SKU.
+     * @param quantity         The quantity of the line after the change.
+     */
+    void recordLine(byte type, long lane, long catalogueVersion, int skuId, int skuHash, int quantity) {
+        append(type, lane, catalogueVersion, skuId, skuHash, quantity);
+    }
+
+    /**
+     * Records that a lane's basket was finished or abandoned.
+     */
+    void recordClear(long lane) {
+        append(CLEAR, lane, 0, 0, 0, 0);
+    }
+
+    private void append(byte type, long lane, long catalogueVersion, int skuId, int skuHash, int quantity) {
+        lock.lock();
+        try {
+            checkOpen();
+            while (!pending.hasRemaining()) {
+                work.signal();
+                committed.awaitUninterruptibly();
+                checkOpen();
+            }
+            if (pending.position() == 0) {
+                firstPendingNanos = System.nanoTime();
+                work.signal();
+            }
+            // The committer fills in the checksum
+            pending.putInt(0).put(type).put((byte) 0).putShort((short) 0)
+                    .putLong(lane).putLong(catalogueVersion).putInt(skuId).putInt(quantity).putInt(skuHash).putInt(0);
+            appended++;
+            if (!pending.hasRemaining()) {
+                work.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkOpen() {
+        if (failure != null) {
+            throw new UncheckedIOException("Cart journal failed", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Cart journal is closed");
+        }
+    }
+
+    /**
+     * Forces every change recorded so far to disk without waiting for the commit window.
+     *
+     * @throws UncheckedIOException if the journal could not be written.
+     */
+    public void sync() {
+        lock.lock();
+        try {
+            long target = appended;
+            syncRequested = Math.max(syncRequested, target);
+            work.signal();
+            while (durable < target) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Cart journal failed", failure);
+                }
+                committed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void commitLoop() {
+        try {
+            while (true) {
+                ByteBuffer batch;
+                long batchEnd;
+                lock.lock();
+                try {
+                    while (pending.position() == 0 && !closed) {
+                        work.awaitUninterruptibly();
+                    }
+                    if (pending.position() == 0) {
+                        return;
+                    }
+                    // Let more lanes join the batch until the window ends, unless it is full or wanted now
+                    long remaining;
+                    while (pending.hasRemaining() && !closed && syncRequested <= durable
+                            && (remaining = firstPendingNanos + commitWindowNanos - System.nanoTime()) > 0) {
+                        try {
+                            work.awaitNanos(remaining);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    batch = pending;
+                    pending = spare;
+                    spare = batch;
+                    batchEnd = appended;
+                    committed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+
+                batch.flip();
+                write(batch);
+                batch.clear();
+
+                lock.lock();
+                try {
+                    durable = batchEnd;
+                    committed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                failure = e;
+                committed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Checksums a batch, appends it to the active segment, rolling it first if it is full, and
+     * forces it to disk.
+     */
+    private void write(ByteBuffer batch) throws IOException {
+        for (int position = 0; position < batch.limit(); position += RECORD_BYTES) {
+            batch.putInt(position, checksum(batch, position));
+        }
+        if (segmentSize > 0 && segmentSize + batch.remaining() > segmentBytes) {
+            segment.force(false);
+            segment.close();
+            openSegment(segmentIndex + 1);
+        }
+        segmentSize += batch.remaining();
+        while (batch.hasRemaining()) {
+            segment.write(batch);
+        }
+        segment.force(false);
+    }
+
+    private int checksum(ByteBuffer records, int position) {
+        crc.reset();
+        crc.update(records.array(), position + Integer.BYTES, RECORD_BYTES - Integer.BYTES);
+        return (int) crc.getValue();
+    }
+
+    private void openSegment(long index) throws IOException {
+        segment = FileChannel.open(segmentPath(directory, index),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentIndex = index;
+        segmentSize = 0;
+    }
+
+    private static Path segmentPath(Path directory, long index) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Returns the indexes of the segments in a directory, in order.
+     */
+    private static List<Long> segmentIndexes(Path directory) throws IOException {
+        List<Long> indexes = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                indexes.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(indexes);
+        return indexes;
+    }
+
+    /**
+     * Replaces every segment that is no longer written to with a single segment holding just
+     * the baskets that are still open in them. Safe to call while lanes keep recording; a crash
+     * part-way through leaves a journal that recovers to the same baskets.
+     *
+     * @throws IOException if the segments cannot be read or the compacted segment cannot be written.
+     */
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            long active = segmentIndex;
+            List<Path> sealed = new ArrayList<>();
+            for (long index : segmentIndexes(directory)) {
+                if (index < active) {
+                    sealed.add(segmentPath(directory, index));
+                }
+            }
+            if (sealed.isEmpty()) {
+                return;
+            }
+            Map<Long, Basket> baskets = replay(sealed, new int[1]);
+
+            Path target = sealed.get(sealed.size() - 1);
+            Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 1024).order(ByteOrder.LITTLE_ENDIAN);
+                CRC32C checksum = new CRC32C();
+                writeRecord(channel, buffer, checksum, RESET, 0, 0, 0, 0, 0);
+                for (Map.Entry<Long, Basket> entry : baskets.entrySet()) {
+                    Basket basket = entry.getValue();
+                    Cart cart = basket.cart;
+                    for (int line = 0; line < cart.lineCount(); line++) {
+                        if (cart.quantity(line) != 0) {
+                            writeRecord(channel, buffer, checksum, SCAN, entry.getKey(), basket.catalogueVersion,
+                                    cart.skuId(line), basket.skuHashes[line], cart.quantity(line));
+                        }
+                    }
+                }
+                flush(channel, buffer);
+                channel.force(true);
+            }
+            // The compacted segment starts with a reset, so older segments left by a crash here do no harm
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            for (Path segment : sealed.subList(0, sealed.size() - 1)) {
+                Files.delete(segment);
+            }
+        }
+    }
+
+    private static void writeRecord(FileChannel channel, ByteBuffer buffer, CRC32C checksum,
+                                    byte type, long lane, long catalogueVersion, int skuId, int skuHash,
+                                    int quantity) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush(channel, buffer);
+        }
+        int start = buffer.position();
+        buffer.putInt(0).put(type).put((byte) 0).putShort((short) 0)
+                .putLong(lane).putLong(catalogueVersion).putInt(skuId).putInt(quantity).putInt(skuHash).putInt(0);
+        checksum.reset();
+        checksum.update(buffer.array(), start + Integer.BYTES, RECORD_BYTES - Integer.BYTES);
+        buffer.putInt(start, (int) checksum.getValue());
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Replays segments in order into the baskets still open at their end. Reading a segment
+     * stops at its first incomplete or corrupt record, which only a crash mid-write leaves.
+     */
+    private static Map<Long, Basket> replay(List<Path> segments, int[] records) throws IOException {
+        Map<Long, Basket> baskets = new LinkedHashMap<>();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 2048).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32C checksum = new CRC32C();
+        for (Path segment : segments) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                buffer.clear();
+                boolean intact = true;
+                while (intact && channel.read(buffer) > 0) {
+                    buffer.flip();
+                    while (buffer.remaining() >= RECORD_BYTES) {
+                        int start = buffer.position();
+                        checksum.reset();
+                        checksum.update(buffer.array(), start + Integer.BYTES, RECORD_BYTES - Integer.BYTES);
+                        if (buffer.getInt() != (int) checksum.getValue()) {
+                            intact = false;
+                            break;
+                        }
+                        byte type = buffer.get();
+                        buffer.position(start + 8);
+                        long lane = buffer.getLong();
+                        long catalogueVersion = buffer.getLong();
+                        int skuId = buffer.getInt();
+                        int quantity = buffer.getInt();
+                        int skuHash = buffer.getInt();
+                        buffer.position(start + RECORD_BYTES);
+                        apply(baskets, type, lane, catalogueVersion, skuId, skuHash, quantity);
+                        records[0]++;
+                    }
+                    buffer.compact();
+                }
+            }
+        }
+        return baskets;
+    }
+
+    private static void apply(Map<Long, Basket> baskets, byte type, long lane, long catalogueVersion,
+                              int skuId, int skuHash, int quantity) {
+        switch (type) {
+            case SCAN:
+            case UNSCAN:
+            case VOID:
+                baskets.computeIfAbsent(lane, key -> new Basket()).setLine(catalogueVersion, skuId, skuHash, quantity);
+                break;
+            case CLEAR:
+                baskets.remove(lane);
+                break;
+            case RESET:
+                baskets.clear();
+                break;
+            default:
+                // Unknown records are from a newer writer; skip them
+                break;
+        }
+    }
+
+    /**
+     * Replays every segment in a journal directory.
+     *
+     * @param directory The journal directory.
+     * @return The baskets that were open when the journal was last written.
+     * @throws IOException if a segment cannot be read.
+     */
+    public static Recovery recover(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            for (long index : segmentIndexes(directory)) {
+                segments.add(segmentPath(directory, index));
+            }
+        }
+        int[] records = new int[1];
+        Map<Long, Basket> baskets = replay(segments, records);
+        return new Recovery(baskets, records[0]);
+    }
+
+    /**
+     * Stops the committer after it has made every recorded change durable, and closes the active segment.
+     *
+     * @throws IOException if the last changes could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            committer.join(TimeUnit.MINUTES.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        segment.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * A basket being replayed: its lines, the hash code of each line's SKU and the catalogue
+     * version of its latest change.
+     */
+    private static final class Basket {
+        final Cart cart = new Cart();
+        int[] skuHashes = new int[8];
+        long catalogueVersion;
+
+        void setLine(long version, int skuId, int skuHash, int quantity) {
+            int line = cart.lineFor(skuId);
+            if (line == skuHashes.length) {
+                skuHashes = Arrays.copyOf(skuHashes, line * 2);
+            }
+            cart.setQuantity(line, quantity);
+            skuHashes[line] = skuHash;
+            catalogueVersion = version;
+        }
+    }
+
+    /**
+     * The open baskets found by {@link #recover(Path)}.
+     */
+    public static final class Recovery {
+        private final Map<Long, Basket> baskets;
+        private final int recordCount;
+
+        private Recovery(Map<Long, Basket> baskets, int recordCount) {
+            this.baskets = baskets;
+            this.recordCount = recordCount;
+        }
+
+        /**
+         * Returns the lanes that had an open basket.
+         *
+         * @return The lane ids.
+         */
+        public Set<Long> getLanes() {
+            return Collections.unmodifiableSet(baskets.keySet());
+        }
+
+        /**
+         * Returns the number of records replayed.
+         *
+         * @return The record count.
+         */
+        public int getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * Returns the version of the catalogue a lane's basket was last priced against.
+         *
+         * @param lane The lane.
+         * @return The catalogue version.
+         * @throws IllegalArgumentException if the lane had no open basket.
+         */
+        public long getCatalogueVersion(long lane) {
+            return basket(lane).catalogueVersion;
+        }
+
+        private Basket basket(long lane) {
+            Basket basket = baskets.get(lane);
+            if (basket == null) {
+                throw new IllegalArgumentException("No open basket for lane " + lane);
+            }
+            return basket;
+        }
+
+        /**
+         * Adds a lane's recovered basket to an empty checkout. The basket is priced against
+         * the checkout's current catalogue. Nothing is added unless every SKU id of the basket
+         * still names the SKU it was journaled for, so a catalogue rebuilt with different ids
+         * is refused rather than filling the basket with the wrong items.
+         *
+         * @param lane     The lane to restore.
+         * @param checkout The checkout to restore into.
+         * @throws IllegalArgumentException if the lane had no open basket, or a SKU is no longer in the catalogue under its id.
+         */
+        public void restore(long lane, Checkout checkout) {
+            Basket basket = basket(lane);
+            Cart cart = basket.cart;
+            PricingCatalogue catalogue = checkout.catalogue();
+            for (int line = 0; line < cart.lineCount(); line++) {
+                int skuId = cart.skuId(line);
+                if (skuId < 0 || skuId >= catalogue.size() || catalogue.getPricingRule(skuId) == null) {
+                    throw new IllegalArgumentException("SKU id " + skuId + " is not in the catalogue");
+                }
+                if (catalogue.getSku(skuId).hashCode() != basket.skuHashes[line]) {
+                    throw new IllegalArgumentException("SKU id " + skuId + " names " + catalogue.getSku(skuId)
+                            + " in catalogue version " + catalogue.getVersion() + ", not the SKU journaled in version "
+                            + basket.catalogueVersion);
+                }
+            }
+            for (int line = 0; line < cart.lineCount(); line++) {
+                if (cart.quantity(line) != 0) {
+                    checkout.addQuantity(cart.skuId(line), cart.quantity(line));
+                }
+            }
+        }
+    }
+}
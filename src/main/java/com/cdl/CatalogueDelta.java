@@ -0,0 +1,254 @@
+package com.cdl;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+/**
+ * The rule changes between two versions of a catalogue: SKUs added, SKUs whose rule changed,
+ * SKUs whose rule was removed and SKUs given an id without a rule, in SKU id order. Deltas are how price changes are shipped
+ * from one store node to the others without sending the whole catalogue.
+ * <p>
+ * A delta records the resulting rule of each SKU rather than how it changed, so applying it
+ * again, or applying it to a catalogue that already has some of its changes, gives the same
+ * catalogue. SKUs new to the catalogue are listed in id order, rule or not, so a node applying
+ * every delta gives them the same ids as the node that made the changes. It serializes to a
+ * compact little-endian format with a checksum:
+ * <pre>
+ * header:  magic int, format version short, reserved short, from version long, to version long,
+ *          change count int, reserved int, CRC32C of the changes long
+ * changes: per change: kind byte (0 add, 1 change, 2 remove, 3 reserve), SKU UTF-8 length short,
+ *          UTF-8 bytes, and for an add or change the rule as in a {@link CatalogueSnapshot}
+ * </pre>
+ * Only regular and special rules can be shipped, as in a snapshot.
+ */
+public final class CatalogueDelta {
+    static final int MAGIC = 0x444C4443; // "CDLD" in little-endian byte order
+    static final short FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 40;
+    static final byte ADD = 0;
+    static final byte CHANGE = 1;
+    static final byte REMOVE = 2;
+    static final byte RESERVE = 3;
+
+    private final long fromVersion;
+    private final long toVersion;
+    private final byte[] kinds;
+    private final String[] skus;
+    // Null for a removal or reservation
+    private final PricingRule[] rules;
+
+    private CatalogueDelta(long fromVersion, long toVersion, byte[] kinds, String[] skus, PricingRule[] rules) {
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.kinds = kinds;
+        this.skus = skus;
+        this.rules = rules;
+    }
+
+    /**
+     * Computes the changes from one snapshot of a catalogue to a later one. SKU ids are stable
+     * across snapshots, so SKUs are compared id by id; SKUs added since have the higher ids.
+     *
+     * @param from The earlier snapshot.
+     * @param to   The later snapshot of the same catalogue.
+     * @return The delta, which is empty if no rule changed.
+     * @throws IllegalArgumentException if the snapshots are out of order, or a changed rule is not a regular or special rule.
+     */
+    public static CatalogueDelta between(PricingCatalogue from, PricingCatalogue to) {
+        if (to.getVersion() < from.getVersion() || to.size() < from.size()) {
+            throw new IllegalArgumentException("Catalogue version " + to.getVersion() + " does not follow " + from.getVersion());
+        }
+        List<Byte> kinds = new ArrayList<>();
+        List<String> skus = new ArrayList<>();
+        List<PricingRule> rules = new ArrayList<>();
+        for (int skuId = 0; skuId < to.size(); skuId++) {
+            PricingRule before = skuId < from.size() ? from.getPricingRule(skuId) : null;
+            PricingRule after = to.getPricingRule(skuId);
+            byte kind;
+            if (after == null && skuId >= from.size()) {
+                // A new id without a rule, which later ids depend on
+                kind = RESERVE;
+            } else if (before == after) {
+                continue;
+            } else if (after == null) {
+                kind = REMOVE;
+            } else if (before == null) {
+                kind = ADD;
+            } else {
+                // Off-heap catalogues create a new object for an unchanged rule
+                if (CatalogueSnapshot.RuleKey.of(before).equals(CatalogueSnapshot.RuleKey.of(after))) {
+                    continue;
+                }
+                kind = CHANGE;
+            }
+            kinds.add(kind);
+            skus.add(to.getSku(skuId));
+            rules.add(after);
+        }
+        byte[] kindArray = new byte[kinds.size()];
+        for (int i = 0; i < kindArray.length; i++) {
+            kindArray[i] = kinds.get(i);
+        }
+        CatalogueDelta delta = new CatalogueDelta(from.getVersion(), to.getVersion(), kindArray,
+                skus.toArray(new String[0]), rules.toArray(new PricingRule[0]));
+        // Fails now, on the node that made the change, rather than on the nodes receiving it
+        for (PricingRule rule : delta.rules) {
+            if (rule != null) {
+                CatalogueSnapshot.RuleKey.of(rule);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Returns the catalogue version this delta applies to.
+     *
+     * @return The version before the changes.
+     */
+    public long getFromVersion() {
+        return fromVersion;
+    }
+
+    /**
+     * Returns the catalogue version this delta brings a catalogue to.
+     *
+     * @return The version after the changes.
+     */
+    public long getToVersion() {
+        return toVersion;
+    }
+
+    /**
+     * Returns the number of changed SKUs.
+     *
+     * @return The number of changes.
+     */
+    public int size() {
+        return skus.length;
+    }
+
+    /**
+     * Returns the SKU of a change.
+     *
+     * @param change The index of the change.
+     * @return The normalized SKU.
+     */
+    public String getSku(int change) {
+        return skus[change];
+    }
+
+    /**
+     * Returns the rule a change sets.
+     *
+     * @param change The index of the change.
+     * @return The new rule, or null if the change removes the SKU's rule or only gives it an id.
+     */
+    public PricingRule getPricingRule(int change) {
+        return rules[change];
+    }
+
+    /**
+     * Applies the changes to a factory as one new catalogue snapshot. Applying a delta twice has
+     * the same effect as applying it once.
+     *
+     * @param factory The factory to update.
+     * @return The published snapshot.
+     */
+    public PricingCatalogue applyTo(PricingRuleFactory factory) {
+        Map<String, PricingRule> changes = new LinkedHashMap<>((int) (skus.length / 0.75f) + 1);
+        for (int i = 0; i < skus.length; i++) {
+            changes.put(skus[i], rules[i]);
+        }
+        return factory.applyChanges(changes);
+    }
+
+    /**
+     * Serializes the delta in the format described above.
+     *
+     * @return The serialized delta.
+     */
+    public byte[] toBytes() {
+        byte[][] names = new byte[skus.length][];
+        int length = HEADER_BYTES;
+        for (int i = 0; i < skus.length; i++) {
+            names[i] = skus[i].getBytes(StandardCharsets.UTF_8);
+            length += 1 + Short.BYTES + names[i].length + (rules[i] == null ? 0 : CatalogueSnapshot.RULE_BYTES);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(HEADER_BYTES);
+        for (int i = 0; i < skus.length; i++) {
+            buffer.put(kinds[i]).putShort((short) names[i].length).put(names[i]);
+            if (rules[i] != null) {
+                CatalogueSnapshot.RuleKey.of(rules[i]).writeTo(buffer);
+            }
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), HEADER_BYTES, length - HEADER_BYTES);
+        buffer.position(0);
+        buffer.putInt(MAGIC).putShort(FORMAT_VERSION).putShort((short) 0).putLong(fromVersion).putLong(toVersion)
+                .putInt(skus.length).putInt(0).putLong(crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * Reads a delta serialized with {@link #toBytes()}.
+     *
+     * @param bytes The serialized delta.
+     * @return The delta.
+     * @throws IllegalArgumentException if the bytes are not a serialized delta or fail the checksum.
+     */
+    public static CatalogueDelta fromBytes(byte[] bytes) {
+        Objects.requireNonNull(bytes, "Bytes cannot be null");
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a catalogue delta");
+        }
+        short formatVersion = buffer.getShort();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported catalogue delta format " + formatVersion);
+        }
+        buffer.getShort();
+        long fromVersion = buffer.getLong();
+        long toVersion = buffer.getLong();
+        int count = buffer.getInt();
+        buffer.getInt();
+        long checksum = buffer.getLong();
+        if (count < 0 || count > (bytes.length - HEADER_BYTES) / 3) {
+            throw new IllegalArgumentException("Invalid change count " + count);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, HEADER_BYTES, bytes.length - HEADER_BYTES);
+        if (crc.getValue() != checksum) {
+            throw new IllegalArgumentException("Catalogue delta checksum mismatch");
+        }
+        byte[] kinds = new byte[count];
+        String[] skus = new String[count];
+        PricingRule[] rules = new PricingRule[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                kinds[i] = buffer.get();
+                if (kinds[i] < ADD || kinds[i] > RESERVE) {
+                    throw new IllegalArgumentException("Unknown change kind " + kinds[i]);
+                }
+                byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(name);
+                skus[i] = PricingRuleFactory.normalizeSku(new String(name, StandardCharsets.UTF_8));
+                rules[i] = kinds[i] == REMOVE || kinds[i] == RESERVE ? null : CatalogueSnapshot.RuleKey.readFrom(buffer).toRule();
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated catalogue delta", e);
+        }
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Trailing bytes after catalogue delta");
+        }
+        return new CatalogueDelta(fromVersion, toVersion, kinds, skus, rules);
+    }
+}
@@ -0,0 +1,166 @@
+package com.cdl;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Publishes the price changes of the store node that owns the catalogue to a directory shared
+ * with the other nodes, where each {@link CatalogueReplica} picks them up.
+ * <p>
+ * Every {@link #publish()} writes the rule changes since the previous one as a
+ * {@link CatalogueDelta} file named after the versions it goes from and to. Every few deltas it
+ * also writes the whole catalogue as a {@link CatalogueSnapshot}, for nodes that start up or
+ * fall too far behind, and deletes deltas and snapshots no node needs any more. Files are
+ * written under a temporary name and then renamed, so nodes never read a half-written one.
+ * <p>
+ * The catalogue is published without scheduled rules; each node schedules its own. Only regular
+ * and special rules can be published.
+ */
+public final class CataloguePublisher {
+    static final String DELTA_PREFIX = "delta-";
+    static final String DELTA_SUFFIX = ".cdld";
+    static final String SNAPSHOT_PREFIX = "catalogue-";
+    static final String SNAPSHOT_SUFFIX = ".snapshot";
+    public static final int DEFAULT_SNAPSHOT_EVERY = 32;
+    // Snapshots kept, so a node loading the older one while the newest is written still finds it
+    private static final int SNAPSHOTS_KEPT = 2;
+
+    private final PricingRuleFactory factory;
+    private final Path directory;
+    private final int snapshotEvery;
+    // Guarded by this
+    private PricingCatalogue published;
+    private int deltasSinceSnapshot;
+
+    /**
+     * Starts publishing a factory's catalogue, writing a snapshot of it first.
+     *
+     * @param factory       The factory whose changes to publish.
+     * @param directory     The directory shared with the other nodes, which is created if needed.
+     * @param snapshotEvery The number of deltas between snapshots.
+     * @throws IOException if the directory or the snapshot cannot be written.
+     * @throws IllegalArgumentException if the number of deltas between snapshots is not positive, or a rule cannot be published.
+     */
+    public CataloguePublisher(PricingRuleFactory factory, Path directory, int snapshotEvery) throws IOException {
+        this.factory = Objects.requireNonNull(factory, "Pricing rule factory cannot be null");
+        this.directory = Objects.requireNonNull(directory, "Directory cannot be null");
+        if (snapshotEvery <= 0) {
+            throw new IllegalArgumentException("Snapshot interval must be positive: " + snapshotEvery);
+        }
+        this.snapshotEvery = snapshotEvery;
+        Files.createDirectories(directory);
+        synchronized (this) {
+            published = factory.baseCatalogue();
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * Returns the catalogue version the other nodes can catch up to.
+     *
+     * @return The version of the last published catalogue.
+     */
+    public synchronized long getPublishedVersion() {
+        return published.getVersion();
+    }
+
+    /**
+     * Publishes the changes made since the last call, if there are any.
+     *
+     * @return The delta written, which is empty if nothing changed and then not written.
+     * @throws IOException if a file cannot be written.
+     * @throws IllegalArgumentException if a changed rule is not a regular or special rule.
+     */
+    public synchronized CatalogueDelta publish() throws IOException {
+        PricingCatalogue current = factory.baseCatalogue();
+        CatalogueDelta delta = CatalogueDelta.between(published, current);
+        if (delta.size() == 0) {
+            return delta;
+        }
+        Path target = deltaPath(directory, delta.getFromVersion(), delta.getToVersion());
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(temporary, delta.toBytes());
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        published = current;
+        if (++deltasSinceSnapshot >= snapshotEvery) {
+            writeSnapshot();
+        }
+        return delta;
+    }
+
+    /**
+     * Writes a snapshot of the published catalogue and deletes the files older than the oldest
+     * snapshot kept.
+     */
+    private void writeSnapshot() throws IOException {
+        CatalogueSnapshot.write(published, snapshotPath(directory, published.getVersion()));
+        deltasSinceSnapshot = 0;
+        List<Long> snapshots = snapshotVersions(directory);
+        if (snapshots.size() <= SNAPSHOTS_KEPT) {
+            return;
+        }
+        long oldestKept = snapshots.get(snapshots.size() - SNAPSHOTS_KEPT);
+        for (long version : snapshots.subList(0, snapshots.size() - SNAPSHOTS_KEPT)) {
+            deleteQuietly(snapshotPath(directory, version));
+        }
+        for (long[] versions : deltaVersions(directory)) {
+            if (versions[1] <= oldestKept) {
+                deleteQuietly(deltaPath(directory, versions[0], versions[1]));
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // A node may still have it open on some platforms; the next snapshot tries again
+        }
+    }
+
+    static Path deltaPath(Path directory, long fromVersion, long toVersion) {
+        return directory.resolve(String.format("%s%020d-%020d%s", DELTA_PREFIX, fromVersion, toVersion, DELTA_SUFFIX));
+    }
+
+    static Path snapshotPath(Path directory, long version) {
+        return directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, version, SNAPSHOT_SUFFIX));
+    }
+
+    /**
+     * Returns the from and to versions of the deltas in a directory, ordered by from version.
+     */
+    static List<long[]> deltaVersions(Path directory) throws IOException {
+        List<long[]> versions = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, DELTA_PREFIX + "*" + DELTA_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String[] range = name.substring(DELTA_PREFIX.length(), name.length() - DELTA_SUFFIX.length()).split("-");
+                versions.add(new long[]{Long.parseLong(range[0]), Long.parseLong(range[1])});
+            }
+        }
+        versions.sort((a, b) -> Long.compare(a[0], b[0]));
+        return versions;
+    }
+
+    /**
+     * Returns the versions of the snapshots in a directory, in order.
+     */
+    static List<Long> snapshotVersions(Path directory) throws IOException {
+        List<Long> versions = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                versions.add(Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(versions);
+        return versions;
+    }
+}
@@ -0,0 +1,166 @@
+package com.cdl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the catalogue of a store node up to date with the changes a {@link CataloguePublisher}
+ * writes to a shared directory.
+ * <p>
+ * {@link #poll()} applies the deltas that follow the version the node has, in order, each as one
+ * new catalogue snapshot, so lanes keep scanning throughout and each basket keeps the snapshot it
+ * started with. A node that starts up, or finds that the delta it needs next has already been
+ * deleted, loads the newest catalogue snapshot instead and carries on from there. Deltas hold the
+ * resulting rule of each SKU, so applying one twice, for example after a crash, does no harm.
+ * <p>
+ * The node's factory should only be changed through the replica, apart from scheduled rules,
+ * which each node keeps for itself.
+ */
+public final class CatalogueReplica {
+    private final PricingRuleFactory factory;
+    private final Path directory;
+    private final LongAdder failedPolls = new LongAdder();
+    // Guarded by this
+    private long version = -1;
+    private long appliedDeltas;
+    private long loadedSnapshots;
+
+    /**
+     * Creates a replica that has not read anything yet; the first {@link #poll()} loads the
+     * newest snapshot.
+     *
+     * @param factory   The factory of this node.
+     * @param directory The directory the publisher writes to.
+     */
+    public CatalogueReplica(PricingRuleFactory factory, Path directory) {
+        this.factory = Objects.requireNonNull(factory, "Pricing rule factory cannot be null");
+        this.directory = Objects.requireNonNull(directory, "Directory cannot be null");
+    }
+
+    /**
+     * Returns the version of the publisher's catalogue this node has caught up to.
+     *
+     * @return The replicated version, or -1 before anything has been read.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the number of deltas applied so far.
+     *
+     * @return The number of deltas applied.
+     */
+    public synchronized long getAppliedDeltaCount() {
+        return appliedDeltas;
+    }
+
+    /**
+     * Returns the number of times a whole snapshot was loaded because no delta followed.
+     *
+     * @return The number of snapshots loaded.
+     */
+    public synchronized long getSnapshotLoadCount() {
+        return loadedSnapshots;
+    }
+
+    /**
+     * Returns the number of periodic polls that failed. A failed poll is retried on the next one.
+     *
+     * @return The number of failed polls.
+     */
+    public long getFailedPollCount() {
+        return failedPolls.sum();
+    }
+
+    /**
+     * Catches up with the files in the directory.
+     *
+     * @return The number of deltas and snapshots applied.
+     * @throws IOException if a file cannot be read.
+     * @throws IllegalArgumentException if a file is corrupt.
+     */
+    public synchronized int poll() throws IOException {
+        int applied = 0;
+        while (true) {
+            long[] next = null;
+            boolean behind = false;
+            for (long[] delta : CataloguePublisher.deltaVersions(directory)) {
+                if (delta[0] == version) {
+                    next = delta;
+                    break;
+                }
+                behind |= delta[1] > version;
+            }
+            if (next != null) {
+                byte[] bytes;
+                try {
+                    bytes = Files.readAllBytes(CataloguePublisher.deltaPath(directory, next[0], next[1]));
+                } catch (NoSuchFileException e) {
+                    // Deleted after a newer snapshot was written, so load that instead
+                    bytes = null;
+                }
+                if (bytes != null) {
+                    CatalogueDelta delta = CatalogueDelta.fromBytes(bytes);
+                    delta.applyTo(factory);
+                    version = delta.getToVersion();
+                    appliedDeltas++;
+                    applied++;
+                    continue;
+                }
+            }
+            List<Long> snapshots = CataloguePublisher.snapshotVersions(directory);
+            long newest = snapshots.isEmpty() ? -1 : snapshots.get(snapshots.size() - 1);
+            if (newest <= version) {
+                if (behind || next != null) {
+                    throw new IOException("No delta or snapshot follows catalogue version " + version + " in " + directory);
+                }
+                return applied;
+            }
+            PricingCatalogue snapshot;
+            try {
+                snapshot = CatalogueSnapshot.load(CataloguePublisher.snapshotPath(directory, newest));
+            } catch (NoSuchFileException e) {
+                // Replaced by a newer one while listing
+                continue;
+            }
+            factory.replaceCatalogue(snapshot);
+            version = snapshot.getVersion();
+            loadedSnapshots++;
+            applied++;
+        }
+    }
+
+    /**
+     * Polls the directory periodically on an executor. Failed polls are counted and retried on
+     * the next one.
+     *
+     * @param executor The executor to poll on.
+     * @param interval The time between polls.
+     * @return The scheduled task, to cancel polling.
+     */
+    public ScheduledFuture<?> start(ScheduledExecutorService executor, Duration interval) {
+        Objects.requireNonNull(executor, "Executor cannot be null");
+        long nanos = interval.toNanos();
+        if (nanos <= 0) {
+            throw new IllegalArgumentException("Poll interval must be positive: " + interval);
+        }
+        return executor.scheduleWithFixedDelay(() -> {
+            try {
+                poll();
+            } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+                failedPolls.increment();
+            }
+        }, 0, nanos, TimeUnit.NANOSECONDS);
+    }
+}
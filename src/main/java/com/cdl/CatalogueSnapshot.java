@@ -0,0 +1,504 @@
+package com.cdl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+/**
+ * Compiles a CSV price list into a compact binary catalogue snapshot, and loads such snapshots
+ * into a {@link PricingCatalogue} at lane startup.
+ * <p>
+ * The CSV has one SKU per line: {@code sku,unitPrice} for a regular price, or
+ * {@code sku,unitPrice,specialQuantity,specialPrice} for a multi-buy deal. Blank lines, lines
+ * starting with {@code #} and a header line whose first column is {@code sku} are skipped. If a SKU is
+ * listed twice, the later line wins.
+ * <p>
+ * A snapshot is a little-endian file made of a header and five sections:
+ * <pre>
+ * header:        magic int, format version short, reserved short, catalogue version long,
+ *                rule count int, SKU count int, slot count int, reserved int,
+ *                body length long, CRC32C of the body long
+ * rules:         per distinct rule: kind byte (0 regular, 1 special), unit price unscaled long,
+ *                unit price scale byte, special quantity int, special price unscaled long,
+ *                special price scale byte
+ * rule indexes:  per SKU id: index of its rule, int, or -1 if the SKU's rule was removed
+ * name offsets:  per SKU id: offset of its name in the names section, int
+ * slots:         open-addressing hash table over the SKUs: String hash int, SKU id + 1 int
+ *                (0 for an empty slot), sized to a power of two and at most half full
+ * names:         per SKU id: UTF-8 length short, UTF-8 bytes
+ * </pre>
+ * Loading maps the file, checks the header and checksum and creates one rule object per
+ * distinct rule. SKUs are then looked up straight from the mapped hash table, so startup does
+ * no parsing and allocates nothing per SKU, and lanes on one machine share the file's pages.
+ * SKUs that share a rule also share its price tables.
+ * <p>
+ * A snapshot can also be written from a live catalogue with {@link #write(PricingCatalogue, Path)},
+ * which keeps every SKU id, so that store nodes starting from it assign the same ids.
+ */
+public final class CatalogueSnapshot {
+    static final int MAGIC = 0x534C4443; // "CDLS" in little-endian byte order
+    static final short FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 48;
+    static final int RULE_BYTES = 23;
+    private static final int SLOT_BYTES = 8;
+    private static final byte REGULAR = 0;
+    private static final byte SPECIAL = 1;
+
+    private CatalogueSnapshot() {
+    }
+
+    /**
+     * Compiles a CSV price list into a snapshot file, replacing the file if it exists.
+     *
+     * @param csv      The CSV price list.
+     * @param snapshot The snapshot file to write.
+     * @param version  The catalogue version to record in the snapshot.
+     * @return The number of SKUs written.
+     * @throws IOException if a file cannot be read or written.
+     * @throws IllegalArgumentException if a line is malformed or describes an invalid rule.
+     */
+    public static int compile(Path csv, Path snapshot, long version) throws IOException {
+        Map<RuleKey, Integer> ruleIndexes = new HashMap<>();
+        List<RuleKey> rules = new ArrayList<>();
+        Map<String, Integer> skus = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = trimmed.split(",", -1);
+                if (lineNumber == 1 && fields[0].trim().equalsIgnoreCase("sku")) {
+                    continue;
+                }
+                RuleKey rule;
+                String sku;
+                try {
+                    rule = RuleKey.parse(fields);
+                    sku = PricingRuleFactory.normalizeSku(fields[0]);
+                } catch (IllegalArgumentException | ArithmeticException e) {
+                    throw new IllegalArgumentException("Malformed catalogue line " + lineNumber + ": " + line, e);
+                }
+                if (sku.getBytes(StandardCharsets.UTF_8).length > Short.MAX_VALUE) {
+                    throw new IllegalArgumentException("SKU too long on catalogue line " + lineNumber);
+                }
+                Integer ruleIndex = ruleIndexes.get(rule);
+                if (ruleIndex == null) {
+                    ruleIndex = rules.size();
+                    ruleIndexes.put(rule, ruleIndex);
+                    rules.add(rule);
+                }
+                // A repeated SKU keeps its first position and takes the later rule
+                skus.put(sku, ruleIndex);
+            }
+        }
+        write(snapshot, version, rules, skus);
+        return skus.size();
+    }
+
+    /**
+     * Writes a catalogue into a snapshot file, replacing the file if it exists. Every SKU keeps
+     * its id, including SKUs whose rules were removed.
+     *
+     * @param catalogue The catalogue to write.
+     * @param snapshot  The snapshot file to write.
+     * @return The number of SKUs written.
+     * @throws IOException if the file cannot be written.
+     * @throws IllegalArgumentException if a rule is not a regular or special rule, or a price cannot be encoded.
+     */
+    public static int write(PricingCatalogue catalogue, Path snapshot) throws IOException {
+        Map<RuleKey, Integer> ruleIndexes = new HashMap<>();
+        List<RuleKey> rules = new ArrayList<>();
+        Map<String, Integer> skus = new LinkedHashMap<>((int) (catalogue.size() / 0.75f) + 1);
+        for (int skuId = 0; skuId < catalogue.size(); skuId++) {
+            PricingRule rule = catalogue.getPricingRule(skuId);
+            Integer ruleIndex = -1;
+            if (rule != null) {
+                RuleKey key = RuleKey.of(rule);
+                ruleIndex = ruleIndexes.get(key);
+                if (ruleIndex == null) {
+                    ruleIndex = rules.size();
+                    ruleIndexes.put(key, ruleIndex);
+                    rules.add(key);
+                }
+            }
+            skus.put(catalogue.getSku(skuId), ruleIndex);
+        }
+        write(snapshot, catalogue.getVersion(), rules, skus);
+        return skus.size();
+    }
+
+    private static int hash(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static void write(Path snapshot, long version, List<RuleKey> rules, Map<String, Integer> skus) throws IOException {
+        int count = skus.size();
+        int[] skuRules = new int[count];
+        byte[][] names = new byte[count][];
+        int[] slotHashes = new int[Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1];
+        int[] slotIds = new int[slotHashes.length];
+        int mask = slotIds.length - 1;
+        int skuId = 0;
+        for (Map.Entry<String, Integer> entry : skus.entrySet()) {
+            skuRules[skuId] = entry.getValue();
+            names[skuId] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            int h = entry.getKey().hashCode();
+            int slot = hash(h) & mask;
+            while (slotIds[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slotHashes[slot] = h;
+            slotIds[slot] = skuId + 1;
+            skuId++;
+        }
+
+        Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            SectionWriter out = new SectionWriter(channel);
+            for (RuleKey rule : rules) {
+                rule.writeTo(out.reserve(RULE_BYTES));
+            }
+            for (int ruleIndex : skuRules) {
+                out.reserve(Integer.BYTES).putInt(ruleIndex);
+            }
+            int nameOffset = 0;
+            for (byte[] name : names) {
+                out.reserve(Integer.BYTES).putInt(nameOffset);
+                nameOffset = Math.addExact(nameOffset, Short.BYTES + name.length);
+            }
+            for (int slot = 0; slot < slotIds.length; slot++) {
+                out.reserve(SLOT_BYTES).putInt(slotHashes[slot]).putInt(slotIds[slot]);
+            }
+            for (byte[] name : names) {
+                out.reserve(Short.BYTES + name.length).putShort((short) name.length).put(name);
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putShort(FORMAT_VERSION).putShort((short) 0).putLong(version)
+                    .putInt(rules.size()).putInt(count).putInt(slotIds.length).putInt(0)
+                    .putLong(out.length).putLong(out.crc.getValue());
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        // Lanes never see a half-written snapshot
+        Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Buffers the body of a snapshot after the header, checksumming it as it is written.
+     */
+    private static final class SectionWriter {
+        private final FileChannel channel;
+        // Larger than the longest possible name record
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32C crc = new CRC32C();
+        private long length;
+
+        SectionWriter(FileChannel channel) throws IOException {
+            this.channel = channel;
+            channel.position(HEADER_BYTES);
+        }
+
+        ByteBuffer reserve(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            return buffer;
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            length += buffer.remaining();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Loads a snapshot file into a catalogue with the version recorded in the snapshot.
+     * Pass the result to {@link PricingRuleFactory#PricingRuleFactory(PricingCatalogue)} to
+     * start a lane from it. The catalogue reads the mapped file for as long as it is in use;
+     * the first change made to it through a factory copies it onto the heap.
+     *
+     * @param snapshot The snapshot file.
+     * @return The catalogue.
+     * @throws IOException if the file cannot be read, is not a snapshot, or fails its checksum.
+     */
+    public static PricingCatalogue load(Path snapshot) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                throw new IOException("Not a catalogue snapshot: " + snapshot);
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Catalogue snapshot too large to map: " + snapshot);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a catalogue snapshot: " + snapshot);
+        }
+        short formatVersion = buffer.getShort(4);
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported catalogue snapshot format " + formatVersion + ": " + snapshot);
+        }
+        long version = buffer.getLong(8);
+        int ruleCount = buffer.getInt(16);
+        int skuCount = buffer.getInt(20);
+        int slotCount = buffer.getInt(24);
+        long bodyLength = buffer.getLong(32);
+        long checksum = buffer.getLong(40);
+        long fixedLength = (long) ruleCount * RULE_BYTES + (long) skuCount * 2 * Integer.BYTES + (long) slotCount * SLOT_BYTES;
+        if (ruleCount < 0 || skuCount < 0 || Integer.bitCount(slotCount) != 1 || slotCount < skuCount
+                || bodyLength != buffer.capacity() - HEADER_BYTES || fixedLength > bodyLength) {
+            throw new IOException("Truncated catalogue snapshot: " + snapshot);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(HEADER_BYTES));
+        if (crc.getValue() != checksum) {
+            throw new IOException("Catalogue snapshot checksum mismatch: " + snapshot);
+        }
+
+        try {
+            PricingRule[] rules = new PricingRule[ruleCount];
+            ByteBuffer rulesSection = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).position(HEADER_BYTES);
+            for (int i = 0; i < ruleCount; i++) {
+                rules[i] = RuleKey.readFrom(rulesSection).toRule();
+            }
+            return PricingCatalogue.of(version, new MappedStorage(buffer, rules, skuCount, slotCount));
+        } catch (RuntimeException e) {
+            // The checksum matched, so the writer produced something this reader cannot accept
+            throw new IOException("Invalid catalogue snapshot: " + snapshot, e);
+        }
+    }
+
+    /**
+     * Catalogue storage read straight from a mapped snapshot. Only absolute reads are used, so
+     * one buffer is safely shared by every thread.
+     */
+    private static final class MappedStorage implements PricingCatalogue.Storage {
+        private final ByteBuffer buffer;
+        private final PricingRule[] rules;
+        private final int size;
+        private final int ruleIndexes;
+        private final int nameOffsets;
+        private final int slots;
+        private final int slotMask;
+        private final int names;
+
+        MappedStorage(ByteBuffer buffer, PricingRule[] rules, int size, int slotCount) {
+            this.buffer = buffer;
+            this.rules = rules;
+            this.size = size;
+            this.ruleIndexes = HEADER_BYTES + rules.length * RULE_BYTES;
+            this.nameOffsets = ruleIndexes + size * Integer.BYTES;
+            this.slots = nameOffsets + size * Integer.BYTES;
+            this.slotMask = slotCount - 1;
+            this.names = slots + slotCount * SLOT_BYTES;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int find(String sku) {
+            int h = sku.hashCode();
+            for (int slot = hash(h) & slotMask; ; slot = (slot + 1) & slotMask) {
+                int position = slots + slot * SLOT_BYTES;
+                int skuId = buffer.getInt(position + Integer.BYTES) - 1;
+                if (skuId < 0) {
+                    return -1;
+                }
+                if (buffer.getInt(position) == h && matches(skuId, sku)) {
+                    return skuId;
+                }
+            }
+        }
+
+        /**
+         * Compares a SKU's stored name with a string, without decoding it unless it is non-ASCII.
+         */
+        private boolean matches(int skuId, String sku) {
+            int position = names + buffer.getInt(nameOffsets + skuId * Integer.BYTES);
+            int length = buffer.getShort(position) & 0xFFFF;
+            for (int i = 0; i < length; i++) {
+                byte b = buffer.get(position + Short.BYTES + i);
+                if (b < 0) {
+                    return sku(skuId).equals(sku);
+                }
+                if (i >= sku.length() || b != sku.charAt(i)) {
+                    return false;
+                }
+            }
+            return length == sku.length();
+        }
+
+        @Override
+        public String sku(int skuId) {
+            Objects.checkIndex(skuId, size);
+            int position = names + buffer.getInt(nameOffsets + skuId * Integer.BYTES);
+            byte[] name = new byte[buffer.getShort(position) & 0xFFFF];
+            buffer.get(position + Short.BYTES, name);
+            return new String(name, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public PricingRule rule(int skuId) {
+            Objects.checkIndex(skuId, size);
+            int ruleIndex = buffer.getInt(ruleIndexes + skuId * Integer.BYTES);
+            return ruleIndex < 0 ? null : rules[ruleIndex];
+        }
+    }
+
+    /**
+     * Compiles a CSV price list into a snapshot:
+     * {@code java com.cdl.CatalogueSnapshot prices.csv catalogue.snapshot [version]}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: CatalogueSnapshot <prices.csv> <catalogue.snapshot> [version]");
+            System.exit(2);
+        }
+        long version = args.length == 3 ? Long.parseLong(args[2]) : 1;
+        long start = System.nanoTime();
+        int count = compile(Path.of(args[0]), Path.of(args[1]), version);
+        System.out.printf("Compiled %d SKUs into %s in %d ms%n", count, args[1], (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * The parameters of one distinct rule, as read from the CSV or the snapshot, or taken from a
+     * regular or special rule.
+     */
+    static final class RuleKey {
+        private final BigDecimal unitPrice;
+        private final int specialQuantity;
+        // Null for a regular rule
+        private final BigDecimal specialPrice;
+
+        private RuleKey(BigDecimal unitPrice, int specialQuantity, BigDecimal specialPrice) {
+            this.unitPrice = unitPrice;
+            this.specialQuantity = specialQuantity;
+            this.specialPrice = specialPrice;
+        }
+
+        /**
+         * Returns the parameters of a regular or special rule.
+         *
+         * @throws IllegalArgumentException if the rule is of another type or a price cannot be encoded.
+         */
+        static RuleKey of(PricingRule rule) {
+            RuleKey key;
+            if (rule.getClass() == RegularPricingRule.class) {
+                key = new RuleKey(((RegularPricingRule) rule).getUnitPrice(), 0, null);
+            } else if (rule.getClass() == SpecialPricingRule.class) {
+                SpecialPricingRule special = (SpecialPricingRule) rule;
+                key = new RuleKey(special.getUnitPrice(), special.getSpecialQuantity(), special.getSpecialPrice());
+            } else {
+                throw new IllegalArgumentException("Only regular and special rules can be stored: " + rule.getClass().getSimpleName());
+            }
+            try {
+                checkEncodable(key.unitPrice);
+                if (key.specialPrice != null) {
+                    checkEncodable(key.specialPrice);
+                }
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("Price cannot be stored: " + key.unitPrice, e);
+            }
+            return key;
+        }
+
+        static RuleKey parse(String[] fields) {
+            if (fields.length != 2 && fields.length != 4) {
+                throw new IllegalArgumentException("Expected 2 or 4 fields but found " + fields.length);
+            }
+            // A regular rule may leave the deal columns empty
+            boolean special = fields.length == 4 && !(fields[2].isBlank() && fields[3].isBlank());
+            RuleKey rule = special
+                    ? new RuleKey(new BigDecimal(fields[1].trim()), Integer.parseInt(fields[2].trim()), new BigDecimal(fields[3].trim()))
+                    : new RuleKey(new BigDecimal(fields[1].trim()), 0, null);
+            // Validates the parameters the same way the lane will
+            rule.toRule();
+            checkEncodable(rule.unitPrice);
+            if (special) {
+                checkEncodable(rule.specialPrice);
+            }
+            return rule;
+        }
+
+        private static void checkEncodable(BigDecimal price) {
+            price.unscaledValue().longValueExact();
+            if (price.scale() != (byte) price.scale()) {
+                throw new IllegalArgumentException("Price scale out of range: " + price);
+            }
+        }
+
+        PricingRule toRule() {
+            return specialPrice == null
+                    ? new RegularPricingRule(unitPrice)
+                    : new SpecialPricingRule(unitPrice, specialQuantity, specialPrice);
+        }
+
+        void writeTo(ByteBuffer buffer) {
+            BigDecimal special = specialPrice == null ? BigDecimal.ZERO : specialPrice;
+            buffer.put(specialPrice == null ? REGULAR : SPECIAL)
+                    .putLong(unitPrice.unscaledValue().longValueExact()).put((byte) unitPrice.scale())
+                    .putInt(specialQuantity)
+                    .putLong(special.unscaledValue().longValueExact()).put((byte) special.scale());
+        }
+
+        static RuleKey readFrom(ByteBuffer buffer) {
+            byte kind = buffer.get();
+            BigDecimal unitPrice = BigDecimal.valueOf(buffer.getLong(), buffer.get());
+            int specialQuantity = buffer.getInt();
+            BigDecimal specialPrice = BigDecimal.valueOf(buffer.getLong(), buffer.get());
+            if (kind != REGULAR && kind != SPECIAL) {
+                throw new IllegalArgumentException("Unknown rule kind " + kind);
+            }
+            return new RuleKey(unitPrice, specialQuantity, kind == SPECIAL ? specialPrice : null);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RuleKey)) {
+                return false;
+            }
+            RuleKey other = (RuleKey) o;
+            return unitPrice.equals(other.unitPrice) && specialQuantity == other.specialQuantity
+                    && Objects.equals(specialPrice, other.specialPrice);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(unitPrice, specialQuantity, specialPrice);
+        }
+    }
+}
@@ -2,21 +2,105 @@ package com.cdl;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * Manages the checkout process and calculates totals.
  * This class is responsible for scanning items, maintaining a cart,
  * and calculating the total price based on pricing rules.
+ * <p>
+ * The price of each cart line is cached together with a running total, so a scan
+ * only reprices the line it touched and reading the total does not walk the cart.
+ * Line prices and the running total are held in minor units (pence/cents); BigDecimal
+ * is only used when the total is returned for display.
+ * <p>
+ * A scanned SKU is normalized and resolved to its dense id once, at the input edge;
+ * the cart itself is keyed by that id and does no string work or boxing.
+ * <p>
+ * The first accepted scan of a basket pins the current {@link PricingCatalogue} snapshot, and
+ * the whole basket is priced against it even if the catalogue changes before the basket is
+ * finished.
+ * A Checkout is used by one lane at a time and is not thread-safe.
+ * <p>
+ * A checkout can be priced for a {@link PriceTier}, such as loyalty members or staff: each rule
+ * is looked up in the tier's {@link PriceOverlay} first, pinned with the catalogue snapshot,
+ * and then in the catalogue. A {@link PromotionEngine} prices bundles with the same rules.
+ * <p>
+ * Scan and total latencies, rule lookups and rule evaluations are recorded in a
+ * {@link CheckoutMetrics}, by default the shared one, whenever it is enabled. A checkout can
+ * also record every change to its basket in a {@link CartJournal}, so the basket survives a crash.
  */
 public class Checkout {
-    private final Map<String, Integer> cart = new HashMap<>();
+    /**
+     * System property that enables checking the running total against a full recompute.
+     */
+    public static final String VERIFY_TOTALS_PROPERTY = "checkout.verifyTotals";
+
+    private final Cart cart = new Cart();
+    private long runningTotal;
 
     private PricingRuleFactory pricingRuleFactory;
+    // Snapshot the current basket is priced against, or null until the basket's first accepted scan
+    private PricingCatalogue catalogue;
+    // Null when no tier is set
+    private PriceTier priceTier;
+    // Overlay of the tier pinned with the catalogue, or null if the basket has none
+    private PriceOverlay overlay;
+    private final boolean verifyTotals;
+    private final CheckoutMetrics metrics;
+    // Null if the basket is not journaled
+    private final CartJournal journal;
+    private final long lane;
 
     public Checkout(PricingRuleFactory pricingRuleFactory) {
+        this(pricingRuleFactory, Boolean.getBoolean(VERIFY_TOTALS_PROPERTY));
+    }
+
+    /**
+     * Creates a checkout, optionally in debug mode.
+     *
+     * @param pricingRuleFactory The factory providing the pricing rules.
+     * @param verifyTotals       If true, every total is checked against a full recompute of the cart.
+     */
+    public Checkout(PricingRuleFactory pricingRuleFactory, boolean verifyTotals) {
+        this(pricingRuleFactory, verifyTotals, CheckoutMetrics.global());
+    }
+
+    /**
+     * Creates a checkout that records into the given metrics.
+     *
+     * @param pricingRuleFactory The factory providing the pricing rules.
+     * @param verifyTotals       If true, every total is checked against a full recompute of the cart.
+     * @param metrics            The metrics to record into.
+     * @throws NullPointerException if the metrics are null.
+     */
+    public Checkout(PricingRuleFactory pricingRuleFactory, boolean verifyTotals, CheckoutMetrics metrics) {
+        this(pricingRuleFactory, verifyTotals, metrics, null, 0);
+    }
+
+    /**
+     * Creates a checkout that records every change to its basket in a journal.
+     *
+     * @param pricingRuleFactory The factory providing the pricing rules.
+     * @param journal            The journal to record changes in.
+     * @param lane               The id the basket is recorded under, unique among the journal's lanes.
+     * @throws NullPointerException if the journal is null.
+     */
+    public Checkout(PricingRuleFactory pricingRuleFactory, CartJournal journal, long lane) {
+        this(pricingRuleFactory, Boolean.getBoolean(VERIFY_TOTALS_PROPERTY), CheckoutMetrics.global(),
+                Objects.requireNonNull(journal, "Journal cannot be null"), lane);
+    }
+
+    private Checkout(PricingRuleFactory pricingRuleFactory, boolean verifyTotals, CheckoutMetrics metrics,
+                     CartJournal journal, long lane) {
         this.pricingRuleFactory = pricingRuleFactory;
+        this.verifyTotals = verifyTotals;
+        this.metrics = Objects.requireNonNull(metrics, "Metrics cannot be null");
+        this.journal = journal;
+        this.lane = lane;
     }
 
     /**
@@ -27,42 +111,473 @@ public class Checkout {
      * @throws IllegalArgumentException if the SKU is empty or invalid.
      */
     public void scan(String sku) {
-        if (sku == null) {
-            throw new NullPointerException("SKU cannot be null");
+        boolean timed = metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        PricingCatalogue current = lookupCatalogue();
+        int skuId = resolve(current, sku);
+        accept(current);
+        addQuantity(skuId, 1);
+        if (timed) {
+            metrics.recordScan(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Scans several units of the same item, validating and looking up the SKU once.
+     *
+     * @param sku      The stock keeping unit (SKU) of the item to scan.
+     * @param quantity The number of units to add, at least 1.
+     * @throws NullPointerException if the SKU is null.
+     * @throws IllegalArgumentException if the SKU is empty or invalid, or the quantity is not positive.
+     */
+    public void scan(String sku, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        boolean timed = metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        PricingCatalogue current = lookupCatalogue();
+        int skuId = resolve(current, sku);
+        accept(current);
+        addQuantity(skuId, quantity);
+        if (timed) {
+            metrics.recordScan(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Scans an EAN-13 or UPC-A barcode straight from the bytes the scanner sent, without
+     * creating a String. The check digit is verified, and the barcode is resolved through the
+     * pinned catalogue's barcode index. For a variable measure barcode, the weight or price
+     * embedded in it is added as the quantity of its item, so such items are priced per gram or
+     * per minor unit.
+     *
+     * @param bytes The bytes received from the scanner.
+     * @param from  The index of the first digit.
+     * @param to    The index after the last digit, excluding any line terminator.
+     * @throws IllegalArgumentException if the bytes are not a valid barcode or the barcode is not in the catalogue.
+     */
+    public void scanBarcode(byte[] bytes, int from, int to) {
+        boolean timed = metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        addBarcode(Barcodes.decode(bytes, from, to));
+        if (timed) {
+            metrics.recordScan(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Scans an EAN-13 or UPC-A barcode straight from a buffer, which may be a direct buffer
+     * filled by the scanner's channel. The buffer's position is not changed.
+     *
+     * @param buffer The bytes received from the scanner.
+     * @param from   The index of the first digit.
+     * @param to     The index after the last digit, excluding any line terminator.
+     * @throws IllegalArgumentException if the bytes are not a valid barcode or the barcode is not in the catalogue.
+     * @see #scanBarcode(byte[], int, int)
+     */
+    public void scanBarcode(ByteBuffer buffer, int from, int to) {
+        boolean timed = metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        addBarcode(Barcodes.decode(buffer, from, to));
+        if (timed) {
+            metrics.recordScan(System.nanoTime() - start);
+        }
+    }
+
+    private void addBarcode(long barcode) {
+        if (barcode < 0) {
+            if (metrics.isEnabled()) {
+                metrics.recordInvalidSku();
+            }
+            throw new IllegalArgumentException("Invalid barcode");
+        }
+        PricingCatalogue current = lookupCatalogue();
+        long resolved = current.resolveBarcode(barcode);
+        if (resolved < 0) {
+            if (metrics.isEnabled()) {
+                metrics.recordLookupMiss();
+                metrics.recordInvalidSku();
+            }
+            throw new IllegalArgumentException(String.format("Unknown barcode: %013d", barcode));
+        }
+        if (metrics.isEnabled()) {
+            metrics.recordLookupHit();
+        }
+        accept(current);
+        addQuantity((int) (resolved >>> 32), (int) resolved);
+    }
+
+    /**
+     * Scans a batch of items. Each distinct SKU is validated and looked up once and each
+     * affected line is repriced once. If any SKU is invalid, nothing is added to the cart.
+     *
+     * @param skus The SKUs to scan, one entry per unit.
+     * @throws NullPointerException if the batch or any SKU in it is null.
+     * @throws IllegalArgumentException if any SKU is empty or invalid.
+     */
+    public void scanAll(Iterable<String> skus) {
+        Map<String, int[]> counts = new LinkedHashMap<>();
+        for (String sku : skus) {
+            counts.computeIfAbsent(sku, key -> new int[1])[0]++;
+        }
+        PricingCatalogue current = lookupCatalogue();
+        int[] skuIds = new int[counts.size()];
+        int index = 0;
+        for (String sku : counts.keySet()) {
+            skuIds[index++] = resolve(current, sku);
+        }
+        accept(current);
+        index = 0;
+        for (int[] count : counts.values()) {
+            addQuantity(skuIds[index++], count[0]);
+        }
+    }
+
+    /**
+     * Scans a basket in compact form, where every character is a single-character SKU and may be
+     * preceded by a unit count, so "AAABBD" and "3A2BD" describe the same basket. Whitespace is
+     * ignored. If any SKU is invalid, nothing is added to the cart.
+     *
+     * @param basket The compact basket encoding.
+     * @throws NullPointerException if the basket is null.
+     * @throws IllegalArgumentException if the encoding is malformed or any SKU is invalid.
+     */
+    public void scanBasket(CharSequence basket) {
+        int[] counts = new int[128];
+        char[] order = new char[128];
+        int distinct = 0;
+        // Unit count for the next SKU, or -1 if none was given
+        int count = -1;
+        for (int i = 0; i < basket.length(); i++) {
+            char c = basket.charAt(i);
+            if (c >= '0' && c <= '9') {
+                count = Math.addExact(Math.multiplyExact(Math.max(count, 0), 10), c - '0');
+            } else if (Character.isWhitespace(c)) {
+                if (count >= 0) {
+                    throw new IllegalArgumentException("Unit count must be followed by a SKU: " + basket);
+                }
+            } else if (c < counts.length) {
+                if (count == 0) {
+                    throw new IllegalArgumentException("Unit count must be positive: " + basket);
+                }
+                if (counts[c] == 0) {
+                    order[distinct++] = c;
+                }
+                counts[c] = Math.addExact(counts[c], count < 0 ? 1 : count);
+                count = -1;
+            } else {
+                throw new IllegalArgumentException("Invalid SKU: " + c);
+            }
+        }
+        if (count >= 0) {
+            throw new IllegalArgumentException("Unit count must be followed by a SKU: " + basket);
+        }
+        PricingCatalogue current = lookupCatalogue();
+        int[] skuIds = new int[distinct];
+        for (int i = 0; i < distinct; i++) {
+            skuIds[i] = resolve(current, String.valueOf(order[i]));
+        }
+        accept(current);
+        for (int i = 0; i < distinct; i++) {
+            addQuantity(skuIds[i], counts[order[i]]);
         }
-        if (sku.trim().isEmpty()) {
-            throw new IllegalArgumentException("SKU cannot be empty");
+    }
+
+    /**
+     * Removes a single unit of an item from the cart.
+     *
+     * @param sku The stock keeping unit (SKU) of the item to remove.
+     * @throws NullPointerException if the SKU is null.
+     * @throws IllegalArgumentException if the SKU is empty or invalid, or the item is not in the cart.
+     */
+    public void unscan(String sku) {
+        int line = findLine(sku);
+        updateLine(line, cart.quantity(line) - 1);
+    }
+
+    /**
+     * Voids a whole cart line, removing every unit of the item.
+     *
+     * @param sku The stock keeping unit (SKU) of the line to void.
+     * @return The number of units removed.
+     * @throws NullPointerException if the SKU is null.
+     * @throws IllegalArgumentException if the SKU is empty or invalid, or the item is not in the cart.
+     */
+    public int voidLine(String sku) {
+        int line = findLine(sku);
+        int quantity = cart.quantity(line);
+        updateLine(line, 0);
+        return quantity;
+    }
+
+    /**
+     * Returns the catalogue snapshot to look SKUs up in: the pinned one, or the latest one for a
+     * basket that has not started. Nothing is pinned, so a rejected scan leaves a new basket free
+     * to start on a later snapshot.
+     */
+    private PricingCatalogue lookupCatalogue() {
+        PricingCatalogue current = catalogue;
+        return current != null ? current : pricingRuleFactory.getCatalogue();
+    }
+
+    /**
+     * Pins the snapshot an accepted scan was resolved against, if the basket has not started yet.
+     */
+    private void accept(PricingCatalogue current) {
+        if (catalogue == null) {
+            catalogue = current;
+            overlay = overlayOf(priceTier);
         }
-        if (!pricingRuleFactory.hasRule(sku)) {
+    }
+
+    /**
+     * Validates and trims a SKU once and resolves it against a catalogue snapshot;
+     * the cart only ever sees the id.
+     */
+    private int resolve(PricingCatalogue current, String sku) {
+        int skuId;
+        try {
+            skuId = current.getSkuId(sku);
+        } catch (IllegalArgumentException e) {
+            if (metrics.isEnabled()) {
+                metrics.recordInvalidSku();
+            }
+            throw e;
+        }
+        if (skuId < 0) {
+            if (metrics.isEnabled()) {
+                metrics.recordLookupMiss();
+                metrics.recordInvalidSku();
+            }
             throw new IllegalArgumentException("Invalid SKU: " + sku);
         }
+        if (metrics.isEnabled()) {
+            metrics.recordLookupHit();
+        }
+        return skuId;
+    }
+
+    private int findLine(String sku) {
+        int line = cart.find(resolve(lookupCatalogue(), sku));
+        if (line < 0 || cart.quantity(line) == 0) {
+            throw new IllegalArgumentException("Item not in cart: " + sku);
+        }
+        return line;
+    }
+
+    /**
+     * Adds units of an already resolved SKU to the cart and reprices its line.
+     *
+     * @param skuId    The dense id of the SKU in the pinned catalogue.
+     * @param quantity The number of units to add.
+     */
+    void addQuantity(int skuId, int quantity) {
         // Add the item to the cart or increment its quantity if already present
-        cart.put(sku, cart.getOrDefault(sku, 0) + 1);
+        int line = cart.lineFor(skuId);
+        updateLine(line, Math.addExact(cart.quantity(line), quantity));
+    }
+
+    /**
+     * Sets the quantity of a single cart line, reprices it and applies the difference to the
+     * running total. A line whose quantity drops to zero stays in the cart with a zero price.
+     */
+    private void updateLine(int line, int quantity) {
+        PricingRule rule = pricingRule(cart.skuId(line));
+        long linePrice = rule.calculatePriceMinor(quantity);
+        if (metrics.isEnabled()) {
+            metrics.recordEvaluation(rule);
+        }
+        // Computed before journaling, so a change that overflows is neither journaled nor applied
+        long total = Math.addExact(runningTotal, Math.subtractExact(linePrice, cart.linePrice(line)));
+        if (journal != null) {
+            int previous = cart.quantity(line);
+            byte type = quantity > previous ? CartJournal.SCAN : quantity == 0 ? CartJournal.VOID : CartJournal.UNSCAN;
+            int skuId = cart.skuId(line);
+            journal.recordLine(type, lane, catalogue.getVersion(), skuId, catalogue.getSku(skuId).hashCode(), quantity);
+        }
+        runningTotal = total;
+        cart.setQuantity(line, quantity);
+        cart.setLinePrice(line, linePrice);
     }
 
     /**
      * Calculates the total price of all items in the cart.
      *
      * @return The total price as a BigDecimal, rounded to 2 decimal places.
+     * @throws IllegalStateException in debug mode, if the running total differs from a full recompute.
      */
     public BigDecimal calculateTotal() {
+        boolean timed = metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        BigDecimal total = Money.fromMinorUnits(calculateTotalMinor());
+        if (verifyTotals) {
+            BigDecimal expected = recalculateTotal();
+            if (!expected.equals(total)) {
+                throw new IllegalStateException("Running total " + total + " does not match recomputed total " + expected);
+            }
+        }
+        if (timed) {
+            metrics.recordTotal(System.nanoTime() - start);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the total price of all items in the cart in minor units (pence/cents).
+     *
+     * @return The total price in minor units.
+     */
+    public long calculateTotalMinor() {
+        return runningTotal;
+    }
+
+    /**
+     * Recalculates the total from scratch by repricing every line in the cart with the
+     * BigDecimal pricing path.
+     *
+     * @return The total price as a BigDecimal, rounded to 2 decimal places.
+     */
+    BigDecimal recalculateTotal() {
         BigDecimal total = BigDecimal.ZERO;
-        for (Map.Entry<String, Integer> entry : cart.entrySet()) {
-            String sku = entry.getKey();
-            int quantity = entry.getValue();
-            PricingRule rule = pricingRuleFactory.getPricingRule(sku);
-            total = total.add(rule.calculatePrice(quantity));
+        for (int line = 0; line < cart.lineCount(); line++) {
+            PricingRule rule = pricingRule(cart.skuId(line));
+            total = total.add(rule.calculatePrice(cart.quantity(line)));
         }
         // Round to 2 decimal places
         return total.setScale(2, RoundingMode.HALF_UP);
     }
 
     public void clear() {
+        if (journal != null) {
+            journal.recordClear(lane);
+        }
         cart.clear();
+        runningTotal = 0;
+        catalogue = null;
+        overlay = null;
+    }
+
+    /**
+     * Prices this checkout for a customer tier, or at regular prices with null. The tier stays
+     * set for later baskets until it is changed. If a basket is in progress, it is repriced at
+     * once with the tier's current prices, as when a loyalty card is scanned after the items.
+     * The tier is not recorded in a {@link CartJournal}, so set it again on a recovered basket.
+     *
+     * @param priceTier The tier, or null for regular prices.
+     * @throws IllegalArgumentException if the tier overrides a different pricing rule factory.
+     */
+    public void setPriceTier(PriceTier priceTier) {
+        if (priceTier != null && priceTier.getBase() != pricingRuleFactory) {
+            throw new IllegalArgumentException("Price tier " + priceTier.getName() + " is for a different catalogue");
+        }
+        this.priceTier = priceTier;
+        if (catalogue != null) {
+            overlay = overlayOf(priceTier);
+            repriceLines();
+        }
+    }
+
+    /**
+     * Returns the tier this checkout is priced for.
+     *
+     * @return The tier, or null for regular prices.
+     */
+    public PriceTier getPriceTier() {
+        return priceTier;
+    }
+
+    private static PriceOverlay overlayOf(PriceTier priceTier) {
+        PriceOverlay tierOverlay = priceTier == null ? null : priceTier.getOverlay();
+        // A basket without overrides skips the extra probe
+        return tierOverlay == null || tierOverlay.size() == 0 ? null : tierOverlay;
+    }
+
+    private void repriceLines() {
+        long total = 0;
+        for (int line = 0; line < cart.lineCount(); line++) {
+            int quantity = cart.quantity(line);
+            if (quantity != 0) {
+                long linePrice = pricingRule(cart.skuId(line)).calculatePriceMinor(quantity);
+                cart.setLinePrice(line, linePrice);
+                total = Math.addExact(total, linePrice);
+            }
+        }
+        runningTotal = total;
+    }
+
+    /**
+     * Returns the rule the current basket is priced with for a SKU: the pinned overlay's rule
+     * if it has one, otherwise the pinned catalogue's.
+     */
+    PricingRule pricingRule(int skuId) {
+        if (overlay != null) {
+            PricingRule rule = overlay.getPricingRule(skuId);
+            if (rule != null) {
+                return rule;
+            }
+        }
+        return catalogue().getPricingRule(skuId);
+    }
+
+    /**
+     * Returns the catalogue snapshot the current basket is priced against, pinning the
+     * latest snapshot if the basket has not started yet.
+     */
+    PricingCatalogue catalogue() {
+        if (catalogue == null) {
+            catalogue = pricingRuleFactory.getCatalogue();
+            overlay = overlayOf(priceTier);
+        }
+        return catalogue;
+    }
+
+    /**
+     * Returns the tier overlay the current basket is priced with.
+     *
+     * @return The pinned overlay, or null if the basket has none.
+     */
+    PriceOverlay overlay() {
+        return overlay;
+    }
+
+    /**
+     * Starts the basket on a given catalogue snapshot instead of the latest one, so that a basket
+     * restored from a compact encoding is priced exactly as before. The tier's current overlay
+     * is pinned with it.
+     *
+     * @throws IllegalStateException if the basket has already started.
+     */
+    void pin(PricingCatalogue catalogue) {
+        pin(catalogue, overlayOf(priceTier));
+    }
+
+    /**
+     * Starts the basket on a given catalogue snapshot and tier overlay.
+     *
+     * @param overlay The overlay, or null for the catalogue's prices alone.
+     * @throws IllegalStateException if the basket has already started.
+     */
+    void pin(PricingCatalogue catalogue, PriceOverlay overlay) {
+        if (this.catalogue != null || cart.lineCount() != 0) {
+            throw new IllegalStateException("Basket has already started");
+        }
+        this.catalogue = catalogue;
+        this.overlay = overlay;
+    }
+
+    /**
+     * Returns the lines of the current basket, for pricing engines and reports in this package.
+     * Lines whose quantity dropped to zero are included.
+     */
+    Cart lines() {
+        return cart;
     }
 
     // For testing purpose
     int getQuantity(String sku) {
-        return cart.getOrDefault(sku, 0);
+        int skuId = (catalogue != null ? catalogue : pricingRuleFactory.getCatalogue()).getSkuId(sku);
+        int line = skuId < 0 ? -1 : cart.find(skuId);
+        return line < 0 ? 0 : cart.quantity(line);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,292 @@
+package com.cdl;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Counters and latency histograms for the checkout lanes: how long scans, total calculations
+ * and console output take, how rule lookups resolve, and which rule types do the pricing.
+ * <p>
+ * Counters are {@link LongAdder}s and latencies go to {@link LatencyHistogram}s, so lanes
+ * recording at the same time never lock and the hot path never allocates. Every recording
+ * site first checks {@link #isEnabled()}, a single volatile read, so switching the metrics
+ * off at runtime leaves only that check on the hot path; no clock is read while disabled.
+ * <p>
+ * Metrics can be read through JMX after {@link #registerMBean(String)}, or written out as a
+ * text snapshot with {@link #snapshot()} and {@link #scheduleDump}.
+ */
+public final class CheckoutMetrics implements CheckoutMetricsMXBean {
+    /**
+     * System property that enables the shared metrics at startup.
+     */
+    public static final String ENABLED_PROPERTY = "checkout.metrics";
+
+    /**
+     * JMX object name of the shared metrics once registered.
+     */
+    public static final String DEFAULT_OBJECT_NAME = "com.cdl:type=CheckoutMetrics";
+
+    private static final CheckoutMetrics GLOBAL = new CheckoutMetrics(Boolean.getBoolean(ENABLED_PROPERTY));
+
+    private volatile boolean enabled;
+
+    private final LatencyHistogram scanLatency = new LatencyHistogram();
+    private final LatencyHistogram totalLatency = new LatencyHistogram();
+    private final LatencyHistogram outputLatency = new LatencyHistogram();
+    private final LongAdder ruleLookupHits = new LongAdder();
+    private final LongAdder ruleLookupMisses = new LongAdder();
+    private final LongAdder invalidSkuRejections = new LongAdder();
+    private final Map<String, LongAdder> ruleEvaluations = new ConcurrentHashMap<>();
+    // Resolves a rule's counter with one lookup keyed by class, after the first use of each class
+    private final ClassValue<LongAdder> ruleEvaluationCounters = new ClassValue<>() {
+        @Override
+        protected LongAdder computeValue(Class<?> type) {
+            return ruleEvaluations.computeIfAbsent(type.getSimpleName(), name -> new LongAdder());
+        }
+    };
+
+    /**
+     * Creates metrics that are not shared with the default checkouts.
+     *
+     * @param enabled Whether recording starts enabled.
+     */
+    public CheckoutMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the metrics shared by every checkout that is not given its own. They start enabled
+     * if the {@value #ENABLED_PROPERTY} system property is true.
+     *
+     * @return The shared metrics.
+     */
+    public static CheckoutMetrics global() {
+        return GLOBAL;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    void recordScan(long nanos) {
+        scanLatency.record(nanos);
+    }
+
+    void recordTotal(long nanos) {
+        totalLatency.record(nanos);
+    }
+
+    void recordOutput(long nanos) {
+        outputLatency.record(nanos);
+    }
+
+    void recordLookupHit() {
+        ruleLookupHits.increment();
+    }
+
+    void recordLookupMiss() {
+        ruleLookupMisses.increment();
+    }
+
+    void recordInvalidSku() {
+        invalidSkuRejections.increment();
+    }
+
+    void recordEvaluation(PricingRule rule) {
+        ruleEvaluationCounters.get(rule.getClass()).increment();
+    }
+
+    public LatencyHistogram getScanLatency() {
+        return scanLatency;
+    }
+
+    public LatencyHistogram getTotalLatency() {
+        return totalLatency;
+    }
+
+    public LatencyHistogram getOutputLatency() {
+        return outputLatency;
+    }
+
+    @Override
+    public long getScanCount() {
+        return scanLatency.getCount();
+    }
+
+    @Override
+    public double getScanLatencyMean() {
+        return scanLatency.getMean();
+    }
+
+    @Override
+    public long getScanLatencyP50() {
+        return scanLatency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getScanLatencyP99() {
+        return scanLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getScanLatencyP999() {
+        return scanLatency.getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getScanLatencyMax() {
+        return scanLatency.getMax();
+    }
+
+    @Override
+    public long getTotalCount() {
+        return totalLatency.getCount();
+    }
+
+    @Override
+    public double getTotalLatencyMean() {
+        return totalLatency.getMean();
+    }
+
+    @Override
+    public long getTotalLatencyP50() {
+        return totalLatency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getTotalLatencyP99() {
+        return totalLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getTotalLatencyP999() {
+        return totalLatency.getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getTotalLatencyMax() {
+        return totalLatency.getMax();
+    }
+
+    @Override
+    public long getOutputCount() {
+        return outputLatency.getCount();
+    }
+
+    @Override
+    public long getOutputLatencyP99() {
+        return outputLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getRuleLookupHits() {
+        return ruleLookupHits.sum();
+    }
+
+    @Override
+    public long getRuleLookupMisses() {
+        return ruleLookupMisses.sum();
+    }
+
+    @Override
+    public long getInvalidSkuRejections() {
+        return invalidSkuRejections.sum();
+    }
+
+    @Override
+    public Map<String, Long> getRuleEvaluations() {
+        Map<String, Long> evaluations = new TreeMap<>();
+        ruleEvaluations.forEach((type, counter) -> evaluations.put(type, counter.sum()));
+        return evaluations;
+    }
+
+    /**
+     * Clears every counter and histogram. Values recorded concurrently with a reset may be partly kept.
+     */
+    @Override
+    public void reset() {
+        scanLatency.reset();
+        totalLatency.reset();
+        outputLatency.reset();
+        ruleLookupHits.reset();
+        ruleLookupMisses.reset();
+        invalidSkuRejections.reset();
+        ruleEvaluations.values().forEach(LongAdder::reset);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server.
+     *
+     * @param objectName The JMX object name, such as {@value #DEFAULT_OBJECT_NAME}.
+     * @return The registered object name.
+     * @throws IllegalStateException if the name is malformed or already registered.
+     */
+    public ObjectName registerMBean(String objectName) {
+        try {
+            ObjectName name = new ObjectName(objectName);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            return name;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register checkout metrics as " + objectName, e);
+        }
+    }
+
+    /**
+     * Formats the current values as a multi-line text snapshot, latencies in microseconds.
+     *
+     * @return The snapshot.
+     */
+    public String snapshot() {
+        StringBuilder out = new StringBuilder();
+        appendLatency(out, "scan", scanLatency);
+        appendLatency(out, "total", totalLatency);
+        appendLatency(out, "output", outputLatency);
+        out.append(String.format("lookups     hits=%d misses=%d invalid=%d%n",
+                getRuleLookupHits(), getRuleLookupMisses(), getInvalidSkuRejections()));
+        out.append("evaluations");
+        getRuleEvaluations().forEach((type, count) -> out.append(' ').append(type).append('=').append(count));
+        return out.append(System.lineSeparator()).toString();
+    }
+
+    private static void appendLatency(StringBuilder out, String name, LatencyHistogram histogram) {
+        out.append(String.format("%-11s count=%d mean=%.1fus p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus%n",
+                name, histogram.getCount(), histogram.getMean() / 1_000,
+                histogram.getValueAtPercentile(50) / 1_000.0, histogram.getValueAtPercentile(99) / 1_000.0,
+                histogram.getValueAtPercentile(99.9) / 1_000.0, histogram.getMax() / 1_000.0));
+    }
+
+    /**
+     * Writes a {@link #snapshot()} every period until the returned future is cancelled.
+     *
+     * @param executor The executor to run the dumps on.
+     * @param period   The time between dumps.
+     * @param output   Receives each snapshot.
+     * @return The future of the periodic task.
+     * @throws IllegalArgumentException if the period is not positive.
+     */
+    public ScheduledFuture<?> scheduleDump(ScheduledExecutorService executor, Duration period, Consumer<String> output) {
+        Objects.requireNonNull(output, "Output cannot be null");
+        if (period.isNegative() || period.isZero()) {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+        long nanos = period.toNanos();
+        return executor.scheduleAtFixedRate(() -> output.accept(snapshot()), nanos, nanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,54 @@
+package com.cdl;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link CheckoutMetrics}. Latencies are in nanoseconds and are cumulative since
+ * the metrics were created or last reset.
+ */
+public interface CheckoutMetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getScanCount();
+
+    double getScanLatencyMean();
+
+    long getScanLatencyP50();
+
+    long getScanLatencyP99();
+
+    long getScanLatencyP999();
+
+    long getScanLatencyMax();
+
+    long getTotalCount();
+
+    double getTotalLatencyMean();
+
+    long getTotalLatencyP50();
+
+    long getTotalLatencyP99();
+
+    long getTotalLatencyP999();
+
+    long getTotalLatencyMax();
+
+    long getOutputCount();
+
+    long getOutputLatencyP99();
+
+    long getRuleLookupHits();
+
+    long getRuleLookupMisses();
+
+    long getInvalidSkuRejections();
+
+    /**
+     * Returns the number of line repricings per rule class.
+     */
+    Map<String, Long> getRuleEvaluations();
+
+    void reset();
+}
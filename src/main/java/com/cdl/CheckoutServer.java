@@ -0,0 +1,274 @@
+package com.cdl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves checkout sessions over TCP, one session per connection, each with its own
+ * {@link Checkout} over a shared {@link PricingRuleFactory}.
+ * <p>
+ * The protocol is line based. Each request line gets exactly one response line:
+ * <pre>
+ * SCAN sku [quantity]   OK runningTotal      adds units to the basket
+ * TOTAL                 TOTAL runningTotal   reads the basket total
+ * DONE                  DONE finalTotal      finishes the basket, records its sales and starts a new one
+ * QUIT                  BYE                  closes the session
+ * </pre>
+ * Totals are written with two decimal places. A request that cannot be served gets
+ * {@code ERR message} and leaves the session open.
+ * <p>
+ * Sessions block on their sockets, so each runs on its own thread. By default these are
+ * virtual threads, which lets one process hold thousands of mostly idle lanes; on a runtime
+ * without virtual threads, an unbounded pool of platform threads is used instead.
+ */
+public class CheckoutServer implements AutoCloseable {
+    // Pause after a failed accept, doubled while accepts keep failing
+    static final long MIN_ACCEPT_BACKOFF_MILLIS = 5;
+    static final long MAX_ACCEPT_BACKOFF_MILLIS = 1_000;
+
+    private final PricingRuleFactory pricingRuleFactory;
+    private final ExecutorService sessions;
+    // Null if sales are not recorded
+    private final SalesAggregator sales;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final LongAdder failedAccepts = new LongAdder();
+    private ServerSocket serverSocket;
+
+    public CheckoutServer(PricingRuleFactory pricingRuleFactory) {
+        this(pricingRuleFactory, newSessionExecutor());
+    }
+
+    /**
+     * Creates a server that runs its accept loop and sessions on the given executor. The
+     * server shuts the executor down when it is closed.
+     *
+     * @param pricingRuleFactory The factory shared by every session.
+     * @param sessions           The executor to run sessions on, one task per session.
+     */
+    public CheckoutServer(PricingRuleFactory pricingRuleFactory, ExecutorService sessions) {
+        this.pricingRuleFactory = Objects.requireNonNull(pricingRuleFactory, "Pricing rule factory cannot be null");
+        this.sessions = Objects.requireNonNull(sessions, "Session executor cannot be null");
+        this.sales = null;
+    }
+
+    /**
+     * Creates a server that records the sales of every finished basket.
+     *
+     * @param pricingRuleFactory The factory shared by every session.
+     * @param sessions           The executor to run sessions on, one task per session.
+     * @param sales              The aggregator finished baskets are recorded in.
+     */
+    public CheckoutServer(PricingRuleFactory pricingRuleFactory, ExecutorService sessions, SalesAggregator sales) {
+        this.pricingRuleFactory = Objects.requireNonNull(pricingRuleFactory, "Pricing rule factory cannot be null");
+        this.sessions = Objects.requireNonNull(sessions, "Session executor cannot be null");
+        this.sales = Objects.requireNonNull(sales, "Sales aggregator cannot be null");
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per task, or a cached pool of daemon
+     * platform threads if this runtime has no virtual threads.
+     *
+     * @return A new executor with one thread per running task.
+     */
+    public static ExecutorService newSessionExecutor() {
+        try {
+            // Looked up reflectively so the project still builds and runs on Java 17
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "checkout-session");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Binds the server and starts accepting sessions.
+     *
+     * @param address The address to listen on; port 0 picks a free port.
+     * @return The address the server is listening on.
+     * @throws IOException if the address cannot be bound.
+     * @throws IllegalStateException if the server has already been started.
+     */
+    public synchronized InetSocketAddress start(SocketAddress address) throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("Server has already been started");
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.bind(address, 4096);
+        ServerSocket listening = serverSocket;
+        sessions.execute(() -> acceptLoop(listening));
+        return (InetSocketAddress) listening.getLocalSocketAddress();
+    }
+
+    /**
+     * Accepts connections until the server socket is closed. An accept that fails while the
+     * socket is open, for example because the process has run out of file descriptors, is
+     * counted and retried after a pause that grows while failures continue, so the loop does not
+     * spin.
+     */
+    void acceptLoop(ServerSocket listening) {
+        long backoffMillis = MIN_ACCEPT_BACKOFF_MILLIS;
+        while (!listening.isClosed()) {
+            Socket socket;
+            try {
+                socket = listening.accept();
+                backoffMillis = MIN_ACCEPT_BACKOFF_MILLIS;
+            } catch (IOException e) {
+                if (listening.isClosed()) {
+                    return;
+                }
+                failedAccepts.increment();
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoffMillis = Math.min(backoffMillis * 2, MAX_ACCEPT_BACKOFF_MILLIS);
+                continue;
+            }
+            connections.add(socket);
+            try {
+                sessions.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {
+                closeQuietly(socket);
+                connections.remove(socket);
+            }
+        }
+    }
+
+    /**
+     * Runs one session until the client quits or disconnects.
+     */
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            Checkout checkout = new Checkout(pricingRuleFactory);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String response = handle(checkout, line, sales);
+                out.write(response);
+                out.write('\n');
+                out.flush();
+                if (response.equals("BYE")) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // The client went away; its basket is dropped
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * Executes one request line against a session's checkout.
+     *
+     * @param checkout The session's checkout.
+     * @param line     The request line.
+     * @return The response line, without its line terminator.
+     */
+    static String handle(Checkout checkout, String line) {
+        return handle(checkout, line, null);
+    }
+
+    /**
+     * Executes one request line against a session's checkout, recording finished baskets in
+     * an aggregator unless it is null.
+     */
+    static String handle(Checkout checkout, String line, SalesAggregator sales) {
+        String[] words = line.trim().split("\\s+");
+        String command = words[0].toUpperCase();
+        try {
+            switch (command) {
+                case "SCAN":
+                    if (words.length == 2) {
+                        checkout.scan(words[1]);
+                    } else if (words.length == 3) {
+                        checkout.scan(words[1], Integer.parseInt(words[2]));
+                    } else {
+                        return "ERR Usage: SCAN sku [quantity]";
+                    }
+                    return "OK " + checkout.calculateTotal().toPlainString();
+                case "TOTAL":
+                    return "TOTAL " + checkout.calculateTotal().toPlainString();
+                case "DONE":
+                    String total = checkout.calculateTotal().toPlainString();
+                    if (sales != null) {
+                        sales.record(checkout);
+                    }
+                    checkout.clear();
+                    return "DONE " + total;
+                case "QUIT":
+                    return "BYE";
+                default:
+                    return "ERR Unknown command: " + command;
+            }
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            return "ERR " + e.getMessage();
+        }
+    }
+
+    /**
+     * Returns the number of sessions currently connected.
+     *
+     * @return The number of open sessions.
+     */
+    public int getSessionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Returns the number of times accepting a connection failed while the server was listening.
+     * Each failure is retried after a short pause.
+     *
+     * @return The number of failed accepts.
+     */
+    public long getFailedAcceptCount() {
+        return failedAccepts.sum();
+    }
+
+    /**
+     * Stops accepting sessions, disconnects the open ones and shuts down the session executor.
+     */
+    @Override
+    public synchronized void close() {
+        if (serverSocket != null) {
+            closeQuietly(serverSocket);
+        }
+        for (Socket socket : connections) {
+            closeQuietly(socket);
+        }
+        sessions.shutdown();
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Nothing more to do for a connection that is being dropped
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package com.cdl;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Creates, looks up and expires checkout sessions by id, such as the baskets of a web shop.
+ * <p>
+ * Sessions live in a fixed number of stripes, each an access-ordered map behind its own lock,
+ * so lookups of different sessions rarely contend. A session that has not been used for the
+ * idle timeout is expired. Once the manager holds more than the maximum session count, a new
+ * session evicts the least recently used session of its own stripe, or of the next stripe
+ * with one to spare, so sessions that hash unevenly are not evicted before the maximum is
+ * reached. A session in use is never evicted: while every candidate is in use, the manager
+ * holds more sessions than its maximum until one is released.
+ * <p>
+ * A session that has been idle for a while but has not expired yet is compacted: its
+ * {@link Checkout} is dropped and the basket is kept as packed (SKU id, quantity) pairs,
+ * together with the catalogue snapshot it was priced against. The checkout is rebuilt from
+ * the pairs the next time the session is used, with the same prices as before. Expiry and
+ * compaction happen in {@link #runMaintenance()}, which should be called periodically;
+ * expired sessions are also dropped when they are looked up. A session in use is neither
+ * expired nor compacted, and maintenance never waits for one, so a slow action on one session
+ * does not hold up the others in its stripe.
+ */
+public class CheckoutSessionManager {
+    private static final int STRIPES = 64;
+
+    private final PricingRuleFactory pricingRuleFactory;
+    private final Clock clock;
+    private final long idleTimeoutMillis;
+    private final long compactAfterMillis;
+    private final int maxSessions;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    // Sessions held across all stripes; only changed under the lock of the stripe that changed
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    /**
+     * Creates a session manager.
+     *
+     * @param pricingRuleFactory The factory shared by every session.
+     * @param maxSessions        The most sessions to hold; least recently used sessions are evicted beyond it.
+     * @param idleTimeout        How long a session may go unused before it expires.
+     * @param compactAfter       How long a session may go unused before its basket is compacted.
+     * @throws IllegalArgumentException if the maximum is not positive, or a duration is not positive.
+     */
+    public CheckoutSessionManager(PricingRuleFactory pricingRuleFactory, int maxSessions, Duration idleTimeout, Duration compactAfter) {
+        this(pricingRuleFactory, maxSessions, idleTimeout, compactAfter, Clock.systemUTC());
+    }
+
+    CheckoutSessionManager(PricingRuleFactory pricingRuleFactory, int maxSessions, Duration idleTimeout, Duration compactAfter, Clock clock) {
+        this.pricingRuleFactory = Objects.requireNonNull(pricingRuleFactory, "Pricing rule factory cannot be null");
+        this.clock = Objects.requireNonNull(clock, "Clock cannot be null");
+        if (maxSessions <= 0) {
+            throw new IllegalArgumentException("Maximum sessions must be positive");
+        }
+        if (idleTimeout.isNegative() || idleTimeout.isZero() || compactAfter.isNegative() || compactAfter.isZero()) {
+            throw new IllegalArgumentException("Idle timeout and compaction delay must be positive");
+        }
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+        this.compactAfterMillis = compactAfter.toMillis();
+        this.maxSessions = maxSessions;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    private int stripeIndex(String sessionId) {
+        int h = sessionId.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    private Stripe stripeFor(String sessionId) {
+        return stripes[stripeIndex(sessionId)];
+    }
+
+    /**
+     * Evicts least recently used sessions until the manager is back within its maximum, starting
+     * with the stripe of a session just created. Each stripe is locked on its own, never two at once.
+     */
+    private void evictOverflow(String created) {
+        int first = stripeIndex(created);
+        for (int i = 0; i < STRIPES && sessionCount.get() > maxSessions; i++) {
+            stripes[(first + i) & (STRIPES - 1)].evict(created);
+        }
+    }
+
+    /**
+     * Creates a session with a new random id.
+     *
+     * @return The id of the new session.
+     */
+    public String createSession() {
+        while (true) {
+            String sessionId = UUID.randomUUID().toString();
+            if (stripeFor(sessionId).create(sessionId)) {
+                evictOverflow(sessionId);
+                return sessionId;
+            }
+        }
+    }
+
+    /**
+     * Creates a session with a given id.
+     *
+     * @param sessionId The id of the new session.
+     * @throws NullPointerException if the id is null.
+     * @throws IllegalArgumentException if a session with that id already exists.
+     */
+    public void createSession(String sessionId) {
+        Objects.requireNonNull(sessionId, "Session id cannot be null");
+        if (!stripeFor(sessionId).create(sessionId)) {
+            throw new IllegalArgumentException("Session already exists: " + sessionId);
+        }
+        evictOverflow(sessionId);
+    }
+
+    /**
+     * Runs an action against a session's checkout, restoring the checkout first if the session
+     * was compacted. Actions on the same session are serialized; the checkout must not be kept
+     * after the action returns.
+     *
+     * @param sessionId The id of the session.
+     * @param action    The action to run.
+     * @param <T>       The type of the action's result.
+     * @return The result of the action.
+     * @throws IllegalArgumentException if there is no such session, or it has expired.
+     */
+    public <T> T withSession(String sessionId, Function<Checkout, T> action) {
+        Session session = stripeFor(sessionId).acquire(sessionId);
+        if (session == null) {
+            throw new IllegalArgumentException("Unknown or expired session: " + sessionId);
+        }
+        try {
+            session.lock.lock();
+            try {
+                return action.apply(session.expand());
+            } finally {
+                session.lock.unlock();
+            }
+        } finally {
+            session.lastAccess = clock.millis();
+            session.users.decrementAndGet();
+        }
+    }
+
+    /**
+     * Ends a session and discards its basket.
+     *
+     * @param sessionId The id of the session.
+     * @return true if the session existed.
+     */
+    public boolean closeSession(String sessionId) {
+        return stripeFor(sessionId).remove(sessionId);
+    }
+
+    /**
+     * Returns whether a session exists and has not expired.
+     *
+     * @param sessionId The id of the session.
+     * @return true if the session can be used.
+     */
+    public boolean hasSession(String sessionId) {
+        return stripeFor(sessionId).get(sessionId) != null;
+    }
+
+    /**
+     * Expires sessions that have been idle for longer than the idle timeout and compacts those
+     * idle for longer than the compaction delay. Sessions in use are left alone.
+     */
+    public void runMaintenance() {
+        List<Session> idle = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            long now = clock.millis();
+            stripe.maintain(now, idle);
+            // Compacted outside the stripe lock, so lookups in the stripe carry on meanwhile
+            for (Session session : idle) {
+                session.tryCompact(now);
+            }
+            idle.clear();
+        }
+    }
+
+    /**
+     * Returns the number of sessions held, including expired ones not yet removed.
+     *
+     * @return The number of sessions.
+     */
+    public int size() {
+        return sessionCount.get();
+    }
+
+    /**
+     * Returns the number of sessions whose basket is currently compacted.
+     *
+     * @return The number of compacted sessions.
+     */
+    public int getCompactedCount() {
+        int compacted = 0;
+        for (Stripe stripe : stripes) {
+            compacted += stripe.compactedCount();
+        }
+        return compacted;
+    }
+
+    /**
+     * Returns the number of sessions removed because they were idle for longer than the idle timeout.
+     *
+     * @return The number of expired sessions.
+     */
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    /**
+     * Returns the number of sessions evicted to stay within the maximum session count.
+     *
+     * @return The number of evicted sessions.
+     */
+    public long getEvictedCount() {
+        return evicted.sum();
+    }
+
+    /**
+     * One stripe of sessions, in least recently used order.
+     */
+    private final class Stripe {
+        private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+
+        synchronized boolean create(String sessionId) {
+            if (sessions.containsKey(sessionId)) {
+                return false;
+            }
+            sessions.put(sessionId, new Session(clock.millis()));
+            sessionCount.incrementAndGet();
+            return true;
+        }
+
+        synchronized Session get(String sessionId) {
+            Session session = sessions.get(sessionId);
+            if (session != null && isExpired(session, clock.millis())) {
+                sessions.remove(sessionId);
+                sessionCount.decrementAndGet();
+                expired.increment();
+                return null;
+            }
+            return session;
+        }
+
+        /**
+         * Evicts this stripe's least recently used sessions while the manager holds more than its
+         * maximum, skipping sessions in use and the session just created. A session is only
+         * acquired under this lock, so one seen unused here cannot start being used meanwhile.
+         */
+        synchronized void evict(String created) {
+            for (Iterator<Map.Entry<String, Session>> it = sessions.entrySet().iterator();
+                 it.hasNext() && sessionCount.get() > maxSessions; ) {
+                Map.Entry<String, Session> entry = it.next();
+                if (entry.getValue().users.get() == 0 && !entry.getKey().equals(created)) {
+                    it.remove();
+                    sessionCount.decrementAndGet();
+                    evicted.increment();
+                }
+            }
+        }
+
+        /**
+         * Looks up a session and marks it in use and accessed now, so maintenance leaves it
+         * alone until it is released.
+         */
+        synchronized Session acquire(String sessionId) {
+            Session session = get(sessionId);
+            if (session != null) {
+                session.users.incrementAndGet();
+                session.lastAccess = clock.millis();
+            }
+            return session;
+        }
+
+        synchronized boolean remove(String sessionId) {
+            if (sessions.remove(sessionId) == null) {
+                return false;
+            }
+            sessionCount.decrementAndGet();
+            return true;
+        }
+
+        synchronized int compactedCount() {
+            int compacted = 0;
+            for (Session session : sessions.values()) {
+                if (session.checkout == null) {
+                    compacted++;
+                }
+            }
+            return compacted;
+        }
+
+        /**
+         * Removes the expired sessions and collects the ones due for compaction. Sessions in use
+         * are skipped.
+         */
+        synchronized void maintain(long now, List<Session> idle) {
+            for (Iterator<Session> it = sessions.values().iterator(); it.hasNext(); ) {
+                Session session = it.next();
+                if (session.users.get() > 0) {
+                    continue;
+                }
+                if (isExpired(session, now)) {
+                    it.remove();
+                    sessionCount.decrementAndGet();
+                    expired.increment();
+                } else if (now - session.lastAccess > compactAfterMillis) {
+                    idle.add(session);
+                }
+            }
+        }
+    }
+
+    private boolean isExpired(Session session, long now) {
+        return now - session.lastAccess > idleTimeoutMillis;
+    }
+
+    /**
+     * A session's basket: either a live checkout, or packed lines and the catalogue snapshot and
+     * tier overlay they were priced against.
+     */
+    private final class Session {
+        // Held while an action runs on the checkout, and while it is compacted
+        private final ReentrantLock lock = new ReentrantLock();
+        // Actions running or about to run; only changed under the stripe lock or when an action ends
+        private final AtomicInteger users = new AtomicInteger();
+        private volatile long lastAccess;
+        // Null while compacted
+        private volatile Checkout checkout;
+        // Varint-encoded (SKU id, quantity) pairs, or null while the checkout is live
+        private byte[] packedLines;
+        private PricingCatalogue packedCatalogue;
+        private PriceOverlay packedOverlay;
+        // Kept while compacted, since it applies to the session's later baskets too
+        private PriceTier priceTier;
+
+        Session(long created) {
+            this.lastAccess = created;
+        }
+
+        /**
+         * Returns the live checkout, rebuilding it if the session was compacted. Called with the
+         * session lock held.
+         */
+        Checkout expand() {
+            if (checkout == null) {
+                checkout = new Checkout(pricingRuleFactory);
+                checkout.setPriceTier(priceTier);
+                if (packedCatalogue != null) {
+                    checkout.pin(packedCatalogue, packedOverlay);
+                    BasketEncoding.unpack(packedLines, checkout::addQuantity);
+                }
+                packedLines = null;
+                packedCatalogue = null;
+                packedOverlay = null;
+            }
+            return checkout;
+        }
+
+        /**
+         * Compacts the session unless it is in use or was used since the stripe looked at it.
+         */
+        void tryCompact(long now) {
+            if (!lock.tryLock()) {
+                return;
+            }
+            try {
+                if (checkout == null || users.get() > 0 || now - lastAccess <= compactAfterMillis) {
+                    return;
+                }
+                Cart lines = checkout.lines();
+                packedLines = BasketEncoding.pack(lines);
+                packedCatalogue = packedLines.length == 0 ? null : checkout.catalogue();
+                packedOverlay = packedLines.length == 0 ? null : checkout.overlay();
+                priceTier = checkout.getPriceTier();
+                checkout = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Packs cart lines as pairs of unsigned LEB128 varints, so a typical line takes three to
+     * five bytes. Lines whose quantity dropped to zero are left out.
+     */
+    static final class BasketEncoding {
+        private BasketEncoding() {
+        }
+
+        interface LineConsumer {
+            void accept(int skuId, int quantity);
+        }
+
+        static byte[] pack(Cart lines) {
+            byte[] packed = new byte[lines.lineCount() * 10];
+            int length = 0;
+            for (int line = 0; line < lines.lineCount(); line++) {
+                if (lines.quantity(line) != 0) {
+                    length = writeVarint(packed, length, lines.skuId(line));
+                    length = writeVarint(packed, length, lines.quantity(line));
+                }
+            }
+            return Arrays.copyOf(packed, length);
+        }
+
+        static void unpack(byte[] packed, LineConsumer consumer) {
+            int position = 0;
+            while (position < packed.length) {
+                long skuId = readVarint(packed, position);
+                position = (int) (skuId >>> 32);
+                long quantity = readVarint(packed, position);
+                position = (int) (quantity >>> 32);
+                consumer.accept((int) skuId, (int) quantity);
+            }
+        }
+
+        private static int writeVarint(byte[] out, int position, int value) {
+            while ((value & ~0x7F) != 0) {
+                out[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out[position++] = (byte) value;
+            return position;
+        }
+
+        /**
+         * Returns the value in the low 32 bits and the position after it in the high 32 bits.
+         */
+        private static long readVarint(byte[] in, int position) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = in[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return ((long) position << 32) | (value & 0xFFFFFFFFL);
+        }
+    }
+}
@@ -1,18 +1,52 @@
 package com.cdl;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
 import java.util.Scanner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Manages the checkout process for the Checkout System.
  */
 public class CheckoutSystem {
+    /**
+     * System property giving the number of seconds between metrics dumps to standard error.
+     */
+    public static final String METRICS_DUMP_PROPERTY = "checkout.metrics.dumpSeconds";
+
+    /**
+     * System property that runs console scans through a {@link ScanPipeline}, for scanners that
+     * send bursts of scans.
+     */
+    public static final String PIPELINE_PROPERTY = "checkout.pipeline";
+
+    private final PricingRuleFactory pricingRuleFactory;
     private final Scanner scanner;
     private final Checkout checkout;
+    private final SalesAggregator sales;
+    private final ReceiptRenderer receiptRenderer = new ReceiptRenderer(Channels.newChannel(System.out));
 
     public CheckoutSystem(PricingRuleFactory pricingRuleFactory) {
+        this(pricingRuleFactory, new SalesAggregator(pricingRuleFactory));
+    }
+
+    /**
+     * Creates a console checkout that records finished baskets in a shared aggregator.
+     *
+     * @param pricingRuleFactory The factory to price items with.
+     * @param sales              The aggregator finished baskets are recorded in.
+     */
+    public CheckoutSystem(PricingRuleFactory pricingRuleFactory, SalesAggregator sales) {
+        this.pricingRuleFactory = pricingRuleFactory;
         this.scanner = new Scanner(System.in);
         this.checkout = new Checkout(pricingRuleFactory);
+        this.sales = Objects.requireNonNull(sales, "Sales aggregator cannot be null");
     }
 
     /**
@@ -21,14 +55,20 @@ public class CheckoutSystem {
     public void start() {
         System.out.println("Welcome to the Checkout System");
         System.out.println("Enter items (A, B, C, D) one by one. Type 'done' to finish or 'quit' to exit:");
+        if (Boolean.getBoolean(PIPELINE_PROPERTY)) {
+            startPipeline();
+            return;
+        }
 
         while (true) {
             String input = scanner.nextLine().trim().toUpperCase();
             if (input.equals("QUIT")) {
+                displaySales(sales.snapshot());
                 System.out.println("Thank you for using Checkout System. Goodbye!");
                 break;
             } else if (input.equals("DONE")) {
                 displayTotal();
+                sales.record(checkout);
                 checkout.clear();
                 System.out.println("Starting a new checkout. Enter items or 'quit' to exit:");
             } else {
@@ -42,18 +82,121 @@ public class CheckoutSystem {
         }
     }
 
+    /**
+     * Runs the console lane through a scan pipeline: input is read without waiting for each
+     * total to be printed, and totals typed faster than they can be shown are coalesced.
+     */
+    private void startPipeline() {
+        ScanPipeline pipeline = new ScanPipeline(pricingRuleFactory, Channels.newChannel(System.out), sales::record);
+        while (true) {
+            String input = scanner.nextLine().trim().toUpperCase();
+            if (input.equals("QUIT")) {
+                pipeline.close();
+                LatencyHistogram latency = pipeline.getDisplayLatency();
+                System.out.println("Scan to display: " + pipeline.getDisplayedCount() + " totals shown, "
+                        + pipeline.getCoalescedCount() + " coalesced, p50 " + latency.getValueAtPercentile(50) / 1000
+                        + " us, p99 " + latency.getValueAtPercentile(99) / 1000 + " us");
+                displaySales(sales.snapshot());
+                System.out.println("Thank you for using Checkout System. Goodbye!");
+                return;
+            } else if (input.equals("DONE")) {
+                pipeline.done();
+            } else {
+                pipeline.scan(input);
+            }
+        }
+    }
+
     private void displayRunningTotal() {
-        System.out.printf("Running total: £%.2f%n", checkout.calculateTotal());
+        CheckoutMetrics metrics = CheckoutMetrics.global();
+        boolean timed = metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        receiptRenderer.renderRunningTotal(checkout.calculateTotalMinor());
+        receiptRenderer.flush();
+        if (timed) {
+            metrics.recordOutput(System.nanoTime() - start);
+        }
     }
 
     private void displayTotal() {
-        System.out.printf("Final total: £%.2f%n", checkout.calculateTotal());
+        CheckoutMetrics metrics = CheckoutMetrics.global();
+        boolean timed = metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        receiptRenderer.renderReceipt(checkout);
+        receiptRenderer.flush();
+        if (timed) {
+            metrics.recordOutput(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Prints the sales so far, one line per SKU.
+     */
+    private static void displaySales(SalesSnapshot snapshot) {
+        System.out.println("Sales: " + snapshot.getBaskets() + " baskets, "
+                + Money.fromMinorUnits(snapshot.getTotalRevenueMinor()).toPlainString());
+        for (String sku : snapshot.getSkus()) {
+            System.out.println("  " + sku + ": " + snapshot.getUnits(sku) + " units, "
+                    + snapshot.getDeals(sku) + " deals, "
+                    + Money.fromMinorUnits(snapshot.getRevenueMinor(sku)).toPlainString());
+        }
+    }
+
+    /**
+     * Starts a lane on the console, or with {@code --serve port} a {@link CheckoutServer} for
+     * many lanes. The optional last argument is a catalogue snapshot compiled by
+     * {@link CatalogueSnapshot}; without it the built-in rules are used.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean serve = args.length >= 2 && args[0].equals("--serve");
+        int catalogueArg = serve ? 2 : 0;
+        PricingRuleFactory pricingRuleFactory = args.length > catalogueArg
+                ? loadCatalogue(Path.of(args[catalogueArg])) : initializePricingRules();
+        startMetrics();
+        pricingRuleFactory.startScheduler(newDaemonScheduler("checkout-promotions"));
+        SalesAggregator sales = new SalesAggregator(pricingRuleFactory);
+        if (serve) {
+            CheckoutServer server = new CheckoutServer(pricingRuleFactory, CheckoutServer.newSessionExecutor(), sales);
+            InetSocketAddress address = server.start(new InetSocketAddress(Integer.parseInt(args[1])));
+            System.out.println("Serving checkout sessions on " + address);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                displaySales(sales.snapshot());
+            }));
+            Thread.currentThread().join();
+        } else {
+            CheckoutSystem checkoutSystem = new CheckoutSystem(pricingRuleFactory, sales);
+            checkoutSystem.start();
+        }
+    }
+
+    /**
+     * Publishes the shared metrics over JMX, where they can also be switched on and off, and
+     * dumps them periodically if {@value #METRICS_DUMP_PROPERTY} is set.
+     */
+    private static void startMetrics() {
+        CheckoutMetrics metrics = CheckoutMetrics.global();
+        metrics.registerMBean(CheckoutMetrics.DEFAULT_OBJECT_NAME);
+        long dumpSeconds = Long.getLong(METRICS_DUMP_PROPERTY, 0);
+        if (dumpSeconds > 0) {
+            metrics.scheduleDump(newDaemonScheduler("checkout-metrics"), Duration.ofSeconds(dumpSeconds), System.err::print);
+        }
+    }
+
+    private static ScheduledExecutorService newDaemonScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    public static void main(String[] args) {
-        PricingRuleFactory pricingRuleFactory = initializePricingRules();
-        CheckoutSystem checkoutSystem = new CheckoutSystem(pricingRuleFactory);
-        checkoutSystem.start();
+    private static PricingRuleFactory loadCatalogue(Path snapshot) throws IOException {
+        long start = System.nanoTime();
+        PricingCatalogue catalogue = CatalogueSnapshot.load(snapshot);
+        System.out.printf("Loaded %d SKUs from catalogue version %d in %d ms%n",
+                catalogue.size(), catalogue.getVersion(), (System.nanoTime() - start) / 1_000_000);
+        return new PricingRuleFactory(catalogue);
     }
 
     /**
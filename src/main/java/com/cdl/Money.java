@@ -0,0 +1,108 @@
+package com.cdl;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point helpers for money held as a {@code long} number of minor units (pence/cents).
+ * Amounts are only converted to and from {@link BigDecimal} at the display and receipt boundary.
+ */
+public final class Money {
+    /**
+     * Number of decimal places in a minor unit amount.
+     */
+    public static final int MINOR_SCALE = 2;
+
+    /**
+     * Largest scale an unscaled long price may use; beyond this the rounding divisor overflows.
+     */
+    static final int MAX_SCALE = 18;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+    static {
+        long power = 1;
+        for (int i = 0; i <= MAX_SCALE; i++) {
+            POWERS_OF_TEN[i] = power;
+            power *= 10;
+        }
+    }
+
+    private Money() {
+    }
+
+    /**
+     * Converts a decimal amount to minor units, rounding half up to 2 decimal places.
+     *
+     * @param amount The amount to convert.
+     * @return The amount in minor units.
+     * @throws ArithmeticException if the amount does not fit in a long number of minor units.
+     */
+    public static long toMinorUnits(BigDecimal amount) {
+        return amount.setScale(MINOR_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Converts an amount in minor units to a decimal amount with 2 decimal places.
+     *
+     * @param minorUnits The amount in minor units.
+     * @return The amount as a BigDecimal.
+     */
+    public static BigDecimal fromMinorUnits(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, MINOR_SCALE);
+    }
+
+    /**
+     * Returns the smallest scale, no less than 2, at which every given price can be held as an
+     * exact unscaled long, or -1 if there is no such scale.
+     *
+     * @param prices The prices that will be combined in one calculation.
+     * @return The common scale, or -1 if the prices must be priced with BigDecimal.
+     */
+    static int commonScale(BigDecimal... prices) {
+        int scale = MINOR_SCALE;
+        for (BigDecimal price : prices) {
+            scale = Math.max(scale, price.stripTrailingZeros().scale());
+        }
+        if (scale > MAX_SCALE) {
+            return -1;
+        }
+        for (BigDecimal price : prices) {
+            if (price.setScale(scale).unscaledValue().bitLength() >= Long.SIZE) {
+                return -1;
+            }
+        }
+        return scale;
+    }
+
+    /**
+     * Returns the unscaled value of a price at the given scale.
+     *
+     * @throws ArithmeticException if the unscaled value does not fit in a long.
+     */
+    static long unscaled(BigDecimal price, int scale) {
+        return price.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Rounds an unscaled amount at the given scale to minor units, half up,
+     * matching {@code setScale(2, RoundingMode.HALF_UP)}.
+     *
+     * @param unscaled The unscaled amount.
+     * @param scale    The scale of the amount, between 2 and {@link #MAX_SCALE}.
+     * @return The amount in minor units.
+     */
+    static long roundToMinorUnits(long unscaled, int scale) {
+        if (scale == MINOR_SCALE) {
+            return unscaled;
+        }
+        long divisor = POWERS_OF_TEN[scale - MINOR_SCALE];
+        long quotient = unscaled / divisor;
+        long remainder = unscaled % divisor;
+        // Compare |remainder| with half the divisor without overflowing
+        if (Math.abs(remainder) >= divisor - Math.abs(remainder)) {
+            quotient += Long.signum(unscaled);
+        }
+        return quotient;
+    }
+}
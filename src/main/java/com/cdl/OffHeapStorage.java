@@ -0,0 +1,361 @@
+package com.cdl;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Catalogue storage in direct buffers outside the Java heap, for catalogues of millions of SKUs.
+ * <p>
+ * SKUs are found through an open-addressing hash table of (String hash, SKU id + 1) slots, kept
+ * at most half full. Each SKU id has a fixed-size record holding the offset of its UTF-8 name and
+ * the parameters of its rule, so a catalogue costs a few dozen bytes per SKU and no objects.
+ * Regular and special rules are created as flyweights when they are looked up, without price
+ * tables, and the most recent ones are kept in a small direct-mapped cache so that the items
+ * scanned most often are not recreated on every scan. Any other rule is kept on the heap and
+ * its record holds its index.
+ * <p>
+ * Storage is immutable once built and only read with absolute gets, so it is safe to share
+ * between threads. Changes are made on an {@link Editor}, which copies the buffers and builds
+ * new storage from the copy. It holds at most 64M SKUs.
+ */
+final class OffHeapStorage implements PricingCatalogue.Storage {
+    private static final int SLOT_BYTES = 8;
+    private static final int RECORD_BYTES = 32;
+    // Record layout
+    private static final int NAME_OFFSET = 0;
+    private static final int KIND = 4;
+    private static final int UNIT_SCALE = 5;
+    private static final int SPECIAL_SCALE = 6;
+    // The special quantity, or the index of a heap rule
+    private static final int SPECIAL_QUANTITY = 8;
+    private static final int UNIT_PRICE = 16;
+    private static final int SPECIAL_PRICE = 24;
+    // Rule kinds
+    private static final byte REMOVED = 0;
+    private static final byte REGULAR = 1;
+    private static final byte SPECIAL = 2;
+    private static final byte HEAP = 3;
+    private static final int CACHE_SIZE = 4096;
+
+    private final ByteBuffer slots;
+    private final ByteBuffer records;
+    private final ByteBuffer names;
+    private final PricingRule[] heapRules;
+    private final int size;
+    private final int slotMask;
+    private final int namesLength;
+    // Recently created flyweights by SKU id; racing threads at worst create a rule twice
+    private final CachedRule[] cache = new CachedRule[CACHE_SIZE];
+
+    private OffHeapStorage(ByteBuffer slots, ByteBuffer records, ByteBuffer names, PricingRule[] heapRules,
+                           int size, int namesLength) {
+        this.slots = slots;
+        this.records = records;
+        this.names = names;
+        this.heapRules = heapRules;
+        this.size = size;
+        this.slotMask = slots.capacity() / SLOT_BYTES - 1;
+        this.namesLength = namesLength;
+    }
+
+    /**
+     * Creates empty storage with room for a number of SKUs before it has to grow.
+     */
+    static OffHeapStorage empty(int expectedSkus) {
+        if (expectedSkus < 0) {
+            throw new IllegalArgumentException("Expected SKU count cannot be negative");
+        }
+        int slotCount = Integer.highestOneBit(Math.max(expectedSkus, 8) * 2 - 1) << 1;
+        return new OffHeapStorage(allocate(Math.multiplyExact(slotCount, SLOT_BYTES)),
+                allocate(Math.multiplyExact(Math.max(expectedSkus, 8), RECORD_BYTES)),
+                allocate(Math.multiplyExact(Math.max(expectedSkus, 8), 16)), new PricingRule[0], 0, 0);
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Copies the first bytes of a buffer into a new one of the given capacity.
+     */
+    private static ByteBuffer copy(ByteBuffer source, int length, int capacity) {
+        ByteBuffer target = allocate(capacity);
+        target.put(source.duplicate().position(0).limit(length));
+        return target.clear();
+    }
+
+    private static int hash(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int find(String sku) {
+        return find(slots, slotMask, records, names, sku);
+    }
+
+    private static int find(ByteBuffer slots, int slotMask, ByteBuffer records, ByteBuffer names, String sku) {
+        int h = sku.hashCode();
+        for (int slot = hash(h) & slotMask; ; slot = (slot + 1) & slotMask) {
+            int position = slot * SLOT_BYTES;
+            int skuId = slots.getInt(position + Integer.BYTES) - 1;
+            if (skuId < 0) {
+                return -1;
+            }
+            if (slots.getInt(position) == h && matches(records, names, skuId, sku)) {
+                return skuId;
+            }
+        }
+    }
+
+    /**
+     * Compares a SKU's stored name with a string, without decoding it unless it is non-ASCII.
+     */
+    private static boolean matches(ByteBuffer records, ByteBuffer names, int skuId, String sku) {
+        int position = records.getInt(skuId * RECORD_BYTES + NAME_OFFSET);
+        int length = names.getShort(position) & 0xFFFF;
+        for (int i = 0; i < length; i++) {
+            byte b = names.get(position + Short.BYTES + i);
+            if (b < 0) {
+                return name(records, names, skuId).equals(sku);
+            }
+            if (i >= sku.length() || b != sku.charAt(i)) {
+                return false;
+            }
+        }
+        return length == sku.length();
+    }
+
+    private static String name(ByteBuffer records, ByteBuffer names, int skuId) {
+        int position = records.getInt(skuId * RECORD_BYTES + NAME_OFFSET);
+        byte[] name = new byte[names.getShort(position) & 0xFFFF];
+        names.get(position + Short.BYTES, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String sku(int skuId) {
+        Objects.checkIndex(skuId, size);
+        return name(records, names, skuId);
+    }
+
+    @Override
+    public PricingRule rule(int skuId) {
+        Objects.checkIndex(skuId, size);
+        CachedRule cached = cache[skuId & (CACHE_SIZE - 1)];
+        if (cached != null && cached.skuId == skuId) {
+            return cached.rule;
+        }
+        PricingRule rule = materialize(skuId);
+        if (rule != null) {
+            cache[skuId & (CACHE_SIZE - 1)] = new CachedRule(skuId, rule);
+        }
+        return rule;
+    }
+
+    private PricingRule materialize(int skuId) {
+        int record = skuId * RECORD_BYTES;
+        switch (records.get(record + KIND)) {
+            case REGULAR:
+                return new RegularPricingRule(BigDecimal.valueOf(records.getLong(record + UNIT_PRICE), records.get(record + UNIT_SCALE)), 0);
+            case SPECIAL:
+                return new SpecialPricingRule(BigDecimal.valueOf(records.getLong(record + UNIT_PRICE), records.get(record + UNIT_SCALE)),
+                        records.getInt(record + SPECIAL_QUANTITY),
+                        BigDecimal.valueOf(records.getLong(record + SPECIAL_PRICE), records.get(record + SPECIAL_SCALE)), 0);
+            case HEAP:
+                return heapRules[records.getInt(record + SPECIAL_QUANTITY)];
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public boolean hasRule(int skuId) {
+        Objects.checkIndex(skuId, size);
+        return records.get(skuId * RECORD_BYTES + KIND) != REMOVED;
+    }
+
+    /**
+     * A flyweight and the SKU id it was created for. Its fields are final, so it can be shared
+     * through the cache without locking.
+     */
+    private static final class CachedRule {
+        private final int skuId;
+        private final PricingRule rule;
+
+        CachedRule(int skuId, PricingRule rule) {
+            this.skuId = skuId;
+            this.rule = rule;
+        }
+    }
+
+    /**
+     * Starts a copy of this storage to change.
+     */
+    Editor edit() {
+        return new Editor(this);
+    }
+
+    /**
+     * Changes a copy of some storage. An editor is single-use and not thread-safe.
+     */
+    static final class Editor {
+        private ByteBuffer slots;
+        private ByteBuffer records;
+        private ByteBuffer names;
+        private PricingRule[] heapRules;
+        private int heapRuleCount;
+        private int size;
+        private int slotMask;
+        private int namesLength;
+
+        private Editor(OffHeapStorage base) {
+            this.size = base.size;
+            this.namesLength = base.namesLength;
+            this.slots = copy(base.slots, base.slots.capacity(), base.slots.capacity());
+            this.slotMask = base.slotMask;
+            this.records = copy(base.records, size * RECORD_BYTES, base.records.capacity());
+            this.names = copy(base.names, namesLength, base.names.capacity());
+            this.heapRules = base.heapRules;
+            this.heapRuleCount = base.heapRules.length;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int find(String sku) {
+            return OffHeapStorage.find(slots, slotMask, records, names, sku);
+        }
+
+        boolean hasRule(int skuId) {
+            return records.get(skuId * RECORD_BYTES + KIND) != REMOVED;
+        }
+
+        /**
+         * Sets the rule of a normalized SKU, assigning it the next id if it has none.
+         *
+         * @throws IllegalArgumentException if the SKU is longer than 65535 bytes in UTF-8.
+         */
+        void put(String sku, PricingRule rule) {
+            int skuId = find(sku);
+            if (skuId < 0) {
+                skuId = add(sku);
+            }
+            int record = skuId * RECORD_BYTES;
+            records.put(record + KIND, REMOVED).put(record + UNIT_SCALE, (byte) 0).put(record + SPECIAL_SCALE, (byte) 0)
+                    .putInt(record + SPECIAL_QUANTITY, 0).putLong(record + UNIT_PRICE, 0).putLong(record + SPECIAL_PRICE, 0);
+            if (rule.getClass() == RegularPricingRule.class && fits(((RegularPricingRule) rule).getUnitPrice())) {
+                putPrice(record + UNIT_PRICE, record + UNIT_SCALE, ((RegularPricingRule) rule).getUnitPrice());
+                records.put(record + KIND, REGULAR);
+            } else if (rule.getClass() == SpecialPricingRule.class && fits(((SpecialPricingRule) rule).getUnitPrice())
+                    && fits(((SpecialPricingRule) rule).getSpecialPrice())) {
+                SpecialPricingRule special = (SpecialPricingRule) rule;
+                putPrice(record + UNIT_PRICE, record + UNIT_SCALE, special.getUnitPrice());
+                putPrice(record + SPECIAL_PRICE, record + SPECIAL_SCALE, special.getSpecialPrice());
+                records.putInt(record + SPECIAL_QUANTITY, special.getSpecialQuantity());
+                records.put(record + KIND, SPECIAL);
+            } else {
+                // Replaced heap rules are only dropped when the catalogue is rebuilt from scratch
+                if (heapRuleCount == heapRules.length) {
+                    heapRules = Arrays.copyOf(heapRules, Math.max(8, heapRuleCount * 2));
+                }
+                heapRules[heapRuleCount] = rule;
+                records.putInt(record + SPECIAL_QUANTITY, heapRuleCount++);
+                records.put(record + KIND, HEAP);
+            }
+        }
+
+        private static boolean fits(BigDecimal price) {
+            return price.scale() == (byte) price.scale() && price.unscaledValue().bitLength() < Long.SIZE;
+        }
+
+        private void putPrice(int pricePosition, int scalePosition, BigDecimal price) {
+            records.putLong(pricePosition, price.unscaledValue().longValue()).put(scalePosition, (byte) price.scale());
+        }
+
+        /**
+         * Marks the rule of a normalized SKU as removed, keeping its id.
+         *
+         * @return true if the SKU had a rule.
+         */
+        boolean remove(String sku) {
+            int skuId = find(sku);
+            if (skuId < 0 || !hasRule(skuId)) {
+                return false;
+            }
+            records.put(skuId * RECORD_BYTES + KIND, REMOVED);
+            return true;
+        }
+
+        private int add(String sku) {
+            byte[] name = sku.getBytes(StandardCharsets.UTF_8);
+            if (name.length > 0xFFFF) {
+                throw new IllegalArgumentException("SKU is too long: " + name.length + " bytes");
+            }
+            int skuId = size;
+            int recordsLength = Math.multiplyExact(skuId + 1, RECORD_BYTES);
+            if (recordsLength > records.capacity()) {
+                records = copy(records, skuId * RECORD_BYTES, grow(records.capacity(), recordsLength));
+            }
+            int nameEnd = Math.addExact(namesLength, Short.BYTES + name.length);
+            if (nameEnd > names.capacity()) {
+                names = copy(names, namesLength, grow(names.capacity(), nameEnd));
+            }
+            names.putShort(namesLength, (short) name.length).put(namesLength + Short.BYTES, name);
+            records.putInt(skuId * RECORD_BYTES + NAME_OFFSET, namesLength);
+            namesLength = nameEnd;
+            size++;
+            if (size * 2 > slotMask + 1) {
+                rehash((slotMask + 1) * 2);
+            }
+            insert(sku.hashCode(), skuId);
+            return skuId;
+        }
+
+        private static int grow(int capacity, int needed) {
+            long grown = Math.max((long) capacity * 2, needed);
+            return (int) Math.min(grown, Integer.MAX_VALUE - 8);
+        }
+
+        private void insert(int h, int skuId) {
+            int slot = hash(h) & slotMask;
+            while (slots.getInt(slot * SLOT_BYTES + Integer.BYTES) != 0) {
+                slot = (slot + 1) & slotMask;
+            }
+            slots.putInt(slot * SLOT_BYTES, h).putInt(slot * SLOT_BYTES + Integer.BYTES, skuId + 1);
+        }
+
+        private void rehash(int slotCount) {
+            ByteBuffer old = slots;
+            int oldCount = slotMask + 1;
+            slots = allocate(Math.multiplyExact(slotCount, SLOT_BYTES));
+            slotMask = slotCount - 1;
+            for (int slot = 0; slot < oldCount; slot++) {
+                int skuId = old.getInt(slot * SLOT_BYTES + Integer.BYTES) - 1;
+                if (skuId >= 0) {
+                    insert(old.getInt(slot * SLOT_BYTES), skuId);
+                }
+            }
+        }
+
+        /**
+         * Builds storage from the changed copy. The editor cannot be used afterwards.
+         */
+        OffHeapStorage build() {
+            OffHeapStorage storage = new OffHeapStorage(slots, records, names,
+                    Arrays.copyOf(heapRules, heapRuleCount), size, namesLength);
+            slots = null;
+            return storage;
+        }
+    }
+}
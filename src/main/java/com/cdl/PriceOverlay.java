@@ -0,0 +1,174 @@
+package com.cdl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An immutable, sparse set of pricing rules that replace the rules of some SKUs of a base
+ * catalogue, such as member prices or staff discounts.
+ * <p>
+ * Rules are keyed by the dense SKU id of the base catalogue, in an open-addressing table of
+ * primitive ints at most half full, so a lookup is usually a single probe and never boxes.
+ * SKU ids are stable across catalogue versions, so an overlay stays valid while the base
+ * catalogue changes. An overlay holds only its own rules: dozens of overlays over a catalogue
+ * of millions of SKUs cost a few bytes per overridden SKU each, not a copy of the catalogue.
+ */
+public final class PriceOverlay {
+    /**
+     * An overlay that replaces no rules.
+     */
+    public static final PriceOverlay EMPTY = new PriceOverlay(Map.of());
+
+    // The SKU id of each slot plus one, or 0 for an empty slot
+    private final int[] keys;
+    private final PricingRule[] rules;
+    private final int mask;
+    private final int size;
+
+    private PriceOverlay(Map<Integer, PricingRule> overrides) {
+        int capacity = 2;
+        while (capacity < overrides.size() * 2) {
+            capacity *= 2;
+        }
+        keys = new int[capacity];
+        rules = new PricingRule[capacity];
+        mask = capacity - 1;
+        size = overrides.size();
+        overrides.forEach((skuId, rule) -> {
+            int slot = hash(skuId) & mask;
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = skuId + 1;
+            rules[slot] = rule;
+        });
+    }
+
+    private static int hash(int skuId) {
+        int h = skuId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the rule this overlay sets for a SKU.
+     *
+     * @param skuId The dense id of the SKU in the base catalogue.
+     * @return The replacement rule, or null if the SKU keeps its base rule.
+     */
+    public PricingRule getPricingRule(int skuId) {
+        int key = skuId + 1;
+        for (int slot = hash(skuId) & mask; ; slot = (slot + 1) & mask) {
+            int found = keys[slot];
+            if (found == key) {
+                return rules[slot];
+            }
+            if (found == 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of SKUs whose rules this overlay replaces.
+     *
+     * @return The number of rules.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Starts a builder for a new overlay over a base catalogue, initialised with the rules of
+     * this one.
+     *
+     * @param base The catalogue whose SKU ids the overlay is keyed by.
+     * @return The builder.
+     */
+    Builder toBuilder(PricingCatalogue base) {
+        Map<Integer, PricingRule> overrides = new HashMap<>((int) (size / 0.75f) + 1);
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0) {
+                overrides.put(keys[slot] - 1, rules[slot]);
+            }
+        }
+        return new Builder(base, overrides);
+    }
+
+    /**
+     * Collects the rules of the next overlay. A builder is single-use and not thread-safe.
+     */
+    public static final class Builder {
+        private final PricingCatalogue base;
+        private Map<Integer, PricingRule> overrides;
+
+        private Builder(PricingCatalogue base, Map<Integer, PricingRule> overrides) {
+            this.base = base;
+            this.overrides = overrides;
+        }
+
+        /**
+         * Replaces the rule of a SKU in the base catalogue.
+         *
+         * @param sku  The Stock Keeping Unit (SKU) for the item.
+         * @param rule The PricingRule to apply instead of the base rule.
+         * @return This builder.
+         * @throws IllegalArgumentException if the SKU is empty or not in the base catalogue.
+         * @throws NullPointerException if the SKU or rule is null.
+         */
+        public Builder put(String sku, PricingRule rule) {
+            checkNotBuilt();
+            String key = PricingRuleFactory.normalizeSku(sku);
+            Objects.requireNonNull(rule, "Pricing rule cannot be null");
+            int skuId = base.findSkuId(key);
+            if (skuId < 0) {
+                throw new IllegalArgumentException("SKU has no id in the base catalogue: " + key);
+            }
+            overrides.put(skuId, rule);
+            return this;
+        }
+
+        /**
+         * Removes the replacement rule of a SKU, so it goes back to its base rule.
+         *
+         * @param sku The Stock Keeping Unit (SKU) to remove.
+         * @return true if the overlay had a rule for the SKU, false otherwise.
+         * @throws IllegalArgumentException if the SKU is empty.
+         * @throws NullPointerException if the SKU is null.
+         */
+        public boolean remove(String sku) {
+            checkNotBuilt();
+            int skuId = base.findSkuId(PricingRuleFactory.normalizeSku(sku));
+            return skuId >= 0 && overrides.remove(skuId) != null;
+        }
+
+        /**
+         * Removes every replacement rule.
+         *
+         * @return This builder.
+         */
+        public Builder clear() {
+            checkNotBuilt();
+            overrides.clear();
+            return this;
+        }
+
+        /**
+         * Builds the overlay. The builder cannot be used afterwards.
+         *
+         * @return The new immutable overlay.
+         */
+        public PriceOverlay build() {
+            checkNotBuilt();
+            PriceOverlay overlay = overrides.isEmpty() ? EMPTY : new PriceOverlay(overrides);
+            overrides = null;
+            return overlay;
+        }
+
+        private void checkNotBuilt() {
+            if (overrides == null) {
+                throw new IllegalStateException("Overlay has already been built");
+            }
+        }
+    }
+}
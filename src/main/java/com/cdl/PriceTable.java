@@ -0,0 +1,73 @@
+package com.cdl;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Lookup tables of a pricing rule's prices for quantities 0..N, so the common case of a small
+ * quantity is priced with a single array load.
+ * <p>
+ * Rules build their tables on first use and publish them through a plain field. This is safe
+ * without locking because a table is immutable and its array is reached through a final field;
+ * two threads may both build a table, and either copy is correct.
+ */
+final class PriceTable {
+    /**
+     * Largest quantity tabulated when a rule does not choose its own.
+     */
+    static final int DEFAULT_MAX_QUANTITY = 32;
+
+    private PriceTable() {
+    }
+
+    /**
+     * Returns the number of entries in the tables of a rule that tabulates quantities up to
+     * {@code maxQuantity}; no tables are built for a maximum of 0.
+     *
+     * @throws IllegalArgumentException if the maximum quantity is negative.
+     */
+    static int size(int maxQuantity) {
+        if (maxQuantity < 0) {
+            throw new IllegalArgumentException("Table quantity cannot be negative");
+        }
+        return maxQuantity == 0 ? 0 : Math.addExact(maxQuantity, 1);
+    }
+
+    /**
+     * Prices in minor units. The table stops early at the first quantity whose price does not
+     * fit in a long, leaving that quantity and beyond to the rule's arithmetic.
+     */
+    static final class Minor {
+        final long[] prices;
+
+        Minor(int size, IntToLongFunction price) {
+            long[] table = new long[size];
+            int quantity = 0;
+            try {
+                for (; quantity < table.length; quantity++) {
+                    table[quantity] = price.applyAsLong(quantity);
+                }
+            } catch (ArithmeticException e) {
+                table = Arrays.copyOf(table, quantity);
+            }
+            this.prices = table;
+        }
+    }
+
+    /**
+     * Prices as BigDecimals with 2 decimal places.
+     */
+    static final class Decimal {
+        final BigDecimal[] prices;
+
+        Decimal(int size, IntFunction<BigDecimal> price) {
+            BigDecimal[] table = new BigDecimal[size];
+            for (int quantity = 0; quantity < table.length; quantity++) {
+                table[quantity] = price.apply(quantity);
+            }
+            this.prices = table;
+        }
+    }
+}
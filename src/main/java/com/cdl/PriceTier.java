@@ -0,0 +1,119 @@
+package com.cdl;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A customer tier, such as loyalty members or staff, whose prices replace the regular prices
+ * of some SKUs. A {@link Checkout} priced for the tier looks up each rule in the tier's
+ * {@link PriceOverlay} first and falls back to the shared base catalogue, so a tier holds only
+ * the rules it changes.
+ * <p>
+ * Like {@link PricingRuleFactory}, a tier keeps its current overlay behind an atomic reference:
+ * lanes read it without locking, and a change builds a new overlay and publishes it with a
+ * single swap. A basket keeps the overlay it started with, and later baskets get the new one.
+ */
+public final class PriceTier {
+    private final String name;
+    private final PricingRuleFactory base;
+    private final AtomicReference<PriceOverlay> overlay = new AtomicReference<>(PriceOverlay.EMPTY);
+    private final Object writeLock = new Object();
+
+    /**
+     * Creates a tier with no price changes yet.
+     *
+     * @param name The name of the tier, for reports.
+     * @param base The factory with the regular prices.
+     * @throws NullPointerException if the name or the factory is null.
+     */
+    public PriceTier(String name, PricingRuleFactory base) {
+        this.name = Objects.requireNonNull(name, "Name cannot be null");
+        this.base = Objects.requireNonNull(base, "Pricing rule factory cannot be null");
+    }
+
+    /**
+     * Returns the name of the tier.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the factory with the regular prices this tier overrides.
+     *
+     * @return The base factory.
+     */
+    public PricingRuleFactory getBase() {
+        return base;
+    }
+
+    /**
+     * Returns the current overlay, for a basket to be priced against.
+     *
+     * @return The current overlay.
+     */
+    public PriceOverlay getOverlay() {
+        return overlay.get();
+    }
+
+    /**
+     * Sets the tier's price for a SKU of the base catalogue.
+     *
+     * @param sku  The Stock Keeping Unit (SKU) for the item.
+     * @param rule The PricingRule to apply for this tier.
+     * @throws IllegalArgumentException if the SKU is empty or not in the base catalogue.
+     * @throws NullPointerException if the SKU or rule is null.
+     */
+    public void addPricingRule(String sku, PricingRule rule) {
+        update(builder -> builder.put(sku, rule));
+    }
+
+    /**
+     * Removes the tier's price for a SKU, so the tier pays the regular price again.
+     *
+     * @param sku The Stock Keeping Unit (SKU) to remove.
+     * @return true if the tier had a price for the SKU, false otherwise.
+     */
+    public boolean removePricingRule(String sku) {
+        boolean[] removed = new boolean[1];
+        update(builder -> removed[0] = builder.remove(sku));
+        return removed[0];
+    }
+
+    /**
+     * Applies a batch of changes and publishes them as one new overlay. Lanes see either none
+     * or all of the changes; {@link PriceOverlay.Builder#clear()} replaces the tier's prices
+     * wholesale.
+     *
+     * @param changes Callback that records the changes on a builder for the next overlay.
+     * @return The published overlay.
+     */
+    public PriceOverlay update(Consumer<PriceOverlay.Builder> changes) {
+        synchronized (writeLock) {
+            PriceOverlay.Builder builder = overlay.get().toBuilder(base.getCatalogue());
+            changes.accept(builder);
+            PriceOverlay next = builder.build();
+            overlay.set(next);
+            return next;
+        }
+    }
+
+    /**
+     * Returns the rule a basket priced for this tier uses for a SKU.
+     *
+     * @param sku The Stock Keeping Unit (SKU) to look up.
+     * @return The tier's rule, or the base rule if the tier does not change it, or null if the SKU has no rule.
+     */
+    public PricingRule getPricingRule(String sku) {
+        PricingCatalogue catalogue = base.getCatalogue();
+        int skuId = catalogue.getSkuId(sku);
+        if (skuId < 0) {
+            return null;
+        }
+        PricingRule rule = overlay.get().getPricingRule(skuId);
+        return rule != null ? rule : catalogue.getPricingRule(skuId);
+    }
+}
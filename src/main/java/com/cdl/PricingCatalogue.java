@@ -0,0 +1,427 @@
+package com.cdl;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An immutable, versioned snapshot of the pricing rules for every SKU.
+ * <p>
+ * Snapshots are published by {@link PricingRuleFactory} and can be read from any number of
+ * threads without locking. A SKU keeps the same dense id in every later snapshot, even if its
+ * rule is removed and added again, so ids resolved against one snapshot stay meaningful.
+ * <p>
+ * Snapshots built by the factory keep their SKUs in a hash map on the heap, or in direct
+ * buffers off the heap for a factory created with {@link PricingRuleFactory#offHeap(int)}.
+ * A snapshot loaded by {@link CatalogueSnapshot} reads them straight from the memory-mapped
+ * snapshot file.
+ * <p>
+ * Every snapshot carries an index of its barcode SKUs, built when the snapshot is published:
+ * a snapshot built from another extends the other's index with the SKU ids it adds, so the
+ * index costs a lane nothing and the publisher only the new SKUs.
+ */
+public final class PricingCatalogue {
+    static final PricingCatalogue EMPTY = new PricingCatalogue(0,
+            new HeapStorage(Collections.emptyMap(), new String[0], new PricingRule[0]), BarcodeIndex.EMPTY);
+
+    private final long version;
+    private final Storage storage;
+    private final BarcodeIndex barcodes;
+
+    private PricingCatalogue(long version, Storage storage, BarcodeIndex barcodes) {
+        this.version = version;
+        this.storage = storage;
+        this.barcodes = barcodes;
+    }
+
+    /**
+     * Creates an empty snapshot whose SKUs and rules, and those of every snapshot built from it,
+     * are stored off the heap.
+     *
+     * @param expectedSkus The number of SKUs to make room for up front.
+     * @return The empty snapshot.
+     */
+    static PricingCatalogue emptyOffHeap(int expectedSkus) {
+        return new PricingCatalogue(0, OffHeapStorage.empty(expectedSkus), BarcodeIndex.EMPTY);
+    }
+
+    /**
+     * Creates a snapshot over storage built elsewhere, such as a memory-mapped file, indexing
+     * its barcode SKUs from scratch.
+     *
+     * @param version The version of the snapshot.
+     * @param storage The SKUs and rules of the snapshot.
+     * @return The snapshot.
+     */
+    static PricingCatalogue of(long version, Storage storage) {
+        PricingCatalogue catalogue = new PricingCatalogue(version, storage, BarcodeIndex.EMPTY);
+        return new PricingCatalogue(version, storage, BarcodeIndex.EMPTY.with(catalogue, 0));
+    }
+
+    /**
+     * Returns the version of this snapshot. Each published snapshot has a higher version than the last.
+     *
+     * @return The catalogue version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the number of SKU ids assigned so far, including ids of removed SKUs.
+     *
+     * @return The number of assigned SKU ids.
+     */
+    public int size() {
+        return storage.size();
+    }
+
+    /**
+     * Resolves a SKU to its dense id.
+     *
+     * @param sku The Stock Keeping Unit (SKU) to resolve.
+     * @return The id of the SKU, or -1 if no rule is registered for it in this snapshot.
+     * @throws IllegalArgumentException if the SKU is empty.
+     * @throws NullPointerException if the SKU is null.
+     */
+    public int getSkuId(String sku) {
+        int skuId = storage.find(PricingRuleFactory.normalizeSku(sku));
+        return skuId < 0 || !storage.hasRule(skuId) ? -1 : skuId;
+    }
+
+    /**
+     * Returns the id assigned to a normalized SKU, even if the SKU has no rule in this snapshot.
+     *
+     * @param sku The normalized SKU.
+     * @return The id of the SKU, or -1 if it has never been assigned one.
+     */
+    int findSkuId(String sku) {
+        return storage.find(sku);
+    }
+
+    /**
+     * Retrieves the pricing rule for a given SKU.
+     *
+     * @param sku The Stock Keeping Unit (SKU) for the item.
+     * @return The PricingRule associated with the SKU, or null if not found.
+     */
+    public PricingRule getPricingRule(String sku) {
+        int skuId = getSkuId(sku);
+        return skuId < 0 ? null : storage.rule(skuId);
+    }
+
+    /**
+     * Retrieves the pricing rule for a SKU id returned by {@link #getSkuId(String)}.
+     *
+     * @param skuId The dense id of the SKU.
+     * @return The PricingRule associated with the SKU id, or null if the SKU has been removed.
+     */
+    public PricingRule getPricingRule(int skuId) {
+        return storage.rule(skuId);
+    }
+
+    /**
+     * Returns the normalized SKU for a dense id.
+     *
+     * @param skuId The dense id of the SKU.
+     * @return The SKU registered under that id.
+     */
+    public String getSku(int skuId) {
+        return storage.sku(skuId);
+    }
+
+    /**
+     * Returns whether a SKU id has a rule in this snapshot.
+     *
+     * @param skuId The dense id of the SKU.
+     * @return true if the SKU has a rule, false if it has been removed or only reserved.
+     */
+    boolean hasRule(int skuId) {
+        return storage.hasRule(skuId);
+    }
+
+    /**
+     * Resolves a decoded barcode to the SKU it sells and the quantity to add, through the
+     * barcode index built when this snapshot was published.
+     *
+     * @param barcode A barcode returned by {@code Barcodes.decode}.
+     * @return The SKU id in the high and the quantity in the low 32 bits, or -1 if the barcode is unknown.
+     */
+    long resolveBarcode(long barcode) {
+        return barcodes.resolve(this, barcode);
+    }
+
+    /**
+     * Starts a builder for the next snapshot, initialised with the contents of this one.
+     *
+     * @return A builder whose {@link Builder#build()} has the next version.
+     */
+    Builder toBuilder() {
+        return toBuilder(version + 1);
+    }
+
+    /**
+     * Starts a builder for a snapshot with a given version, initialised with the contents of this one.
+     *
+     * @param version The version of the snapshot to build.
+     * @return A builder whose {@link Builder#build()} has that version.
+     */
+    Builder toBuilder(long version) {
+        return new Builder(this, version);
+    }
+
+    /**
+     * Creates a snapshot with the same SKUs and ids as this one and the rules of some SKUs
+     * replaced. A snapshot on the heap shares its SKU index with the result, so only the rules
+     * are copied.
+     *
+     * @param version   The version of the new snapshot.
+     * @param overrides The replacement rules by normalized SKU. Every SKU must have an id in this snapshot.
+     * @return The new snapshot.
+     * @throws IllegalArgumentException if a SKU has no id in this snapshot.
+     */
+    PricingCatalogue withRules(long version, Map<String, PricingRule> overrides) {
+        if (!(storage instanceof HeapStorage)) {
+            Builder builder = toBuilder(version);
+            overrides.forEach((sku, rule) -> {
+                if (findSkuId(sku) < 0) {
+                    throw new IllegalArgumentException("SKU has no id in this catalogue: " + sku);
+                }
+                builder.put(sku, rule);
+            });
+            return builder.build();
+        }
+        // The same SKU ids, so the same barcode index
+        HeapStorage heap = (HeapStorage) storage;
+        PricingRule[] rules = heap.rules.clone();
+        overrides.forEach((sku, rule) -> {
+            int skuId = heap.find(sku);
+            if (skuId < 0) {
+                throw new IllegalArgumentException("SKU has no id in this catalogue: " + sku);
+            }
+            rules[skuId] = rule;
+        });
+        return new PricingCatalogue(version, new HeapStorage(heap.skuIds, heap.skus, rules), barcodes);
+    }
+
+    /**
+     * Collects changes for the next catalogue snapshot. A builder is single-use and not thread-safe.
+     */
+    public static final class Builder {
+        // Stored and removed again to give an off-heap SKU an id
+        private static final PricingRule RESERVED = new RegularPricingRule(BigDecimal.ZERO);
+
+        private final long version;
+        // The base snapshot's barcode index and the first id it does not cover
+        private final BarcodeIndex barcodes;
+        private final int baseSize;
+        private Map<String, Integer> skuIds;
+        private String[] skus;
+        private PricingRule[] rules;
+        private int size;
+        // Set instead of the arrays above when the base snapshot is stored off the heap
+        private OffHeapStorage.Editor offHeap;
+        private boolean built;
+
+        private Builder(PricingCatalogue base, long version) {
+            this.version = version;
+            this.barcodes = base.barcodes;
+            this.baseSize = base.size();
+            this.size = base.size();
+            if (base.storage instanceof OffHeapStorage) {
+                this.offHeap = ((OffHeapStorage) base.storage).edit();
+            } else if (base.storage instanceof HeapStorage) {
+                HeapStorage heap = (HeapStorage) base.storage;
+                this.skuIds = new HashMap<>(heap.skuIds);
+                this.skus = Arrays.copyOf(heap.skus, Math.max(16, size));
+                this.rules = Arrays.copyOf(heap.rules, skus.length);
+            } else {
+                // Other storage is copied onto the heap once, by the first change made to it
+                this.skuIds = new HashMap<>((int) (size / 0.75f) + 1);
+                this.skus = new String[Math.max(16, size)];
+                this.rules = new PricingRule[skus.length];
+                for (int skuId = 0; skuId < size; skuId++) {
+                    skus[skuId] = base.storage.sku(skuId);
+                    rules[skuId] = base.storage.rule(skuId);
+                    skuIds.put(skus[skuId], skuId);
+                }
+            }
+        }
+
+        /**
+         * Sets the pricing rule for a SKU, assigning it a new id if it has never been registered.
+         *
+         * @param sku  The Stock Keeping Unit (SKU) for the item.
+         * @param rule The PricingRule to be associated with the SKU.
+         * @return This builder.
+         * @throws IllegalArgumentException if the SKU is empty.
+         * @throws NullPointerException if the SKU or rule is null.
+         */
+        public Builder put(String sku, PricingRule rule) {
+            checkNotBuilt();
+            String key = PricingRuleFactory.normalizeSku(sku);
+            Objects.requireNonNull(rule, "Pricing rule cannot be null");
+            if (offHeap != null) {
+                offHeap.put(key, rule);
+                return this;
+            }
+            // Assigning the id may grow the array, so it is read afterwards
+            int skuId = assignId(key);
+            rules[skuId] = rule;
+            return this;
+        }
+
+        /**
+         * Gives a SKU an id without a rule if it has never been registered, as if it had been
+         * added and removed.
+         *
+         * @param sku The Stock Keeping Unit (SKU) to give an id.
+         * @return This builder.
+         */
+        Builder reserve(String sku) {
+            checkNotBuilt();
+            String key = PricingRuleFactory.normalizeSku(sku);
+            if (offHeap == null) {
+                assignId(key);
+            } else if (offHeap.find(key) < 0) {
+                offHeap.put(key, RESERVED);
+                offHeap.remove(key);
+            }
+            return this;
+        }
+
+        private int assignId(String key) {
+            Integer skuId = skuIds.get(key);
+            if (skuId == null) {
+                skuId = size++;
+                if (skuId == rules.length) {
+                    skus = Arrays.copyOf(skus, skuId * 2);
+                    rules = Arrays.copyOf(rules, skuId * 2);
+                }
+                skuIds.put(key, skuId);
+                skus[skuId] = key;
+            }
+            return skuId;
+        }
+
+        /**
+         * Removes the pricing rule for a SKU. The SKU keeps its id in case it is added again.
+         *
+         * @param sku The Stock Keeping Unit (SKU) to remove.
+         * @return true if the SKU had a rule, false otherwise.
+         * @throws IllegalArgumentException if the SKU is empty.
+         * @throws NullPointerException if the SKU is null.
+         */
+        public boolean remove(String sku) {
+            checkNotBuilt();
+            String key = PricingRuleFactory.normalizeSku(sku);
+            if (offHeap != null) {
+                return offHeap.remove(key);
+            }
+            Integer skuId = skuIds.get(key);
+            if (skuId == null || rules[skuId] == null) {
+                return false;
+            }
+            rules[skuId] = null;
+            return true;
+        }
+
+        /**
+         * Builds the snapshot. The builder cannot be used afterwards.
+         *
+         * @return The new immutable catalogue snapshot.
+         */
+        public PricingCatalogue build() {
+            checkNotBuilt();
+            built = true;
+            Storage storage;
+            if (offHeap != null) {
+                storage = offHeap.build();
+            } else {
+                storage = new HeapStorage(Collections.unmodifiableMap(skuIds),
+                        Arrays.copyOf(skus, size), Arrays.copyOf(rules, size));
+                skuIds = null;
+            }
+            if (storage.size() == baseSize) {
+                return new PricingCatalogue(version, storage, barcodes);
+            }
+            // Only the SKU ids assigned by this builder are indexed
+            PricingCatalogue catalogue = new PricingCatalogue(version, storage, barcodes);
+            return new PricingCatalogue(version, storage, barcodes.with(catalogue, baseSize));
+        }
+
+        private void checkNotBuilt() {
+            if (built) {
+                throw new IllegalStateException("Catalogue has already been built");
+            }
+        }
+    }
+
+    /**
+     * Where a snapshot keeps its SKUs and rules. Storage is immutable once the snapshot is published.
+     */
+    interface Storage {
+        /**
+         * Returns the number of SKU ids assigned, including ids of removed SKUs.
+         */
+        int size();
+
+        /**
+         * Returns the id of a normalized SKU, or -1 if it has never been assigned one.
+         */
+        int find(String sku);
+
+        String sku(int skuId);
+
+        /**
+         * Returns the rule of a SKU id, or null if the SKU has been removed.
+         */
+        PricingRule rule(int skuId);
+
+        /**
+         * Returns whether a SKU id has a rule, without creating the rule if it is stored as data.
+         */
+        default boolean hasRule(int skuId) {
+            return rule(skuId) != null;
+        }
+    }
+
+    /**
+     * Storage in a hash map and two arrays, as built by {@link Builder}.
+     */
+    private static final class HeapStorage implements Storage {
+        private final Map<String, Integer> skuIds;
+        private final String[] skus;
+        private final PricingRule[] rules;
+
+        HeapStorage(Map<String, Integer> skuIds, String[] skus, PricingRule[] rules) {
+            this.skuIds = skuIds;
+            this.skus = skus;
+            this.rules = rules;
+        }
+
+        @Override
+        public int size() {
+            return skus.length;
+        }
+
+        @Override
+        public int find(String sku) {
+            Integer skuId = skuIds.get(sku);
+            return skuId == null ? -1 : skuId;
+        }
+
+        @Override
+        public String sku(int skuId) {
+            return skus[skuId];
+        }
+
+        @Override
+        public PricingRule rule(int skuId) {
+            return rules[skuId];
+        }
+    }
+}
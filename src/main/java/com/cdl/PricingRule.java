@@ -7,4 +7,17 @@ import java.math.BigDecimal;
  */
 public interface PricingRule {
     BigDecimal calculatePrice(int quantity);
+
+    /**
+     * Calculates the total price for a given quantity in minor units (pence/cents).
+     * The result is the same as {@link #calculatePrice(int)} rounded half up to 2 decimal places.
+     * Implementations should override this to avoid allocating BigDecimals.
+     *
+     * @param quantity The number of items to calculate the price for.
+     * @return The total price in minor units.
+     * @throws ArithmeticException if the price does not fit in a long number of minor units.
+     */
+    default long calculatePriceMinor(int quantity) {
+        return Money.toMinorUnits(calculatePrice(quantity));
+    }
 }
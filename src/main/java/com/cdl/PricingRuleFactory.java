@@ -1,14 +1,85 @@
 package com.cdl;
 
-import java.util.HashMap;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * Factory for creating and managing pricing rules associated with SKUs.
+ * <p>
+ * Each SKU is given a dense int id when it is first registered. Rules are held in an array
+ * indexed by that id, so callers that resolve a SKU once can look up its rule with a single
+ * array load.
+ * <p>
+ * The rules live in an immutable {@link PricingCatalogue} snapshot behind an atomic reference,
+ * so one factory can be shared by many checkout lanes. Readers never lock; a change builds a
+ * new snapshot and publishes it with a single swap. Writers are serialized with each other.
+ * <p>
+ * Rules can also be scheduled to apply for a set period with {@link #schedulePricingRule}. The
+ * factory then prebuilds a snapshot for every period, or epoch, in which the same scheduled
+ * rules are in effect, and publishes the next one when its period starts. Lanes keep reading
+ * the current snapshot with a single load and never check dates themselves. Epochs are rolled
+ * over by the executor passed to {@link #startScheduler}; without one, the current epoch is
+ * only chosen again when the rules change.
  */
 public class PricingRuleFactory {
-    private final Map<String, PricingRule> rules = new HashMap<>();
+    private final AtomicReference<PricingCatalogue> catalogue = new AtomicReference<>();
+    private final Object writeLock = new Object();
+    private final Clock clock;
+    // The rest is guarded by writeLock
+    // The catalogue without scheduled rules, which every epoch is built from
+    private PricingCatalogue base;
+    private final List<ScheduledPricingRule> schedule = new ArrayList<>();
+    private PromotionTimeline timeline;
+    private long lastVersion;
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> rollover;
+
+    public PricingRuleFactory() {
+        this(PricingCatalogue.EMPTY);
+    }
+
+    /**
+     * Creates a factory that starts from an existing catalogue snapshot, for example to price
+     * against a candidate or historical configuration without affecting the live catalogue.
+     *
+     * @param catalogue The snapshot to start from.
+     */
+    public PricingRuleFactory(PricingCatalogue catalogue) {
+        this(catalogue, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a factory that stores SKUs and rule parameters in direct buffers outside the Java
+     * heap, for catalogues of millions of SKUs. Regular and special rules are recreated from
+     * their parameters on every lookup, which costs a few small short-lived objects; other rules
+     * are kept on the heap. Every change copies the catalogue, so load large catalogues with
+     * {@link #update} in batches rather than one {@link #addPricingRule} call per SKU.
+     *
+     * @param expectedSkus The number of SKUs to make room for up front.
+     * @return The factory.
+     * @throws IllegalArgumentException if the expected number of SKUs is negative.
+     */
+    public static PricingRuleFactory offHeap(int expectedSkus) {
+        return new PricingRuleFactory(PricingCatalogue.emptyOffHeap(expectedSkus));
+    }
+
+    PricingRuleFactory(PricingCatalogue catalogue, Clock clock) {
+        this.base = Objects.requireNonNull(catalogue, "Catalogue cannot be null");
+        this.clock = Objects.requireNonNull(clock, "Clock cannot be null");
+        this.lastVersion = catalogue.getVersion();
+        this.timeline = PromotionTimeline.of(catalogue);
+        this.catalogue.set(catalogue);
+    }
 
     /**
      * Validates the SKU string.
@@ -17,13 +88,26 @@ public class PricingRuleFactory {
      * @throws IllegalArgumentException if the SKU is empty.
      * @throws NullPointerException if the SKU is null.
      */
-    private void validateSku(String sku) {
+    private static void validateSku(String sku) {
         Objects.requireNonNull(sku, "SKU cannot be null");
         if (sku.trim().isEmpty()) {
             throw new IllegalArgumentException("SKU cannot be empty");
         }
     }
 
+    /**
+     * Validates and normalizes a SKU as it enters the system.
+     *
+     * @param sku The Stock Keeping Unit (SKU) to normalize.
+     * @return The trimmed SKU.
+     * @throws IllegalArgumentException if the SKU is empty.
+     * @throws NullPointerException if the SKU is null.
+     */
+    static String normalizeSku(String sku) {
+        validateSku(sku);
+        return sku.trim();
+    }
+
     /**
      * Adds a pricing rule for a specific SKU.
      *
@@ -32,9 +116,287 @@ public class PricingRuleFactory {
      * @throws NullPointerException if the rule is null.
      */
     public void addPricingRule(String sku, PricingRule rule) {
-        validateSku(sku);
+        String key = normalizeSku(sku);
         Objects.requireNonNull(rule, "Pricing rule cannot be null");
-        rules.put(sku.trim(), rule);
+        update(builder -> builder.put(key, rule));
+    }
+
+    /**
+     * Removes the pricing rule for a SKU.
+     *
+     * @param sku The Stock Keeping Unit (SKU) to remove.
+     * @return true if a rule was removed, false if the SKU had no rule.
+     */
+    public boolean removePricingRule(String sku) {
+        String key = normalizeSku(sku);
+        boolean[] removed = new boolean[1];
+        update(builder -> removed[0] = builder.remove(key));
+        return removed[0];
+    }
+
+    /**
+     * Applies a batch of changes and publishes them as one new catalogue snapshot.
+     * Lanes see either none or all of the changes. Scheduled rules in effect keep replacing
+     * the regular rules of their SKUs.
+     *
+     * @param changes Callback that records the changes on a builder for the next snapshot.
+     * @return The published snapshot.
+     */
+    public PricingCatalogue update(Consumer<PricingCatalogue.Builder> changes) {
+        synchronized (writeLock) {
+            PricingCatalogue.Builder builder = base.toBuilder(++lastVersion);
+            changes.accept(builder);
+            base = builder.build();
+            return rebuildTimeline();
+        }
+    }
+
+    /**
+     * Applies rule changes received from another store node as one new snapshot, in the order
+     * given. A SKU without an id is given the next one, even if it has no rule, so that a node
+     * applying every change from the same catalogue assigns the same ids. When every SKU already
+     * has an id and no rule is removed, only the rules are copied and the SKU index is shared, so
+     * a price change to a large catalogue stays cheap.
+     *
+     * @param changes The new rule of each normalized SKU, or null for no rule.
+     * @return The published snapshot.
+     */
+    PricingCatalogue applyChanges(Map<String, PricingRule> changes) {
+        synchronized (writeLock) {
+            boolean rulesOnly = true;
+            for (Map.Entry<String, PricingRule> change : changes.entrySet()) {
+                if (change.getValue() == null || base.findSkuId(change.getKey()) < 0) {
+                    rulesOnly = false;
+                    break;
+                }
+            }
+            if (rulesOnly) {
+                base = base.withRules(++lastVersion, changes);
+            } else {
+                PricingCatalogue.Builder builder = base.toBuilder(++lastVersion);
+                changes.forEach((sku, rule) -> {
+                    if (rule == null) {
+                        builder.remove(sku);
+                        builder.reserve(sku);
+                    } else {
+                        builder.put(sku, rule);
+                    }
+                });
+                base = builder.build();
+            }
+            return rebuildTimeline();
+        }
+    }
+
+    /**
+     * Replaces the whole catalogue with another snapshot, such as a full snapshot written by
+     * another store node. Baskets in progress keep the snapshot they started with, and scheduled
+     * rules keep replacing the regular rules of their SKUs.
+     * <p>
+     * Ids are stable across versions, and baskets, tier overlays and the journal rely on that. If
+     * the replacement numbers the SKUs this factory already has the same way, it is used as it
+     * is. Otherwise its rules are copied into a new snapshot that keeps this factory's ids and
+     * gives the replacement's other SKUs the next ones.
+     *
+     * @param replacement The new catalogue.
+     * @return The published snapshot.
+     */
+    PricingCatalogue replaceCatalogue(PricingCatalogue replacement) {
+        Objects.requireNonNull(replacement, "Catalogue cannot be null");
+        synchronized (writeLock) {
+            lastVersion = Math.max(lastVersion, replacement.getVersion());
+            PricingCatalogue.Builder builder = sameIds(base, replacement) ? null : remap(replacement);
+            for (ScheduledPricingRule scheduled : schedule) {
+                // Every epoch needs an id for the SKU, as in schedulePricingRule
+                if (builder == null && replacement.findSkuId(scheduled.getSku()) < 0) {
+                    builder = replacement.toBuilder(++lastVersion);
+                }
+                if (builder != null) {
+                    builder.reserve(scheduled.getSku());
+                }
+            }
+            base = builder == null ? replacement : builder.build();
+            return rebuildTimeline();
+        }
+    }
+
+    /**
+     * Returns whether every SKU id of a catalogue names the same SKU in another one.
+     */
+    private static boolean sameIds(PricingCatalogue catalogue, PricingCatalogue other) {
+        if (other.size() < catalogue.size()) {
+            return false;
+        }
+        for (int skuId = 0; skuId < catalogue.size(); skuId++) {
+            if (!catalogue.getSku(skuId).equals(other.getSku(skuId))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts the next snapshot from the current one with the rules of a replacement catalogue.
+     * Called with the write lock held.
+     */
+    private PricingCatalogue.Builder remap(PricingCatalogue replacement) {
+        PricingCatalogue.Builder builder = base.toBuilder(++lastVersion);
+        for (int skuId = 0; skuId < base.size(); skuId++) {
+            String sku = base.getSku(skuId);
+            int replacementId = replacement.findSkuId(sku);
+            if (replacementId < 0 || replacement.getPricingRule(replacementId) == null) {
+                builder.remove(sku);
+            }
+        }
+        for (int skuId = 0; skuId < replacement.size(); skuId++) {
+            PricingRule rule = replacement.getPricingRule(skuId);
+            if (rule == null) {
+                builder.reserve(replacement.getSku(skuId));
+            } else {
+                builder.put(replacement.getSku(skuId), rule);
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Schedules a rule to replace the regular rule of a SKU for a period. Where scheduled rules
+     * for the same SKU overlap, the one scheduled last applies. A SKU with no regular rule is
+     * only priced while a scheduled rule for it is in effect.
+     *
+     * @param sku           The Stock Keeping Unit (SKU) for the item.
+     * @param rule          The PricingRule to apply during the period.
+     * @param effectiveFrom The start of the period, inclusive.
+     * @param effectiveTo   The end of the period, exclusive.
+     * @return The scheduled rule, which can be passed to {@link #cancelScheduledRule}.
+     * @throws IllegalArgumentException if the SKU is empty or the period ends before it starts.
+     * @throws NullPointerException if any argument is null.
+     */
+    public ScheduledPricingRule schedulePricingRule(String sku, PricingRule rule, Instant effectiveFrom, Instant effectiveTo) {
+        ScheduledPricingRule scheduled = new ScheduledPricingRule(sku, rule, effectiveFrom, effectiveTo);
+        synchronized (writeLock) {
+            if (base.findSkuId(scheduled.getSku()) < 0) {
+                // Give the SKU an id now, so that every epoch shares the same ids
+                base = base.toBuilder(++lastVersion).reserve(scheduled.getSku()).build();
+            }
+            schedule.add(scheduled);
+            rebuildTimeline();
+        }
+        return scheduled;
+    }
+
+    /**
+     * Cancels a scheduled rule. If it is in effect, the SKU goes back to its regular rule.
+     *
+     * @param scheduled A rule returned by {@link #schedulePricingRule}.
+     * @return true if the rule was still scheduled.
+     */
+    public boolean cancelScheduledRule(ScheduledPricingRule scheduled) {
+        synchronized (writeLock) {
+            if (!schedule.remove(scheduled)) {
+                return false;
+            }
+            rebuildTimeline();
+            return true;
+        }
+    }
+
+    /**
+     * Returns the scheduled rules that have not ended, in the order they were scheduled.
+     *
+     * @return A copy of the schedule.
+     */
+    public List<ScheduledPricingRule> getScheduledRules() {
+        synchronized (writeLock) {
+            long now = clock.millis();
+            List<ScheduledPricingRule> pending = new ArrayList<>(schedule.size());
+            for (ScheduledPricingRule scheduled : schedule) {
+                if (scheduled.getEffectiveToMillis() > now) {
+                    pending.add(scheduled);
+                }
+            }
+            return pending;
+        }
+    }
+
+    /**
+     * Rolls epochs over on an executor from now on, publishing each epoch's snapshot when its
+     * period starts. The factory schedules one task at a time, for the next epoch boundary.
+     *
+     * @param executor The executor to schedule rollovers on.
+     */
+    public void startScheduler(ScheduledExecutorService executor) {
+        Objects.requireNonNull(executor, "Executor cannot be null");
+        synchronized (writeLock) {
+            if (rollover != null) {
+                rollover.cancel(false);
+                rollover = null;
+            }
+            scheduler = executor;
+            publishCurrentEpoch();
+        }
+    }
+
+    /**
+     * Publishes the snapshot of the epoch in effect now, if it is not already current.
+     */
+    void rollOver() {
+        synchronized (writeLock) {
+            publishCurrentEpoch();
+        }
+    }
+
+    private PricingCatalogue rebuildTimeline() {
+        long now = clock.millis();
+        schedule.removeIf(scheduled -> scheduled.getEffectiveToMillis() <= now);
+        timeline = PromotionTimeline.build(base, schedule, now, () -> ++lastVersion);
+        return publishCurrentEpoch();
+    }
+
+    private PricingCatalogue publishCurrentEpoch() {
+        long now = clock.millis();
+        PricingCatalogue current = timeline.epochAt(now);
+        catalogue.set(current);
+        if (scheduler != null) {
+            if (rollover != null) {
+                rollover.cancel(false);
+            }
+            long next = timeline.nextBoundaryAfter(now);
+            try {
+                rollover = next == Long.MAX_VALUE ? null
+                        : scheduler.schedule(this::rollOver, next - now, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // The executor has been shut down, so epochs only change with the rules from now on
+                rollover = null;
+                scheduler = null;
+            }
+        }
+        return current;
+    }
+
+    PromotionTimeline timeline() {
+        synchronized (writeLock) {
+            return timeline;
+        }
+    }
+
+    /**
+     * Returns the catalogue without scheduled rules, which is what store nodes replicate; each
+     * node applies its own schedule.
+     */
+    PricingCatalogue baseCatalogue() {
+        synchronized (writeLock) {
+            return base;
+        }
+    }
+
+    /**
+     * Returns the current catalogue snapshot.
+     *
+     * @return The latest published snapshot.
+     */
+    public PricingCatalogue getCatalogue() {
+        return catalogue.get();
     }
 
     /**
@@ -44,8 +406,18 @@ public class PricingRuleFactory {
      * @return The PricingRule associated with the SKU, or null if not found.
      */
     public PricingRule getPricingRule(String sku) {
-        validateSku(sku);
-        return rules.get(sku.trim());
+        return catalogue.get().getPricingRule(sku);
+    }
+
+    /**
+     * Retrieves the pricing rule for a SKU id returned by {@link #getSkuId(String)}.
+     * The id is not validated beyond the array bounds check.
+     *
+     * @param skuId The dense id of the SKU.
+     * @return The PricingRule associated with the SKU id, or null if the SKU has been removed.
+     */
+    public PricingRule getPricingRule(int skuId) {
+        return catalogue.get().getPricingRule(skuId);
     }
 
     /**
@@ -55,7 +427,53 @@ public class PricingRuleFactory {
      * @return true if a pricing rule exists for the SKU, false otherwise.
      */
     public boolean hasRule(String sku) {
-        validateSku(sku);
-        return rules.containsKey(sku.trim());
+        return getSkuId(sku) >= 0;
+    }
+
+    /**
+     * Resolves a SKU to its dense id. Ids run from 0 to {@link #size()} - 1 in registration
+     * order and do not change when the rule for a SKU is replaced.
+     *
+     * @param sku The Stock Keeping Unit (SKU) to resolve.
+     * @return The id of the SKU, or -1 if no rule is registered for it.
+     * @throws IllegalArgumentException if the SKU is empty.
+     * @throws NullPointerException if the SKU is null.
+     */
+    public int getSkuId(String sku) {
+        return catalogue.get().getSkuId(sku);
+    }
+
+    /**
+     * Resolves a barcode decoded by {@link Barcodes#decode(byte[], int, int)} to the id of the
+     * SKU it sells. SKUs that are EAN-13 or UPC-A barcodes are found by value, through an index
+     * of primitive long keys extended as each catalogue snapshot is published. A variable
+     * measure barcode resolves to its seven-digit item, such as {@code 2112345}, if the
+     * catalogue has one.
+     *
+     * @param barcode The decoded barcode.
+     * @return The id of the SKU, or -1 if no rule is registered for the barcode.
+     */
+    public int getSkuIdForBarcode(long barcode) {
+        long resolved = catalogue.get().resolveBarcode(barcode);
+        return resolved < 0 ? -1 : (int) (resolved >>> 32);
+    }
+
+    /**
+     * Returns the normalized SKU for a dense id.
+     *
+     * @param skuId The dense id of the SKU.
+     * @return The SKU registered under that id.
+     */
+    public String getSku(int skuId) {
+        return catalogue.get().getSku(skuId);
+    }
+
+    /**
+     * Returns the number of SKU ids assigned so far.
+     *
+     * @return The number of assigned SKU ids.
+     */
+    public int size() {
+        return catalogue.get().size();
     }
-}
\ No newline at end of file
+}
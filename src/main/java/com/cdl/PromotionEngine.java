@@ -0,0 +1,347 @@
+package com.cdl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Prices a basket with multi-SKU {@link BundleOffer}s on top of the per-SKU pricing rules,
+ * choosing the allocation of items to offers that gives the customer the lowest total.
+ * <p>
+ * Offers are compiled against the catalogue snapshot and tier overlay a basket is pinned to and
+ * split into groups that share no SKU, so each group is searched on its own by a {@link BundleSolver}.
+ * Grouped SKUs are priced with the same rules as the {@link Checkout}, tier prices included,
+ * and lines for SKUs in no offer keep the price the checkout already holds for them, so a
+ * promotion total never exceeds the checkout's regular total.
+ * <p>
+ * An engine is thread-safe and can be shared by every lane. Each lane prices its basket through
+ * its own {@link Session}, which only searches again the groups whose quantities changed since
+ * the last call, so repricing after a scan costs one group's search at most.
+ */
+public final class PromotionEngine {
+    /**
+     * Default number of search nodes visited for one group before settling for the best total found.
+     */
+    public static final int DEFAULT_NODE_BUDGET = 2_000;
+
+    // Catalogue snapshots and overlays compiled at once, enough for lanes pinned to a few
+    // versions and tiers while a new version rolls out
+    static final int COMPILED_CACHE_SIZE = 8;
+
+    private final List<BundleOffer> offers;
+    private final int nodeBudget;
+    // Offers compiled against the most recently seen snapshots and overlays, newest first;
+    // replaced as a whole so lanes read it without locking
+    private volatile Compiled[] compiled = new Compiled[0];
+
+    public PromotionEngine(List<BundleOffer> offers) {
+        this(offers, DEFAULT_NODE_BUDGET);
+    }
+
+    /**
+     * Creates an engine with a custom search budget.
+     *
+     * @param offers     The offers available to every basket.
+     * @param nodeBudget The most search nodes visited for one group of overlapping offers.
+     * @throws IllegalArgumentException if the node budget is not positive.
+     */
+    public PromotionEngine(List<BundleOffer> offers, int nodeBudget) {
+        if (nodeBudget <= 0) {
+            throw new IllegalArgumentException("Node budget must be positive");
+        }
+        this.offers = List.copyOf(offers);
+        this.nodeBudget = nodeBudget;
+    }
+
+    public List<BundleOffer> getOffers() {
+        return offers;
+    }
+
+    /**
+     * Starts a session for one lane.
+     *
+     * @return A new session with nothing cached.
+     */
+    public Session newSession() {
+        return new Session();
+    }
+
+    /**
+     * Prices a basket from scratch.
+     *
+     * @param checkout The checkout holding the basket.
+     * @return The basket price with promotions applied.
+     */
+    public PromotionResult price(Checkout checkout) {
+        return newSession().price(checkout);
+    }
+
+    Compiled compiled(PricingCatalogue catalogue, PriceOverlay overlay) {
+        Compiled[] cached = compiled;
+        for (Compiled current : cached) {
+            if (current.catalogue == catalogue && current.overlay == overlay) {
+                return current;
+            }
+        }
+        // Racing lanes may each compile the same snapshot; any of the results is correct, and
+        // a lost update only costs a later recompile
+        Compiled current = new Compiled(catalogue, overlay);
+        Compiled[] updated = new Compiled[Math.min(cached.length + 1, COMPILED_CACHE_SIZE)];
+        updated[0] = current;
+        System.arraycopy(cached, 0, updated, 1, updated.length - 1);
+        compiled = updated;
+        return current;
+    }
+
+    /**
+     * The offers resolved against one catalogue snapshot and tier overlay, and split into
+     * independent groups.
+     */
+    final class Compiled {
+        final PricingCatalogue catalogue;
+        // The tier overlay whose rules replace the catalogue's, or null for regular prices
+        final PriceOverlay overlay;
+        final BundleSolver[] solvers;
+        // Open-addressing table of the SKUs in some offer, at most half full and sized by the
+        // offers rather than the catalogue: the SKU id of each slot plus one, or 0 for an empty
+        // slot, with the SKU's group and its index within the group
+        private final int[] keys;
+        private final int[] groups;
+        private final int[] localIndexes;
+        private final int mask;
+
+        Compiled(PricingCatalogue catalogue, PriceOverlay overlay) {
+            this.catalogue = catalogue;
+            this.overlay = overlay;
+
+            // Resolve each offer's slots to SKU ids, dropping offers with a slot no SKU can fill
+            int[][][] resolved = new int[offers.size()][][];
+            int[] parent = new int[offers.size()];
+            Map<Integer, Integer> firstOffer = new HashMap<>();
+            for (int offer = 0; offer < offers.size(); offer++) {
+                parent[offer] = offer;
+                resolved[offer] = resolve(offers.get(offer));
+                if (resolved[offer] == null) {
+                    continue;
+                }
+                for (int[] slot : resolved[offer]) {
+                    for (int skuId : slot) {
+                        Integer first = firstOffer.putIfAbsent(skuId, offer);
+                        if (first != null) {
+                            union(parent, first, offer);
+                        }
+                    }
+                }
+            }
+
+            int capacity = 2;
+            while (capacity < firstOffer.size() * 2) {
+                capacity *= 2;
+            }
+            this.keys = new int[capacity];
+            this.groups = new int[capacity];
+            this.localIndexes = new int[capacity];
+            this.mask = capacity - 1;
+
+            Map<Integer, List<Integer>> byRoot = new LinkedHashMap<>();
+            for (int offer = 0; offer < offers.size(); offer++) {
+                if (resolved[offer] != null) {
+                    byRoot.computeIfAbsent(find(parent, offer), root -> new ArrayList<>()).add(offer);
+                }
+            }
+            this.solvers = new BundleSolver[byRoot.size()];
+            int group = 0;
+            for (List<Integer> members : byRoot.values()) {
+                solvers[group] = compileGroup(group, members, resolved);
+                group++;
+            }
+        }
+
+        private int[][] resolve(BundleOffer offer) {
+            int[][] slots = new int[offer.getSlotCount()][];
+            for (int slot = 0; slot < slots.length; slot++) {
+                slots[slot] = offer.getSlotSkus(slot).stream()
+                        .mapToInt(catalogue::getSkuId)
+                        .filter(skuId -> skuId >= 0)
+                        .toArray();
+                if (slots[slot].length == 0) {
+                    return null;
+                }
+            }
+            return slots;
+        }
+
+        /**
+         * Returns the table slot of a SKU, or of the empty slot where it would go.
+         */
+        private int slot(int skuId) {
+            int h = skuId * 0x9E3779B9;
+            int key = skuId + 1;
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Returns the rule a checkout priced with this overlay applies to a SKU.
+         */
+        private PricingRule pricingRule(int skuId) {
+            PricingRule rule = overlay == null ? null : overlay.getPricingRule(skuId);
+            return rule != null ? rule : catalogue.getPricingRule(skuId);
+        }
+
+        /**
+         * Estimates what a bundle's units would cost without the offer, from the average
+         * single-unit price of the SKUs eligible for each slot.
+         */
+        private long regularValue(BundleOffer offer, int[][] slots) {
+            long value = 0;
+            for (int slot = 0; slot < slots.length; slot++) {
+                long total = 0;
+                for (int skuId : slots[slot]) {
+                    total += pricingRule(skuId).calculatePriceMinor(1);
+                }
+                value += total * offer.getSlotUnits(slot) / slots[slot].length;
+            }
+            return Math.max(value, 1);
+        }
+
+        private BundleSolver compileGroup(int group, List<Integer> members, int[][][] resolved) {
+            // Deepest discount first, so the first leaves reached are good bounds
+            Map<Integer, Long> values = new HashMap<>();
+            for (int offer : members) {
+                values.put(offer, regularValue(offers.get(offer), resolved[offer]));
+            }
+            members.sort((a, b) -> Long.compare(
+                    offers.get(a).getPriceMinor() * values.get(b),
+                    offers.get(b).getPriceMinor() * values.get(a)));
+            List<Integer> skuIds = new ArrayList<>();
+            int[] groupOffers = new int[members.size()];
+            long[] prices = new long[members.size()];
+            int[][][] slotSkus = new int[members.size()][][];
+            int[][] slotUnits = new int[members.size()][];
+            for (int i = 0; i < members.size(); i++) {
+                int offer = members.get(i);
+                BundleOffer bundle = offers.get(offer);
+                groupOffers[i] = offer;
+                prices[i] = bundle.getPriceMinor();
+                slotSkus[i] = new int[resolved[offer].length][];
+                slotUnits[i] = new int[resolved[offer].length];
+                for (int slot = 0; slot < resolved[offer].length; slot++) {
+                    int[] skus = resolved[offer][slot];
+                    slotSkus[i][slot] = new int[skus.length];
+                    slotUnits[i][slot] = bundle.getSlotUnits(slot);
+                    for (int j = 0; j < skus.length; j++) {
+                        int entry = slot(skus[j]);
+                        if (keys[entry] == 0) {
+                            keys[entry] = skus[j] + 1;
+                            groups[entry] = group;
+                            localIndexes[entry] = skuIds.size();
+                            skuIds.add(skus[j]);
+                        }
+                        slotSkus[i][slot][j] = localIndexes[entry];
+                    }
+                }
+            }
+            PricingRule[] rules = new PricingRule[skuIds.size()];
+            for (int i = 0; i < rules.length; i++) {
+                rules[i] = pricingRule(skuIds.get(i));
+            }
+            return new BundleSolver(skuIds.stream().mapToInt(Integer::intValue).toArray(), rules,
+                    groupOffers, prices, slotSkus, slotUnits);
+        }
+    }
+
+    private static int find(int[] parent, int offer) {
+        while (parent[offer] != offer) {
+            parent[offer] = parent[parent[offer]];
+            offer = parent[offer];
+        }
+        return offer;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        parent[find(parent, a)] = find(parent, b);
+    }
+
+    /**
+     * Prices the baskets of one lane, keeping the last solution of every group of offers so
+     * that only groups touched since the previous call are searched again. A session is not
+     * thread-safe.
+     */
+    public final class Session {
+        private Compiled compiled;
+        private int[][] quantities;
+        private int[][] solvedQuantities;
+        private BundleSolver.Solution[] solutions;
+
+        private Session() {
+        }
+
+        /**
+         * Prices the basket currently in a checkout, against the catalogue snapshot and tier
+         * overlay it is pinned to.
+         *
+         * @param checkout The checkout holding the basket.
+         * @return The basket price with promotions applied.
+         */
+        public PromotionResult price(Checkout checkout) {
+            Objects.requireNonNull(checkout, "Checkout cannot be null");
+            PricingCatalogue catalogue = checkout.catalogue();
+            PriceOverlay overlay = checkout.overlay();
+            Compiled current = compiled;
+            if (current == null || current.catalogue != catalogue || current.overlay != overlay) {
+                current = compiled(catalogue, overlay);
+            }
+            if (current != compiled) {
+                compiled = current;
+                quantities = new int[current.solvers.length][];
+                solvedQuantities = new int[current.solvers.length][];
+                solutions = new BundleSolver.Solution[current.solvers.length];
+                for (int group = 0; group < quantities.length; group++) {
+                    quantities[group] = new int[current.solvers[group].getSkuIds().length];
+                }
+            }
+            for (int[] groupQuantities : quantities) {
+                Arrays.fill(groupQuantities, 0);
+            }
+
+            Cart lines = checkout.lines();
+            long total = 0;
+            for (int line = 0; line < lines.lineCount(); line++) {
+                int skuId = lines.skuId(line);
+                int slot = current.slot(skuId);
+                if (current.keys[slot] == 0) {
+                    total += lines.linePrice(line);
+                } else {
+                    quantities[current.groups[slot]][current.localIndexes[slot]] = lines.quantity(line);
+                }
+            }
+
+            int[] applications = new int[offers.size()];
+            boolean optimal = true;
+            for (int group = 0; group < quantities.length; group++) {
+                if (solutions[group] == null || !Arrays.equals(quantities[group], solvedQuantities[group])) {
+                    BundleSolver.Solution previous = solutions[group];
+                    solutions[group] = current.solvers[group].solve(quantities[group], nodeBudget,
+                            previous == null ? null : previous.applications);
+                    solvedQuantities[group] = quantities[group].clone();
+                }
+                BundleSolver.Solution solution = solutions[group];
+                total += solution.totalMinor;
+                optimal &= solution.optimal;
+                int[] groupOffers = current.solvers[group].getOffers();
+                for (int i = 0; i < groupOffers.length; i++) {
+                    applications[groupOffers[i]] = solution.applications[i];
+                }
+            }
+            return new PromotionResult(offers, applications, total, checkout.calculateTotalMinor(), optimal);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.cdl;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * The price of a basket after bundle promotions have been applied.
+ */
+public final class PromotionResult {
+    private final List<BundleOffer> offers;
+    private final int[] applications;
+    private final long totalMinor;
+    private final long regularTotalMinor;
+    private final boolean optimal;
+
+    PromotionResult(List<BundleOffer> offers, int[] applications, long totalMinor, long regularTotalMinor,
+                    boolean optimal) {
+        this.offers = offers;
+        this.applications = applications;
+        this.totalMinor = totalMinor;
+        this.regularTotalMinor = regularTotalMinor;
+        this.optimal = optimal;
+    }
+
+    /**
+     * Returns the basket total with promotions applied.
+     *
+     * @return The total as a BigDecimal, with 2 decimal places.
+     */
+    public BigDecimal getTotal() {
+        return Money.fromMinorUnits(totalMinor);
+    }
+
+    public long getTotalMinor() {
+        return totalMinor;
+    }
+
+    /**
+     * Returns the basket total from the per-SKU pricing rules alone, as {@link Checkout#calculateTotalMinor()}.
+     *
+     * @return The total without bundle promotions, in minor units.
+     */
+    public long getRegularTotalMinor() {
+        return regularTotalMinor;
+    }
+
+    /**
+     * Returns how much the bundle promotions save the customer.
+     *
+     * @return The saving in minor units.
+     */
+    public long getSavingMinor() {
+        return regularTotalMinor - totalMinor;
+    }
+
+    /**
+     * Returns how many times an offer was applied.
+     *
+     * @param offer The offer, as passed to the {@link PromotionEngine}.
+     * @return The number of bundles sold under the offer.
+     */
+    public int getApplications(BundleOffer offer) {
+        int index = offers.indexOf(offer);
+        return index < 0 ? 0 : applications[index];
+    }
+
+    /**
+     * Returns false if the search hit its node budget before proving the total is the lowest
+     * possible. The total is then the best allocation found, never worse than no promotions.
+     *
+     * @return true if the total is proven optimal.
+     */
+    public boolean isOptimal() {
+        return optimal;
+    }
+}
@@ -0,0 +1,104 @@
+package com.cdl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.LongSupplier;
+
+/**
+ * The catalogue epochs produced by a set of scheduled rules: one prebuilt catalogue snapshot for
+ * each period in which the same scheduled rules are in effect.
+ * <p>
+ * Epochs are built when the rules or the schedule change, so rolling over to the next epoch is a
+ * matter of publishing a snapshot that already exists. Every epoch is built from the same base
+ * catalogue and shares its SKU index, so SKU ids are the same in all of them.
+ */
+final class PromotionTimeline {
+    // starts[i] is the first millisecond of epochs[i]; the first epoch starts at Long.MIN_VALUE
+    private final long[] starts;
+    private final PricingCatalogue[] epochs;
+
+    private PromotionTimeline(long[] starts, PricingCatalogue[] epochs) {
+        this.starts = starts;
+        this.epochs = epochs;
+    }
+
+    /**
+     * Returns a timeline with a single epoch that never ends.
+     */
+    static PromotionTimeline of(PricingCatalogue catalogue) {
+        return new PromotionTimeline(new long[]{Long.MIN_VALUE}, new PricingCatalogue[]{catalogue});
+    }
+
+    /**
+     * Builds the epochs from now on. Where scheduled rules for the same SKU overlap, the one
+     * later in the list wins; rules that have ended by now are ignored.
+     *
+     * @param base     The catalogue without scheduled rules. Every scheduled SKU must have an id in it.
+     * @param schedule The scheduled rules, in the order they were scheduled.
+     * @param now      The current time in epoch milliseconds.
+     * @param versions Supplies the version of each epoch built, in increasing order.
+     */
+    static PromotionTimeline build(PricingCatalogue base, List<ScheduledPricingRule> schedule, long now, LongSupplier versions) {
+        TreeSet<Long> boundaries = new TreeSet<>();
+        for (ScheduledPricingRule scheduled : schedule) {
+            if (scheduled.getEffectiveFromMillis() > now) {
+                boundaries.add(scheduled.getEffectiveFromMillis());
+            }
+            if (scheduled.getEffectiveToMillis() > now) {
+                boundaries.add(scheduled.getEffectiveToMillis());
+            }
+        }
+        long[] starts = new long[boundaries.size() + 1];
+        PricingCatalogue[] epochs = new PricingCatalogue[starts.length];
+        starts[0] = Long.MIN_VALUE;
+        int epoch = 1;
+        for (long boundary : boundaries) {
+            starts[epoch++] = boundary;
+        }
+        for (epoch = 0; epoch < starts.length; epoch++) {
+            long at = epoch == 0 ? now : starts[epoch];
+            Map<String, PricingRule> overrides = new HashMap<>();
+            for (ScheduledPricingRule scheduled : schedule) {
+                if (scheduled.getEffectiveFromMillis() <= at && at < scheduled.getEffectiveToMillis()) {
+                    overrides.put(scheduled.getSku(), scheduled.getRule());
+                }
+            }
+            epochs[epoch] = overrides.isEmpty() && starts.length == 1
+                    ? base : base.withRules(versions.getAsLong(), overrides);
+        }
+        return new PromotionTimeline(starts, epochs);
+    }
+
+    /**
+     * Returns the epoch in effect at a time.
+     *
+     * @param millis The time in epoch milliseconds.
+     * @return The catalogue snapshot of the epoch.
+     */
+    PricingCatalogue epochAt(long millis) {
+        int epoch = Arrays.binarySearch(starts, millis);
+        return epochs[epoch >= 0 ? epoch : -epoch - 2];
+    }
+
+    /**
+     * Returns the start of the first epoch after a time.
+     *
+     * @param millis The time in epoch milliseconds.
+     * @return The start of the next epoch, or Long.MAX_VALUE if the epoch at that time is the last.
+     */
+    long nextBoundaryAfter(long millis) {
+        int epoch = Arrays.binarySearch(starts, millis);
+        int next = epoch >= 0 ? epoch + 1 : -epoch - 1;
+        return next < starts.length ? starts[next] : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the number of epochs, including the current one.
+     */
+    int epochCount() {
+        return epochs.length;
+    }
+}
@@ -0,0 +1,87 @@
+package com.cdl;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * The price of a basket against one catalogue snapshot, with a breakdown by line.
+ * Quotes are immutable and may be shared between callers.
+ */
+public final class Quote {
+    private final long catalogueVersion;
+    private final long totalMinor;
+    private final List<Line> lines;
+
+    Quote(long catalogueVersion, long totalMinor, List<Line> lines) {
+        this.catalogueVersion = catalogueVersion;
+        this.totalMinor = totalMinor;
+        this.lines = lines;
+    }
+
+    /**
+     * Returns the version of the catalogue snapshot the basket was priced against.
+     *
+     * @return The catalogue version.
+     */
+    public long getCatalogueVersion() {
+        return catalogueVersion;
+    }
+
+    /**
+     * Returns the basket total.
+     *
+     * @return The total as a BigDecimal, with 2 decimal places.
+     */
+    public BigDecimal getTotal() {
+        return Money.fromMinorUnits(totalMinor);
+    }
+
+    public long getTotalMinor() {
+        return totalMinor;
+    }
+
+    /**
+     * Returns the lines of the basket, one per SKU, in catalogue id order.
+     *
+     * @return An unmodifiable list of lines.
+     */
+    public List<Line> getLines() {
+        return lines;
+    }
+
+    /**
+     * One SKU of a quoted basket.
+     */
+    public static final class Line {
+        private final String sku;
+        private final int quantity;
+        private final long priceMinor;
+
+        Line(String sku, int quantity, long priceMinor) {
+            this.sku = sku;
+            this.quantity = quantity;
+            this.priceMinor = priceMinor;
+        }
+
+        public String getSku() {
+            return sku;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        /**
+         * Returns the price of the line, with any deal of its pricing rule applied.
+         *
+         * @return The price as a BigDecimal, with 2 decimal places.
+         */
+        public BigDecimal getPrice() {
+            return Money.fromMinorUnits(priceMinor);
+        }
+
+        public long getPriceMinor() {
+            return priceMinor;
+        }
+    }
+}
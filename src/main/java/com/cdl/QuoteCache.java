@@ -0,0 +1,276 @@
+package com.cdl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prices baskets for callers that ask for the same totals over and over, such as a web shop's
+ * mini-cart and checkout pages, and remembers the answers.
+ * <p>
+ * A basket is identified by a canonical fingerprint: its (SKU id, quantity) pairs sorted by id
+ * with repeated SKUs merged, together with the version of the catalogue snapshot it is priced
+ * against. The same items in any order and split across any number of entries therefore share
+ * a quote. Because every change to a {@link PricingRuleFactory} publishes a snapshot with a new
+ * version, a change invalidates every quote; the cache is emptied the first time it is used
+ * after the version changes.
+ * <p>
+ * Quotes live in a fixed number of stripes, each an access-ordered map behind its own lock that
+ * evicts its least recently used quote beyond its share of the maximum size. A miss is priced
+ * outside the lock, so two callers may occasionally price the same new basket at once.
+ */
+public class QuoteCache {
+    private static final int MAX_STRIPES = 64;
+
+    private final PricingRuleFactory pricingRuleFactory;
+    private final Stripe[] stripes;
+    private final int maxEntriesPerStripe;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final Object invalidationLock = new Object();
+    // The catalogue version of the quotes in the cache
+    private volatile long version;
+
+    /**
+     * Creates a quote cache.
+     *
+     * @param pricingRuleFactory The factory whose current catalogue baskets are priced against.
+     * @param maxEntries         The most quotes to keep; least recently used quotes are evicted beyond it.
+     * @throws IllegalArgumentException if the maximum is not positive.
+     */
+    public QuoteCache(PricingRuleFactory pricingRuleFactory, int maxEntries) {
+        this.pricingRuleFactory = Objects.requireNonNull(pricingRuleFactory, "Pricing rule factory cannot be null");
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Maximum entries must be positive");
+        }
+        int stripeCount = Integer.highestOneBit(Math.min(maxEntries, MAX_STRIPES));
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.maxEntriesPerStripe = (maxEntries + stripeCount - 1) / stripeCount;
+        this.version = pricingRuleFactory.getCatalogue().getVersion();
+    }
+
+    /**
+     * Prices a basket against the current catalogue, or returns the quote from the last time
+     * the same basket was priced against it.
+     *
+     * @param quantities The quantity of each SKU in the basket. SKUs with a quantity of 0 are ignored.
+     * @return The quote.
+     * @throws NullPointerException if the basket, a SKU or a quantity is null.
+     * @throws IllegalArgumentException if a SKU is empty or invalid, or a quantity is negative.
+     */
+    public Quote quote(Map<String, Integer> quantities) {
+        PricingCatalogue catalogue = pricingRuleFactory.getCatalogue();
+        BasketKey key = BasketKey.of(catalogue, quantities);
+        if (catalogue.getVersion() != version) {
+            invalidate(catalogue.getVersion());
+        }
+        Stripe stripe = stripes[key.hash & (stripes.length - 1)];
+        Quote quote = stripe.get(key);
+        if (quote != null) {
+            hits.increment();
+            return quote;
+        }
+        misses.increment();
+        quote = price(catalogue, key);
+        // A quote for a catalogue that has been replaced meanwhile would never be hit again
+        if (catalogue.getVersion() == version) {
+            stripe.put(key, quote);
+        }
+        return quote;
+    }
+
+    private Quote price(PricingCatalogue catalogue, BasketKey key) {
+        Checkout checkout = new Checkout(pricingRuleFactory);
+        checkout.pin(catalogue);
+        for (long line : key.lines) {
+            checkout.addQuantity((int) (line >>> 32), (int) line);
+        }
+        Cart cart = checkout.lines();
+        List<Quote.Line> lines = new ArrayList<>(cart.lineCount());
+        for (int line = 0; line < cart.lineCount(); line++) {
+            lines.add(new Quote.Line(catalogue.getSku(cart.skuId(line)), cart.quantity(line), cart.linePrice(line)));
+        }
+        return new Quote(catalogue.getVersion(), checkout.calculateTotalMinor(), Collections.unmodifiableList(lines));
+    }
+
+    private void invalidate(long newVersion) {
+        synchronized (invalidationLock) {
+            if (version == newVersion) {
+                return;
+            }
+            for (Stripe stripe : stripes) {
+                invalidations.add(stripe.clear());
+            }
+            version = newVersion;
+        }
+    }
+
+    /**
+     * Returns the number of quotes held.
+     *
+     * @return The number of quotes.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of quotes answered from the cache.
+     *
+     * @return The number of hits.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of quotes that had to be priced.
+     *
+     * @return The number of misses.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the share of quotes answered from the cache.
+     *
+     * @return The hit ratio between 0 and 1, or 0 if nothing has been quoted yet.
+     */
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Returns the number of quotes evicted to stay within the maximum size.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of quotes dropped because the catalogue changed.
+     *
+     * @return The number of invalidated quotes.
+     */
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    /**
+     * The canonical fingerprint of a basket: its lines as SKU id in the high and quantity in the
+     * low 32 bits, sorted, with the catalogue version.
+     */
+    static final class BasketKey {
+        private final long version;
+        private final long[] lines;
+        private final int hash;
+
+        private BasketKey(long version, long[] lines) {
+            this.version = version;
+            this.lines = lines;
+            long h = version * 0x9E3779B97F4A7C15L;
+            for (long line : lines) {
+                h = (h ^ line) * 0x9E3779B97F4A7C15L;
+            }
+            this.hash = (int) (h ^ (h >>> 32));
+        }
+
+        static BasketKey of(PricingCatalogue catalogue, Map<String, Integer> quantities) {
+            long[] lines = new long[quantities.size()];
+            int count = 0;
+            for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+                int quantity = Objects.requireNonNull(entry.getValue(), "Quantity cannot be null");
+                if (quantity < 0) {
+                    throw new IllegalArgumentException("Quantity cannot be negative");
+                }
+                int skuId = catalogue.getSkuId(entry.getKey());
+                if (skuId < 0) {
+                    throw new IllegalArgumentException("Invalid SKU: " + entry.getKey());
+                }
+                if (quantity > 0) {
+                    lines[count++] = (long) skuId << 32 | quantity;
+                }
+            }
+            // Ids are non-negative, so sorting the packed lines sorts by id
+            Arrays.sort(lines, 0, count);
+            // Entries such as "A" and " A " name the same SKU, so merge them
+            int merged = 0;
+            for (int i = 0; i < count; i++) {
+                if (merged > 0 && lines[merged - 1] >>> 32 == lines[i] >>> 32) {
+                    int quantity = Math.addExact((int) lines[merged - 1], (int) lines[i]);
+                    lines[merged - 1] = (lines[i] >>> 32) << 32 | quantity;
+                } else {
+                    lines[merged++] = lines[i];
+                }
+            }
+            return new BasketKey(catalogue.getVersion(), Arrays.copyOf(lines, merged));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BasketKey)) {
+                return false;
+            }
+            BasketKey other = (BasketKey) o;
+            return version == other.version && hash == other.hash && Arrays.equals(lines, other.lines);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * One stripe of quotes, in least recently used order.
+     */
+    private final class Stripe {
+        private final LinkedHashMap<BasketKey, Quote> quotes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<BasketKey, Quote> eldest) {
+                if (size() > maxEntriesPerStripe) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        synchronized Quote get(BasketKey key) {
+            return quotes.get(key);
+        }
+
+        synchronized void put(BasketKey key, Quote quote) {
+            quotes.put(key, quote);
+        }
+
+        synchronized int size() {
+            return quotes.size();
+        }
+
+        synchronized int clear() {
+            int size = quotes.size();
+            quotes.clear();
+            return size;
+        }
+    }
+}
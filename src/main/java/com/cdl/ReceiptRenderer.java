@@ -0,0 +1,273 @@
+package com.cdl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Writes running totals and itemized receipts as UTF-8 text into a reusable buffer, and from
+ * there to a channel.
+ * <p>
+ * Money is formatted straight from minor units by a fixed-point formatter, so rendering a
+ * total allocates nothing and does no {@code Formatter} parsing, {@code BigDecimal} work or
+ * stream locking. Output is buffered until {@link #flush()}, or until the buffer fills up.
+ * A renderer is used by one lane at a time and is not thread-safe.
+ */
+public final class ReceiptRenderer {
+    public static final int DEFAULT_BUFFER_BYTES = 8192;
+
+    private static final byte[] RUNNING_TOTAL = ascii("Running total: ");
+    private static final byte[] FINAL_TOTAL = ascii("Final total: ");
+    private static final byte[] SAVINGS = ascii("Savings");
+    private static final byte[] SEPARATOR = ascii("----------------------------------------\n");
+    private static final byte[] DEAL_INDENT = ascii("  ");
+    private static final byte[] DEAL = ascii("Deal");
+    private static final byte[] FOR = ascii(" for ");
+    private static final byte[] POUND = "£".getBytes(StandardCharsets.UTF_8);
+    private static final int LINE_WIDTH = 40;
+    // SKUs are cut to this many characters, and quantities end at the column after
+    private static final int NAME_COLUMNS = 24;
+    private static final int QUANTITY_END = 30;
+    // Room for the longest piece written at once: an item line whose SKU is all four-byte characters
+    private static final int MIN_BUFFER_BYTES = 4 * LINE_WIDTH + 64;
+
+    private final WritableByteChannel out;
+    private final ByteBuffer buffer;
+    // Digits of the number being formatted, least significant first
+    private final byte[] digits = new byte[20];
+
+    public ReceiptRenderer(WritableByteChannel out) {
+        this(out, DEFAULT_BUFFER_BYTES);
+    }
+
+    /**
+     * Creates a renderer with a buffer of the given size.
+     *
+     * @param out         The channel to write to.
+     * @param bufferBytes The size of the output buffer.
+     * @throws IllegalArgumentException if the buffer is too small to hold a receipt line.
+     */
+    public ReceiptRenderer(WritableByteChannel out, int bufferBytes) {
+        this.out = Objects.requireNonNull(out, "Output channel cannot be null");
+        if (bufferBytes < MIN_BUFFER_BYTES) {
+            throw new IllegalArgumentException("Buffer must hold at least " + MIN_BUFFER_BYTES + " bytes");
+        }
+        this.buffer = ByteBuffer.allocate(bufferBytes);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Renders {@code Running total: £x.xx} and a line break.
+     *
+     * @param totalMinor The total in minor units.
+     */
+    public void renderRunningTotal(long totalMinor) {
+        reserve(RUNNING_TOTAL.length + 32);
+        buffer.put(RUNNING_TOTAL);
+        putMoney(totalMinor);
+        buffer.put((byte) '\n');
+    }
+
+    /**
+     * Renders {@code Final total: £x.xx} and a line break.
+     *
+     * @param totalMinor The total in minor units.
+     */
+    public void renderFinalTotal(long totalMinor) {
+        reserve(FINAL_TOTAL.length + 32);
+        buffer.put(FINAL_TOTAL);
+        putMoney(totalMinor);
+        buffer.put((byte) '\n');
+    }
+
+    /**
+     * Renders an itemized receipt of a checkout's basket: one line per item with its quantity
+     * and regular price, followed by the deal applied and the saving if the rule priced the
+     * line below its regular price, then the total saving and the final total.
+     *
+     * @param checkout The checkout whose basket to render.
+     */
+    public void renderReceipt(Checkout checkout) {
+        Cart lines = checkout.lines();
+        long savings = 0;
+        if (lines.lineCount() > 0) {
+            PricingCatalogue catalogue = checkout.catalogue();
+            for (int line = 0; line < lines.lineCount(); line++) {
+                int quantity = lines.quantity(line);
+                if (quantity == 0) {
+                    continue;
+                }
+                PricingRule rule = checkout.pricingRule(lines.skuId(line));
+                long linePrice = lines.linePrice(line);
+                long regularPrice = Math.multiplyExact(rule.calculatePriceMinor(1), (long) quantity);
+                long saving = regularPrice - linePrice;
+                renderItem(catalogue.getSku(lines.skuId(line)), quantity, saving > 0 ? regularPrice : linePrice);
+                if (saving > 0) {
+                    renderDeal(rule, saving);
+                    savings += saving;
+                }
+            }
+        }
+        reserve(SEPARATOR.length + LINE_WIDTH + 32);
+        buffer.put(SEPARATOR);
+        if (savings > 0) {
+            int start = buffer.position();
+            buffer.put(SAVINGS);
+            padTo(start, LINE_WIDTH - moneyColumns(savings));
+            putMoney(savings);
+            buffer.put((byte) '\n');
+        }
+        renderFinalTotal(checkout.calculateTotalMinor());
+    }
+
+    private void renderItem(String sku, int quantity, long price) {
+        reserve(4 * LINE_WIDTH + 32);
+        int start = buffer.position();
+        putText(sku, NAME_COLUMNS);
+        int quantityDigits = countDigits(quantity);
+        padTo(start, QUANTITY_END - 1 - quantityDigits);
+        buffer.put((byte) 'x');
+        putDigits(quantity, quantityDigits);
+        padTo(start, LINE_WIDTH - moneyColumns(price));
+        putMoney(price);
+        buffer.put((byte) '\n');
+    }
+
+    private void renderDeal(PricingRule rule, long saving) {
+        reserve(2 * LINE_WIDTH + 32);
+        int start = buffer.position();
+        buffer.put(DEAL_INDENT);
+        if (rule instanceof SpecialPricingRule) {
+            SpecialPricingRule special = (SpecialPricingRule) rule;
+            putDigits(special.getSpecialQuantity(), countDigits(special.getSpecialQuantity()));
+            buffer.put(FOR);
+            putMoney(Money.toMinorUnits(special.getSpecialPrice()));
+        } else {
+            buffer.put(DEAL);
+        }
+        padTo(start, LINE_WIDTH - moneyColumns(-saving));
+        putMoney(-saving);
+        buffer.put((byte) '\n');
+    }
+
+    /**
+     * Pads with spaces from the current position to the given column of the line starting at
+     * {@code start}, writing at least one space.
+     */
+    private void padTo(int start, int column) {
+        int columns = columnsSince(start);
+        do {
+            buffer.put((byte) ' ');
+        } while (++columns < column);
+    }
+
+    /**
+     * Counts the characters written since a position, skipping UTF-8 continuation bytes.
+     */
+    private int columnsSince(int start) {
+        int columns = 0;
+        for (int i = start; i < buffer.position(); i++) {
+            if ((buffer.get(i) & 0xC0) != 0x80) {
+                columns++;
+            }
+        }
+        return columns;
+    }
+
+    private int moneyColumns(long minor) {
+        long magnitude = Math.abs(minor);
+        return (minor < 0 ? 1 : 0) + 1 + countDigits(magnitude / 100) + 3;
+    }
+
+    private static int countDigits(long value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Writes an amount in minor units as {@code £pounds.pence}, with a leading minus sign if negative.
+     */
+    private void putMoney(long minor) {
+        if (minor < 0) {
+            buffer.put((byte) '-');
+        }
+        buffer.put(POUND);
+        // Long.MIN_VALUE has no positive counterpart, so work with non-positive values
+        long value = minor > 0 ? -minor : minor;
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0 || count < 3);
+        for (int i = count - 1; i >= 2; i--) {
+            buffer.put(digits[i]);
+        }
+        buffer.put((byte) '.').put(digits[1]).put(digits[0]);
+    }
+
+    private void putDigits(long value, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            digits[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        buffer.put(digits, 0, count);
+    }
+
+    /**
+     * Writes text as UTF-8, cut to at most the given number of characters.
+     */
+    private void putText(String text, int maxChars) {
+        int chars = 0;
+        for (int i = 0; i < text.length() && chars < maxChars; i++, chars++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6))).put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18))).put((byte) (0x80 | ((codePoint >> 12) & 0x3F)))
+                        .put((byte) (0x80 | ((codePoint >> 6) & 0x3F))).put((byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12))).put((byte) (0x80 | ((c >> 6) & 0x3F))).put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Makes room for a piece of output, flushing the buffer if it does not fit.
+     */
+    private void reserve(int bytes) {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes everything rendered so far to the channel.
+     *
+     * @throws UncheckedIOException if the channel cannot be written.
+     */
+    public void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write receipt output", e);
+        } finally {
+            buffer.clear();
+        }
+    }
+}
@@ -8,6 +8,14 @@ import java.math.RoundingMode;
  */
 public class RegularPricingRule implements PricingRule{
     private final BigDecimal unitPrice;
+    // Unit price as an unscaled long at minorScale, or minorScale -1 if it does not fit
+    private final int minorScale;
+    private final long unitPriceUnscaled;
+    // Quantities below this are looked up rather than calculated; 0 for no tables
+    private final int tableSize;
+    // Price tables, built on first use; see PriceTable for why plain fields are safe
+    private PriceTable.Minor minorTable;
+    private PriceTable.Decimal decimalTable;
 
     /**
      * Constructs a new RegularPricingRule with the specified unit price.
@@ -16,10 +24,25 @@ public class RegularPricingRule implements PricingRule{
      * @throws IllegalArgumentException if the unitPrice is negative.
      */
     public RegularPricingRule(BigDecimal unitPrice) {
+        this(unitPrice, PriceTable.DEFAULT_MAX_QUANTITY);
+    }
+
+    /**
+     * Constructs a new RegularPricingRule that looks up the prices of quantities up to
+     * {@code tableMaxQuantity} in a table built on first use.
+     *
+     * @param unitPrice        The price for a single unit of the item.
+     * @param tableMaxQuantity The largest quantity to tabulate, or 0 to always calculate.
+     * @throws IllegalArgumentException if the unitPrice or tableMaxQuantity is negative.
+     */
+    public RegularPricingRule(BigDecimal unitPrice, int tableMaxQuantity) {
         if (unitPrice == null || unitPrice.compareTo(BigDecimal.ZERO) < 0) {
             throw new IllegalArgumentException("Unit price cannot be negative");
         }
         this.unitPrice = unitPrice;
+        this.minorScale = Money.commonScale(unitPrice);
+        this.unitPriceUnscaled = minorScale < 0 ? 0 : Money.unscaled(unitPrice, minorScale);
+        this.tableSize = PriceTable.size(tableMaxQuantity);
     }
 
     /**
@@ -34,6 +57,64 @@ public class RegularPricingRule implements PricingRule{
         if (quantity < 0) {
             throw new IllegalArgumentException("Quantity cannot be negative");
         }
+        if (quantity < tableSize) {
+            PriceTable.Decimal table = decimalTable;
+            if (table == null) {
+                table = new PriceTable.Decimal(tableSize, this::computePrice);
+                decimalTable = table;
+            }
+            return table.prices[quantity];
+        }
+        return computePrice(quantity);
+    }
+
+    private BigDecimal computePrice(int quantity) {
         return unitPrice.multiply(BigDecimal.valueOf(quantity)).setScale(2, RoundingMode.HALF_UP);
     }
+
+    /**
+     * Calculates the total price for a given quantity of items in minor units, without allocating.
+     *
+     * @param quantity The number of items to calculate the price for.
+     * @return The total price for the given quantity in minor units.
+     * @throws IllegalArgumentException if the quantity is negative.
+     * @throws ArithmeticException if the price does not fit in a long number of minor units.
+     */
+    @Override
+    public long calculatePriceMinor(int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity cannot be negative");
+        }
+        if (quantity < tableSize) {
+            PriceTable.Minor table = minorTable;
+            if (table == null) {
+                table = new PriceTable.Minor(tableSize, this::computePriceMinor);
+                minorTable = table;
+            }
+            if (quantity < table.prices.length) {
+                return table.prices[quantity];
+            }
+        }
+        return computePriceMinor(quantity);
+    }
+
+    private long computePriceMinor(int quantity) {
+        if (minorScale >= 0) {
+            try {
+                return Money.roundToMinorUnits(Math.multiplyExact(unitPriceUnscaled, quantity), minorScale);
+            } catch (ArithmeticException e) {
+                // The unscaled intermediate overflowed, the rounded price may still fit
+            }
+        }
+        return Money.toMinorUnits(computePrice(quantity));
+    }
+
+    /**
+     * Returns the price of a single item.
+     *
+     * @return The unit price.
+     */
+    public BigDecimal getUnitPrice() {
+        return unitPrice;
+    }
 }
@@ -0,0 +1,139 @@
+package com.cdl;
+
+import java.util.Arrays;
+
+/**
+ * The outcome of replaying a basket log: the total of every basket in log order, revenue and
+ * units per SKU, and throughput figures.
+ */
+public final class ReplayResult {
+    private final PricingCatalogue catalogue;
+    private final long[] basketIds;
+    private final long[] basketTotals;
+    private final long[] unitsBySku;
+    private final long[] revenueBySku;
+    private final long scanCount;
+    private final long rejectedScanCount;
+    private final long elapsedNanos;
+
+    ReplayResult(PricingCatalogue catalogue, long[] basketIds, long[] basketTotals, long[] unitsBySku,
+                 long[] revenueBySku, long scanCount, long rejectedScanCount, long elapsedNanos) {
+        this.catalogue = catalogue;
+        this.basketIds = basketIds;
+        this.basketTotals = basketTotals;
+        this.unitsBySku = unitsBySku;
+        this.revenueBySku = revenueBySku;
+        this.scanCount = scanCount;
+        this.rejectedScanCount = rejectedScanCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the catalogue snapshot the baskets were priced against.
+     *
+     * @return The pricing catalogue used for the replay.
+     */
+    public PricingCatalogue getCatalogue() {
+        return catalogue;
+    }
+
+    public int getBasketCount() {
+        return basketIds.length;
+    }
+
+    /**
+     * Returns the id of a basket.
+     *
+     * @param index The position of the basket in the log, from 0.
+     * @return The basket id recorded in the log.
+     */
+    public long getBasketId(int index) {
+        return basketIds[index];
+    }
+
+    /**
+     * Returns the total of a basket.
+     *
+     * @param index The position of the basket in the log, from 0.
+     * @return The basket total in minor units.
+     */
+    public long getBasketTotalMinor(int index) {
+        return basketTotals[index];
+    }
+
+    /**
+     * Returns the number of units of a SKU sold across all baskets.
+     *
+     * @param sku The Stock Keeping Unit (SKU).
+     * @return The units sold, or 0 if the SKU is unknown.
+     */
+    public long getUnits(String sku) {
+        int skuId = catalogue.getSkuId(sku);
+        return skuId < 0 ? 0 : unitsBySku[skuId];
+    }
+
+    /**
+     * Returns the revenue of a SKU across all baskets, with deals applied per basket line.
+     *
+     * @param sku The Stock Keeping Unit (SKU).
+     * @return The revenue in minor units, or 0 if the SKU is unknown.
+     */
+    public long getRevenueMinor(String sku) {
+        int skuId = catalogue.getSkuId(sku);
+        return skuId < 0 ? 0 : revenueBySku[skuId];
+    }
+
+    /**
+     * Returns the sum of all basket totals.
+     *
+     * @return The total revenue in minor units.
+     */
+    public long getTotalRevenueMinor() {
+        long total = 0;
+        for (long basketTotal : basketTotals) {
+            total = Math.addExact(total, basketTotal);
+        }
+        return total;
+    }
+
+    public long getScanCount() {
+        return scanCount;
+    }
+
+    /**
+     * Returns the number of scans skipped because their SKU is not in the catalogue.
+     *
+     * @return The number of rejected scans.
+     */
+    public long getRejectedScanCount() {
+        return rejectedScanCount;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the replay throughput.
+     *
+     * @return Priced scans per second of wall-clock time.
+     */
+    public double getScansPerSecond() {
+        return elapsedNanos == 0 ? 0 : scanCount * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Checks whether another replay produced exactly the same totals, ignoring timing.
+     *
+     * @param other The result to compare with.
+     * @return true if the basket totals, per-SKU figures and scan counts are identical.
+     */
+    public boolean hasSameOutput(ReplayResult other) {
+        return Arrays.equals(basketIds, other.basketIds)
+                && Arrays.equals(basketTotals, other.basketTotals)
+                && Arrays.equals(unitsBySku, other.unitsBySku)
+                && Arrays.equals(revenueBySku, other.revenueBySku)
+                && scanCount == other.scanCount
+                && rejectedScanCount == other.rejectedScanCount;
+    }
+}
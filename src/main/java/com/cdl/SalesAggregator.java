@@ -0,0 +1,296 @@
+package com.cdl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adds up the sales of completed baskets across all lanes of a store: units, revenue and deals
+ * applied per SKU.
+ * <p>
+ * Lanes record into the stripe picked by their thread, each a small hash table of counters by
+ * SKU id behind its own lock, so lanes on different stripes never contend. A
+ * {@linkplain #snapshot() snapshot} does not stop the lanes: it swaps in a fresh set of stripes,
+ * waits only for baskets being recorded into the old set to finish, and folds the old set into
+ * the running totals. Every basket is therefore either wholly in a snapshot or wholly out of it.
+ * <p>
+ * Sales from other store nodes come in as {@link SalesSnapshot} deltas, produced by
+ * {@link #exportDelta()} on the other node and added here with {@link #mergeDelta(byte[])}.
+ */
+public class SalesAggregator {
+    private static final int MAX_STRIPES = 64;
+
+    private final PricingRuleFactory pricingRuleFactory;
+    private final int stripeCount;
+    private final EpochGate gate = new EpochGate();
+    // The stripes lanes record into; swapped by each snapshot
+    private volatile Stripe[] active;
+    // The rest is guarded by the snapshot lock
+    private final Object snapshotLock = new Object();
+    private Stripe[] inactive;
+    private final Counters totals = new Counters();
+    private long baskets;
+    private final Map<String, long[]> merged = new HashMap<>();
+    private long mergedBaskets;
+    private SalesSnapshot exported = SalesSnapshot.EMPTY;
+
+    /**
+     * Creates an aggregator for baskets priced by a factory.
+     *
+     * @param pricingRuleFactory The factory of every checkout recorded, which names the SKU ids in its baskets.
+     */
+    public SalesAggregator(PricingRuleFactory pricingRuleFactory) {
+        this.pricingRuleFactory = Objects.requireNonNull(pricingRuleFactory, "Pricing rule factory cannot be null");
+        this.stripeCount = Math.min(MAX_STRIPES, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) * 2);
+        this.active = newStripes();
+        this.inactive = newStripes();
+    }
+
+    private Stripe[] newStripes() {
+        Stripe[] stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        return stripes;
+    }
+
+    /**
+     * Records the basket of a checkout as sold. Call it before the checkout is cleared.
+     * Lines whose quantity dropped to zero are skipped, and an empty basket is not counted.
+     *
+     * @param checkout A checkout over this aggregator's factory.
+     */
+    public void record(Checkout checkout) {
+        Cart lines = checkout.lines();
+        if (lines.lineCount() == 0) {
+            return;
+        }
+        long epoch = gate.enter();
+        try {
+            long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+            Stripe stripe = active[(int) (h >>> 32) & (stripeCount - 1)];
+            synchronized (stripe) {
+                boolean sold = false;
+                for (int line = 0; line < lines.lineCount(); line++) {
+                    int quantity = lines.quantity(line);
+                    if (quantity == 0) {
+                        continue;
+                    }
+                    PricingRule rule = checkout.pricingRule(lines.skuId(line));
+                    long deals = 0;
+                    if (rule instanceof SpecialPricingRule) {
+                        deals = quantity / ((SpecialPricingRule) rule).getSpecialQuantity();
+                    } else if (rule instanceof TieredPricingRule) {
+                        // A line that reached a price break counts as one deal
+                        deals = ((TieredPricingRule) rule).findTier(quantity) > 0 ? 1 : 0;
+                    }
+                    stripe.counters.add(lines.skuId(line), quantity, lines.linePrice(line), deals);
+                    sold = true;
+                }
+                if (sold) {
+                    stripe.baskets++;
+                }
+            }
+        } finally {
+            gate.exit(epoch);
+        }
+    }
+
+    /**
+     * Returns the sales recorded on this node and merged from other nodes so far, without
+     * stopping lanes that are recording.
+     *
+     * @return The sales snapshot.
+     */
+    public SalesSnapshot snapshot() {
+        synchronized (snapshotLock) {
+            Map<String, long[]> counters = ownSales();
+            for (Map.Entry<String, long[]> entry : merged.entrySet()) {
+                long[] counter = counters.computeIfAbsent(entry.getKey(), sku -> new long[3]);
+                for (int i = 0; i < counter.length; i++) {
+                    counter[i] += entry.getValue()[i];
+                }
+            }
+            return SalesSnapshot.of(baskets + mergedBaskets, counters);
+        }
+    }
+
+    /**
+     * Returns the sales recorded on this node since the last call, serialized for
+     * {@link #mergeDelta(byte[])} on another node. Sales merged from other nodes are not
+     * exported again, so every node can exchange deltas with every other. Deltas must be merged
+     * exactly once and all of them in any order.
+     *
+     * @return The serialized delta.
+     */
+    public byte[] exportDelta() {
+        synchronized (snapshotLock) {
+            Map<String, long[]> counters = ownSales();
+            SalesSnapshot current = SalesSnapshot.of(baskets, counters);
+            SalesSnapshot delta = current.minus(exported);
+            exported = current;
+            return delta.toBytes();
+        }
+    }
+
+    /**
+     * Folds the stripes lanes recorded into since the last call into the totals, and returns
+     * the totals by SKU. Call with the snapshot lock held.
+     */
+    private Map<String, long[]> ownSales() {
+        Stripe[] drained = active;
+        active = inactive;
+        gate.flip();
+        // No lane is recording into the drained stripes any more
+        for (Stripe stripe : drained) {
+            totals.addAll(stripe.counters);
+            baskets += stripe.baskets;
+            stripe.counters.clear();
+            stripe.baskets = 0;
+        }
+        inactive = drained;
+
+        Map<String, long[]> counters = new HashMap<>(merged.size() + totals.size());
+        PricingCatalogue catalogue = pricingRuleFactory.getCatalogue();
+        totals.forEach((skuId, units, revenue, deals) -> {
+            long[] counter = counters.computeIfAbsent(catalogue.getSku(skuId), sku -> new long[3]);
+            counter[0] += units;
+            counter[1] += revenue;
+            counter[2] += deals;
+        });
+        return counters;
+    }
+
+    /**
+     * Adds the sales of another node, as exported by its {@link #exportDelta()}.
+     *
+     * @param delta The serialized delta.
+     * @throws IllegalArgumentException if the bytes are not a serialized delta.
+     */
+    public void mergeDelta(byte[] delta) {
+        SalesSnapshot sales = SalesSnapshot.fromBytes(delta);
+        synchronized (snapshotLock) {
+            sales.addTo(merged);
+            mergedBaskets += sales.getBaskets();
+        }
+    }
+
+    /**
+     * One stripe of counters. Lanes lock it while recording a basket.
+     */
+    private static final class Stripe {
+        private final Counters counters = new Counters();
+        private long baskets;
+    }
+
+    /**
+     * Units, revenue and deals by SKU id in an open-addressing hash table.
+     * Not thread-safe.
+     */
+    private static final class Counters {
+        private int[] keys = new int[16];
+        // units, revenue and deals of keys[i] - 1 at 3 * i
+        private long[] values = new long[48];
+        private int size;
+
+        interface Visitor {
+            void visit(int skuId, long units, long revenue, long deals);
+        }
+
+        private static int hash(int skuId) {
+            int h = skuId * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        void add(int skuId, long units, long revenue, long deals) {
+            int mask = keys.length - 1;
+            int slot = hash(skuId) & mask;
+            while (keys[slot] != 0 && keys[slot] != skuId + 1) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == 0) {
+                if ((size + 1) * 2 > keys.length) {
+                    grow();
+                    add(skuId, units, revenue, deals);
+                    return;
+                }
+                keys[slot] = skuId + 1;
+                size++;
+            }
+            values[3 * slot] += units;
+            values[3 * slot + 1] += revenue;
+            values[3 * slot + 2] += deals;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new long[keys.length * 3];
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != 0) {
+                    add(oldKeys[slot] - 1, oldValues[3 * slot], oldValues[3 * slot + 1], oldValues[3 * slot + 2]);
+                }
+            }
+        }
+
+        void addAll(Counters other) {
+            other.forEach(this::add);
+        }
+
+        void forEach(Visitor visitor) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != 0) {
+                    visitor.visit(keys[slot] - 1, values[3 * slot], values[3 * slot + 1], values[3 * slot + 2]);
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            Arrays.fill(keys, 0);
+            Arrays.fill(values, 0);
+            size = 0;
+        }
+    }
+
+    /**
+     * Lets lanes enter and leave a recording section without locking, and lets the snapshot
+     * wait for every lane that entered before a flip to leave. Each epoch counter counts the
+     * entries of its phase, the sign of {@code start} telling lanes which phase they are in.
+     */
+    private static final class EpochGate {
+        private final AtomicLong start = new AtomicLong();
+        private final AtomicLong evenEnd = new AtomicLong();
+        private final AtomicLong oddEnd = new AtomicLong(Long.MIN_VALUE);
+
+        long enter() {
+            return start.getAndIncrement();
+        }
+
+        void exit(long epoch) {
+            (epoch < 0 ? oddEnd : evenEnd).getAndIncrement();
+        }
+
+        /**
+         * Starts a new phase and waits for every lane that entered in the old one to exit.
+         * Only one thread may flip at a time.
+         */
+        void flip() {
+            boolean nextIsOdd = start.get() >= 0;
+            long initial = nextIsOdd ? Long.MIN_VALUE : 0;
+            (nextIsOdd ? oddEnd : evenEnd).set(initial);
+            long entered = start.getAndSet(initial);
+            AtomicLong end = nextIsOdd ? evenEnd : oddEnd;
+            while (end.get() != entered) {
+                Thread.yield();
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.cdl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sales per SKU at one point in time, or between two points in time: units sold, revenue in
+ * minor units and the number of deals applied, along with the number of baskets.
+ * <p>
+ * Snapshots are immutable. They can be serialized with {@link #toBytes()} and read back with
+ * {@link #fromBytes(byte[])}, which is how the sales of one store node are shipped to another:
+ * <pre>
+ * magic int, format version short, basket count long, SKU count int,
+ * per SKU in SKU order: SKU (modified UTF-8), units long, revenue long, deals long
+ * </pre>
+ */
+public final class SalesSnapshot {
+    static final int MAGIC = 0x53414C45; // "SALE"
+    static final short FORMAT_VERSION = 1;
+    static final SalesSnapshot EMPTY = new SalesSnapshot(0, new String[0], new long[0], new long[0], new long[0]);
+
+    private final long baskets;
+    // Sorted, with the counters of skus[i] at index i
+    private final String[] skus;
+    private final long[] units;
+    private final long[] revenueMinor;
+    private final long[] deals;
+
+    private SalesSnapshot(long baskets, String[] skus, long[] units, long[] revenueMinor, long[] deals) {
+        this.baskets = baskets;
+        this.skus = skus;
+        this.units = units;
+        this.revenueMinor = revenueMinor;
+        this.deals = deals;
+    }
+
+    /**
+     * Creates a snapshot from counters by SKU, each a {units, revenue, deals} triple.
+     */
+    static SalesSnapshot of(long baskets, Map<String, long[]> counters) {
+        TreeMap<String, long[]> sorted = new TreeMap<>(counters);
+        String[] skus = new String[sorted.size()];
+        long[] units = new long[skus.length];
+        long[] revenueMinor = new long[skus.length];
+        long[] deals = new long[skus.length];
+        int i = 0;
+        for (Map.Entry<String, long[]> entry : sorted.entrySet()) {
+            skus[i] = entry.getKey();
+            units[i] = entry.getValue()[0];
+            revenueMinor[i] = entry.getValue()[1];
+            deals[i] = entry.getValue()[2];
+            i++;
+        }
+        return new SalesSnapshot(baskets, skus, units, revenueMinor, deals);
+    }
+
+    /**
+     * Adds this snapshot's counters into counters by SKU, each a {units, revenue, deals} triple.
+     */
+    void addTo(Map<String, long[]> counters) {
+        for (int i = 0; i < skus.length; i++) {
+            long[] counter = counters.computeIfAbsent(skus[i], sku -> new long[3]);
+            counter[0] += units[i];
+            counter[1] += revenueMinor[i];
+            counter[2] += deals[i];
+        }
+    }
+
+    /**
+     * Returns the sales in this snapshot that are not in an earlier one of the same aggregator.
+     *
+     * @param earlier The earlier snapshot.
+     * @return The difference between the snapshots.
+     */
+    public SalesSnapshot minus(SalesSnapshot earlier) {
+        Map<String, long[]> counters = new TreeMap<>();
+        addTo(counters);
+        for (int i = 0; i < earlier.skus.length; i++) {
+            long[] counter = counters.computeIfAbsent(earlier.skus[i], sku -> new long[3]);
+            counter[0] -= earlier.units[i];
+            counter[1] -= earlier.revenueMinor[i];
+            counter[2] -= earlier.deals[i];
+        }
+        counters.values().removeIf(counter -> counter[0] == 0 && counter[1] == 0 && counter[2] == 0);
+        return of(baskets - earlier.baskets, counters);
+    }
+
+    /**
+     * Returns the number of completed baskets.
+     *
+     * @return The number of baskets.
+     */
+    public long getBaskets() {
+        return baskets;
+    }
+
+    /**
+     * Returns the SKUs with sales, in order.
+     *
+     * @return An unmodifiable list of SKUs.
+     */
+    public List<String> getSkus() {
+        return Collections.unmodifiableList(Arrays.asList(skus));
+    }
+
+    private int indexOf(String sku) {
+        return Arrays.binarySearch(skus, PricingRuleFactory.normalizeSku(sku));
+    }
+
+    /**
+     * Returns the units of a SKU sold.
+     *
+     * @param sku The Stock Keeping Unit (SKU).
+     * @return The number of units, or 0 if the SKU has no sales.
+     */
+    public long getUnits(String sku) {
+        int i = indexOf(sku);
+        return i < 0 ? 0 : units[i];
+    }
+
+    /**
+     * Returns the revenue from a SKU, with its deals applied.
+     *
+     * @param sku The Stock Keeping Unit (SKU).
+     * @return The revenue in minor units, or 0 if the SKU has no sales.
+     */
+    public long getRevenueMinor(String sku) {
+        int i = indexOf(sku);
+        return i < 0 ? 0 : revenueMinor[i];
+    }
+
+    /**
+     * Returns the number of times a SKU's deal was applied, such as sets of three sold under
+     * "3 for £1.30", or baskets that reached a volume price break.
+     *
+     * @param sku The Stock Keeping Unit (SKU).
+     * @return The number of deals, or 0 if the SKU has no sales.
+     */
+    public long getDeals(String sku) {
+        int i = indexOf(sku);
+        return i < 0 ? 0 : deals[i];
+    }
+
+    /**
+     * Returns the units sold across all SKUs.
+     *
+     * @return The total number of units.
+     */
+    public long getTotalUnits() {
+        return Arrays.stream(units).sum();
+    }
+
+    /**
+     * Returns the revenue across all SKUs.
+     *
+     * @return The total revenue in minor units.
+     */
+    public long getTotalRevenueMinor() {
+        return Arrays.stream(revenueMinor).sum();
+    }
+
+    /**
+     * Serializes the snapshot in the format described above.
+     *
+     * @return The serialized snapshot.
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + skus.length * 32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeLong(baskets);
+            out.writeInt(skus.length);
+            for (int i = 0; i < skus.length; i++) {
+                out.writeUTF(skus[i]);
+                out.writeLong(units[i]);
+                out.writeLong(revenueMinor[i]);
+                out.writeLong(deals[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a snapshot serialized with {@link #toBytes()}.
+     *
+     * @param bytes The serialized snapshot.
+     * @return The snapshot.
+     * @throws IllegalArgumentException if the bytes are not a serialized snapshot.
+     */
+    public static SalesSnapshot fromBytes(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != MAGIC || in.readShort() != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Not a sales snapshot");
+            }
+            long baskets = in.readLong();
+            int count = in.readInt();
+            if (count < 0 || count > bytes.length / 26) {
+                throw new IllegalArgumentException("Invalid SKU count " + count);
+            }
+            Map<String, long[]> counters = new TreeMap<>();
+            for (int i = 0; i < count; i++) {
+                long[] counter = counters.computeIfAbsent(in.readUTF(), sku -> new long[3]);
+                counter[0] += in.readLong();
+                counter[1] += in.readLong();
+                counter[2] += in.readLong();
+            }
+            if (in.available() != 0) {
+                throw new IllegalArgumentException("Trailing bytes after sales snapshot");
+            }
+            return of(baskets, counters);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated sales snapshot", e);
+        }
+    }
+}
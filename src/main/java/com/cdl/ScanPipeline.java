@@ -0,0 +1,444 @@
+package com.cdl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs the scans of one lane through a staged pipeline, for conveyor-belt and tunnel scanners
+ * that send scans in bursts faster than a display can show every running total.
+ * <p>
+ * Scans pass through four stages, each on its own thread and connected by
+ * {@link java.util.concurrent.Flow} publishers with bounded buffers:
+ * <ol>
+ *     <li>decode: trims and validates the scanned SKU;</li>
+ *     <li>resolve: resolves the SKU to its id, rejecting SKUs without a rule, and pins the
+ *     catalogue snapshot of the basket at its first accepted scan;</li>
+ *     <li>cart: adds the unit to the lane's {@link Checkout} and reprices its line;</li>
+ *     <li>display: writes running totals, rejections and receipts to the display channel.</li>
+ * </ol>
+ * A stage only asks for more scans while its own buffer has room, so when the cart falls behind
+ * {@link #scan(String)} blocks instead of queueing without bound. The display is never allowed
+ * to hold the cart back: running totals that arrive while it is still writing are coalesced,
+ * so it always shows the latest total rather than every one in between. Rejections and
+ * receipts are never dropped, and everything appears in the order it was scanned.
+ * <p>
+ * The latency from a scan being submitted to a total including it being displayed is
+ * recorded in {@link #getDisplayLatency()}. A pipeline is fed by one thread at a time.
+ */
+public class ScanPipeline implements AutoCloseable {
+    public static final int DEFAULT_BUFFER_CAPACITY = 256;
+
+    private static final byte[] PLEASE_TRY_AGAIN = " Please try again.\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final PricingRuleFactory pricingRuleFactory;
+    private final Consumer<Checkout> onBasketDone;
+    private final ExecutorService executor;
+    private final SubmissionPublisher<Event> source;
+    private final Display display;
+    private final LatencyHistogram displayLatency = new LatencyHistogram();
+    private final LongAdder scans = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder totalsDisplayed = new LongAdder();
+    private final LongAdder totalsCoalesced = new LongAdder();
+
+    // Owned by the resolve stage: the snapshot the current basket is priced against
+    private PricingCatalogue catalogue;
+    // Owned by the cart stage
+    private final Checkout checkout;
+    private final ByteArrayOutputStream receipt = new ByteArrayOutputStream();
+    private final ReceiptRenderer receiptRenderer = new ReceiptRenderer(Channels.newChannel(receipt));
+
+    /**
+     * Creates a pipeline with buffers of {@value #DEFAULT_BUFFER_CAPACITY} scans per stage.
+     *
+     * @param pricingRuleFactory The factory to price scans with.
+     * @param out                The display to write totals, rejections and receipts to.
+     * @param onBasketDone       Called with the lane's checkout when a basket is finished, before it is cleared.
+     */
+    public ScanPipeline(PricingRuleFactory pricingRuleFactory, WritableByteChannel out, Consumer<Checkout> onBasketDone) {
+        this(pricingRuleFactory, out, onBasketDone, DEFAULT_BUFFER_CAPACITY);
+    }
+
+    /**
+     * Creates a pipeline.
+     *
+     * @param pricingRuleFactory The factory to price scans with.
+     * @param out                The display to write totals, rejections and receipts to.
+     * @param onBasketDone       Called with the lane's checkout when a basket is finished, before it is cleared.
+     * @param bufferCapacity     The most scans each stage buffers, rounded up to a power of two.
+     * @throws IllegalArgumentException if the capacity is not positive.
+     */
+    public ScanPipeline(PricingRuleFactory pricingRuleFactory, WritableByteChannel out, Consumer<Checkout> onBasketDone,
+                        int bufferCapacity) {
+        this.pricingRuleFactory = Objects.requireNonNull(pricingRuleFactory, "Pricing rule factory cannot be null");
+        this.onBasketDone = Objects.requireNonNull(onBasketDone, "Basket listener cannot be null");
+        if (bufferCapacity <= 0) {
+            throw new IllegalArgumentException("Buffer capacity must be positive");
+        }
+        this.checkout = new Checkout(pricingRuleFactory);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "checkout-scan-pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.source = new SubmissionPublisher<>(executor, bufferCapacity);
+        Stage decode = new Stage(executor, bufferCapacity, this::decode);
+        Stage resolve = new Stage(executor, bufferCapacity, this::resolve);
+        Stage cart = new Stage(executor, bufferCapacity, this::addToCart);
+        this.display = new Display(new ReceiptRenderer(Objects.requireNonNull(out, "Output channel cannot be null")), out);
+        source.subscribe(decode);
+        decode.subscribe(resolve);
+        resolve.subscribe(cart);
+        cart.subscribe(display);
+    }
+
+    /**
+     * Submits a scanned SKU, blocking while the pipeline is full.
+     *
+     * @param sku The SKU as scanned.
+     * @throws IllegalStateException if the pipeline is closed.
+     */
+    public void scan(String sku) {
+        scan(sku, System.nanoTime());
+    }
+
+    /**
+     * Submits a scanned SKU that was read at an earlier time, blocking while the pipeline is
+     * full. The display latency of the scan is measured from that time, so it includes any
+     * time spent waiting to be submitted.
+     *
+     * @param sku       The SKU as scanned.
+     * @param scannedAt When the SKU was read, as a {@link System#nanoTime()} value.
+     * @throws IllegalStateException if the pipeline is closed.
+     */
+    public void scan(String sku, long scannedAt) {
+        source.submit(new Event(Event.SCAN, sku, scannedAt));
+        scans.increment();
+    }
+
+    /**
+     * Finishes the basket once every scan submitted before has been added: its receipt is
+     * displayed, it is handed to the basket listener and a new basket is started.
+     *
+     * @throws IllegalStateException if the pipeline is closed.
+     */
+    public void done() {
+        source.submit(new Event(Event.DONE, null, System.nanoTime()));
+    }
+
+    /**
+     * Stops accepting scans and waits until everything submitted so far has been displayed.
+     *
+     * @throws UncheckedIOException if the display could not be written to.
+     */
+    @Override
+    public void close() {
+        source.close();
+        try {
+            display.finished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+        if (display.failure instanceof IOException) {
+            throw new UncheckedIOException((IOException) display.failure);
+        } else if (display.failure != null) {
+            throw new IllegalStateException("Scan pipeline failed", display.failure);
+        }
+    }
+
+    private Event decode(Event event) {
+        if (event.kind == Event.SCAN) {
+            try {
+                event.sku = PricingRuleFactory.normalizeSku(event.sku);
+            } catch (IllegalArgumentException | NullPointerException e) {
+                return reject(event, e.getMessage());
+            }
+        }
+        return event;
+    }
+
+    private Event resolve(Event event) {
+        if (event.kind == Event.SCAN) {
+            PricingCatalogue current = catalogue == null ? pricingRuleFactory.getCatalogue() : catalogue;
+            event.skuId = current.getSkuId(event.sku);
+            if (event.skuId < 0) {
+                return reject(event, "Invalid SKU: " + event.sku);
+            }
+            if (catalogue == null) {
+                // The basket starts with its first accepted scan, which carries the snapshot to the cart stage
+                catalogue = current;
+                event.catalogue = catalogue;
+            }
+        } else if (event.kind == Event.DONE) {
+            catalogue = null;
+        }
+        return event;
+    }
+
+    private Event reject(Event event, String message) {
+        rejections.increment();
+        byte[] text = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+        event.kind = Event.MESSAGE;
+        event.text = new byte[text.length + PLEASE_TRY_AGAIN.length];
+        System.arraycopy(text, 0, event.text, 0, text.length);
+        System.arraycopy(PLEASE_TRY_AGAIN, 0, event.text, text.length, PLEASE_TRY_AGAIN.length);
+        return event;
+    }
+
+    private Event addToCart(Event event) {
+        if (event.kind == Event.SCAN) {
+            if (event.catalogue != null) {
+                // First scan of the basket, priced against the snapshot the resolve stage pinned
+                checkout.pin(event.catalogue);
+                event.catalogue = null;
+            }
+            checkout.addQuantity(event.skuId, 1);
+            event.kind = Event.TOTAL;
+            event.totalMinor = checkout.calculateTotalMinor();
+        } else if (event.kind == Event.DONE) {
+            receiptRenderer.renderReceipt(checkout);
+            receiptRenderer.flush();
+            onBasketDone.accept(checkout);
+            checkout.clear();
+            event.kind = Event.MESSAGE;
+            event.text = receipt.toByteArray();
+            receipt.reset();
+        }
+        return event;
+    }
+
+    /**
+     * Returns the latency from a scan being submitted to the running total that includes it
+     * being displayed, recorded once per total displayed. For a total that replaced others,
+     * it is the latency of the oldest scan it includes.
+     *
+     * @return The latency histogram, in nanoseconds.
+     */
+    public LatencyHistogram getDisplayLatency() {
+        return displayLatency;
+    }
+
+    /**
+     * Returns the number of scans submitted.
+     *
+     * @return The number of scans.
+     */
+    public long getScanCount() {
+        return scans.sum();
+    }
+
+    /**
+     * Returns the number of scans rejected as invalid.
+     *
+     * @return The number of rejections.
+     */
+    public long getRejectedCount() {
+        return rejections.sum();
+    }
+
+    /**
+     * Returns the number of running totals written to the display.
+     *
+     * @return The number of totals displayed.
+     */
+    public long getDisplayedCount() {
+        return totalsDisplayed.sum();
+    }
+
+    /**
+     * Returns the number of running totals replaced by a later one before they were displayed.
+     *
+     * @return The number of totals coalesced.
+     */
+    public long getCoalescedCount() {
+        return totalsCoalesced.sum();
+    }
+
+    /**
+     * A scan on its way through the pipeline. Each stage owns it while working on it and turns
+     * it into what the next stage expects.
+     */
+    private static final class Event {
+        static final int SCAN = 0;
+        static final int DONE = 1;
+        static final int TOTAL = 2;
+        static final int MESSAGE = 3;
+
+        int kind;
+        // For a total that replaced others, the earliest submission among them
+        long submittedAt;
+        String sku;
+        int skuId;
+        // Set on the first scan of a basket to the snapshot it is priced against
+        PricingCatalogue catalogue;
+        long totalMinor;
+        byte[] text;
+
+        Event(int kind, String sku, long submittedAt) {
+            this.kind = kind;
+            this.sku = sku;
+            this.submittedAt = submittedAt;
+        }
+    }
+
+    /**
+     * A processor that applies a function to each event on its own thread and publishes the
+     * result. It keeps at most its buffer capacity of events requested from upstream, and while
+     * downstream is full it blocks in {@code submit}, so it stops requesting and the pressure
+     * travels upstream.
+     */
+    private static final class Stage extends SubmissionPublisher<Event> implements Flow.Processor<Event, Event> {
+        private final Function<Event, Event> function;
+        private final int batch;
+        private Flow.Subscription subscription;
+        private int received;
+
+        Stage(ExecutorService executor, int capacity, Function<Event, Event> function) {
+            super(executor, capacity);
+            this.function = function;
+            this.batch = Math.max(1, getMaxBufferCapacity() / 2);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(getMaxBufferCapacity());
+        }
+
+        @Override
+        public void onNext(Event event) {
+            try {
+                submit(function.apply(event));
+            } catch (RuntimeException e) {
+                subscription.cancel();
+                closeExceptionally(e);
+                return;
+            }
+            // Ask for more in batches rather than one event at a time
+            if (++received == batch) {
+                received = 0;
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            closeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            close();
+        }
+    }
+
+    /**
+     * The last stage. It accepts every event at once and writes them on its own thread,
+     * replacing a running total that has not been written yet with the next one.
+     */
+    private final class Display implements Flow.Subscriber<Event> {
+        private final ReceiptRenderer renderer;
+        private final WritableByteChannel out;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        // Guarded by pending
+        private final ArrayDeque<Event> pending = new ArrayDeque<>();
+        private boolean writing;
+        private boolean completed;
+        private volatile Throwable failure;
+
+        Display(ReceiptRenderer renderer, WritableByteChannel out) {
+            this.renderer = renderer;
+            this.out = out;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            // Coalescing keeps the backlog to about one total per receipt or rejection
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(Event event) {
+            boolean start;
+            synchronized (pending) {
+                Event last = pending.peekLast();
+                if (event.kind == Event.TOTAL && last != null && last.kind == Event.TOTAL) {
+                    pending.pollLast();
+                    event.submittedAt = last.submittedAt;
+                    totalsCoalesced.increment();
+                }
+                pending.addLast(event);
+                start = !writing;
+                writing = true;
+            }
+            if (start) {
+                executor.execute(this::write);
+            }
+        }
+
+        private void write() {
+            while (true) {
+                Event event;
+                synchronized (pending) {
+                    event = pending.pollFirst();
+                    if (event == null) {
+                        writing = false;
+                        if (completed) {
+                            finished.countDown();
+                        }
+                        return;
+                    }
+                }
+                try {
+                    if (event.kind == Event.TOTAL) {
+                        renderer.renderRunningTotal(event.totalMinor);
+                        renderer.flush();
+                        displayLatency.record(System.nanoTime() - event.submittedAt);
+                        totalsDisplayed.increment();
+                    } else {
+                        ByteBuffer text = ByteBuffer.wrap(event.text);
+                        while (text.hasRemaining()) {
+                            out.write(text);
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failure = e;
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            failure = throwable;
+            onComplete();
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (pending) {
+                completed = true;
+                if (writing) {
+                    return;
+                }
+            }
+            finished.countDown();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.cdl;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * A pricing rule that applies to a SKU for a set period, such as a "3 for £1.30" promotion that
+ * runs for a fortnight. While it is in effect it replaces the SKU's regular rule.
+ * <p>
+ * Scheduled rules are registered with {@link PricingRuleFactory#schedulePricingRule}, which
+ * indexes them into catalogue epochs ahead of time.
+ */
+public final class ScheduledPricingRule {
+    private final String sku;
+    private final PricingRule rule;
+    private final Instant effectiveFrom;
+    private final Instant effectiveTo;
+
+    ScheduledPricingRule(String sku, PricingRule rule, Instant effectiveFrom, Instant effectiveTo) {
+        this.sku = PricingRuleFactory.normalizeSku(sku);
+        this.rule = Objects.requireNonNull(rule, "Pricing rule cannot be null");
+        this.effectiveFrom = Objects.requireNonNull(effectiveFrom, "Effective from cannot be null");
+        this.effectiveTo = Objects.requireNonNull(effectiveTo, "Effective to cannot be null");
+        if (!effectiveTo.isAfter(effectiveFrom)) {
+            throw new IllegalArgumentException("Effective to must be after effective from");
+        }
+    }
+
+    /**
+     * Returns the normalized SKU the rule applies to.
+     *
+     * @return The SKU.
+     */
+    public String getSku() {
+        return sku;
+    }
+
+    /**
+     * Returns the rule that applies while the schedule is in effect.
+     *
+     * @return The pricing rule.
+     */
+    public PricingRule getRule() {
+        return rule;
+    }
+
+    /**
+     * Returns the instant the rule takes effect, inclusive.
+     *
+     * @return The start of the effective period.
+     */
+    public Instant getEffectiveFrom() {
+        return effectiveFrom;
+    }
+
+    /**
+     * Returns the instant the rule stops applying, exclusive.
+     *
+     * @return The end of the effective period.
+     */
+    public Instant getEffectiveTo() {
+        return effectiveTo;
+    }
+
+    /**
+     * Checks whether the rule is in effect at an instant.
+     *
+     * @param instant The instant to check.
+     * @return true if the instant is within the effective period.
+     */
+    public boolean isEffectiveAt(Instant instant) {
+        return !instant.isBefore(effectiveFrom) && instant.isBefore(effectiveTo);
+    }
+
+    long getEffectiveFromMillis() {
+        return effectiveFrom.toEpochMilli();
+    }
+
+    long getEffectiveToMillis() {
+        return effectiveTo.toEpochMilli();
+    }
+}
@@ -0,0 +1,75 @@
+package com.cdl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only index from the UTF-8 bytes of a SKU to its dense id in one catalogue snapshot.
+ * Lookups compare bytes in place, so a SKU can be resolved straight from a buffer without
+ * creating a String.
+ */
+final class SkuByteIndex {
+    private final byte[][] keys;
+    private final int[] skuIds;
+    private final int mask;
+
+    SkuByteIndex(PricingCatalogue catalogue) {
+        int capacity = Integer.highestOneBit(Math.max(1, catalogue.size()) * 2 - 1) * 2;
+        keys = new byte[capacity][];
+        skuIds = new int[capacity];
+        mask = capacity - 1;
+        for (int skuId = 0; skuId < catalogue.size(); skuId++) {
+            if (catalogue.getPricingRule(skuId) == null) {
+                continue;
+            }
+            byte[] key = catalogue.getSku(skuId).getBytes(StandardCharsets.UTF_8);
+            int slot = hash(key, 0, key.length) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            skuIds[slot] = skuId;
+        }
+    }
+
+    /**
+     * Returns the id of the SKU held in {@code buffer[from, to)}, or -1 if it is not in the catalogue.
+     */
+    int find(ByteBuffer buffer, int from, int to) {
+        int h = 0x811C9DC5;
+        for (int i = from; i < to; i++) {
+            h = (h ^ (buffer.get(i) & 0xFF)) * 0x01000193;
+        }
+        for (int slot = spread(h) & mask; ; slot = (slot + 1) & mask) {
+            byte[] key = keys[slot];
+            if (key == null) {
+                return -1;
+            }
+            if (key.length == to - from && matches(key, buffer, from)) {
+                return skuIds[slot];
+            }
+        }
+    }
+
+    private static boolean matches(byte[] key, ByteBuffer buffer, int from) {
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buffer.get(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        // FNV-1a, matching find()
+        int h = 0x811C9DC5;
+        for (int i = from; i < to; i++) {
+            h = (h ^ (bytes[i] & 0xFF)) * 0x01000193;
+        }
+        return spread(h);
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
@@ -10,6 +10,19 @@ public class SpecialPricingRule implements PricingRule{
     private final BigDecimal unitPrice;
     private final int specialQuantity;
     private final BigDecimal specialPrice;
+    // Prices as unscaled longs at a common minorScale, or minorScale -1 if they do not fit
+    private final int minorScale;
+    private final long unitPriceUnscaled;
+    private final long specialPriceUnscaled;
+    // Quantities below this are looked up rather than calculated; 0 for no tables
+    private final int tableSize;
+    // Price tables, built on first use; see PriceTable for why plain fields are safe
+    private PriceTable.Minor minorTable;
+    private PriceTable.Decimal decimalTable;
+    // The special price when it is a whole number of minor units, so a quantity beyond the
+    // tables can be priced as a table entry plus whole deals; otherwise -1 and null
+    private final long specialPriceMinor;
+    private final BigDecimal specialPriceExact;
 
     /**
      * Constructs a new SpecialPricingRule with the specified unit price, special quantity, and special price.
@@ -20,12 +33,36 @@ public class SpecialPricingRule implements PricingRule{
      * @throws IllegalArgumentException if any of the parameters are invalid.
      */
     public SpecialPricingRule(BigDecimal unitPrice, int specialQuantity, BigDecimal specialPrice) {
+        this(unitPrice, specialQuantity, specialPrice, PriceTable.DEFAULT_MAX_QUANTITY);
+    }
+
+    /**
+     * Constructs a new SpecialPricingRule that looks up the prices of quantities up to
+     * {@code tableMaxQuantity} in a table built on first use. If the table covers at least one
+     * whole deal and the special price is a whole number of pence, larger quantities are priced
+     * from a table entry plus a multiple of the special price.
+     *
+     * @param unitPrice The regular price for a single unit of the item.
+     * @param specialQuantity The quantity of items required for the special price to apply.
+     * @param specialPrice The discounted price for the special quantity of items.
+     * @param tableMaxQuantity The largest quantity to tabulate, or 0 to always calculate.
+     * @throws IllegalArgumentException if any of the parameters are invalid.
+     */
+    public SpecialPricingRule(BigDecimal unitPrice, int specialQuantity, BigDecimal specialPrice, int tableMaxQuantity) {
         if (unitPrice.compareTo(BigDecimal.ZERO) <= 0 || specialQuantity <= 0 || specialPrice.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("Invalid parameters for SpecialPricingRule");
         }
+        this.tableSize = PriceTable.size(tableMaxQuantity);
         this.unitPrice = unitPrice;
         this.specialQuantity = specialQuantity;
         this.specialPrice = specialPrice;
+        this.minorScale = Money.commonScale(unitPrice, specialPrice);
+        this.unitPriceUnscaled = minorScale < 0 ? 0 : Money.unscaled(unitPrice, minorScale);
+        this.specialPriceUnscaled = minorScale < 0 ? 0 : Money.unscaled(specialPrice, minorScale);
+        boolean wholeMinorUnits = specialPrice.stripTrailingZeros().scale() <= Money.MINOR_SCALE
+                && specialPrice.setScale(Money.MINOR_SCALE).unscaledValue().bitLength() < Long.SIZE;
+        this.specialPriceMinor = wholeMinorUnits ? Money.toMinorUnits(specialPrice) : -1;
+        this.specialPriceExact = wholeMinorUnits ? specialPrice.setScale(Money.MINOR_SCALE) : null;
     }
 
     /**
@@ -40,7 +77,33 @@ public class SpecialPricingRule implements PricingRule{
         if (quantity < 0) {
             throw new IllegalArgumentException("Quantity cannot be negative");
         }
+        if (tableSize > 0) {
+            PriceTable.Decimal table = decimalTable;
+            if (table == null) {
+                table = new PriceTable.Decimal(tableSize, this::computePrice);
+                decimalTable = table;
+            }
+            if (quantity < tableSize) {
+                return table.prices[quantity];
+            }
+            if (specialPriceExact != null && tableSize >= specialQuantity) {
+                long deals = dealsBeyondTable(quantity, tableSize);
+                return table.prices[(int) (quantity - deals * specialQuantity)]
+                        .add(specialPriceExact.multiply(BigDecimal.valueOf(deals)));
+            }
+        }
+        return computePrice(quantity);
+    }
 
+    /**
+     * Returns the number of whole deals to take off a quantity beyond the tables so that the
+     * rest falls in the last {@code specialQuantity} entries of a table of the given size.
+     */
+    private long dealsBeyondTable(int quantity, int size) {
+        return ((long) quantity - size + specialQuantity) / specialQuantity;
+    }
+
+    private BigDecimal computePrice(int quantity) {
         int specialDeals = quantity / specialQuantity;
         int remainingItems = quantity % specialQuantity;
 
@@ -49,4 +112,83 @@ public class SpecialPricingRule implements PricingRule{
 
         return totalPrice.setScale(2, RoundingMode.HALF_UP);
     }
+
+    /**
+     * Calculates the total price for a given quantity of items in minor units, applying the special
+     * price where applicable, without allocating.
+     *
+     * @param quantity The number of items to calculate the price for.
+     * @return The total price for the given quantity in minor units, with special pricing applied.
+     * @throws IllegalArgumentException if the quantity is negative.
+     * @throws ArithmeticException if the price does not fit in a long number of minor units.
+     */
+    @Override
+    public long calculatePriceMinor(int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity cannot be negative");
+        }
+        if (tableSize > 0) {
+            PriceTable.Minor table = minorTable;
+            if (table == null) {
+                table = new PriceTable.Minor(tableSize, this::computePriceMinor);
+                minorTable = table;
+            }
+            long[] prices = table.prices;
+            if (quantity < prices.length) {
+                return prices[quantity];
+            }
+            if (specialPriceMinor >= 0 && prices.length >= specialQuantity) {
+                long deals = dealsBeyondTable(quantity, prices.length);
+                try {
+                    return Math.addExact(prices[(int) (quantity - deals * specialQuantity)],
+                            Math.multiplyExact(deals, specialPriceMinor));
+                } catch (ArithmeticException e) {
+                    // Too large for a long; the arithmetic below reports it
+                }
+            }
+        }
+        return computePriceMinor(quantity);
+    }
+
+    private long computePriceMinor(int quantity) {
+        if (minorScale >= 0) {
+            int specialDeals = quantity / specialQuantity;
+            int remainingItems = quantity % specialQuantity;
+            try {
+                long totalPrice = Math.addExact(Math.multiplyExact(specialPriceUnscaled, specialDeals),
+                        Math.multiplyExact(unitPriceUnscaled, remainingItems));
+                return Money.roundToMinorUnits(totalPrice, minorScale);
+            } catch (ArithmeticException e) {
+                // The unscaled intermediate overflowed, the rounded price may still fit
+            }
+        }
+        return Money.toMinorUnits(computePrice(quantity));
+    }
+
+    /**
+     * Returns the price of a single item.
+     *
+     * @return The unit price.
+     */
+    public BigDecimal getUnitPrice() {
+        return unitPrice;
+    }
+
+    /**
+     * Returns the number of items the special price applies to.
+     *
+     * @return The special quantity.
+     */
+    public int getSpecialQuantity() {
+        return specialQuantity;
+    }
+
+    /**
+     * Returns the price of one deal of {@link #getSpecialQuantity()} items.
+     *
+     * @return The special price.
+     */
+    public BigDecimal getSpecialPrice() {
+        return specialPrice;
+    }
 }
@@ -0,0 +1,201 @@
+package com.cdl;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Represents volume price breaks, such as 1-9 units at 0.50, 10-49 at 0.45 and 50 or more at 0.40.
+ * <p>
+ * Each tier starts at a minimum quantity and has its own unit price. The tier of a quantity is
+ * found by binary search over the minimum quantities, so a rule with dozens of breaks costs a
+ * handful of comparisons. How the tier prices apply depends on the {@link Mode}.
+ */
+public class TieredPricingRule implements PricingRule {
+    /**
+     * How the tier prices apply to a quantity.
+     */
+    public enum Mode {
+        /**
+         * Every unit is charged at the price of the tier the whole quantity falls in, so 12
+         * units in the example above cost 12 x 0.45.
+         */
+        ALL_UNITS,
+        /**
+         * Each unit is charged at the price of the tier it falls in, so 12 units in the
+         * example above cost 9 x 0.50 + 3 x 0.45.
+         */
+        MARGINAL
+    }
+
+    private final Mode mode;
+    // Ascending, starting at 1; tier i covers minQuantities[i] up to minQuantities[i + 1] - 1
+    private final int[] minQuantities;
+    private final BigDecimal[] unitPrices;
+    // For MARGINAL, the price of the units below each tier's minimum quantity
+    private final BigDecimal[] basePrices;
+    // Prices as unscaled longs at a common minorScale, or minorScale -1 if they do not fit
+    private final int minorScale;
+    private final long[] unitPricesUnscaled;
+    private final long[] basePricesUnscaled;
+
+    /**
+     * Constructs a new TieredPricingRule.
+     *
+     * @param mode          How the tier prices apply to a quantity.
+     * @param minQuantities The smallest quantity of each tier, strictly ascending and starting at 1.
+     * @param unitPrices    The unit price of each tier.
+     * @throws IllegalArgumentException if the tiers are empty, out of order or do not start at 1,
+     *                                  or a unit price is missing or negative.
+     */
+    public TieredPricingRule(Mode mode, int[] minQuantities, BigDecimal[] unitPrices) {
+        this.mode = Objects.requireNonNull(mode, "Mode cannot be null");
+        if (minQuantities == null || unitPrices == null || minQuantities.length == 0
+                || minQuantities.length != unitPrices.length) {
+            throw new IllegalArgumentException("Every tier needs a minimum quantity and a unit price");
+        }
+        if (minQuantities[0] != 1) {
+            throw new IllegalArgumentException("The first tier must start at 1");
+        }
+        for (int tier = 0; tier < minQuantities.length; tier++) {
+            if (tier > 0 && minQuantities[tier] <= minQuantities[tier - 1]) {
+                throw new IllegalArgumentException("Tier minimum quantities must be strictly ascending");
+            }
+            if (unitPrices[tier] == null || unitPrices[tier].compareTo(BigDecimal.ZERO) < 0) {
+                throw new IllegalArgumentException("Unit price cannot be negative");
+            }
+        }
+        this.minQuantities = minQuantities.clone();
+        this.unitPrices = unitPrices.clone();
+        this.basePrices = new BigDecimal[unitPrices.length];
+        basePrices[0] = BigDecimal.ZERO;
+        for (int tier = 1; tier < basePrices.length; tier++) {
+            basePrices[tier] = basePrices[tier - 1].add(this.unitPrices[tier - 1]
+                    .multiply(BigDecimal.valueOf(this.minQuantities[tier] - this.minQuantities[tier - 1])));
+        }
+        int scale = Money.commonScale(this.unitPrices);
+        this.unitPricesUnscaled = new long[unitPrices.length];
+        this.basePricesUnscaled = new long[unitPrices.length];
+        if (scale >= 0) {
+            try {
+                for (int tier = 0; tier < unitPrices.length; tier++) {
+                    unitPricesUnscaled[tier] = Money.unscaled(this.unitPrices[tier], scale);
+                    basePricesUnscaled[tier] = Money.unscaled(basePrices[tier], scale);
+                }
+            } catch (ArithmeticException e) {
+                // The price of the lower tiers does not fit, so always use BigDecimal
+                scale = -1;
+            }
+        }
+        this.minorScale = scale;
+    }
+
+    /**
+     * Returns the tier a quantity falls in.
+     *
+     * @param quantity The number of items, at least 1.
+     * @return The index of the tier, from 0.
+     * @throws IllegalArgumentException if the quantity is not positive.
+     */
+    public int findTier(int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        int tier = Arrays.binarySearch(minQuantities, quantity);
+        // Between two minimums, binarySearch returns -(index of the upper one) - 1
+        return tier >= 0 ? tier : -tier - 2;
+    }
+
+    /**
+     * Calculates the total price for a given quantity of items at the tier prices.
+     *
+     * @param quantity The number of items to calculate the price for.
+     * @return The total price for the given quantity.
+     * @throws IllegalArgumentException if the quantity is negative.
+     */
+    @Override
+    public BigDecimal calculatePrice(int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity cannot be negative");
+        }
+        if (quantity == 0) {
+            return BigDecimal.ZERO.setScale(2);
+        }
+        int tier = findTier(quantity);
+        BigDecimal totalPrice = mode == Mode.ALL_UNITS
+                ? unitPrices[tier].multiply(BigDecimal.valueOf(quantity))
+                : basePrices[tier].add(unitPrices[tier].multiply(BigDecimal.valueOf(quantity - minQuantities[tier] + 1L)));
+        return totalPrice.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Calculates the total price for a given quantity of items at the tier prices in minor
+     * units, without allocating.
+     *
+     * @param quantity The number of items to calculate the price for.
+     * @return The total price for the given quantity in minor units.
+     * @throws IllegalArgumentException if the quantity is negative.
+     * @throws ArithmeticException if the price does not fit in a long number of minor units.
+     */
+    @Override
+    public long calculatePriceMinor(int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity cannot be negative");
+        }
+        if (quantity == 0) {
+            return 0;
+        }
+        if (minorScale >= 0) {
+            int tier = findTier(quantity);
+            try {
+                long totalPrice = mode == Mode.ALL_UNITS
+                        ? Math.multiplyExact(unitPricesUnscaled[tier], quantity)
+                        : Math.addExact(basePricesUnscaled[tier],
+                        Math.multiplyExact(unitPricesUnscaled[tier], quantity - minQuantities[tier] + 1L));
+                return Money.roundToMinorUnits(totalPrice, minorScale);
+            } catch (ArithmeticException e) {
+                // The unscaled intermediate overflowed, the rounded price may still fit
+            }
+        }
+        return Money.toMinorUnits(calculatePrice(quantity));
+    }
+
+    /**
+     * Returns how the tier prices apply to a quantity.
+     *
+     * @return The mode.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the number of tiers.
+     *
+     * @return The number of tiers.
+     */
+    public int getTierCount() {
+        return minQuantities.length;
+    }
+
+    /**
+     * Returns the smallest quantity of a tier.
+     *
+     * @param tier The index of the tier, from 0.
+     * @return The minimum quantity.
+     */
+    public int getMinQuantity(int tier) {
+        return minQuantities[tier];
+    }
+
+    /**
+     * Returns the unit price of a tier.
+     *
+     * @param tier The index of the tier, from 0.
+     * @return The unit price.
+     */
+    public BigDecimal getUnitPrice(int tier) {
+        return unitPrices[tier];
+    }
+}
@@ -0,0 +1,145 @@
+package com.cdl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for barcode decoding and scanning barcodes into a Checkout.
+ */
+class BarcodesTest {
+    private PricingRuleFactory pricingRuleFactory;
+    private Checkout checkout;
+
+    @BeforeEach
+    void setUp() {
+        pricingRuleFactory = new PricingRuleFactory();
+        pricingRuleFactory.addPricingRule("A", new RegularPricingRule(new BigDecimal("0.50")));
+        pricingRuleFactory.addPricingRule("4006381333931", new SpecialPricingRule(new BigDecimal("1.00"), 2, new BigDecimal("1.50")));
+        pricingRuleFactory.addPricingRule("036000291452", new RegularPricingRule(new BigDecimal("0.99")));
+        // Price embedded in the barcode, priced per minor unit
+        pricingRuleFactory.addPricingRule("2112345", new RegularPricingRule(new BigDecimal("0.01")));
+        // Weight in grams embedded in the barcode, at £12.00 per kilogram
+        pricingRuleFactory.addPricingRule("0212345", new RegularPricingRule(new BigDecimal("0.012")));
+        checkout = new Checkout(pricingRuleFactory);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static long decode(String text) {
+        byte[] bytes = ascii(text);
+        return Barcodes.decode(bytes, 0, bytes.length);
+    }
+
+    @Test
+    void testDecodeVerifiesCheckDigit() {
+        assertEquals(4006381333931L, decode("4006381333931"));
+        assertEquals(-1, decode("4006381333932"));
+        assertEquals(-1, decode("400638133393"));
+        assertEquals(-1, decode("40063813339 1"));
+        // A UPC-A code is the EAN-13 code with a leading zero
+        assertEquals(36000291452L, decode("036000291452"));
+        assertEquals(36000291452L, decode("0036000291452"));
+        assertEquals(-1, decode("036000291453"));
+    }
+
+    @Test
+    void testDecodeFromDirectBufferRange() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(32);
+        buffer.put(ascii("xx4006381333931\r\n"));
+        assertEquals(4006381333931L, Barcodes.decode(buffer, 2, 15));
+        assertEquals(17, buffer.position());
+    }
+
+    @Test
+    void testVariableMeasureBarcodes() {
+        long priced = decode("2112345003504");
+        assertTrue(Barcodes.isVariableMeasure(priced));
+        assertEquals(2112345, Barcodes.getItem(priced));
+        assertEquals(350, Barcodes.getMeasure(priced));
+        long weighed = decode("212345001257");
+        assertTrue(Barcodes.isVariableMeasure(weighed));
+        assertEquals(212345, Barcodes.getItem(weighed));
+        assertEquals(125, Barcodes.getMeasure(weighed));
+        assertFalse(Barcodes.isVariableMeasure(decode("4006381333931")));
+        assertFalse(Barcodes.isVariableMeasure(decode("036000291452")));
+    }
+
+    @Test
+    void testScanBarcodes() {
+        byte[] ean = ascii("4006381333931");
+        checkout.scanBarcode(ean, 0, ean.length);
+        checkout.scanBarcode(ean, 0, ean.length);
+        checkout.scan("A");
+        byte[] upc = ascii("036000291452\n");
+        checkout.scanBarcode(upc, 0, upc.length - 1);
+        assertEquals(new BigDecimal("2.99"), checkout.calculateTotal());
+        assertEquals(pricingRuleFactory.getSkuId("4006381333931"), pricingRuleFactory.getSkuIdForBarcode(decode("4006381333931")));
+    }
+
+    @Test
+    void testScanVariableMeasureBarcodes() {
+        byte[] priced = ascii("2112345003504");
+        checkout.scanBarcode(priced, 0, priced.length);
+        ByteBuffer weighed = ByteBuffer.wrap(ascii("212345001257"));
+        checkout.scanBarcode(weighed, 0, weighed.limit());
+        // £3.50 printed in the barcode, and 125 g at £12.00 per kilogram
+        assertEquals(new BigDecimal("5.00"), checkout.calculateTotal());
+        assertEquals(pricingRuleFactory.getSkuId("2112345"), pricingRuleFactory.getSkuIdForBarcode(decode("2112345003504")));
+    }
+
+    @Test
+    void testInvalidBarcodesAreRejected() {
+        byte[] wrongCheckDigit = ascii("4006381333932");
+        assertThrows(IllegalArgumentException.class, () -> checkout.scanBarcode(wrongCheckDigit, 0, wrongCheckDigit.length));
+        byte[] unknown = ascii("5901234123457");
+        assertThrows(IllegalArgumentException.class, () -> checkout.scanBarcode(unknown, 0, unknown.length));
+        byte[] noMeasure = ascii("211234500000");
+        assertThrows(IllegalArgumentException.class, () -> checkout.scanBarcode(noMeasure, 0, noMeasure.length));
+        assertEquals(-1, pricingRuleFactory.getSkuIdForBarcode(decode("5901234123457")));
+        assertEquals(new BigDecimal("0.00"), checkout.calculateTotal());
+    }
+
+    @Test
+    void testIndexFollowsCatalogueChanges() {
+        byte[] ean = ascii("5901234123457");
+        pricingRuleFactory.addPricingRule("5901234123457", new RegularPricingRule(new BigDecimal("2.00")));
+        checkout.scanBarcode(ean, 0, ean.length);
+        assertEquals(new BigDecimal("2.00"), checkout.calculateTotal());
+        pricingRuleFactory.removePricingRule("5901234123457");
+        assertEquals(-1, pricingRuleFactory.getSkuIdForBarcode(decode("5901234123457")));
+    }
+
+    @Test
+    void testIndexIsCarriedAcrossVersions() {
+        for (PricingRuleFactory factory : new PricingRuleFactory[]{pricingRuleFactory, PricingRuleFactory.offHeap(16)}) {
+            factory.addPricingRule("036000291452", new RegularPricingRule(new BigDecimal("0.99")));
+            // The same barcode in its EAN-13 form, as a second SKU
+            factory.addPricingRule("0036000291452", new RegularPricingRule(new BigDecimal("1.05")));
+            for (int i = 0; i < 100; i++) {
+                factory.addPricingRule(String.format("590123412%03d", i), new RegularPricingRule(BigDecimal.ONE));
+            }
+            long barcode = decode("036000291452");
+            factory.removePricingRule("036000291452");
+            assertEquals(factory.getSkuId("0036000291452"), factory.getSkuIdForBarcode(barcode));
+            factory.removePricingRule("0036000291452");
+            assertEquals(-1, factory.getSkuIdForBarcode(barcode));
+            factory.addPricingRule("036000291452", new RegularPricingRule(new BigDecimal("0.99")));
+            assertEquals(factory.getSkuId("036000291452"), factory.getSkuIdForBarcode(barcode));
+            for (int i = 0; i < 100; i++) {
+                String sku = String.format("590123412%03d", i);
+                // Only the codes with a valid check digit are barcodes
+                if (decode(sku) >= 0) {
+                    assertEquals(factory.getSkuId(sku), factory.getSkuIdForBarcode(decode(sku)));
+                }
+            }
+        }
+    }
+}
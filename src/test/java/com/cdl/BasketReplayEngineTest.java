@@ -0,0 +1,112 @@
+package com.cdl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for replaying basket logs, in parallel and one basket at a time.
+ */
+class BasketReplayEngineTest {
+    private static final String[] SKUS = {"A", "B", "C", "D"};
+
+    @TempDir
+    Path tempDir;
+
+    private PricingRuleFactory pricingRuleFactory;
+
+    @BeforeEach
+    void setUp() {
+        pricingRuleFactory = new PricingRuleFactory();
+        pricingRuleFactory.addPricingRule("A", new SpecialPricingRule(new BigDecimal("0.50"), 3, new BigDecimal("1.30")));
+        pricingRuleFactory.addPricingRule("B", new SpecialPricingRule(new BigDecimal("0.30"), 2, new BigDecimal("0.45")));
+        pricingRuleFactory.addPricingRule("C", new RegularPricingRule(new BigDecimal("0.20")));
+        pricingRuleFactory.addPricingRule("D", new RegularPricingRule(new BigDecimal("0.15")));
+    }
+
+    private Path writeLog(String contents) throws IOException {
+        Path log = tempDir.resolve("baskets.log");
+        Files.write(log, contents.getBytes(StandardCharsets.UTF_8));
+        return log;
+    }
+
+    @Test
+    void testReplay_SmallLog() throws IOException {
+        Path log = writeLog("1 A A A B\n2 C D D\r\n\n3\n4 B B X\n");
+        ReplayResult result = new BasketReplayEngine(pricingRuleFactory).replay(log);
+
+        assertEquals(4, result.getBasketCount());
+        assertEquals(1L, result.getBasketId(0));
+        assertEquals(160L, result.getBasketTotalMinor(0));
+        assertEquals(50L, result.getBasketTotalMinor(1));
+        assertEquals(0L, result.getBasketTotalMinor(2));
+        assertEquals(45L, result.getBasketTotalMinor(3));
+        assertEquals(9L, result.getScanCount());
+        assertEquals(1L, result.getRejectedScanCount());
+        assertEquals(3L, result.getUnits("B"));
+        assertEquals(75L, result.getRevenueMinor("B"));
+        assertEquals(255L, result.getTotalRevenueMinor());
+    }
+
+    @Test
+    void testReplay_MalformedBasketId() throws IOException {
+        Path log = writeLog("1 A\nA2 B\n");
+        assertThrows(IllegalArgumentException.class, () -> new BasketReplayEngine(pricingRuleFactory).replay(log));
+    }
+
+    @Test
+    void testReplay_ParallelMatchesOneBasketAtATime() throws IOException {
+        Random random = new Random(42);
+        StringBuilder contents = new StringBuilder();
+        List<List<String>> baskets = new ArrayList<>();
+        // Large enough to be split into several chunks
+        for (int basketId = 0; basketId < 200_000; basketId++) {
+            List<String> basket = new ArrayList<>();
+            contents.append(basketId);
+            for (int scan = random.nextInt(12); scan >= 0; scan--) {
+                String sku = SKUS[random.nextInt(SKUS.length)];
+                basket.add(sku);
+                contents.append(' ').append(sku);
+            }
+            baskets.add(basket);
+            contents.append('\n');
+        }
+        Path log = writeLog(contents.toString());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ReplayResult parallel;
+        ReplayResult sequential;
+        try {
+            BasketReplayEngine engine = new BasketReplayEngine(pricingRuleFactory, pool);
+            parallel = engine.replay(log);
+            sequential = engine.replaySequential(log);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertTrue(parallel.hasSameOutput(sequential));
+        assertEquals(baskets.size(), parallel.getBasketCount());
+        Checkout checkout = new Checkout(pricingRuleFactory);
+        for (int i = 0; i < baskets.size(); i++) {
+            for (String sku : baskets.get(i)) {
+                checkout.scan(sku);
+            }
+            assertEquals(i, parallel.getBasketId(i));
+            assertEquals(checkout.calculateTotalMinor(), parallel.getBasketTotalMinor(i));
+            checkout.clear();
+        }
+        assertTrue(parallel.getScansPerSecond() > 0);
+    }
+}
@@ -0,0 +1,196 @@
+package com.cdl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that baskets recorded in a CartJournal survive a restart, segment rolling and compaction.
+ */
+class CartJournalTest {
+    @TempDir
+    Path directory;
+
+    private PricingRuleFactory pricingRuleFactory;
+
+    @BeforeEach
+    void setUp() {
+        pricingRuleFactory = new PricingRuleFactory();
+        pricingRuleFactory.addPricingRule("A", new SpecialPricingRule(new BigDecimal("0.50"), 3, new BigDecimal("1.30")));
+        pricingRuleFactory.addPricingRule("B", new SpecialPricingRule(new BigDecimal("0.30"), 2, new BigDecimal("0.45")));
+        pricingRuleFactory.addPricingRule("C", new RegularPricingRule(new BigDecimal("0.20")));
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".log")).count();
+        }
+    }
+
+    @Test
+    void testOpenBasketsAreRecovered() throws IOException {
+        try (CartJournal journal = CartJournal.open(directory)) {
+            Checkout first = new Checkout(pricingRuleFactory, journal, 1);
+            Checkout second = new Checkout(pricingRuleFactory, journal, 2);
+            Checkout finished = new Checkout(pricingRuleFactory, journal, 3);
+            first.scan("A", 3);
+            first.scan("B");
+            first.unscan("A");
+            second.scan("C");
+            second.voidLine("C");
+            second.scan("B", 2);
+            finished.scan("A");
+            finished.clear();
+            journal.sync();
+        }
+
+        CartJournal.Recovery recovery = CartJournal.recover(directory);
+        assertEquals(Set.of(1L, 2L), recovery.getLanes());
+        assertEquals(8, recovery.getRecordCount());
+
+        Checkout restored = new Checkout(pricingRuleFactory);
+        recovery.restore(1, restored);
+        assertEquals(2, restored.getQuantity("A"));
+        assertEquals(1, restored.getQuantity("B"));
+        assertEquals(new BigDecimal("1.30"), restored.calculateTotal());
+        restored.clear();
+        recovery.restore(2, restored);
+        assertEquals(0, restored.getQuantity("C"));
+        assertEquals(new BigDecimal("0.45"), restored.calculateTotal());
+        assertThrows(IllegalArgumentException.class, () -> recovery.restore(3, new Checkout(pricingRuleFactory)));
+    }
+
+    @Test
+    void testUnsyncedChangesAreCommittedWithinTheWindow() throws Exception {
+        CartJournal journal = CartJournal.open(directory, CartJournal.DEFAULT_SEGMENT_BYTES, Duration.ofMillis(5), 1024);
+        Checkout checkout = new Checkout(pricingRuleFactory, journal, 7);
+        checkout.scan("A");
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (CartJournal.recover(directory).getRecordCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(Set.of(7L), CartJournal.recover(directory).getLanes());
+        journal.close();
+        assertThrows(IllegalStateException.class, () -> checkout.scan("A"));
+    }
+
+    @Test
+    void testSegmentsRollAndCompact() throws IOException {
+        try (CartJournal journal = CartJournal.open(directory, 4 * CartJournal.RECORD_BYTES, Duration.ofMillis(1), 16)) {
+            for (int lane = 0; lane < 20; lane++) {
+                Checkout checkout = new Checkout(pricingRuleFactory, journal, lane);
+                checkout.scan("A");
+                checkout.scan("B");
+                if (lane % 2 == 0) {
+                    checkout.clear();
+                }
+                journal.sync();
+            }
+            assertTrue(segmentCount() > 5);
+
+            journal.compact();
+            // The compacted segment and the active one
+            assertEquals(2, segmentCount());
+            CartJournal.Recovery recovery = CartJournal.recover(directory);
+            assertEquals(10, recovery.getLanes().size());
+            assertEquals(21, recovery.getRecordCount());
+
+            Checkout restored = new Checkout(pricingRuleFactory);
+            recovery.restore(19, restored);
+            assertEquals(new BigDecimal("0.80"), restored.calculateTotal());
+        }
+        // A reopened journal starts a new segment after the compacted one
+        try (CartJournal journal = CartJournal.open(directory)) {
+            new Checkout(pricingRuleFactory, journal, 19).clear();
+        }
+        assertEquals(9, CartJournal.recover(directory).getLanes().size());
+    }
+
+    @Test
+    void testRestoreRefusesACatalogueWithOtherIds() throws IOException {
+        long version = pricingRuleFactory.getCatalogue().getVersion();
+        try (CartJournal journal = CartJournal.open(directory, 2 * CartJournal.RECORD_BYTES, Duration.ofMillis(1), 16)) {
+            Checkout checkout = new Checkout(pricingRuleFactory, journal, 1);
+            checkout.scan("B");
+            checkout.scan("C");
+            journal.sync();
+            new Checkout(pricingRuleFactory, journal, 2).scan("A");
+            journal.sync();
+            journal.compact();
+        }
+
+        // Compaction keeps the version the basket was priced against
+        CartJournal.Recovery recovery = CartJournal.recover(directory);
+        assertEquals(version, recovery.getCatalogueVersion(1));
+        PricingRuleFactory rebuilt = new PricingRuleFactory();
+        rebuilt.addPricingRule("C", new RegularPricingRule(new BigDecimal("0.20")));
+        rebuilt.addPricingRule("B", new RegularPricingRule(new BigDecimal("0.30")));
+        rebuilt.addPricingRule("A", new RegularPricingRule(new BigDecimal("0.50")));
+        Checkout renumbered = new Checkout(rebuilt);
+        assertThrows(IllegalArgumentException.class, () -> recovery.restore(1, renumbered));
+        assertEquals(0, renumbered.getQuantity("B"));
+        assertEquals(0, renumbered.getQuantity("C"));
+
+        Checkout restored = new Checkout(pricingRuleFactory);
+        recovery.restore(1, restored);
+        assertEquals(new BigDecimal("0.50"), restored.calculateTotal());
+    }
+
+    @Test
+    void testOverflowingScanIsNotJournaled() throws IOException {
+        pricingRuleFactory.addPricingRule("H", new RegularPricingRule(new BigDecimal("50000000000000000")));
+        pricingRuleFactory.addPricingRule("I", new RegularPricingRule(new BigDecimal("50000000000000000")));
+        try (CartJournal journal = CartJournal.open(directory)) {
+            Checkout checkout = new Checkout(pricingRuleFactory, journal, 1);
+            checkout.scan("H");
+            checkout.scan("C");
+            // Each line prices fine, but the running total overflows
+            assertThrows(ArithmeticException.class, () -> checkout.scan("I"));
+            assertEquals(0, checkout.getQuantity("I"));
+            journal.sync();
+        }
+
+        CartJournal.Recovery recovery = CartJournal.recover(directory);
+        assertEquals(2, recovery.getRecordCount());
+        Checkout restored = new Checkout(pricingRuleFactory);
+        recovery.restore(1, restored);
+        assertEquals(0, restored.getQuantity("I"));
+        assertEquals(new BigDecimal("50000000000000000.20"), restored.calculateTotal());
+    }
+
+    @Test
+    void testTornRecordIsIgnored() throws IOException {
+        try (CartJournal journal = CartJournal.open(directory)) {
+            Checkout checkout = new Checkout(pricingRuleFactory, journal, 1);
+            checkout.scan("A");
+            checkout.scan("C");
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(file -> file.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        // Corrupt the second record and leave half a record after it, as a crash mid-write would
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[CartJournal.RECORD_BYTES + 30] ^= 1;
+        Files.write(segment, bytes);
+        Files.write(segment, new byte[CartJournal.RECORD_BYTES / 2], StandardOpenOption.APPEND);
+
+        CartJournal.Recovery recovery = CartJournal.recover(directory);
+        assertEquals(1, recovery.getRecordCount());
+        Checkout restored = new Checkout(pricingRuleFactory);
+        recovery.restore(1, restored);
+        assertEquals(1, restored.getQuantity("A"));
+        assertEquals(0, restored.getQuantity("C"));
+    }
+}
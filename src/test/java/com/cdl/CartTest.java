@@ -0,0 +1,64 @@
+package com.cdl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the primitive Cart storage.
+ */
+class CartTest {
+
+    private Cart cart;
+
+    @BeforeEach
+    void setUp() {
+        cart = new Cart();
+    }
+
+    @Test
+    void testLineFor_SameSkuReturnsSameLine() {
+        int line = cart.lineFor(42);
+        assertEquals(line, cart.lineFor(42));
+        assertEquals(1, cart.lineCount());
+        assertEquals(42, cart.skuId(line));
+    }
+
+    @Test
+    void testFind_MissingSku() {
+        cart.lineFor(1);
+        assertEquals(-1, cart.find(2));
+    }
+
+    @Test
+    void testLines_KeepScanOrderWhenGrowing() {
+        for (int skuId = 1000; skuId > 0; skuId--) {
+            int line = cart.lineFor(skuId);
+            cart.setQuantity(line, skuId);
+        }
+        assertEquals(1000, cart.lineCount());
+        for (int line = 0; line < cart.lineCount(); line++) {
+            assertEquals(1000 - line, cart.skuId(line));
+            assertEquals(line, cart.find(1000 - line));
+            assertEquals(1000 - line, cart.quantity(line));
+        }
+    }
+
+    @Test
+    void testClear_RemovesAllLines() {
+        for (int skuId = 0; skuId < 100; skuId++) {
+            int line = cart.lineFor(skuId * 16);
+            cart.setQuantity(line, 3);
+            cart.setLinePrice(line, 130);
+        }
+        cart.clear();
+        assertEquals(0, cart.lineCount());
+        for (int skuId = 0; skuId < 100; skuId++) {
+            assertEquals(-1, cart.find(skuId * 16));
+        }
+        int line = cart.lineFor(16);
+        assertEquals(0, cart.quantity(line));
+        assertEquals(0L, cart.linePrice(line));
+    }
+}
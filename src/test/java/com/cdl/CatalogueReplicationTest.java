@@ -0,0 +1,189 @@
+package com.cdl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for shipping catalogue changes between store nodes as delta files.
+ */
+class CatalogueReplicationTest {
+    @TempDir
+    Path tempDir;
+
+    private PricingRuleFactory primary;
+    private PricingRuleFactory node;
+
+    @BeforeEach
+    void setUp() {
+        primary = new PricingRuleFactory();
+        primary.addPricingRule("A", new SpecialPricingRule(new BigDecimal("0.50"), 3, new BigDecimal("1.30")));
+        primary.addPricingRule("B", new SpecialPricingRule(new BigDecimal("0.30"), 2, new BigDecimal("0.45")));
+        primary.addPricingRule("C", new RegularPricingRule(new BigDecimal("0.20")));
+        node = new PricingRuleFactory();
+    }
+
+    private static BigDecimal total(PricingRuleFactory factory, String... skus) {
+        Checkout checkout = new Checkout(factory);
+        for (String sku : skus) {
+            checkout.scan(sku);
+        }
+        return checkout.calculateTotal();
+    }
+
+    @Test
+    void testDeltaRecordsAddsChangesAndRemovals() {
+        PricingCatalogue before = primary.getCatalogue();
+        primary.update(builder -> builder
+                .put("D", new RegularPricingRule(new BigDecimal("0.15")))
+                .put("B", new RegularPricingRule(new BigDecimal("0.25")))
+                .put("C", new RegularPricingRule(new BigDecimal("0.20"))));
+        primary.removePricingRule("A");
+
+        CatalogueDelta delta = CatalogueDelta.fromBytes(CatalogueDelta.between(before, primary.getCatalogue()).toBytes());
+        assertEquals(before.getVersion(), delta.getFromVersion());
+        assertEquals(primary.getCatalogue().getVersion(), delta.getToVersion());
+        // C was put again with the same price, so it is not a change
+        assertEquals(3, delta.size());
+        assertEquals(Arrays.asList("A", "B", "D"), Arrays.asList(delta.getSku(0), delta.getSku(1), delta.getSku(2)));
+        assertNull(delta.getPricingRule(0));
+        assertEquals(new BigDecimal("0.50"), delta.getPricingRule(1).calculatePrice(2));
+        assertEquals(new BigDecimal("0.15"), delta.getPricingRule(2).calculatePrice(1));
+        assertEquals(0, CatalogueDelta.between(primary.getCatalogue(), primary.getCatalogue()).size());
+    }
+
+    @Test
+    void testNodeFollowsThePublisher() throws IOException {
+        CataloguePublisher publisher = new CataloguePublisher(primary, tempDir, 100);
+        CatalogueReplica replica = new CatalogueReplica(node, tempDir);
+        assertEquals(1, replica.poll());
+        assertEquals(1, replica.getSnapshotLoadCount());
+        assertEquals(new BigDecimal("1.95"), total(node, "A", "A", "A", "B", "B", "C"));
+
+        primary.addPricingRule("D", new RegularPricingRule(new BigDecimal("0.15")));
+        primary.addPricingRule("B", new RegularPricingRule(new BigDecimal("0.25")));
+        assertEquals(2, publisher.publish().size());
+        primary.removePricingRule("C");
+        assertEquals(1, publisher.publish().size());
+        assertEquals(0, publisher.publish().size());
+
+        assertEquals(2, replica.poll());
+        assertEquals(0, replica.poll());
+        assertEquals(publisher.getPublishedVersion(), replica.getVersion());
+        assertEquals(2, replica.getAppliedDeltaCount());
+        assertEquals(new BigDecimal("1.95"), total(node, "A", "A", "A", "B", "B", "D"));
+        assertNull(node.getCatalogue().getPricingRule("C"));
+        assertEquals(primary.getCatalogue().getSkuId("D"), node.getCatalogue().getSkuId("D"));
+    }
+
+    @Test
+    void testIdsGivenWithoutARuleAreShipped() throws IOException {
+        CataloguePublisher publisher = new CataloguePublisher(primary, tempDir, 100);
+        CatalogueReplica replica = new CatalogueReplica(node, tempDir);
+        replica.poll();
+
+        primary.addPricingRule("X", new RegularPricingRule(new BigDecimal("0.70")));
+        primary.removePricingRule("X");
+        primary.addPricingRule("Y", new RegularPricingRule(new BigDecimal("0.60")));
+        assertEquals(2, publisher.publish().size());
+
+        replica.poll();
+        assertEquals(1, replica.getAppliedDeltaCount());
+        assertEquals(primary.getCatalogue().getSkuId("Y"), node.getCatalogue().getSkuId("Y"));
+        assertEquals("X", node.getCatalogue().getSku(3));
+        assertNull(node.getCatalogue().getPricingRule("X"));
+        assertEquals(new BigDecimal("0.60"), total(node, "Y"));
+    }
+
+    @Test
+    void testSnapshotKeepsTheNodesIds() throws IOException {
+        node.addPricingRule("B", new RegularPricingRule(new BigDecimal("2.00")));
+        PriceTier staff = new PriceTier("staff", node);
+        staff.addPricingRule("B", new RegularPricingRule(new BigDecimal("0.50")));
+        new CataloguePublisher(primary, tempDir, 100);
+        CatalogueReplica replica = new CatalogueReplica(node, tempDir);
+        replica.poll();
+        assertEquals(1, replica.getSnapshotLoadCount());
+
+        // The publisher numbers B 1, but baskets and tiers on this node know it as 0
+        assertEquals(0, node.getCatalogue().getSkuId("B"));
+        assertEquals(primary.getCatalogue().getVersion(), replica.getVersion());
+        Checkout checkout = new Checkout(node);
+        checkout.setPriceTier(staff);
+        checkout.scan("B");
+        assertEquals(new BigDecimal("0.50"), checkout.calculateTotal());
+        assertEquals(new BigDecimal("1.95"), total(node, "A", "A", "A", "B", "B", "C"));
+    }
+
+    @Test
+    void testApplyingADeltaTwiceChangesNothing() {
+        PricingCatalogue before = primary.getCatalogue();
+        primary.addPricingRule("A", new RegularPricingRule(new BigDecimal("0.40")));
+        primary.addPricingRule("E", new RegularPricingRule(new BigDecimal("0.10")));
+        CatalogueDelta delta = CatalogueDelta.between(before, primary.getCatalogue());
+        node = new PricingRuleFactory(before);
+
+        delta.applyTo(node);
+        PricingCatalogue once = node.getCatalogue();
+        delta.applyTo(node);
+        assertEquals(once.size(), node.getCatalogue().size());
+        assertEquals(0, CatalogueDelta.between(once, node.getCatalogue()).size());
+        assertEquals(new BigDecimal("0.90"), total(node, "A", "E", "C", "C"));
+    }
+
+    @Test
+    void testNodeLoadsTheSnapshotWhenADeltaIsMissing() throws IOException {
+        CataloguePublisher publisher = new CataloguePublisher(primary, tempDir, 2);
+        CatalogueReplica replica = new CatalogueReplica(node, tempDir);
+        replica.poll();
+
+        for (int i = 1; i <= 5; i++) {
+            primary.addPricingRule("C", new RegularPricingRule(new BigDecimal(i)));
+            publisher.publish();
+        }
+        // Snapshots after the second and fourth deltas; only the deltas after the older one are kept
+        try (var files = Files.list(tempDir)) {
+            assertEquals(5, files.count());
+        }
+        replica.poll();
+        assertEquals(publisher.getPublishedVersion(), replica.getVersion());
+        assertEquals(2, replica.getSnapshotLoadCount());
+        assertEquals(1, replica.getAppliedDeltaCount());
+        assertEquals(new BigDecimal("5.00"), total(node, "C"));
+    }
+
+    @Test
+    void testSnapshotOfALiveCatalogueKeepsIds() throws IOException {
+        primary.removePricingRule("B");
+        Path snapshot = tempDir.resolve("catalogue.snapshot");
+        assertEquals(3, CatalogueSnapshot.write(primary.getCatalogue(), snapshot));
+
+        PricingCatalogue loaded = CatalogueSnapshot.load(snapshot);
+        assertEquals(primary.getCatalogue().getVersion(), loaded.getVersion());
+        assertEquals(2, loaded.getSkuId("C"));
+        assertEquals(-1, loaded.getSkuId("B"));
+        assertEquals("B", loaded.getSku(1));
+        assertEquals(new BigDecimal("1.30"), loaded.getPricingRule("A").calculatePrice(3));
+    }
+
+    @Test
+    void testOnlyRegularAndSpecialRulesCanBeShipped() {
+        PricingCatalogue before = primary.getCatalogue();
+        primary.addPricingRule("T", new TieredPricingRule(TieredPricingRule.Mode.ALL_UNITS,
+                new int[]{1, 10}, new BigDecimal[]{new BigDecimal("1.00"), new BigDecimal("0.90")}));
+        assertThrows(IllegalArgumentException.class, () -> CatalogueDelta.between(before, primary.getCatalogue()));
+        assertThrows(IllegalArgumentException.class, () -> CatalogueDelta.fromBytes(new byte[12]));
+
+        byte[] bytes = CatalogueDelta.between(PricingCatalogue.EMPTY, before).toBytes();
+        bytes[bytes.length - 1] ^= 1;
+        assertThrows(IllegalArgumentException.class, () -> CatalogueDelta.fromBytes(bytes));
+    }
+}
@@ -0,0 +1,98 @@
+package com.cdl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for compiling CSV price lists into binary catalogue snapshots and loading them.
+ */
+class CatalogueSnapshotTest {
+    private static final String PRICE_LIST = String.join("\n",
+            "sku,unitPrice,specialQuantity,specialPrice",
+            "# Daily lines",
+            "A,0.50,3,1.30",
+            "B,0.30,2,0.45",
+            "C,0.20,,",
+            "",
+            " D , 0.15 ",
+            "E,0.20",
+            "SKU-Ä,0.333,3,0.995",
+            "C,0.25");
+
+    @TempDir
+    Path tempDir;
+
+    private Path compile(String priceList) throws IOException {
+        Path csv = tempDir.resolve("prices.csv");
+        Files.writeString(csv, priceList, StandardCharsets.UTF_8);
+        Path snapshot = tempDir.resolve("catalogue.snapshot");
+        CatalogueSnapshot.compile(csv, snapshot, 42);
+        return snapshot;
+    }
+
+    @Test
+    void testCompileAndLoad() throws IOException {
+        Path snapshot = compile(PRICE_LIST);
+        PricingCatalogue catalogue = CatalogueSnapshot.load(snapshot);
+
+        assertEquals(42, catalogue.getVersion());
+        assertEquals(6, catalogue.size());
+        assertEquals(new BigDecimal("1.80"), catalogue.getPricingRule("A").calculatePrice(4));
+        assertEquals(45L, catalogue.getPricingRule("B").calculatePriceMinor(2));
+        assertEquals(new BigDecimal("0.25"), catalogue.getPricingRule("C").calculatePrice(1), "Later line wins");
+        assertEquals(new BigDecimal("0.15"), catalogue.getPricingRule("D").calculatePrice(1));
+        assertEquals(new BigDecimal("1.33"), catalogue.getPricingRule("SKU-Ä").calculatePrice(4));
+        assertEquals(-1, catalogue.getSkuId("sku"));
+        // SKUs with the same rule share one rule object
+        assertSame(catalogue.getPricingRule("E"), catalogue.getPricingRule(catalogue.getSkuId("E")));
+        assertNotSame(catalogue.getPricingRule("C"), catalogue.getPricingRule("E"));
+    }
+
+    @Test
+    void testLoadedCatalogueStartsFactory() throws IOException {
+        PricingRuleFactory factory = new PricingRuleFactory(CatalogueSnapshot.load(compile(PRICE_LIST)));
+        Checkout checkout = new Checkout(factory);
+        checkout.scanAll(List.of("A", "A", "A", "B", "C"));
+        assertEquals(new BigDecimal("1.85"), checkout.calculateTotal());
+
+        factory.addPricingRule("F", new RegularPricingRule(new BigDecimal("1.00")));
+        assertEquals(43, factory.getCatalogue().getVersion());
+        assertEquals(6, factory.getSkuId("F"));
+    }
+
+    @Test
+    void testCorruptSnapshotIsRejected() throws IOException {
+        Path snapshot = compile(PRICE_LIST);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(snapshot, bytes);
+        IOException e = assertThrows(IOException.class, () -> CatalogueSnapshot.load(snapshot));
+        assertTrue(e.getMessage().contains("checksum"));
+
+        Files.write(snapshot, Arrays.copyOf(bytes, bytes.length - 3));
+        assertThrows(IOException.class, () -> CatalogueSnapshot.load(snapshot));
+
+        Files.writeString(snapshot, PRICE_LIST);
+        assertThrows(IOException.class, () -> CatalogueSnapshot.load(snapshot));
+    }
+
+    @Test
+    void testMalformedLinesAreReported() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> compile("A,0.50\nB,abc"));
+        assertTrue(e.getMessage().contains("line 2"));
+        assertThrows(IllegalArgumentException.class, () -> compile("A,0.50,3"));
+        assertThrows(IllegalArgumentException.class, () -> compile("A,-0.50"));
+        assertThrows(IllegalArgumentException.class, () -> compile("A,0.50,0,1.00"));
+        assertThrows(IllegalArgumentException.class, () -> compile(" ,0.50"));
+    }
+}
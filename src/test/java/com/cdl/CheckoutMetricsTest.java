@@ -0,0 +1,116 @@
+package com.cdl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CheckoutMetrics and its latency histograms.
+ */
+class CheckoutMetricsTest {
+    private PricingRuleFactory pricingRuleFactory;
+    private CheckoutMetrics metrics;
+    private Checkout checkout;
+
+    @BeforeEach
+    void setUp() {
+        pricingRuleFactory = new PricingRuleFactory();
+        pricingRuleFactory.addPricingRule("A", new SpecialPricingRule(new BigDecimal("0.50"), 3, new BigDecimal("1.30")));
+        pricingRuleFactory.addPricingRule("C", new RegularPricingRule(new BigDecimal("0.20")));
+        metrics = new CheckoutMetrics(true);
+        checkout = new Checkout(pricingRuleFactory, false, metrics);
+    }
+
+    @Test
+    void testHistogramBucketsAreContiguous() {
+        assertEquals(0, LatencyHistogram.index(0));
+        assertEquals(63, LatencyHistogram.index(63));
+        for (int index = 1; index <= LatencyHistogram.index(Long.MAX_VALUE); index++) {
+            long lowest = LatencyHistogram.highestValue(index - 1) + 1;
+            assertEquals(index, LatencyHistogram.index(lowest));
+            assertEquals(index, LatencyHistogram.index(LatencyHistogram.highestValue(index)));
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(LatencyHistogram.index(Long.MAX_VALUE)));
+    }
+
+    @Test
+    void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1_000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500, histogram.getMean(), 0.001);
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 * 0.04);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 * 0.04);
+        assertEquals(1_000_000, histogram.getMax(), 1_000_000 * 0.04);
+        assertTrue(histogram.getMax() >= 1_000_000);
+        assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtPercentile(101));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    void testCheckoutRecordsScansLookupsAndEvaluations() {
+        checkout.scan("A");
+        checkout.scan("A", 2);
+        checkout.scan("C");
+        assertThrows(IllegalArgumentException.class, () -> checkout.scan("X"));
+        assertThrows(IllegalArgumentException.class, () -> checkout.scan(" "));
+        checkout.calculateTotal();
+
+        assertEquals(3, metrics.getScanCount());
+        assertEquals(1, metrics.getTotalCount());
+        assertEquals(3, metrics.getRuleLookupHits());
+        assertEquals(1, metrics.getRuleLookupMisses());
+        assertEquals(2, metrics.getInvalidSkuRejections());
+        assertEquals(Long.valueOf(2), metrics.getRuleEvaluations().get("SpecialPricingRule"));
+        assertEquals(Long.valueOf(1), metrics.getRuleEvaluations().get("RegularPricingRule"));
+        assertTrue(metrics.snapshot().contains("SpecialPricingRule=2"));
+    }
+
+    @Test
+    void testDisabledMetricsRecordNothing() {
+        metrics.setEnabled(false);
+        checkout.scan("A");
+        assertThrows(IllegalArgumentException.class, () -> checkout.scan("X"));
+        checkout.calculateTotal();
+        assertEquals(0, metrics.getScanCount());
+        assertEquals(0, metrics.getTotalCount());
+        assertEquals(0, metrics.getRuleLookupHits());
+        assertEquals(0, metrics.getInvalidSkuRejections());
+        assertTrue(metrics.getRuleEvaluations().isEmpty());
+
+        metrics.setEnabled(true);
+        checkout.scan("A");
+        assertEquals(1, metrics.getScanCount());
+        metrics.reset();
+        assertEquals(0, metrics.getScanCount());
+        assertEquals(Long.valueOf(0), metrics.getRuleEvaluations().get("SpecialPricingRule"));
+    }
+
+    @Test
+    void testMetricsAreReadableOverJmx() throws Exception {
+        checkout.scan("A");
+        checkout.scan("C", 2);
+        ObjectName name = metrics.registerMBean("com.cdl:type=CheckoutMetrics,name=test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(2L, server.getAttribute(name, "ScanCount"));
+            assertEquals(2L, server.getAttribute(name, "RuleLookupHits"));
+            assertEquals(Boolean.TRUE, server.getAttribute(name, "Enabled"));
+            assertThrows(IllegalStateException.class, () -> metrics.registerMBean(name.toString()));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.cdl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the CheckoutServer line protocol over loopback connections.
+ */
+class CheckoutServerTest {
+    private CheckoutServer server;
+    private InetSocketAddress address;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        PricingRuleFactory pricingRuleFactory = new PricingRuleFactory();
+        pricingRuleFactory.addPricingRule("A", new SpecialPricingRule(new BigDecimal("0.50"), 3, new BigDecimal("1.30")));
+        pricingRuleFactory.addPricingRule("C", new RegularPricingRule(new BigDecimal("0.20")));
+        server = new CheckoutServer(pricingRuleFactory);
+        address = server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    /**
+     * A client connection that sends one request line and reads one response line at a time.
+     */
+    private static final class Client implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+
+        Client(InetSocketAddress address) throws IOException {
+            socket = new Socket(address.getAddress(), address.getPort());
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        }
+
+        String send(String request) throws IOException {
+            out.println(request);
+            return in.readLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Test
+    void testSessionProtocol() throws IOException {
+        try (Client client = new Client(address)) {
+            assertEquals("OK 0.50", client.send("SCAN A"));
+            assertEquals("OK 1.30", client.send("scan A 2"));
+            assertEquals("OK 1.50", client.send("SCAN C"));
+            assertEquals("TOTAL 1.50", client.send("TOTAL"));
+            assertEquals("ERR Invalid SKU: X", client.send("SCAN X"));
+            assertTrue(client.send("SCAN A zero").startsWith("ERR"));
+            assertTrue(client.send("PAY").startsWith("ERR Unknown command"));
+            assertEquals("DONE 1.50", client.send("DONE"));
+            assertEquals("TOTAL 0.00", client.send("TOTAL"));
+            assertEquals("BYE", client.send("QUIT"));
+            assertNull(client.in.readLine());
+        }
+    }
+
+    @Test
+    void testSessionsHaveSeparateBaskets() throws IOException {
+        try (Client first = new Client(address); Client second = new Client(address)) {
+            assertEquals("OK 0.50", first.send("SCAN A"));
+            assertEquals("OK 0.20", second.send("SCAN C"));
+            assertEquals("OK 1.00", first.send("SCAN A"));
+            assertEquals("TOTAL 0.20", second.send("TOTAL"));
+            assertEquals(2, server.getSessionCount());
+        }
+    }
+
+    @Test
+    void testCloseDisconnectsSessions() throws IOException {
+        try (Client client = new Client(address)) {
+            assertEquals("OK 0.50", client.send("SCAN A"));
+            server.close();
+            assertNull(client.in.readLine());
+        }
+        assertThrows(IllegalStateException.class, () -> server.start(new InetSocketAddress(0)));
+    }
+
+    @Test
+    void testFailingAcceptsBackOffUntilClosed() throws IOException {
+        // Fails like accept does when the process is out of file descriptors, then closes
+        ServerSocket failing = new ServerSocket() {
+            private int calls;
+
+            @Override
+            public Socket accept() throws IOException {
+                if (++calls == 4) {
+                    close();
+                }
+                throw new IOException("Too many open files");
+            }
+        };
+        long start = System.nanoTime();
+        server.acceptLoop(failing);
+        assertEquals(3, server.getFailedAcceptCount());
+        long minimum = CheckoutServer.MIN_ACCEPT_BACKOFF_MILLIS * (1 + 2 + 4);
+        assertTrue(System.nanoTime() - start >= minimum * 1_000_000);
+    }
+}
@@ -0,0 +1,193 @@
+package com.cdl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CheckoutSessionManager expiry, eviction and compaction.
+ */
+class CheckoutSessionManagerTest {
+    private PricingRuleFactory pricingRuleFactory;
+    private ManualClock clock;
+    private CheckoutSessionManager manager;
+
+    @BeforeEach
+    void setUp() {
+        pricingRuleFactory = new PricingRuleFactory();
+        pricingRuleFactory.addPricingRule("A", new SpecialPricingRule(new BigDecimal("0.50"), 3, new BigDecimal("1.30")));
+        pricingRuleFactory.addPricingRule("C", new RegularPricingRule(new BigDecimal("0.20")));
+        clock = new ManualClock();
+        manager = new CheckoutSessionManager(pricingRuleFactory, 1_000, Duration.ofMinutes(30), Duration.ofMinutes(1), clock);
+    }
+
+    private BigDecimal scan(String sessionId, String sku) {
+        return manager.withSession(sessionId, checkout -> {
+            checkout.scan(sku);
+            return checkout.calculateTotal();
+        });
+    }
+
+    @Test
+    void testSessionsHaveSeparateBaskets() {
+        String first = manager.createSession();
+        String second = manager.createSession();
+        assertNotEquals(first, second);
+        scan(first, "A");
+        scan(first, "A");
+        assertEquals(new BigDecimal("0.20"), scan(second, "C"));
+        assertEquals(new BigDecimal("1.30"), scan(first, "A"));
+        assertEquals(2, manager.size());
+
+        assertTrue(manager.closeSession(first));
+        assertFalse(manager.hasSession(first));
+        assertThrows(IllegalArgumentException.class, () -> scan(first, "A"));
+    }
+
+    @Test
+    void testCompactedBasketIsRestoredAtItsOriginalPrices() {
+        manager.createSession("basket");
+        scan("basket", "A");
+        scan("basket", "A");
+        scan("basket", "C");
+        manager.withSession("basket", checkout -> checkout.voidLine("C"));
+
+        clock.advance(Duration.ofMinutes(2));
+        manager.runMaintenance();
+        assertEquals(1, manager.getCompactedCount());
+
+        // A price change after the basket started does not reach it
+        pricingRuleFactory.addPricingRule("A", new RegularPricingRule(new BigDecimal("9.99")));
+        assertEquals(new BigDecimal("1.30"), scan("basket", "A"));
+        assertEquals(0, manager.getCompactedCount());
+        assertEquals(Integer.valueOf(3), manager.withSession("basket", checkout -> checkout.getQuantity("A")));
+    }
+
+    @Test
+    void testCompactedBasketKeepsItsPriceTier() {
+        PriceTier staff = new PriceTier("staff", pricingRuleFactory);
+        staff.addPricingRule("C", new RegularPricingRule(new BigDecimal("0.10")));
+        manager.createSession("basket");
+        manager.withSession("basket", checkout -> {
+            checkout.setPriceTier(staff);
+            return null;
+        });
+        scan("basket", "C");
+
+        clock.advance(Duration.ofMinutes(2));
+        manager.runMaintenance();
+        assertEquals(1, manager.getCompactedCount());
+
+        staff.addPricingRule("C", new RegularPricingRule(new BigDecimal("0.05")));
+        assertEquals(new BigDecimal("0.20"), scan("basket", "C"));
+        assertSame(staff, manager.withSession("basket", Checkout::getPriceTier));
+    }
+
+    @Test
+    void testIdleSessionsExpire() {
+        String idle = manager.createSession();
+        String active = manager.createSession();
+        clock.advance(Duration.ofMinutes(20));
+        scan(active, "C");
+        clock.advance(Duration.ofMinutes(20));
+        assertFalse(manager.hasSession(idle));
+        assertTrue(manager.hasSession(active));
+
+        clock.advance(Duration.ofMinutes(31));
+        manager.runMaintenance();
+        assertEquals(0, manager.size());
+        assertEquals(2, manager.getExpiredCount());
+    }
+
+    @Test
+    void testMaintenanceLeavesSessionsInUseAlone() throws InterruptedException {
+        manager.createSession("busy");
+        scan("busy", "A");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread lane = new Thread(() -> manager.withSession("busy", checkout -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            checkout.scan("C");
+            return null;
+        }));
+        lane.start();
+        started.await();
+
+        // The action has run for longer than the idle timeout; maintenance must neither wait for it nor drop it
+        clock.advance(Duration.ofMinutes(31));
+        Thread maintenance = new Thread(manager::runMaintenance);
+        maintenance.start();
+        maintenance.join(10_000);
+        assertFalse(maintenance.isAlive());
+        assertEquals(0, manager.getExpiredCount());
+        assertEquals(0, manager.getCompactedCount());
+        release.countDown();
+        lane.join();
+
+        assertTrue(manager.hasSession("busy"));
+        assertEquals(new BigDecimal("0.70"), manager.withSession("busy", Checkout::calculateTotal));
+    }
+
+    @Test
+    void testLeastRecentlyUsedSessionsAreEvicted() {
+        CheckoutSessionManager small = new CheckoutSessionManager(pricingRuleFactory, 64, Duration.ofMinutes(30), Duration.ofMinutes(1), clock);
+        for (int i = 0; i < 1_000; i++) {
+            small.createSession();
+        }
+        // Sessions that hash to the same stripe do not evict each other below the maximum
+        assertEquals(64, small.size());
+        assertEquals(1_000 - 64, small.getEvictedCount());
+
+        manager.createSession("x");
+        assertThrows(IllegalArgumentException.class, () -> manager.createSession("x"));
+    }
+
+    @Test
+    void testSessionsInUseAreNotEvicted() {
+        CheckoutSessionManager single = new CheckoutSessionManager(pricingRuleFactory, 1, Duration.ofMinutes(30), Duration.ofMinutes(1), clock);
+        single.createSession("busy");
+        single.withSession("busy", checkout -> {
+            checkout.scan("A");
+            single.createSession("next");
+            // Over the maximum until the busy session is released
+            assertEquals(2, single.size());
+            assertTrue(single.hasSession("busy"));
+            checkout.scan("C");
+            return null;
+        });
+        assertEquals(0, single.getEvictedCount());
+        assertEquals(new BigDecimal("0.70"), single.withSession("busy", Checkout::calculateTotal));
+
+        single.createSession("last");
+        assertEquals(1, single.size());
+        assertEquals(2, single.getEvictedCount());
+        assertTrue(single.hasSession("last"));
+    }
+
+    @Test
+    void testBasketEncodingRoundTrip() {
+        Cart cart = new Cart();
+        int[] skuIds = {0, 127, 128, 300_000, Integer.MAX_VALUE};
+        int[] quantities = {1, 1_000_000, 5, 0, 2};
+        for (int i = 0; i < skuIds.length; i++) {
+            cart.setQuantity(cart.lineFor(skuIds[i]), quantities[i]);
+        }
+        byte[] packed = CheckoutSessionManager.BasketEncoding.pack(cart);
+        Cart restored = new Cart();
+        CheckoutSessionManager.BasketEncoding.unpack(packed, (skuId, quantity) -> restored.setQuantity(restored.lineFor(skuId), quantity));
+        assertEquals(4, restored.lineCount());
+        assertEquals(1_000_000, restored.quantity(restored.find(127)));
+        assertEquals(2, restored.quantity(restored.find(Integer.MAX_VALUE)));
+        assertEquals(-1, restored.find(300_000));
+    }
+}
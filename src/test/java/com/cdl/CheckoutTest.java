@@ -7,6 +7,7 @@ import org.mockito.MockitoAnnotations;
 import static org.mockito.Mockito.*;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -36,6 +37,10 @@ public class CheckoutTest {
             int quantity = invocation.getArgument(0);
             return BigDecimal.valueOf(0.50).multiply(BigDecimal.valueOf(quantity));
         });
+        when(regularPricingRule.calculatePriceMinor(anyInt())).thenAnswer(invocation -> {
+            int quantity = invocation.getArgument(0);
+            return 50L * quantity;
+        });
         pricingRuleFactory.addPricingRule("A", regularPricingRule);
 
         // Set up special pricing rule (3 for 130)
@@ -46,6 +51,10 @@ public class CheckoutTest {
             return BigDecimal.valueOf(1.30).multiply(BigDecimal.valueOf(specialDeals))
                     .add(BigDecimal.valueOf(0.50).multiply(BigDecimal.valueOf(remainder)));
         });
+        when(specialPricingRule.calculatePriceMinor(anyInt())).thenAnswer(invocation -> {
+            int quantity = invocation.getArgument(0);
+            return 130L * (quantity / 3) + 50L * (quantity % 3);
+        });
         pricingRuleFactory.addPricingRule("B", specialPricingRule);
 
         checkout = new Checkout(pricingRuleFactory);
@@ -62,11 +71,32 @@ public class CheckoutTest {
         assertThrows(IllegalArgumentException.class, () -> checkout.scan("X"));
     }
 
+    @Test
+    void testScan_RejectedSKUDoesNotStartBasket() {
+        assertThrows(IllegalArgumentException.class, () -> checkout.scan("N"));
+        assertThrows(IllegalArgumentException.class, () -> checkout.scanBasket("AN"));
+        pricingRuleFactory.addPricingRule("N", new RegularPricingRule(new BigDecimal("0.75")));
+
+        // The new item is found without clearing the basket first
+        checkout.scan("N");
+        checkout.scan("A");
+        assertEquals(new BigDecimal("1.25"), checkout.calculateTotal());
+        assertSame(pricingRuleFactory.getCatalogue(), checkout.catalogue());
+    }
+
     @Test
     void testScan_EmptySKU() {
         assertThrows(IllegalArgumentException.class, () -> checkout.scan(""));
     }
 
+    @Test
+    void testScan_UntrimmedSKUSharesLine() {
+        checkout.scan("A");
+        checkout.scan(" A ");
+        assertEquals(2, getCartQuantity("A"));
+        assertEquals(BigDecimal.valueOf(1.00).setScale(2), checkout.calculateTotal());
+    }
+
     @Test
     void testCheckoutTotal_EmptyCart() {
         assertEquals(BigDecimal.ZERO.setScale(2), checkout.calculateTotal());
@@ -97,6 +127,119 @@ public class CheckoutTest {
         assertEquals(BigDecimal.valueOf(2.30).setScale(2), checkout.calculateTotal());
     }
 
+    @Test
+    void testRunningTotal_MatchesRecalculatedTotal() {
+        String[] basket = {"A", "B", "B", "A", "B", "B", "A", "B"};
+        for (String sku : basket) {
+            checkout.scan(sku);
+            assertEquals(checkout.recalculateTotal(), checkout.calculateTotal());
+        }
+    }
+
+    @Test
+    void testRunningTotal_DebugModeVerifiesTotals() {
+        Checkout debugCheckout = new Checkout(pricingRuleFactory, true);
+        debugCheckout.scan("B");
+        debugCheckout.scan("A");
+        debugCheckout.scan("B");
+        debugCheckout.scan("B");
+        assertEquals(BigDecimal.valueOf(1.80).setScale(2), debugCheckout.calculateTotal());
+    }
+
+    @Test
+    void testClear_ResetsRunningTotal() {
+        checkout.scan("A");
+        checkout.scan("B");
+        checkout.clear();
+        assertEquals(BigDecimal.ZERO.setScale(2), checkout.calculateTotal());
+        checkout.scan("A");
+        assertEquals(BigDecimal.valueOf(0.50).setScale(2), checkout.calculateTotal());
+    }
+
+    @Test
+    void testCheckoutTotalMinor_MixedItems() {
+        checkout.scan("A");
+        checkout.scan("B");
+        checkout.scan("B");
+        checkout.scan("A");
+        checkout.scan("B");
+        assertEquals(230L, checkout.calculateTotalMinor());
+    }
+
+    @Test
+    void testScanQuantity() {
+        checkout.scan("B", 4);
+        checkout.scan("A", 2);
+        assertEquals(4, getCartQuantity("B"));
+        assertEquals(BigDecimal.valueOf(2.80).setScale(2), checkout.calculateTotal());
+        assertThrows(IllegalArgumentException.class, () -> checkout.scan("A", 0));
+        assertThrows(IllegalArgumentException.class, () -> checkout.scan("X", 2));
+    }
+
+    @Test
+    void testScanAll_MatchesSingleScans() {
+        checkout.scanAll(List.of("A", "B", "B", "A", "B"));
+        assertEquals(2, getCartQuantity("A"));
+        assertEquals(3, getCartQuantity("B"));
+        assertEquals(BigDecimal.valueOf(2.30).setScale(2), checkout.calculateTotal());
+        assertEquals(checkout.recalculateTotal(), checkout.calculateTotal());
+    }
+
+    @Test
+    void testScanAll_InvalidSkuLeavesCartUnchanged() {
+        checkout.scan("A");
+        assertThrows(IllegalArgumentException.class, () -> checkout.scanAll(List.of("A", "B", "X")));
+        assertEquals(1, getCartQuantity("A"));
+        assertEquals(0, getCartQuantity("B"));
+        assertEquals(BigDecimal.valueOf(0.50).setScale(2), checkout.calculateTotal());
+    }
+
+    @Test
+    void testScanBasket_CompactEncoding() {
+        checkout.scanBasket("AAABBB");
+        assertEquals(3, getCartQuantity("A"));
+        assertEquals(3, getCartQuantity("B"));
+        assertEquals(BigDecimal.valueOf(2.80).setScale(2), checkout.calculateTotal());
+
+        checkout.clear();
+        checkout.scanBasket("3A 2B B");
+        assertEquals(3, getCartQuantity("A"));
+        assertEquals(3, getCartQuantity("B"));
+        assertEquals(BigDecimal.valueOf(2.80).setScale(2), checkout.calculateTotal());
+    }
+
+    @Test
+    void testScanBasket_InvalidEncoding() {
+        assertThrows(IllegalArgumentException.class, () -> checkout.scanBasket("AAX"));
+        assertThrows(IllegalArgumentException.class, () -> checkout.scanBasket("A3"));
+        assertThrows(IllegalArgumentException.class, () -> checkout.scanBasket("0A"));
+        assertEquals(0, getCartQuantity("A"));
+    }
+
+    @Test
+    void testUnscan_RepricesLine() {
+        checkout.scan("B", 3);
+        checkout.scan("A");
+        checkout.unscan("B");
+        assertEquals(2, getCartQuantity("B"));
+        assertEquals(BigDecimal.valueOf(1.50).setScale(2), checkout.calculateTotal());
+        assertEquals(checkout.recalculateTotal(), checkout.calculateTotal());
+    }
+
+    @Test
+    void testVoidLine_RemovesAllUnits() {
+        checkout.scan("B", 3);
+        checkout.scan("A");
+        assertEquals(3, checkout.voidLine("B"));
+        assertEquals(0, getCartQuantity("B"));
+        assertEquals(BigDecimal.valueOf(0.50).setScale(2), checkout.calculateTotal());
+        assertThrows(IllegalArgumentException.class, () -> checkout.unscan("B"));
+        assertThrows(IllegalArgumentException.class, () -> checkout.voidLine("B"));
+
+        checkout.scan("B");
+        assertEquals(BigDecimal.valueOf(1.00).setScale(2), checkout.calculateTotal());
+    }
+
     // Helper method to get the quantity of an item in the cart
     private int getCartQuantity(String sku) {
         return checkout.getQuantity(sku);
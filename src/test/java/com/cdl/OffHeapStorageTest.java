@@ -0,0 +1,89 @@
+package com.cdl;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that a factory with off-heap storage behaves like one on the heap.
+ */
+class OffHeapStorageTest {
+
+    private static PricingRule rule(int index) {
+        BigDecimal unitPrice = BigDecimal.valueOf(10 + index % 490, 2);
+        return index % 2 == 0 ? new RegularPricingRule(unitPrice)
+                : new SpecialPricingRule(unitPrice, 2 + index % 3, unitPrice.add(BigDecimal.valueOf(index % 7, 2)));
+    }
+
+    @Test
+    void testRulesAreStoredAndLookedUp() {
+        PricingRuleFactory factory = PricingRuleFactory.offHeap(2);
+        factory.addPricingRule("A", new SpecialPricingRule(new BigDecimal("0.50"), 3, new BigDecimal("1.30")));
+        factory.addPricingRule(" C ", new RegularPricingRule(new BigDecimal("0.20")));
+        PricingRule custom = quantity -> BigDecimal.ONE;
+        factory.addPricingRule("Crème brûlée", custom);
+
+        assertTrue(factory.hasRule("A"));
+        assertTrue(factory.hasRule("C"));
+        assertFalse(factory.hasRule("B"));
+        assertNull(factory.getPricingRule("B"));
+        assertSame(custom, factory.getPricingRule("Crème brûlée"));
+        assertEquals("Crème brûlée", factory.getSku(2));
+
+        SpecialPricingRule special = (SpecialPricingRule) factory.getPricingRule("A");
+        assertEquals(new BigDecimal("0.50"), special.getUnitPrice());
+        assertEquals(3, special.getSpecialQuantity());
+        assertEquals(new BigDecimal("1.30"), special.getSpecialPrice());
+        assertEquals(new BigDecimal("2.30"), special.calculatePrice(5));
+        assertEquals(new BigDecimal("0.60"), factory.getPricingRule("C").calculatePrice(3));
+
+        PricingCatalogue before = factory.getCatalogue();
+        assertTrue(factory.removePricingRule("A"));
+        assertFalse(factory.removePricingRule("A"));
+        assertFalse(factory.hasRule("A"));
+        // Earlier snapshots are not changed
+        assertTrue(before.getSkuId("A") >= 0);
+        factory.addPricingRule("A", new RegularPricingRule(new BigDecimal("0.45")));
+        assertEquals(0, factory.getSkuId("A"));
+        assertEquals(3, factory.size());
+    }
+
+    @Test
+    void testLargeCatalogueMatchesHeapCatalogue() {
+        int size = 20_000;
+        PricingRuleFactory heap = new PricingRuleFactory();
+        PricingRuleFactory offHeap = PricingRuleFactory.offHeap(16);
+        for (PricingRuleFactory factory : new PricingRuleFactory[]{heap, offHeap}) {
+            factory.update(builder -> {
+                for (int i = 0; i < size; i++) {
+                    builder.put("SKU" + i, rule(i));
+                }
+            });
+        }
+        assertEquals(size, offHeap.size());
+        SplittableRandom random = new SplittableRandom(7);
+        Checkout heapCheckout = new Checkout(heap);
+        Checkout offHeapCheckout = new Checkout(offHeap);
+        for (int i = 0; i < 1_000; i++) {
+            String sku = "SKU" + random.nextInt(size);
+            assertEquals(heap.getSkuId(sku), offHeap.getSkuId(sku));
+            int quantity = 1 + random.nextInt(5);
+            heapCheckout.scan(sku, quantity);
+            offHeapCheckout.scan(sku, quantity);
+        }
+        assertEquals(heapCheckout.calculateTotal(), offHeapCheckout.calculateTotal());
+        assertEquals(-1, offHeap.getSkuId("SKU" + size));
+    }
+
+    @Test
+    void testPricesThatDoNotFitAreKeptOnTheHeap() {
+        PricingRuleFactory factory = PricingRuleFactory.offHeap(0);
+        RegularPricingRule huge = new RegularPricingRule(new BigDecimal("123456789012345678901234567890.00"));
+        factory.addPricingRule("HUGE", huge);
+        assertSame(huge, factory.getPricingRule("HUGE"));
+        assertThrows(IllegalArgumentException.class, () -> factory.addPricingRule("", huge));
+    }
+}
@@ -0,0 +1,132 @@
+package com.cdl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PriceTier overlays and checkouts priced for a tier.
+ */
+class PriceTierTest {
+    private PricingRuleFactory pricingRuleFactory;
+    private PriceTier members;
+
+    @BeforeEach
+    void setUp() {
+        pricingRuleFactory = new PricingRuleFactory();
+        pricingRuleFactory.addPricingRule("A", new SpecialPricingRule(new BigDecimal("0.50"), 3, new BigDecimal("1.30")));
+        pricingRuleFactory.addPricingRule("B", new SpecialPricingRule(new BigDecimal("0.30"), 2, new BigDecimal("0.45")));
+        pricingRuleFactory.addPricingRule("C", new RegularPricingRule(new BigDecimal("0.20")));
+        members = new PriceTier("members", pricingRuleFactory);
+        members.addPricingRule("A", new RegularPricingRule(new BigDecimal("0.40")));
+        members.addPricingRule(" C ", new RegularPricingRule(new BigDecimal("0.15")));
+    }
+
+    @Test
+    void testTierPricesReplaceOnlyTheirSkus() {
+        Checkout member = new Checkout(pricingRuleFactory);
+        member.setPriceTier(members);
+        Checkout regular = new Checkout(pricingRuleFactory);
+        for (String sku : new String[]{"A", "A", "B", "B", "C"}) {
+            member.scan(sku);
+            regular.scan(sku);
+        }
+        assertEquals(new BigDecimal("1.40"), member.calculateTotal());
+        assertEquals(new BigDecimal("1.65"), regular.calculateTotal());
+        assertEquals(2, members.getOverlay().size());
+        assertEquals(new BigDecimal("0.40"), members.getPricingRule("A").calculatePrice(1));
+        assertEquals(new BigDecimal("0.45"), members.getPricingRule("B").calculatePrice(2));
+        assertNull(members.getPricingRule("Z"));
+    }
+
+    @Test
+    void testBasketKeepsTheOverlayItStartedWith() {
+        Checkout checkout = new Checkout(pricingRuleFactory);
+        checkout.setPriceTier(members);
+        checkout.scan("C");
+        members.addPricingRule("C", new RegularPricingRule(new BigDecimal("0.05")));
+        checkout.scan("C");
+        assertEquals(new BigDecimal("0.30"), checkout.calculateTotal());
+
+        checkout.clear();
+        checkout.scan("C");
+        assertEquals(new BigDecimal("0.05"), checkout.calculateTotal());
+        assertSame(members, checkout.getPriceTier());
+    }
+
+    @Test
+    void testSettingTheTierRepricesTheBasket() {
+        Checkout checkout = new Checkout(pricingRuleFactory, true);
+        checkout.scan("A");
+        checkout.scan("A");
+        checkout.scan("A");
+        checkout.scan("C");
+        assertEquals(new BigDecimal("1.50"), checkout.calculateTotal());
+
+        checkout.setPriceTier(members);
+        assertEquals(new BigDecimal("1.35"), checkout.calculateTotal());
+        checkout.scan("A");
+        assertEquals(new BigDecimal("1.75"), checkout.calculateTotal());
+
+        checkout.setPriceTier(null);
+        assertEquals(new BigDecimal("2.00"), checkout.calculateTotal());
+    }
+
+    @Test
+    void testOverlayFollowsTheBaseCatalogue() {
+        // Ids are stable, so the overlay still applies after the base changes
+        pricingRuleFactory.addPricingRule("D", new RegularPricingRule(new BigDecimal("0.15")));
+        pricingRuleFactory.addPricingRule("B", new RegularPricingRule(new BigDecimal("0.25")));
+        Checkout checkout = new Checkout(pricingRuleFactory);
+        checkout.setPriceTier(members);
+        checkout.scan("A");
+        checkout.scan("B");
+        checkout.scan("D");
+        assertEquals(new BigDecimal("0.80"), checkout.calculateTotal());
+
+        assertTrue(members.removePricingRule("A"));
+        assertFalse(members.removePricingRule("A"));
+        members.update(builder -> builder.clear().put("D", new RegularPricingRule(new BigDecimal("0.10"))));
+        checkout.clear();
+        checkout.scan("A");
+        checkout.scan("C");
+        checkout.scan("D");
+        assertEquals(new BigDecimal("0.80"), checkout.calculateTotal());
+    }
+
+    @Test
+    void testInvalidTiersAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> members.addPricingRule("Z", new RegularPricingRule(BigDecimal.ONE)));
+        assertThrows(NullPointerException.class, () -> members.addPricingRule("A", null));
+        assertEquals(2, members.getOverlay().size());
+
+        Checkout other = new Checkout(new PricingRuleFactory());
+        assertThrows(IllegalArgumentException.class, () -> other.setPriceTier(members));
+        assertNull(other.getPriceTier());
+    }
+
+    @Test
+    void testOverlayLookups() {
+        pricingRuleFactory.update(catalogue -> {
+            for (int i = 0; i < 1_000; i++) {
+                catalogue.put("SKU" + i, new RegularPricingRule(BigDecimal.ONE));
+            }
+        });
+        PricingRule rule = new RegularPricingRule(new BigDecimal("0.01"));
+        PriceOverlay.Builder builder = PriceOverlay.EMPTY.toBuilder(pricingRuleFactory.getCatalogue());
+        for (int i = 0; i < 1_000; i += 3) {
+            builder.put("SKU" + i, rule);
+        }
+        PriceOverlay overlay = builder.build();
+        assertEquals(334, overlay.size());
+        for (int i = 0; i < 1_000; i++) {
+            int skuId = pricingRuleFactory.getSkuId("SKU" + i);
+            assertEquals(i % 3 == 0 ? rule : null, overlay.getPricingRule(skuId));
+        }
+        assertNull(PriceOverlay.EMPTY.getPricingRule(0));
+        assertThrows(IllegalStateException.class, builder::build);
+    }
+}
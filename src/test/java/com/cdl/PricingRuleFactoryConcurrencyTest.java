@@ -0,0 +1,113 @@
+package com.cdl;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stress test for sharing one PricingRuleFactory between many scanning lanes while
+ * a writer keeps publishing new catalogue snapshots.
+ */
+class PricingRuleFactoryConcurrencyTest {
+    private static final int LANES = 32;
+    private static final long RUN_MILLIS = 1000;
+    private static final String[] BASKET = {"A", "B", "A", "C", "B", "A", "D"};
+
+    /**
+     * Publishes a snapshot in which every SKU costs the same unit price, so a basket priced
+     * against a single snapshot always totals to a multiple of its size.
+     */
+    private static void publishUniformPrices(PricingRuleFactory factory, long pence, int extraSkus) {
+        PricingRule rule = new RegularPricingRule(BigDecimal.valueOf(pence, 2));
+        factory.update(builder -> {
+            for (String sku : new String[]{"A", "B", "C", "D"}) {
+                builder.put(sku, rule);
+            }
+            // Keep growing the catalogue so the id arrays are reallocated while lanes read them
+            for (int i = 0; i < extraSkus; i++) {
+                builder.put("X" + pence + "-" + i, rule);
+            }
+        });
+    }
+
+    @Test
+    void testConcurrentLanesSeeConsistentSnapshots() throws Exception {
+        PricingRuleFactory factory = new PricingRuleFactory();
+        publishUniformPrices(factory, 1, 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(LANES + 1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong published = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> lanes = new ArrayList<>();
+        try {
+            Future<?> writer = executor.submit(() -> {
+                start.await();
+                long pence = 2;
+                while (running.get()) {
+                    publishUniformPrices(factory, pence, (int) (pence % 4));
+                    published.incrementAndGet();
+                    pence = pence % 1000 + 1;
+                }
+                return null;
+            });
+            for (int i = 0; i < LANES; i++) {
+                lanes.add(executor.submit(() -> {
+                    Checkout checkout = new Checkout(factory);
+                    long baskets = 0;
+                    start.await();
+                    while (running.get()) {
+                        for (String sku : BASKET) {
+                            checkout.scan(sku);
+                        }
+                        long unitPrice = checkout.catalogue().getPricingRule("A").calculatePriceMinor(1);
+                        assertEquals(unitPrice * BASKET.length, checkout.calculateTotalMinor());
+                        assertEquals(Money.fromMinorUnits(unitPrice * BASKET.length), checkout.recalculateTotal());
+                        checkout.clear();
+                        baskets++;
+                    }
+                    return baskets;
+                }));
+            }
+
+            start.countDown();
+            Thread.sleep(RUN_MILLIS);
+            running.set(false);
+
+            writer.get(10, TimeUnit.SECONDS);
+            for (Future<Long> lane : lanes) {
+                assertTrue(lane.get(10, TimeUnit.SECONDS) > 0);
+            }
+            assertTrue(published.get() > 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testCheckoutPinsSnapshotForWholeBasket() {
+        PricingRuleFactory factory = new PricingRuleFactory();
+        publishUniformPrices(factory, 50, 0);
+        Checkout checkout = new Checkout(factory);
+
+        checkout.scan("A");
+        publishUniformPrices(factory, 10, 0);
+        checkout.scan("A");
+        assertEquals(100L, checkout.calculateTotalMinor());
+
+        checkout.clear();
+        checkout.scan("A");
+        assertEquals(10L, checkout.calculateTotalMinor());
+    }
+}
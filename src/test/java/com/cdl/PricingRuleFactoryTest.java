@@ -113,4 +113,79 @@ class PricingRuleFactoryTest {
     void testHasRule_NullSku() {
         assertThrows(NullPointerException.class, () -> pricingRuleFactory.hasRule(null));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetSkuId_DenseIdsInRegistrationOrder() {
+        pricingRuleFactory.addPricingRule("A", regularPricingRule);
+        pricingRuleFactory.addPricingRule("B", specialPricingRule);
+
+        assertEquals(0, pricingRuleFactory.getSkuId("A"));
+        assertEquals(1, pricingRuleFactory.getSkuId("B"));
+        assertEquals(-1, pricingRuleFactory.getSkuId("C"));
+        assertEquals(2, pricingRuleFactory.size());
+        assertEquals(specialPricingRule, pricingRuleFactory.getPricingRule(1));
+        assertEquals("B", pricingRuleFactory.getSku(1));
+    }
+
+    @Test
+    void testGetSkuId_StableWhenRuleReplaced() {
+        pricingRuleFactory.addPricingRule("A", regularPricingRule);
+        pricingRuleFactory.addPricingRule("A", specialPricingRule);
+
+        assertEquals(0, pricingRuleFactory.getSkuId("A"));
+        assertEquals(1, pricingRuleFactory.size());
+        assertEquals(specialPricingRule, pricingRuleFactory.getPricingRule(0));
+    }
+
+    @Test
+    void testGetSkuId_NormalizesSku() {
+        pricingRuleFactory.addPricingRule(" A ", regularPricingRule);
+
+        assertEquals(0, pricingRuleFactory.getSkuId("A"));
+        assertEquals(0, pricingRuleFactory.getSkuId("A "));
+        assertEquals("A", pricingRuleFactory.getSku(0));
+        assertThrows(IllegalArgumentException.class, () -> pricingRuleFactory.getSkuId(" "));
+    }
+
+    @Test
+    void testGetSkuId_GrowsBeyondInitialCapacity() {
+        for (int i = 0; i < 100; i++) {
+            pricingRuleFactory.addPricingRule("SKU" + i, regularPricingRule);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, pricingRuleFactory.getSkuId("SKU" + i));
+        }
+    }
+
+    @Test
+    void testUpdate_PublishesNewSnapshot() {
+        pricingRuleFactory.addPricingRule("A", regularPricingRule);
+        PricingCatalogue before = pricingRuleFactory.getCatalogue();
+
+        PricingCatalogue after = pricingRuleFactory.update(builder -> builder
+                .put("A", specialPricingRule)
+                .put("B", regularPricingRule));
+
+        assertSame(after, pricingRuleFactory.getCatalogue());
+        assertTrue(after.getVersion() > before.getVersion());
+        assertEquals(regularPricingRule, before.getPricingRule("A"));
+        assertNull(before.getPricingRule("B"));
+        assertEquals(specialPricingRule, after.getPricingRule("A"));
+        assertEquals(regularPricingRule, after.getPricingRule("B"));
+    }
+
+    @Test
+    void testRemovePricingRule_KeepsSkuId() {
+        pricingRuleFactory.addPricingRule("A", regularPricingRule);
+        pricingRuleFactory.addPricingRule("B", specialPricingRule);
+
+        assertTrue(pricingRuleFactory.removePricingRule("A"));
+        assertFalse(pricingRuleFactory.removePricingRule("A"));
+        assertFalse(pricingRuleFactory.hasRule("A"));
+        assertEquals(-1, pricingRuleFactory.getSkuId("A"));
+
+        pricingRuleFactory.addPricingRule("A", specialPricingRule);
+        assertEquals(0, pricingRuleFactory.getSkuId("A"));
+        assertEquals(2, pricingRuleFactory.size());
+    }
+}
@@ -9,7 +9,7 @@ import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Comprehensive test suite for PricingRule implementations.
- * Covers RegularPricingRule and SpecialPricingRule with various scenarios and edge cases.
+ * Covers RegularPricingRule, SpecialPricingRule and TieredPricingRule with various scenarios and edge cases.
  */
 class PricingRuleTests {
 
@@ -43,6 +43,56 @@ class PricingRuleTests {
             PricingRule rule = new RegularPricingRule(BigDecimal.ONE);
             assertThrows(IllegalArgumentException.class, () -> rule.calculatePrice(-1));
         }
+
+        @ParameterizedTest
+        @CsvSource({
+                "0.50, 1",
+                "0.50, 100000",
+                "0.33, 3",
+                "0.333, 3",   // Sub-penny unit price, rounds up
+                "0.125, 1",   // Exactly half a penny
+                "0.1249, 1",
+                "1E+2, 7",
+                "0, 5"
+        })
+        void testRegularPricingMinorUnitsMatchBigDecimal(BigDecimal unitPrice, int quantity) {
+            PricingRule rule = new RegularPricingRule(unitPrice);
+            assertEquals(Money.toMinorUnits(rule.calculatePrice(quantity)), rule.calculatePriceMinor(quantity));
+        }
+
+        @Test
+        void testRegularPricingMinorUnitsOverflow() {
+            PricingRule rule = new RegularPricingRule(new BigDecimal("92233720368547758.07"));
+            assertEquals(Long.MAX_VALUE, rule.calculatePriceMinor(1));
+            assertThrows(ArithmeticException.class, () -> rule.calculatePriceMinor(2));
+            assertThrows(IllegalArgumentException.class, () -> rule.calculatePriceMinor(-1));
+
+            // The unscaled intermediate overflows but the rounded price still fits
+            PricingRule subPenny = new RegularPricingRule(new BigDecimal("9.000000000000000001"));
+            assertEquals(1800L, subPenny.calculatePriceMinor(2));
+        }
+
+        @ParameterizedTest
+        @CsvSource({
+                "0.50, 1",
+                "0.50, 32",
+                "0.333, 5",
+                "0.125, 32",
+                "1E+2, 8"
+        })
+        void testRegularPricingTableMatchesArithmetic(BigDecimal unitPrice, int tableMaxQuantity) {
+            PricingRule tabulated = new RegularPricingRule(unitPrice, tableMaxQuantity);
+            PricingRule calculated = new RegularPricingRule(unitPrice, 0);
+            for (int quantity = 0; quantity <= 100; quantity++) {
+                assertEquals(calculated.calculatePrice(quantity), tabulated.calculatePrice(quantity));
+                assertEquals(calculated.calculatePriceMinor(quantity), tabulated.calculatePriceMinor(quantity));
+            }
+        }
+
+        @Test
+        void testRegularPricingInvalidTableSize() {
+            assertThrows(IllegalArgumentException.class, () -> new RegularPricingRule(BigDecimal.ONE, -1));
+        }
     }
 
     @Nested
@@ -91,5 +141,136 @@ class PricingRuleTests {
             PricingRule sameAsRegularPrice = new SpecialPricingRule(new BigDecimal("0.50"), 3, new BigDecimal("1.50"));
             assertEquals(new BigDecimal("1.50"), sameAsRegularPrice.calculatePrice(3));
         }
+
+        @ParameterizedTest
+        @CsvSource({
+                "0.50, 3, 1.30, 7",
+                "0.50, 3, 1.30, 100000",
+                "0.30, 2, 0.45, 99999",
+                "0.333, 3, 0.995, 5",  // Sub-penny prices are summed before rounding
+                "0.005, 2, 0.001, 1"
+        })
+        void testSpecialPricingMinorUnitsMatchBigDecimal(BigDecimal unitPrice, int specialQuantity,
+                                                         BigDecimal specialPrice, int quantity) {
+            PricingRule rule = new SpecialPricingRule(unitPrice, specialQuantity, specialPrice);
+            assertEquals(Money.toMinorUnits(rule.calculatePrice(quantity)), rule.calculatePriceMinor(quantity));
+        }
+
+        @Test
+        void testSpecialPricingMinorUnitsOverflow() {
+            PricingRule rule = new SpecialPricingRule(new BigDecimal("0.50"), 2, new BigDecimal("92233720368547758.07"));
+            assertEquals(Long.MAX_VALUE, rule.calculatePriceMinor(2));
+            assertThrows(ArithmeticException.class, () -> rule.calculatePriceMinor(3));
+            assertThrows(ArithmeticException.class, () -> rule.calculatePriceMinor(4));
+        }
+
+        @ParameterizedTest
+        @CsvSource({
+                "0.50, 3, 1.30, 32",
+                "0.50, 3, 1.30, 2",      // Table shorter than a deal, no closed form
+                "0.30, 2, 0.45, 1",
+                "0.50, 5, 2.00, 5",
+                "0.50, 3, 1.300, 8",     // Trailing zeros still allow the closed form
+                "0.333, 3, 0.995, 32",   // Sub-penny special price, no closed form
+                "0.50, 40, 15.00, 32"
+        })
+        void testSpecialPricingTableMatchesArithmetic(BigDecimal unitPrice, int specialQuantity,
+                                                      BigDecimal specialPrice, int tableMaxQuantity) {
+            PricingRule tabulated = new SpecialPricingRule(unitPrice, specialQuantity, specialPrice, tableMaxQuantity);
+            PricingRule calculated = new SpecialPricingRule(unitPrice, specialQuantity, specialPrice, 0);
+            for (int quantity = 0; quantity <= 200; quantity++) {
+                assertEquals(calculated.calculatePrice(quantity), tabulated.calculatePrice(quantity));
+                assertEquals(calculated.calculatePriceMinor(quantity), tabulated.calculatePriceMinor(quantity));
+            }
+            for (int quantity : new int[]{100000, 99999, Integer.MAX_VALUE}) {
+                assertEquals(calculated.calculatePrice(quantity), tabulated.calculatePrice(quantity));
+                assertEquals(calculated.calculatePriceMinor(quantity), tabulated.calculatePriceMinor(quantity));
+            }
+        }
+
+        @Test
+        void testSpecialPricingInvalidTableSize() {
+            assertThrows(IllegalArgumentException.class,
+                    () -> new SpecialPricingRule(new BigDecimal("0.50"), 3, new BigDecimal("1.30"), -1));
+        }
+    }
+
+    @Nested
+    class TieredPricingRuleTest {
+        private final int[] minQuantities = {1, 10, 50};
+        private final BigDecimal[] unitPrices = {new BigDecimal("0.50"), new BigDecimal("0.45"), new BigDecimal("0.40")};
+
+        @ParameterizedTest
+        @CsvSource({
+                "0, 0.00, 0.00",
+                "1, 0.50, 0.50",
+                "9, 4.50, 4.50",
+                "10, 4.50, 4.95",   // 9 x 0.50 + 1 x 0.45
+                "12, 5.40, 5.85",
+                "49, 22.05, 22.50",
+                "50, 20.00, 22.90", // 9 x 0.50 + 40 x 0.45 + 1 x 0.40
+                "1000, 400.00, 402.90"
+        })
+        void testTieredPricingCalculation(int quantity, BigDecimal allUnits, BigDecimal marginal) {
+            PricingRule allUnitsRule = new TieredPricingRule(TieredPricingRule.Mode.ALL_UNITS, minQuantities, unitPrices);
+            PricingRule marginalRule = new TieredPricingRule(TieredPricingRule.Mode.MARGINAL, minQuantities, unitPrices);
+            assertEquals(allUnits, allUnitsRule.calculatePrice(quantity));
+            assertEquals(marginal, marginalRule.calculatePrice(quantity));
+            assertEquals(Money.toMinorUnits(allUnits), allUnitsRule.calculatePriceMinor(quantity));
+            assertEquals(Money.toMinorUnits(marginal), marginalRule.calculatePriceMinor(quantity));
+        }
+
+        @Test
+        void testTierLookup() {
+            TieredPricingRule rule = new TieredPricingRule(TieredPricingRule.Mode.ALL_UNITS, minQuantities, unitPrices);
+            assertEquals(0, rule.findTier(1));
+            assertEquals(0, rule.findTier(9));
+            assertEquals(1, rule.findTier(10));
+            assertEquals(1, rule.findTier(49));
+            assertEquals(2, rule.findTier(50));
+            assertEquals(2, rule.findTier(Integer.MAX_VALUE));
+            assertEquals(3, rule.getTierCount());
+            assertEquals(10, rule.getMinQuantity(1));
+            assertEquals(new BigDecimal("0.40"), rule.getUnitPrice(2));
+            assertThrows(IllegalArgumentException.class, () -> rule.findTier(0));
+        }
+
+        @Test
+        void testTieredPricingMinorUnitsMatchBigDecimal() {
+            int[] manyMinQuantities = new int[40];
+            BigDecimal[] manyUnitPrices = new BigDecimal[40];
+            for (int tier = 0; tier < 40; tier++) {
+                manyMinQuantities[tier] = 1 + tier * tier * 3;
+                manyUnitPrices[tier] = new BigDecimal("1.005").subtract(BigDecimal.valueOf(tier, 3));
+            }
+            for (TieredPricingRule.Mode mode : TieredPricingRule.Mode.values()) {
+                PricingRule rule = new TieredPricingRule(mode, manyMinQuantities, manyUnitPrices);
+                for (int quantity = 0; quantity <= 5000; quantity += 7) {
+                    assertEquals(Money.toMinorUnits(rule.calculatePrice(quantity)), rule.calculatePriceMinor(quantity));
+                }
+            }
+        }
+
+        @Test
+        void testTieredPricingMinorUnitsOverflow() {
+            PricingRule rule = new TieredPricingRule(TieredPricingRule.Mode.MARGINAL, new int[]{1, 3},
+                    new BigDecimal[]{new BigDecimal("46116860184273879.03"), BigDecimal.ONE});
+            assertEquals(Long.MAX_VALUE - 1, rule.calculatePriceMinor(2));
+            assertThrows(ArithmeticException.class, () -> rule.calculatePriceMinor(3));
+        }
+
+        @Test
+        void testInvalidTieredPricing() {
+            TieredPricingRule.Mode mode = TieredPricingRule.Mode.MARGINAL;
+            BigDecimal price = new BigDecimal("0.50");
+            assertThrows(IllegalArgumentException.class, () -> new TieredPricingRule(mode, new int[0], new BigDecimal[0]));
+            assertThrows(IllegalArgumentException.class, () -> new TieredPricingRule(mode, new int[]{2}, new BigDecimal[]{price}));
+            assertThrows(IllegalArgumentException.class, () -> new TieredPricingRule(mode, new int[]{1, 5, 5}, new BigDecimal[]{price, price, price}));
+            assertThrows(IllegalArgumentException.class, () -> new TieredPricingRule(mode, new int[]{1, 5}, new BigDecimal[]{price}));
+            assertThrows(IllegalArgumentException.class, () -> new TieredPricingRule(mode, new int[]{1}, new BigDecimal[]{new BigDecimal("-0.01")}));
+            assertThrows(NullPointerException.class, () -> new TieredPricingRule(null, new int[]{1}, new BigDecimal[]{price}));
+            assertThrows(IllegalArgumentException.class,
+                    () -> new TieredPricingRule(mode, new int[]{1}, new BigDecimal[]{price}).calculatePrice(-1));
+        }
     }
 }
\ No newline at end of file
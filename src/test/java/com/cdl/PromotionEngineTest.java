@@ -0,0 +1,229 @@
+package com.cdl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for bundle promotions priced by the PromotionEngine.
+ */
+class PromotionEngineTest {
+    private PricingRuleFactory pricingRuleFactory;
+    private Checkout checkout;
+
+    @BeforeEach
+    void setUp() {
+        pricingRuleFactory = new PricingRuleFactory();
+        for (String sku : new String[]{"A", "C", "D", "E", "F"}) {
+            pricingRuleFactory.addPricingRule(sku, new RegularPricingRule(new BigDecimal("0.50")));
+        }
+        pricingRuleFactory.addPricingRule("B", new SpecialPricingRule(new BigDecimal("0.50"), 3, new BigDecimal("1.30")));
+        pricingRuleFactory.addPricingRule("G", new RegularPricingRule(new BigDecimal("0.20")));
+        checkout = new Checkout(pricingRuleFactory);
+    }
+
+    @Test
+    void testAnyOfOffer() {
+        BundleOffer offer = BundleOffer.anyOf("Any 3 for 1.00", 3, new BigDecimal("1.00"), "A", "C", "D");
+        PromotionEngine engine = new PromotionEngine(List.of(offer));
+        checkout.scanBasket("ACDE");
+
+        PromotionResult result = engine.price(checkout);
+        assertEquals(new BigDecimal("1.50"), result.getTotal());
+        assertEquals(200L, result.getRegularTotalMinor());
+        assertEquals(50L, result.getSavingMinor());
+        assertEquals(1, result.getApplications(offer));
+        assertTrue(result.isOptimal());
+    }
+
+    @Test
+    void testMealDealSlots() {
+        BundleOffer mealDeal = BundleOffer.builder("Meal deal", new BigDecimal("0.90"))
+                .slot(1, "A", "C")
+                .slot(1, "G")
+                .slot(1, "D")
+                .build();
+        PromotionEngine engine = new PromotionEngine(List.of(mealDeal));
+        checkout.scanBasket("ACGD");
+
+        PromotionResult result = engine.price(checkout);
+        assertEquals(1, result.getApplications(mealDeal));
+        assertEquals(140L, result.getTotalMinor());
+    }
+
+    @Test
+    void testChoosesCheapestOfOverlappingOffers() {
+        BundleOffer big = BundleOffer.anyOf("Any 4 for 0.80", 4, new BigDecimal("0.80"), "A", "C", "D", "E");
+        BundleOffer left = BundleOffer.builder("A and E", new BigDecimal("0.30")).slot(1, "A").slot(1, "E").build();
+        BundleOffer right = BundleOffer.builder("C and F", new BigDecimal("0.30")).slot(1, "C").slot(1, "F").build();
+        PromotionEngine engine = new PromotionEngine(List.of(big, left, right));
+        checkout.scanBasket("ACDEF");
+
+        // The large bundle saves most on its own, but leaves F at full price: 0.80 + 0.50
+        // against 0.30 + 0.30 + 0.50 for the two pairs and D
+        PromotionResult result = engine.price(checkout);
+        assertEquals(110L, result.getTotalMinor());
+        assertEquals(0, result.getApplications(big));
+        assertEquals(1, result.getApplications(left));
+        assertEquals(1, result.getApplications(right));
+    }
+
+    @Test
+    void testNeverWorseThanRegularPricing() {
+        BundleOffer offer = BundleOffer.anyOf("Any 2 for 0.90", 2, new BigDecimal("0.90"), "A", "B");
+        PromotionEngine engine = new PromotionEngine(List.of(offer));
+        checkout.scanBasket("A3B");
+
+        // Taking a B out of its 3 for 1.30 deal costs more than the bundle saves
+        PromotionResult result = engine.price(checkout);
+        assertEquals(180L, result.getTotalMinor());
+        assertEquals(0, result.getApplications(offer));
+    }
+
+    @Test
+    void testDealAboveSixtyFourUnitsKeepsTheBoundSafe() {
+        PricingRuleFactory factory = new PricingRuleFactory();
+        factory.addPricingRule("A", new SpecialPricingRule(new BigDecimal("1.00"), 100, new BigDecimal("10.00")));
+        factory.addPricingRule("B", new RegularPricingRule(new BigDecimal("5.00")));
+        BundleOffer pair = BundleOffer.builder("A and B", new BigDecimal("1.00")).slot(1, "A").slot(1, "B").build();
+        Checkout basket = new Checkout(factory);
+        basket.scan("A", 101);
+        basket.scan("B");
+
+        // 100 A for 10.00 and the pair for 1.00, against 11.00 + 5.00 without the offer
+        PromotionResult result = new PromotionEngine(List.of(pair)).price(basket);
+        assertEquals(1100L, result.getTotalMinor());
+        assertEquals(1, result.getApplications(pair));
+        assertTrue(result.isOptimal());
+    }
+
+    @Test
+    void testChoosesWhichUnitsFillASlot() {
+        PricingRuleFactory factory = new PricingRuleFactory();
+        factory.addPricingRule("A", new RegularPricingRule(new BigDecimal("3.00")));
+        factory.addPricingRule("B", new RegularPricingRule(new BigDecimal("2.50")));
+        factory.addPricingRule("C", new RegularPricingRule(new BigDecimal("2.00")));
+        BundleOffer either = BundleOffer.anyOf("A or B", 1, new BigDecimal("0.05"), "A", "B");
+        BundleOffer pair = BundleOffer.builder("A and C", new BigDecimal("0.10")).slot(1, "A").slot(1, "C").build();
+        Checkout basket = new Checkout(factory);
+        basket.scanBasket("ABC");
+
+        // Taking the dearer A for the first offer leaves B at full price: 0.05 + 2.50 + 2.00
+        PromotionResult result = new PromotionEngine(List.of(either, pair)).price(basket);
+        assertEquals(15L, result.getTotalMinor());
+        assertEquals(1, result.getApplications(either));
+        assertEquals(1, result.getApplications(pair));
+        assertTrue(result.isOptimal());
+    }
+
+    @Test
+    void testUnknownSkusAreIgnored() {
+        BundleOffer offer = BundleOffer.anyOf("Any 2 for 0.60", 2, new BigDecimal("0.60"), "A", "X");
+        BundleOffer unreachable = BundleOffer.builder("X and A", new BigDecimal("0.10")).slot(1, "X").slot(1, "A").build();
+        PromotionEngine engine = new PromotionEngine(List.of(offer, unreachable));
+        checkout.scanBasket("AAD");
+
+        PromotionResult result = engine.price(checkout);
+        assertEquals(110L, result.getTotalMinor());
+        assertEquals(0, result.getApplications(unreachable));
+    }
+
+    @Test
+    void testSessionMatchesFreshPricingAsItemsAreScanned() {
+        List<BundleOffer> offers = List.of(
+                BundleOffer.anyOf("Any 3 for 1.00", 3, new BigDecimal("1.00"), "A", "B", "C"),
+                BundleOffer.anyOf("Any 2 for 0.85", 2, new BigDecimal("0.85"), "C", "D"),
+                BundleOffer.builder("E with G", new BigDecimal("0.55")).slot(1, "E").slot(1, "G").build(),
+                BundleOffer.anyOf("Any 5 for 2.00", 5, new BigDecimal("2.00"), "A", "D", "F"));
+        PromotionEngine engine = new PromotionEngine(offers);
+        PromotionEngine.Session session = engine.newSession();
+        String skus = "ABCDEFG";
+        Random random = new Random(42);
+        for (int i = 0; i < 60; i++) {
+            String sku = String.valueOf(skus.charAt(random.nextInt(skus.length())));
+            if (random.nextInt(5) == 0 && checkout.getQuantity(sku) > 0) {
+                checkout.unscan(sku);
+            } else {
+                checkout.scan(sku);
+            }
+            PromotionResult incremental = session.price(checkout);
+            PromotionResult fresh = engine.price(checkout);
+            assertEquals(fresh.getTotalMinor(), incremental.getTotalMinor());
+            assertEquals(checkout.calculateTotalMinor(), incremental.getRegularTotalMinor());
+            assertTrue(incremental.getTotalMinor() <= incremental.getRegularTotalMinor());
+        }
+    }
+
+    @Test
+    void testNodeBudgetBoundsTheSearch() {
+        BundleOffer offer = BundleOffer.anyOf("Any 2 for 0.90", 2, new BigDecimal("0.90"), "A", "C", "D", "E");
+        PromotionEngine engine = new PromotionEngine(List.of(offer), 3);
+        checkout.scanBasket("4A4C4D4E");
+
+        PromotionResult result = engine.price(checkout);
+        assertFalse(result.isOptimal());
+        assertTrue(result.getTotalMinor() <= result.getRegularTotalMinor());
+    }
+
+    @Test
+    void testBundlesArePricedWithTierRules() {
+        pricingRuleFactory.addPricingRule("H", new RegularPricingRule(new BigDecimal("1.00")));
+        pricingRuleFactory.addPricingRule("I", new RegularPricingRule(new BigDecimal("1.00")));
+        PriceTier staff = new PriceTier("staff", pricingRuleFactory);
+        staff.addPricingRule("H", new RegularPricingRule(new BigDecimal("0.50")));
+        staff.addPricingRule("I", new RegularPricingRule(new BigDecimal("0.50")));
+        BundleOffer offer = BundleOffer.anyOf("Any 2 for 1.80", 2, new BigDecimal("1.80"), "H", "I");
+        PromotionEngine engine = new PromotionEngine(List.of(offer));
+        PromotionEngine.Session session = engine.newSession();
+
+        checkout.scanBasket("HI");
+        assertEquals(180L, session.price(checkout).getTotalMinor());
+        assertEquals(1, session.price(checkout).getApplications(offer));
+
+        // The staff price of the pair beats the bundle, so the bundle is not applied
+        checkout.clear();
+        checkout.setPriceTier(staff);
+        checkout.scanBasket("HI");
+        PromotionResult result = session.price(checkout);
+        assertEquals(100L, result.getRegularTotalMinor());
+        assertEquals(100L, result.getTotalMinor());
+        assertEquals(0L, result.getSavingMinor());
+        assertEquals(0, result.getApplications(offer));
+    }
+
+    @Test
+    void testLanesOnDifferentSnapshotsShareCompiledOffers() {
+        BundleOffer offer = BundleOffer.anyOf("Any 3 for 1.00", 3, new BigDecimal("1.00"), "A", "C", "D");
+        PromotionEngine engine = new PromotionEngine(List.of(offer));
+        checkout.scanBasket("ACD");
+        Checkout later = new Checkout(pricingRuleFactory);
+        pricingRuleFactory.addPricingRule("E", new RegularPricingRule(new BigDecimal("0.60")));
+        later.scanBasket("ACDE");
+
+        PromotionResult first = engine.price(checkout);
+        PromotionResult second = engine.price(later);
+        assertEquals(100L, first.getTotalMinor());
+        assertEquals(160L, second.getTotalMinor());
+        assertNotSame(checkout.catalogue(), later.catalogue());
+        // Each lane finds its snapshot's offers still compiled after the other lane priced
+        PromotionEngine.Compiled compiled = engine.compiled(checkout.catalogue(), null);
+        engine.price(later);
+        assertSame(compiled, engine.compiled(checkout.catalogue(), null));
+        engine.price(checkout);
+        assertSame(engine.compiled(later.catalogue(), null), engine.compiled(later.catalogue(), null));
+    }
+
+    @Test
+    void testInvalidOffers() {
+        assertThrows(IllegalArgumentException.class, () -> BundleOffer.anyOf("None", 0, BigDecimal.ONE, "A"));
+        assertThrows(IllegalArgumentException.class, () -> BundleOffer.anyOf("Empty", 1, BigDecimal.ONE));
+        assertThrows(IllegalArgumentException.class, () -> BundleOffer.anyOf("Negative", 1, new BigDecimal("-1"), "A"));
+        assertThrows(IllegalStateException.class, () -> BundleOffer.builder("No slots", BigDecimal.ONE).build());
+        assertThrows(IllegalArgumentException.class, () -> new PromotionEngine(List.of(), 0));
+    }
+}
@@ -0,0 +1,90 @@
+package com.cdl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for QuoteCache fingerprints, invalidation and eviction.
+ */
+class QuoteCacheTest {
+    private PricingRuleFactory pricingRuleFactory;
+    private QuoteCache cache;
+
+    @BeforeEach
+    void setUp() {
+        pricingRuleFactory = new PricingRuleFactory();
+        pricingRuleFactory.addPricingRule("A", new SpecialPricingRule(new BigDecimal("0.50"), 3, new BigDecimal("1.30")));
+        pricingRuleFactory.addPricingRule("B", new SpecialPricingRule(new BigDecimal("0.30"), 2, new BigDecimal("0.45")));
+        pricingRuleFactory.addPricingRule("C", new RegularPricingRule(new BigDecimal("0.20")));
+        cache = new QuoteCache(pricingRuleFactory, 100);
+    }
+
+    private static Map<String, Integer> basket(Object... skusAndQuantities) {
+        Map<String, Integer> basket = new LinkedHashMap<>();
+        for (int i = 0; i < skusAndQuantities.length; i += 2) {
+            basket.put((String) skusAndQuantities[i], (Integer) skusAndQuantities[i + 1]);
+        }
+        return basket;
+    }
+
+    @Test
+    void testQuoteHasTotalAndLines() {
+        Quote quote = cache.quote(basket("C", 1, "A", 4));
+        assertEquals(new BigDecimal("2.00"), quote.getTotal());
+        assertEquals(pricingRuleFactory.getCatalogue().getVersion(), quote.getCatalogueVersion());
+        assertEquals(2, quote.getLines().size());
+        Quote.Line first = quote.getLines().get(0);
+        assertEquals("A", first.getSku());
+        assertEquals(4, first.getQuantity());
+        assertEquals(new BigDecimal("1.80"), first.getPrice());
+        assertEquals(20, quote.getLines().get(1).getPriceMinor());
+    }
+
+    @Test
+    void testSameBasketInAnyOrderIsAHit() {
+        Quote first = cache.quote(basket("A", 3, "B", 2, "C", 0));
+        assertSame(first, cache.quote(basket("B", 2, "A", 3)));
+        assertSame(first, cache.quote(basket("B", 2, "A", 1, " A ", 2)));
+        assertNotSame(first, cache.quote(basket("A", 3, "B", 1)));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRatio());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testCatalogueChangeInvalidatesQuotes() {
+        assertEquals(new BigDecimal("1.30"), cache.quote(basket("A", 3)).getTotal());
+        cache.quote(basket("C", 1));
+        pricingRuleFactory.addPricingRule("A", new RegularPricingRule(new BigDecimal("0.40")));
+        assertEquals(new BigDecimal("1.20"), cache.quote(basket("A", 3)).getTotal());
+        assertEquals(2, cache.getInvalidationCount());
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    void testLeastRecentlyUsedQuoteIsEvicted() {
+        QuoteCache small = new QuoteCache(pricingRuleFactory, 1);
+        Quote a = small.quote(basket("A", 1));
+        small.quote(basket("B", 1));
+        assertEquals(1, small.getEvictionCount());
+        assertNotSame(a, small.quote(basket("A", 1)));
+        assertEquals(1, small.size());
+    }
+
+    @Test
+    void testInvalidBasketsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> cache.quote(basket("Z", 1)));
+        assertThrows(IllegalArgumentException.class, () -> cache.quote(basket("A", -1)));
+        assertThrows(NullPointerException.class, () -> cache.quote(basket("A", null)));
+        assertThrows(IllegalArgumentException.class, () -> new QuoteCache(pricingRuleFactory, 0));
+        assertEquals(new BigDecimal("0.00"), cache.quote(basket()).getTotal());
+    }
+}
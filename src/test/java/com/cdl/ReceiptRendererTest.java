@@ -0,0 +1,91 @@
+package com.cdl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the text written by ReceiptRenderer.
+ */
+class ReceiptRendererTest {
+    private ByteArrayOutputStream out;
+    private ReceiptRenderer renderer;
+
+    @BeforeEach
+    void setUp() {
+        out = new ByteArrayOutputStream();
+        renderer = new ReceiptRenderer(Channels.newChannel(out), 256);
+    }
+
+    private String rendered() {
+        renderer.flush();
+        String text = out.toString(StandardCharsets.UTF_8);
+        out.reset();
+        return text;
+    }
+
+    private static String columns(String left, String right) {
+        return left + " ".repeat(40 - left.length() - right.length()) + right + "\n";
+    }
+
+    @Test
+    void testTotalsAreFormattedFromMinorUnits() {
+        renderer.renderRunningTotal(0);
+        renderer.renderRunningTotal(5);
+        renderer.renderRunningTotal(130);
+        renderer.renderFinalTotal(123_456_789);
+        assertEquals("Running total: £0.00\nRunning total: £0.05\nRunning total: £1.30\nFinal total: £1234567.89\n", rendered());
+
+        renderer.renderRunningTotal(-45);
+        renderer.renderRunningTotal(Long.MIN_VALUE);
+        renderer.renderRunningTotal(Long.MAX_VALUE);
+        assertEquals("Running total: -£0.45\nRunning total: -£92233720368547758.08\nRunning total: £92233720368547758.07\n", rendered());
+    }
+
+    @Test
+    void testOutputIsBufferedUntilFlushed() {
+        for (int i = 0; i < 100; i++) {
+            renderer.renderRunningTotal(i);
+        }
+        // The buffer filled up and was written out part of the way through
+        assertTrue(out.toString(StandardCharsets.UTF_8).startsWith("Running total: £0.00\n"));
+        int written = out.size();
+        renderer.flush();
+        assertTrue(out.size() > written);
+        assertTrue(out.toString(StandardCharsets.UTF_8).endsWith("Running total: £0.99\n"));
+        assertEquals(100, out.toString(StandardCharsets.UTF_8).lines().count());
+        assertThrows(IllegalArgumentException.class, () -> new ReceiptRenderer(Channels.newChannel(out), 16));
+    }
+
+    @Test
+    void testReceiptListsItemsDealsAndSavings() {
+        PricingRuleFactory pricingRuleFactory = new PricingRuleFactory();
+        pricingRuleFactory.addPricingRule("A", new SpecialPricingRule(new BigDecimal("0.50"), 3, new BigDecimal("1.30")));
+        pricingRuleFactory.addPricingRule("C", new RegularPricingRule(new BigDecimal("0.20")));
+        pricingRuleFactory.addPricingRule("D", new RegularPricingRule(new BigDecimal("0.15")));
+        Checkout checkout = new Checkout(pricingRuleFactory);
+        checkout.scan("A", 4);
+        checkout.scan("C");
+        checkout.scan("D");
+        checkout.voidLine("D");
+
+        renderer.renderReceipt(checkout);
+        String expected = "A" + " ".repeat(27) + "x4" + columns("", "£2.00").substring(30)
+                + columns("  3 for £1.30", "-£0.20")
+                + "C" + " ".repeat(27) + "x1" + columns("", "£0.20").substring(30)
+                + "----------------------------------------\n"
+                + columns("Savings", "£0.20")
+                + "Final total: £2.00\n";
+        assertEquals(expected, rendered());
+
+        checkout.clear();
+        renderer.renderReceipt(checkout);
+        assertEquals("----------------------------------------\nFinal total: £0.00\n", rendered());
+    }
+}
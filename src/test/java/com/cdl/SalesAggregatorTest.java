@@ -0,0 +1,192 @@
+package com.cdl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SalesAggregator snapshots and SalesSnapshot deltas.
+ */
+class SalesAggregatorTest {
+    private PricingRuleFactory pricingRuleFactory;
+    private SalesAggregator sales;
+
+    @BeforeEach
+    void setUp() {
+        pricingRuleFactory = new PricingRuleFactory();
+        pricingRuleFactory.addPricingRule("A", new SpecialPricingRule(new BigDecimal("0.50"), 3, new BigDecimal("1.30")));
+        pricingRuleFactory.addPricingRule("B", new SpecialPricingRule(new BigDecimal("0.30"), 2, new BigDecimal("0.45")));
+        pricingRuleFactory.addPricingRule("C", new RegularPricingRule(new BigDecimal("0.20")));
+        sales = new SalesAggregator(pricingRuleFactory);
+    }
+
+    private void sell(SalesAggregator aggregator, String basket) {
+        Checkout checkout = new Checkout(pricingRuleFactory);
+        checkout.scanBasket(basket);
+        aggregator.record(checkout);
+    }
+
+    @Test
+    void testSnapshotCountsUnitsRevenueAndDeals() {
+        sell(sales, "AAAAB");
+        sell(sales, "ACA");
+        SalesSnapshot snapshot = sales.snapshot();
+        assertEquals(2, snapshot.getBaskets());
+        assertEquals(Arrays.asList("A", "B", "C"), snapshot.getSkus());
+        assertEquals(6, snapshot.getUnits("A"));
+        assertEquals(180 + 100, snapshot.getRevenueMinor("A"));
+        assertEquals(1, snapshot.getDeals("A"));
+        assertEquals(0, snapshot.getDeals("B"));
+        assertEquals(1, snapshot.getUnits(" C "));
+        assertEquals(0, snapshot.getUnits("D"));
+        assertEquals(8, snapshot.getTotalUnits());
+        assertEquals(180 + 30 + 100 + 20, snapshot.getTotalRevenueMinor());
+    }
+
+    @Test
+    void testEmptyBasketsAreNotCounted() {
+        Checkout checkout = new Checkout(pricingRuleFactory);
+        sales.record(checkout);
+        checkout.scan("A");
+        checkout.unscan("A");
+        sales.record(checkout);
+        assertEquals(0, sales.snapshot().getBaskets());
+        assertEquals(0, sales.snapshot().getTotalUnits());
+    }
+
+    @Test
+    void testServerRecordsFinishedBaskets() {
+        Checkout checkout = new Checkout(pricingRuleFactory);
+        CheckoutServer.handle(checkout, "SCAN B 2", sales);
+        assertEquals("DONE 0.45", CheckoutServer.handle(checkout, "DONE", sales));
+        assertEquals(1, sales.snapshot().getDeals("B"));
+    }
+
+    @Test
+    void testSnapshotsSeeWholeBasketsWhileLanesRecord() throws Exception {
+        int lanes = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(lanes);
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < lanes; i++) {
+                results.add(executor.submit(() -> {
+                    Checkout checkout = new Checkout(pricingRuleFactory);
+                    long baskets = 0;
+                    start.await();
+                    while (running.get()) {
+                        checkout.scanBasket("AAAB");
+                        sales.record(checkout);
+                        checkout.clear();
+                        baskets++;
+                    }
+                    return baskets;
+                }));
+            }
+            start.countDown();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+            long previous = 0;
+            while (System.nanoTime() < deadline) {
+                SalesSnapshot snapshot = sales.snapshot();
+                assertEquals(3 * snapshot.getBaskets(), snapshot.getUnits("A"));
+                assertEquals(snapshot.getBaskets(), snapshot.getUnits("B"));
+                assertEquals(snapshot.getBaskets(), snapshot.getDeals("A"));
+                assertTrue(snapshot.getBaskets() >= previous);
+                previous = snapshot.getBaskets();
+            }
+            running.set(false);
+            long sold = 0;
+            for (Future<Long> result : results) {
+                sold += result.get();
+            }
+            SalesSnapshot snapshot = sales.snapshot();
+            assertEquals(sold, snapshot.getBaskets());
+            assertEquals(sold * (130 + 30), snapshot.getTotalRevenueMinor());
+        } finally {
+            running.set(false);
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testDeltasMergeAcrossNodes() {
+        SalesAggregator other = new SalesAggregator(pricingRuleFactory);
+        sell(sales, "AAA");
+        sell(other, "BC");
+        other.mergeDelta(sales.exportDelta());
+        sell(sales, "A");
+        other.mergeDelta(sales.exportDelta());
+        // Nothing new since the last export
+        SalesSnapshot empty = SalesSnapshot.fromBytes(sales.exportDelta());
+        assertEquals(0, empty.getBaskets());
+        assertTrue(empty.getSkus().isEmpty());
+
+        SalesSnapshot snapshot = other.snapshot();
+        assertEquals(3, snapshot.getBaskets());
+        assertEquals(4, snapshot.getUnits("A"));
+        assertEquals(180, snapshot.getRevenueMinor("A"));
+        assertEquals(1, snapshot.getDeals("A"));
+        assertEquals(1, snapshot.getUnits("C"));
+    }
+
+    @Test
+    void testNodesExchangeDeltasBothWays() {
+        SalesAggregator other = new SalesAggregator(pricingRuleFactory);
+        sell(sales, "AAA");
+        sell(other, "BC");
+        for (int round = 0; round < 3; round++) {
+            byte[] fromSales = sales.exportDelta();
+            byte[] fromOther = other.exportDelta();
+            other.mergeDelta(fromSales);
+            sales.mergeDelta(fromOther);
+        }
+
+        // Merged sales are not exported back, so each basket is counted once on both nodes
+        for (SalesAggregator node : List.of(sales, other)) {
+            SalesSnapshot snapshot = node.snapshot();
+            assertEquals(2, snapshot.getBaskets());
+            assertEquals(3, snapshot.getUnits("A"));
+            assertEquals(1, snapshot.getUnits("B"));
+            assertEquals(1, snapshot.getUnits("C"));
+        }
+    }
+
+    @Test
+    void testSnapshotBytesRoundTrip() {
+        sell(sales, "AAAABBC");
+        SalesSnapshot snapshot = sales.snapshot();
+        SalesSnapshot copy = SalesSnapshot.fromBytes(snapshot.toBytes());
+        assertEquals(snapshot.getBaskets(), copy.getBaskets());
+        assertEquals(snapshot.getSkus(), copy.getSkus());
+        for (String sku : snapshot.getSkus()) {
+            assertEquals(snapshot.getUnits(sku), copy.getUnits(sku));
+            assertEquals(snapshot.getRevenueMinor(sku), copy.getRevenueMinor(sku));
+            assertEquals(snapshot.getDeals(sku), copy.getDeals(sku));
+        }
+    }
+
+    @Test
+    void testMalformedDeltasAreRejected() {
+        byte[] bytes = sales.exportDelta();
+        assertThrows(IllegalArgumentException.class, () -> sales.mergeDelta(new byte[]{1, 2, 3}));
+        assertThrows(IllegalArgumentException.class, () -> sales.mergeDelta(Arrays.copyOf(bytes, bytes.length - 1)));
+        assertThrows(IllegalArgumentException.class, () -> sales.mergeDelta(Arrays.copyOf(bytes, bytes.length + 1)));
+        byte[] corrupt = bytes.clone();
+        corrupt[0] ^= 1;
+        assertThrows(IllegalArgumentException.class, () -> sales.mergeDelta(corrupt));
+        assertEquals(0, sales.snapshot().getBaskets());
+    }
+}
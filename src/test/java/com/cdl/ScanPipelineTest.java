@@ -0,0 +1,175 @@
+package com.cdl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ScanPipeline stages, coalescing and backpressure.
+ */
+class ScanPipelineTest {
+    private PricingRuleFactory pricingRuleFactory;
+    private SlowDisplay display;
+    private final List<Long> finishedTotals = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        pricingRuleFactory = new PricingRuleFactory();
+        pricingRuleFactory.addPricingRule("A", new SpecialPricingRule(new BigDecimal("0.50"), 3, new BigDecimal("1.30")));
+        pricingRuleFactory.addPricingRule("B", new SpecialPricingRule(new BigDecimal("0.30"), 2, new BigDecimal("0.45")));
+        pricingRuleFactory.addPricingRule("C", new RegularPricingRule(new BigDecimal("0.20")));
+        display = new SlowDisplay(0);
+    }
+
+    /**
+     * A display that takes a while to write each chunk, like a slow terminal.
+     */
+    private static final class SlowDisplay implements WritableByteChannel {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final long millisPerWrite;
+
+        SlowDisplay(long millisPerWrite) {
+            this.millisPerWrite = millisPerWrite;
+        }
+
+        @Override
+        public synchronized int write(ByteBuffer source) {
+            try {
+                Thread.sleep(millisPerWrite);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            int length = source.remaining();
+            bytes.write(source.array(), source.arrayOffset() + source.position(), length);
+            source.position(source.limit());
+            return length;
+        }
+
+        synchronized String text() {
+            return bytes.toString(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private ScanPipeline pipeline(int bufferCapacity) {
+        return new ScanPipeline(pricingRuleFactory, display,
+                checkout -> finishedTotals.add(checkout.calculateTotalMinor()), bufferCapacity);
+    }
+
+    @Test
+    void testScansAreDisplayedInOrder() {
+        ScanPipeline pipeline = pipeline(ScanPipeline.DEFAULT_BUFFER_CAPACITY);
+        pipeline.scan("A");
+        pipeline.scan(" B ");
+        pipeline.scan("Z");
+        pipeline.scan("A");
+        pipeline.done();
+        pipeline.scan("C");
+        pipeline.close();
+
+        String text = display.text();
+        // Totals may be coalesced, but a rejection or receipt always follows the totals before it
+        assertTrue(text.startsWith("Running total: £"), text);
+        assertTrue(text.contains("Invalid SKU: Z Please try again.\n"), text);
+        assertTrue(text.indexOf("Invalid SKU") < text.indexOf("Final total: £1.30\n"), text);
+        assertTrue(text.endsWith("Final total: £1.30\nRunning total: £0.20\n"), text);
+        assertEquals(List.of(130L), finishedTotals);
+        assertEquals(5, pipeline.getScanCount());
+        assertEquals(1, pipeline.getRejectedCount());
+        assertEquals(4, pipeline.getDisplayedCount() + pipeline.getCoalescedCount());
+        assertEquals(pipeline.getDisplayedCount(), pipeline.getDisplayLatency().getCount());
+    }
+
+    @Test
+    void testBasketStartsAtItsFirstAcceptedScan() throws InterruptedException {
+        ScanPipeline pipeline = pipeline(ScanPipeline.DEFAULT_BUFFER_CAPACITY);
+        pipeline.scan("D");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (pipeline.getRejectedCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        pricingRuleFactory.update(builder -> builder
+                .put("A", new RegularPricingRule(new BigDecimal("0.90")))
+                .put("D", new RegularPricingRule(new BigDecimal("0.10"))));
+        pipeline.scan("A");
+        pipeline.scan("D");
+        pipeline.done();
+        pipeline.close();
+
+        // The whole basket is priced against the catalogue it started on, which has D
+        assertEquals(1, pipeline.getRejectedCount());
+        assertEquals(List.of(100L), finishedTotals);
+    }
+
+    @Test
+    void testBurstTotalsAreCoalesced() {
+        display = new SlowDisplay(2);
+        ScanPipeline pipeline = pipeline(16);
+        for (int i = 0; i < 300; i++) {
+            pipeline.scan("C");
+        }
+        pipeline.done();
+        pipeline.close();
+
+        assertEquals(List.of(6000L), finishedTotals);
+        assertEquals(300, pipeline.getDisplayedCount() + pipeline.getCoalescedCount());
+        assertTrue(pipeline.getCoalescedCount() > 0);
+        // The last total shown is always the latest one
+        assertTrue(display.text().contains("Running total: £60.00\nC "), display.text());
+    }
+
+    @Test
+    void testFullPipelineBlocksTheScanner() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ScanPipeline pipeline = new ScanPipeline(pricingRuleFactory, display, checkout -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 1);
+        CountDownLatch submitted = new CountDownLatch(1);
+        Thread scanner = new Thread(() -> {
+            pipeline.done();
+            for (int i = 0; i < 100; i++) {
+                pipeline.scan("A");
+            }
+            submitted.countDown();
+        });
+        scanner.start();
+        // The cart stage is stuck finishing the basket, so only a few scans fit in the buffers
+        assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+        assertTrue(pipeline.getScanCount() < 100);
+        release.countDown();
+        assertTrue(submitted.await(10, TimeUnit.SECONDS));
+        pipeline.close();
+        assertTrue(display.text().endsWith("Running total: £43.40\n"), display.text());
+    }
+
+    @Test
+    void testClosedPipelineRejectsScans() {
+        ScanPipeline pipeline = pipeline(ScanPipeline.DEFAULT_BUFFER_CAPACITY);
+        pipeline.close();
+        assertThrows(IllegalStateException.class, () -> pipeline.scan("A"));
+        assertThrows(IllegalArgumentException.class, () -> pipeline(0));
+    }
+}
@@ -0,0 +1,129 @@
+package com.cdl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that scheduled rules are indexed into catalogue epochs and rolled over on time.
+ */
+class ScheduledPricingRuleTest {
+    private static final Instant START = Instant.parse("2024-06-01T00:00:00Z");
+    private static final PricingRule THREE_FOR_ONE_THIRTY = new SpecialPricingRule(new BigDecimal("0.50"), 3, new BigDecimal("1.30"));
+
+    private ManualClock clock;
+    private PricingRuleFactory pricingRuleFactory;
+
+    @BeforeEach
+    void setUp() {
+        clock = new ManualClock(START);
+        pricingRuleFactory = new PricingRuleFactory(PricingCatalogue.EMPTY, clock);
+        pricingRuleFactory.addPricingRule("A", new RegularPricingRule(new BigDecimal("0.50")));
+        pricingRuleFactory.addPricingRule("C", new RegularPricingRule(new BigDecimal("0.20")));
+    }
+
+    private BigDecimal price(String... skus) {
+        Checkout checkout = new Checkout(pricingRuleFactory);
+        for (String sku : skus) {
+            checkout.scan(sku);
+        }
+        return checkout.calculateTotal();
+    }
+
+    private void advanceAndRollOver(Duration duration) {
+        clock.advance(duration);
+        pricingRuleFactory.rollOver();
+    }
+
+    @Test
+    void testRuleAppliesOnlyDuringItsPeriod() {
+        int skuId = pricingRuleFactory.getSkuId("A");
+        pricingRuleFactory.schedulePricingRule("A", THREE_FOR_ONE_THIRTY, START.plus(Duration.ofDays(1)), START.plus(Duration.ofDays(8)));
+        assertEquals(3, pricingRuleFactory.timeline().epochCount());
+        assertEquals(new BigDecimal("1.50"), price("A", "A", "A"));
+
+        // A basket started before the rollover keeps the prices it started with
+        Checkout started = new Checkout(pricingRuleFactory);
+        started.scan("A");
+        long before = pricingRuleFactory.getCatalogue().getVersion();
+        advanceAndRollOver(Duration.ofDays(1));
+        assertTrue(pricingRuleFactory.getCatalogue().getVersion() > before);
+        assertEquals(new BigDecimal("1.30"), price("A", "A", "A"));
+        started.scan("A", 2);
+        assertEquals(new BigDecimal("1.50"), started.calculateTotal());
+        assertEquals(skuId, pricingRuleFactory.getSkuId("A"));
+
+        advanceAndRollOver(Duration.ofDays(7).minusMillis(1));
+        assertEquals(new BigDecimal("1.30"), price("A", "A", "A"));
+        advanceAndRollOver(Duration.ofMillis(1));
+        assertEquals(new BigDecimal("1.50"), price("A", "A", "A"));
+        assertEquals(List.of(), pricingRuleFactory.getScheduledRules());
+    }
+
+    @Test
+    void testLaterScheduleWinsAndCancelRestoresTheRegularRule() {
+        pricingRuleFactory.schedulePricingRule("C", new RegularPricingRule(new BigDecimal("0.15")), START, START.plus(Duration.ofDays(10)));
+        ScheduledPricingRule flashSale = pricingRuleFactory.schedulePricingRule("C", new RegularPricingRule(new BigDecimal("0.05")),
+                START.plus(Duration.ofDays(2)), START.plus(Duration.ofDays(3)));
+        assertEquals(new BigDecimal("0.15"), price("C"));
+        advanceAndRollOver(Duration.ofDays(2));
+        assertEquals(new BigDecimal("0.05"), price("C"));
+
+        assertTrue(pricingRuleFactory.cancelScheduledRule(flashSale));
+        assertFalse(pricingRuleFactory.cancelScheduledRule(flashSale));
+        assertEquals(new BigDecimal("0.15"), price("C"));
+        advanceAndRollOver(Duration.ofDays(8));
+        assertEquals(new BigDecimal("0.20"), price("C"));
+    }
+
+    @Test
+    void testRegularRuleChangesAreKeptUnderAndAfterAPromotion() {
+        pricingRuleFactory.schedulePricingRule("A", THREE_FOR_ONE_THIRTY, START, START.plus(Duration.ofDays(1)));
+        pricingRuleFactory.addPricingRule("A", new RegularPricingRule(new BigDecimal("0.60")));
+        pricingRuleFactory.addPricingRule("B", new RegularPricingRule(new BigDecimal("0.30")));
+        assertEquals(new BigDecimal("1.60"), price("A", "A", "A", "B"));
+        advanceAndRollOver(Duration.ofDays(1));
+        assertEquals(new BigDecimal("2.10"), price("A", "A", "A", "B"));
+    }
+
+    @Test
+    void testSkuWithoutRegularRuleIsOnlySoldDuringItsPeriod() {
+        pricingRuleFactory.schedulePricingRule("EGG", new RegularPricingRule(new BigDecimal("1.00")),
+                START.plus(Duration.ofHours(1)), START.plus(Duration.ofHours(2)));
+        assertFalse(pricingRuleFactory.hasRule("EGG"));
+        advanceAndRollOver(Duration.ofHours(1));
+        int skuId = pricingRuleFactory.getSkuId("EGG");
+        assertTrue(skuId >= 0);
+        assertEquals(new BigDecimal("1.00"), price("EGG"));
+        advanceAndRollOver(Duration.ofHours(1));
+        assertFalse(pricingRuleFactory.hasRule("EGG"));
+        assertEquals("EGG", pricingRuleFactory.getSku(skuId));
+        assertThrows(IllegalArgumentException.class, () -> pricingRuleFactory.schedulePricingRule("EGG", THREE_FOR_ONE_THIRTY, START, START));
+    }
+
+    @Test
+    void testSchedulerRollsOverAtTheBoundary() throws InterruptedException {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            pricingRuleFactory.schedulePricingRule("A", THREE_FOR_ONE_THIRTY, START.plusMillis(50), START.plus(Duration.ofDays(1)));
+            pricingRuleFactory.startScheduler(executor);
+            assertEquals(new BigDecimal("1.50"), price("A", "A", "A"));
+            clock.advance(Duration.ofMillis(50));
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (price("A", "A", "A").compareTo(new BigDecimal("1.30")) != 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(new BigDecimal("1.30"), price("A", "A", "A"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}